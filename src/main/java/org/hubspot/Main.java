@@ -11,6 +11,7 @@ import org.hubspot.objects.crm.Company;
 import org.hubspot.objects.crm.Contact;
 import org.hubspot.objects.crm.Deal;
 import org.hubspot.services.HubSpot;
+import org.hubspot.services.crm.CacheSnapshot;
 import org.hubspot.services.crm.CompanyService;
 import org.hubspot.services.crm.ContactService;
 import org.hubspot.services.crm.DealService;
@@ -26,9 +27,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.*;
 
 /**
@@ -39,14 +38,19 @@ public class Main {
     /**
      * The instance of the logger
      */
-    private static final Logger logger             = LogManager.getLogger(Main.class);
-    private static final long   DELAY              = 25;
-    private static final int    STARTING_POOL_SIZE = Runtime.getRuntime().availableProcessors();
-    private static final long   UPDATE_INTERVAL    = 100;
-    private static final int    LIMIT              = 1;
-    private static final long   WARMUP             = 10;
-    private static final int    MAX_SIZE           = 75;
-    private static final String debugMessageFormat = "Method %-30s\tProcess Load: %f";
+    private static final Logger  logger             = LogManager.getLogger(Main.class);
+    private static final long    DELAY              = 25;
+    private static final int     STARTING_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    private static final long    UPDATE_INTERVAL    = 100;
+    private static final int     LIMIT              = 1;
+    private static final long    WARMUP             = 10;
+    private static final int     MAX_SIZE           = 75;
+    private static final String  debugMessageFormat = "Method %-30s\tProcess Load: %f";
+    /**
+     * Whether the first sync exports all engagements page by page instead of fetching them contact by contact
+     */
+    private static final boolean BULK_ENGAGEMENTS
+            = Boolean.parseBoolean(System.getProperty("hubspot.engagements.bulk", "true"));
 
     public static void main(String[] args) {
         CPUMonitor.startMonitoring();
@@ -69,6 +73,7 @@ public class Main {
         }
         long lastFinished = FileUtils.readLastFinished();
         HubSpot hubspot = new HubSpot("6ab73220-900f-462b-b753-b6757d94cd1d");
+        CacheSnapshot snapshot = CacheSnapshot.load();
         List<Long> associatedContacts = FileUtils.readAssociatedContacts();
         HashMap<Long, Contact> contacts;
         HashMap<Long, Contact> updatedContacts;
@@ -77,7 +82,7 @@ public class Main {
             updatedContacts = new HashMap<>();
         }
         else {
-            contacts = hubspot.crm().readContactJsons();
+            contacts = snapshot.getContacts() != null ? snapshot.getContacts() : hubspot.crm().readContactJsons();
             Utils.sleep(DELAY);
             updatedContacts = hubspot.crm().getUpdatedContacts("contactinformation", true, lastExecuted, lastFinished);
             contacts.putAll(updatedContacts);
@@ -92,7 +97,7 @@ public class Main {
             companies = hubspot.crm().getAllCompanies("companyinformation", false);
         }
         else {
-            companies = hubspot.crm().readCompanyJsons();
+            companies = snapshot.getCompanies() != null ? snapshot.getCompanies() : hubspot.crm().readCompanyJsons();
             Utils.sleep(DELAY);
             HashMap<Long, Company> updatedCompanies = hubspot.crm()
                                                              .getUpdatedCompanies("companyinformation",
@@ -110,17 +115,23 @@ public class Main {
             updatedDeals = new HashMap<>();
         }
         else {
-            deals = hubspot.crm().readDealJsons();
+            deals = snapshot.getDeals() != null ? snapshot.getDeals() : hubspot.crm().readDealJsons();
             Utils.sleep(DELAY);
             updatedDeals = hubspot.crm().getUpdatedDeals("dealinformation", true, lastExecuted, lastFinished);
             deals.putAll(updatedDeals);
         }
         HashMap<Long, EngagementData> engagements;
-        if (!EngagementsProcessor.cacheExists()) {
+        boolean engagementsExported = !EngagementsProcessor.cacheExists() && BULK_ENGAGEMENTS;
+        if (engagementsExported) {
+            engagements = hubspot.crm().getAllEngagements(contacts.keySet());
+        }
+        else if (!EngagementsProcessor.cacheExists()) {
             engagements = null;
         }
         else {
-            engagements = hubspot.crm().readEngagementJsons();
+            engagements = snapshot.getEngagements() != null
+                          ? snapshot.getEngagements()
+                          : hubspot.crm().readEngagementJsons();
         }
         int capacity = (int) Math.ceil(Math.ceil((double) contacts.size() / (double) LIMIT) * Math.pow(MAX_SIZE, -0.6));
         CustomThreadPoolExecutor threadPoolExecutor = new CustomThreadPoolExecutor(1,
@@ -147,7 +158,25 @@ public class Main {
         }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
         ProgressBar progressBar = Utils.createProgressBar("Processing Contacts", contacts.size());
         Utils.sleep(WARMUP);
-        ConcurrentHashMap<Long, Contact> concurrentContacts = new ConcurrentHashMap<>(contacts);
+        Set<Long> associatedContactSet = new HashSet<>(associatedContacts);
+        List<Long> contactsToProcess = new ArrayList<>();
+        for (long contactId : contacts.keySet()) {
+            if (!associatedContactSet.contains(contactId)) {
+                contactsToProcess.add(contactId);
+            }
+        }
+        HashMap<Long, List<Long>> dealAssociations = getDealAssociations(hubspot, contactsToProcess);
+        List<Long> unresolvedContacts = new ArrayList<>();
+        for (long contactId : contactsToProcess) {
+            if (engagements == null ||
+                !engagements.containsKey(contactId) ||
+                (!engagementsExported && updatedContacts.containsKey(contactId))) {
+                unresolvedContacts.add(contactId);
+            }
+        }
+        HashMap<Long, Map<String, List<Long>>> engagementAssociations
+                = hubspot.crm().getEngagementAssociations(unresolvedContacts);
+        ConcurrentHashMap<Long, EngagementData> fetchedEngagements = new ConcurrentHashMap<>();
         if (engagements == null) {
             for (List<Long> partition : partitions) {
                 threadPoolExecutor.submit(() -> {
@@ -155,9 +184,21 @@ public class Main {
                         if (associatedContacts.contains(contactId)) {
                             continue;
                         }
-                        Contact contact = concurrentContacts.get(contactId);
-                        EngagementData engagementData = hubspot.crm().getContactEngagements(contact);
-                        processContact(hubspot, companies, deals, contact, engagementData, associatedContacts, progressBar);
+                        Contact contact = contacts.get(contactId);
+                        Map<String, List<Long>> engagementIds = engagementAssociations.getOrDefault(contactId,
+                                                                                                    Map.of()
+                        );
+                        EngagementData engagementData = hubspot.crm().getContactEngagements(contact, engagementIds);
+                        fetchedEngagements.put(contactId, engagementData);
+                        processContact(hubspot,
+                                       companies,
+                                       deals,
+                                       contact,
+                                       engagementData,
+                                       dealAssociations.getOrDefault(contactId, new ArrayList<>()),
+                                       associatedContacts,
+                                       progressBar
+                        );
                     }
                     return null;
                 });
@@ -167,26 +208,44 @@ public class Main {
             for (List<Long> partition : partitions) {
                 threadPoolExecutor.submit(() -> {
                     for (Long contactId : partition) {
-                        Contact contact = concurrentContacts.get(contactId);
+                        Contact contact = contacts.get(contactId);
                         EngagementData engagementData;
                         if (associatedContacts.contains(contactId)) {
                             progressBar.step();
                             continue;
                         }
                         else if (!engagements.containsKey(contactId)) {
-                            engagementData = hubspot.crm().getContactEngagements(contact);
+                            Map<String, List<Long>> engagementIds = engagementAssociations.getOrDefault(contactId,
+                                                                                                        Map.of()
+                            );
+                            engagementData = hubspot.crm().getContactEngagements(contact, engagementIds);
+                            fetchedEngagements.put(contactId, engagementData);
                         }
-                        else if (updatedContacts.containsKey(contactId)) {
+                        else if (!engagementsExported && updatedContacts.containsKey(contactId)) {
                             engagementData = engagements.get(contactId);
+                            Map<String, List<Long>> engagementIds = engagementAssociations.getOrDefault(contactId,
+                                                                                                        Map.of()
+                            );
                             EngagementData updatedEngagements = hubspot.crm()
-                                                                       .getUpdatedEngagements(contact, lastFinished);
+                                                                       .getUpdatedEngagements(contact,
+                                                                                              engagementIds,
+                                                                                              lastFinished
+                                                                       );
                             engagementData.getEngagementIds().addAll(updatedEngagements.getEngagementIds());
                             engagementData.getEngagements().addAll(updatedEngagements.getEngagements());
                         }
                         else {
                             engagementData = engagements.get(contactId);
                         }
-                        processContact(hubspot, companies, deals, contact, engagementData, associatedContacts, progressBar);
+                        processContact(hubspot,
+                                       companies,
+                                       deals,
+                                       contact,
+                                       engagementData,
+                                       dealAssociations.getOrDefault(contactId, new ArrayList<>()),
+                                       associatedContacts,
+                                       progressBar
+                        );
                     }
                 });
             }
@@ -195,14 +254,41 @@ public class Main {
         Utils.shutdownUpdaters(logger, scheduledExecutorService);
         progressBar.close();
         FileUtils.writeLastFinished();
+        HashMap<Long, EngagementData> processedEngagements = engagements == null ? new HashMap<>() : engagements;
+        processedEngagements.putAll(fetchedEngagements);
+        CacheSnapshot.capture(contacts, companies, deals, processedEngagements);
+        CacheSnapshot.commit();
+        hubspot.shutdown();
         CPUMonitor.stopMonitoring();
     }
 
+    /**
+     * Gets the deal ids of every contact to process in batches, so that contacts are not associated one at a time
+     *
+     * @param hubspot    The HubSpot API
+     * @param contactIds The ids of the contacts to process
+     *
+     * @return The deal ids keyed by contact id, or an empty map if the daily limit was reached
+     */
+    private static HashMap<Long, List<Long>> getDealAssociations(HubSpot hubspot, List<Long> contactIds) {
+        try {
+            return hubspot.crm().getDealAssociations(contactIds);
+        }
+        catch (HubSpotException e) {
+            // Only stop if an error code is something other than the Daily limit.
+            if (e.getCode() != ErrorCodes.DAILY_LIMIT_REACHED.getErrorCode()) {
+                System.exit(e.getCode());
+            }
+            return new HashMap<>();
+        }
+    }
+
     private static void processContact(HubSpot hubspot,
                                        HashMap<Long, Company> companies,
                                        HashMap<Long, Deal> deals,
                                        Contact contact,
                                        EngagementData engagementData,
+                                       List<Long> dealIds,
                                        List<Long> associatedContacts,
                                        ProgressBar progressBar
     ) {
@@ -211,7 +297,8 @@ public class Main {
         }
         contact.setEngagementIds(engagementData.getEngagementIds());
         contact.setEngagements(engagementData.getEngagements());
-        String companyProperty = contact.getProperty("company").toString();
+        Object cachedCompany = contact.getProperty("company");
+        String companyProperty = cachedCompany.toString();
         if (companyProperty == null || companyProperty.equalsIgnoreCase("null")) {
             long associatedCompanyId = contact.getAssociatedCompany();
             if (associatedCompanyId != 0) {
@@ -219,18 +306,11 @@ public class Main {
                 contact.setProperty("company", company.getName());
             }
         }
-        try {
-            ArrayList<Deal> dealList = new ArrayList<>();
-            hubspot.crm().associateDeals(contact);
-            contact.setDeals(dealList);
-            for (long dealId : contact.getDealIds()) {
-                contact.addDeal(deals.get(dealId));
-            }
-        } catch (HubSpotException e){
-            // Only stop if an error code is something other than the Daily limit.
-            if(e.getCode()!=ErrorCodes.DAILY_LIMIT_REACHED.getErrorCode()){
-                System.exit(e.getCode());
-            }
+        ArrayList<Deal> dealList = new ArrayList<>();
+        contact.setDealIds(dealIds);
+        contact.setDeals(dealList);
+        for (long dealId : contact.getDealIds()) {
+            contact.addDeal(deals.get(dealId));
         }
         contact.setData(contact.toJson());
         ContactWriter.write(contact);
@@ -238,6 +318,8 @@ public class Main {
         DealsWriter.write(hubspot, contact.getId(), contact.getDeals());
         // Write the contactId to the associatedContacts file so that it knows it is currently up to date.
         FileUtils.writeAssociatedContacts(contact.getId(), true);
+        // Put back the company as cached, so the snapshot does not keep the name of the associated company
+        contact.setProperty("company", cachedCompany);
         associatedContacts.add(contact.getId());
         progressBar.step();
     }
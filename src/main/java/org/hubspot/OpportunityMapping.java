@@ -6,6 +6,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.*;
 import org.hubspot.utils.FileUtils;
+import org.hubspot.utils.cache.JsonCache;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -75,7 +76,7 @@ public class OpportunityMapping {
         for (File dealFolder : deals) {
             String contactId = dealFolder.getName();
             File[] contactDeals = dealFolder.listFiles();
-            JSONObject contact = new JSONObject(FileUtils.readJsonString(logger, new File("./cache/contacts/"+contactId+".json")));
+            JSONObject contact = JsonCache.read(Paths.get("./cache/contacts/"), Long.parseLong(contactId));
             String companyID = ((JSONObject) contact.get("properties")).get("associatedcompanyid").toString();
             String companyName;
             if (companyID.equals("null") || companyID.isEmpty()) {
@@ -90,7 +91,7 @@ public class OpportunityMapping {
                 }
             }
             else {
-                JSONObject company = new JSONObject(FileUtils.readJsonString(logger, new File("./cache/companies/"+companyID+".json")));
+                JSONObject company = JsonCache.read(Paths.get("./cache/companies/"), Long.parseLong(companyID));
                 companyName = ((JSONObject) company.get("properties")).get("name").toString().strip();
                 if (companyMap.containsKey(companyName.toLowerCase())) {
                     companyName = companyMap.get(companyName.toLowerCase()) + " " + companyName;
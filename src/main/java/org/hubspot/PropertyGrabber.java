@@ -28,6 +28,7 @@ public class PropertyGrabber {
         HubSpot hubspot = new HubSpot("6ab73220-900f-462b-b753-b6757d94cd1d");
         PropertyData propertyData = hubspot.crm()
                                            .propertiesByGroupName(CRMObjectType.CONTACTS, "contactinformation", true);
+        hubspot.shutdown();
         JSONObject jsonNames = new JSONObject();
         JSONObject jsonObject = new JSONObject();
         JSONArray jsonArray = new JSONArray();
@@ -9,6 +9,7 @@ import org.hubspot.io.ContactWriter;
 import org.hubspot.objects.crm.Company;
 import org.hubspot.objects.crm.Contact;
 import org.hubspot.services.HubSpot;
+import org.hubspot.services.crm.CacheSnapshot;
 import org.hubspot.services.crm.CompanyService;
 import org.hubspot.services.crm.ContactService;
 import org.hubspot.utils.*;
@@ -64,6 +65,7 @@ public class Updater {
         }
         long lastFinished = FileUtils.readLastFinished();
         HubSpot hubspot = new HubSpot("6ab73220-900f-462b-b753-b6757d94cd1d");
+        CacheSnapshot snapshot = CacheSnapshot.load();
         HashMap<Long, Contact> contacts;
         HashMap<Long, Contact> updatedContacts;
         if (!ContactService.cacheExists()) {
@@ -71,7 +73,7 @@ public class Updater {
             updatedContacts = new HashMap<>();
         }
         else {
-            contacts = hubspot.crm().readContactJsons();
+            contacts = snapshot.getContacts() != null ? snapshot.getContacts() : hubspot.crm().readContactJsons();
             Utils.sleep(DELAY);
             updatedContacts = hubspot.crm().getUpdatedContacts("contactinformation", true, lastExecuted, lastFinished);
             contacts.putAll(updatedContacts);
@@ -82,7 +84,7 @@ public class Updater {
             companies = hubspot.crm().getAllCompanies("companyinformation", false);
         }
         else {
-            companies = hubspot.crm().readCompanyJsons();
+            companies = snapshot.getCompanies() != null ? snapshot.getCompanies() : hubspot.crm().readCompanyJsons();
             Utils.sleep(DELAY);
             HashMap<Long, Company> updatedCompanies = hubspot.crm()
                                                              .getUpdatedCompanies("companyinformation",
@@ -123,7 +125,8 @@ public class Updater {
             threadPoolExecutor.submit(() -> {
                 for (Long contactId : partition) {
                     Contact contact = concurrentContacts.get(contactId);
-                    String companyProperty = contact.getProperty("company").toString();
+                    Object cachedCompany = contact.getProperty("company");
+                    String companyProperty = cachedCompany.toString();
                     if (companyProperty == null || companyProperty.equalsIgnoreCase("null")) {
                         long associatedCompanyId = contact.getAssociatedCompany();
                         if (associatedCompanyId != 0) {
@@ -139,6 +142,8 @@ public class Updater {
                         }
                     }
                     ContactWriter.write(contact);
+                    // Put back the company as cached, so the snapshot does not keep the name of the associated company
+                    contact.setProperty("company", cachedCompany);
                     progressBar.step();
                 }
 
@@ -158,6 +163,9 @@ public class Updater {
         Utils.shutdownExecutors(logger, threadPoolExecutor);
         Utils.shutdownUpdaters(logger, scheduledExecutorService);
         progressBar.close();
+        CacheSnapshot.capture(contacts, companies, null, null);
+        CacheSnapshot.commit();
+        hubspot.shutdown();
         CPUMonitor.stopMonitoring();
     }
 
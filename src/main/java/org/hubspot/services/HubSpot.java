@@ -1,13 +1,18 @@
 package org.hubspot.services;
 
-import com.google.common.util.concurrent.RateLimiter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hubspot.services.cms.CMS;
 import org.hubspot.services.crm.CRM;
+import org.hubspot.utils.ErrorCodes;
 import org.hubspot.utils.HttpService;
+import org.hubspot.utils.LogMarkers;
+import org.hubspot.utils.http.*;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * @author Nicholas Curl
@@ -17,26 +22,104 @@ public class HubSpot implements Serializable {
     /**
      * The instance of the logger
      */
-    private static final Logger      logger           = LogManager.getLogger(HubSpot.class);
+    private static final Logger          logger           = LogManager.getLogger(HubSpot.class);
     /**
      * The serial version UID for this class
      */
-    private static final long        serialVersionUID = 4317607079809884130L;
-    private final        HttpService httpService;
-    private final        RateLimiter rateLimiter;
+    private static final long            serialVersionUID = 4317607079809884130L;
+    private final        HttpService     httpService;
+    private final        ApiRateGovernor rateGovernor;
 
 
     public HubSpot(final String apiKey) {
-        String apiBase = "https://api.hubapi.com";
-        httpService = new HttpService(apiKey, apiBase);
-        this.rateLimiter = RateLimiter.create(15.0);
+        this(apiKey, System.getProperty("hubspot.baseUrl", "https://api.hubapi.com"));
+    }
+
+    /**
+     * Creates the client for the API at the base url, such as a local {@link org.hubspot.stub.StubServer}
+     *
+     * @param apiKey  The api key to authenticate with
+     * @param baseUrl The url the api paths are relative to
+     */
+    public HubSpot(final String apiKey, final String baseUrl) {
+        String replay = System.getProperty("hubspot.cassette.replay");
+        boolean originalTiming = "original".equalsIgnoreCase(System.getProperty("hubspot.cassette.timing"));
+        HttpTransport transport = replay == null
+                                  ? createTransport(baseUrl)
+                                  : openCassette(Paths.get(replay), originalTiming);
+        this.rateGovernor = replay == null || originalTiming ? new ApiRateGovernor() : ApiRateGovernor.unlimited();
+        httpService = new HttpService(apiKey, transport, rateGovernor);
+    }
+
+    /**
+     * Creates the transport selected by {@code -Dhubspot.transport}, recording it to the cassette at
+     * {@code -Dhubspot.cassette.record} if set
+     *
+     * @param baseUrl The url the api paths are relative to
+     *
+     * @return The transport
+     */
+    private static HttpTransport createTransport(String baseUrl) {
+        TransportConfig config = new TransportConfig(baseUrl);
+        HttpTransport transport = "unirest".equalsIgnoreCase(System.getProperty("hubspot.transport"))
+                                  ? new UnirestTransport(config)
+                                  : new Http2Transport(config);
+        transport.warmUp();
+        String record = System.getProperty("hubspot.cassette.record");
+        if (record != null) {
+            try {
+                transport = new RecordingTransport(transport, Paths.get(record));
+            }
+            catch (IOException e) {
+                logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to create cassette {}", record, e);
+                System.exit(ErrorCodes.IO_WRITE.getErrorCode());
+            }
+        }
+        return transport;
+    }
+
+    /**
+     * Opens the cassette named by {@code -Dhubspot.cassette.replay}. It is served with the recorded pacing and
+     * latencies if {@code -Dhubspot.cassette.timing} is {@code original}, and otherwise at full speed without rate
+     * limiting.
+     *
+     * @param cassette       The path of the cassette
+     * @param originalTiming Whether each response is served at its recorded time
+     *
+     * @return The replaying transport
+     */
+    private static HttpTransport openCassette(Path cassette, boolean originalTiming) {
+        try {
+            return new ReplayTransport(cassette, originalTiming);
+        }
+        catch (IOException e) {
+            logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to read cassette {}", cassette, e);
+            System.exit(ErrorCodes.IO_READ.getErrorCode());
+            return null;
+        }
     }
 
     public CMS cms() {
-        return new CMS(httpService, rateLimiter);
+        return new CMS(httpService, rateGovernor);
     }
 
     public CRM crm() {
-        return new CRM(httpService, rateLimiter);
+        return new CRM(httpService, rateGovernor);
+    }
+
+    /**
+     * Takes a snapshot of the HTTP metrics of the requests sent so far
+     *
+     * @return The metrics snapshot
+     */
+    public HttpMetrics.Snapshot getMetrics() {
+        return httpService.getMetrics();
+    }
+
+    /**
+     * Releases the http clients so the application can exit once all requests are done
+     */
+    public void shutdown() {
+        httpService.shutdown();
     }
 }
@@ -1,6 +1,5 @@
 package org.hubspot.services.cms;
 
-import com.google.common.util.concurrent.RateLimiter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hubspot.objects.crm.engagements.Engagement;
@@ -9,6 +8,7 @@ import org.hubspot.objects.files.HSFile;
 import org.hubspot.utils.HttpService;
 import org.hubspot.utils.LogMarkers;
 import org.hubspot.utils.exceptions.HubSpotException;
+import org.hubspot.utils.http.ApiRateGovernor;
 
 import java.io.Serializable;
 import java.nio.file.Path;
@@ -22,22 +22,22 @@ public class CMS implements Serializable {
     /**
      * The instance of the logger
      */
-    private static final Logger      logger           = LogManager.getLogger(CMS.class);
+    private static final Logger          logger           = LogManager.getLogger(CMS.class);
     /**
      * The serial version UID for this class
      */
-    private static final long        serialVersionUID = -6357323675829216957L;
-    private final        HttpService httpService;
-    private final        RateLimiter rateLimiter;
+    private static final long            serialVersionUID = -6357323675829216957L;
+    private final        HttpService     httpService;
+    private final        ApiRateGovernor rateGovernor;
 
-    public CMS(HttpService httpService, final RateLimiter rateLimiter) {
-        this.rateLimiter = rateLimiter;
+    public CMS(HttpService httpService, final ApiRateGovernor rateGovernor) {
+        this.rateGovernor = rateGovernor;
         this.httpService = httpService;
     }
 
     public void downloadFile(Path folder, HSFile file) {
         try {
-            FileService.downloadFile(folder, file, httpService, rateLimiter);
+            FileService.downloadFile(folder, file, httpService, rateGovernor);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to download file {}", file.toString(), e);
@@ -47,7 +47,7 @@ public class CMS implements Serializable {
 
     public void downloadFiles(Path folder, List<HSFile> files) {
         try {
-            FileService.downloadFiles(folder, files, httpService, rateLimiter);
+            FileService.downloadFiles(folder, files, httpService, rateGovernor);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to Download Files", e);
@@ -56,12 +56,12 @@ public class CMS implements Serializable {
     }
 
     public void getAllNoteAttachments(long contactId, List<Engagement> engagements) {
-        FileService.getAllNoteAttachments(httpService, rateLimiter, contactId, engagements);
+        FileService.getAllNoteAttachments(httpService, rateGovernor, contactId, engagements);
     }
 
     public HSFile getFile(long engagementId, long fileId) {
         try {
-            return FileService.getFileMetadata(httpService, rateLimiter, engagementId, fileId);
+            return FileService.getFileMetadata(httpService, rateGovernor, engagementId, fileId);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get File id {}", fileId, e);
@@ -71,6 +71,13 @@ public class CMS implements Serializable {
     }
 
     public List<HSFile> getFileMetadatas(Note note) {
-        return FileService.getFileMetadatas(httpService, rateLimiter, note);
+        try {
+            return FileService.getFileMetadatas(httpService, rateGovernor, note);
+        }
+        catch (HubSpotException e) {
+            logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get attachments for note id {}", note.getId(), e);
+            System.exit(e.getCode());
+            return null;
+        }
     }
 }
@@ -1,18 +1,13 @@
 package org.hubspot.services.cms;
 
-import com.google.common.collect.Iterables;
-import com.google.common.util.concurrent.RateLimiter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hubspot.objects.crm.engagements.Engagement;
 import org.hubspot.objects.crm.engagements.Note;
 import org.hubspot.objects.files.*;
 import org.hubspot.utils.*;
-import org.hubspot.utils.concurrent.CacheThreadPoolExecutor;
-import org.hubspot.utils.concurrent.CustomThreadFactory;
-import org.hubspot.utils.concurrent.CustomThreadPoolExecutor;
-import org.hubspot.utils.concurrent.StoringRejectedExecutionHandler;
 import org.hubspot.utils.exceptions.HubSpotException;
+import org.hubspot.utils.http.ApiRateGovernor;
 import org.json.JSONObject;
 
 import java.io.IOException;
@@ -20,12 +15,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * @author Nicholas Curl
@@ -35,26 +27,24 @@ public class FileService {
     /**
      * The instance of the logger
      */
-    private static final Logger logger             = LogManager.getLogger(FileService.class);
-    private static final Path   cacheFolder        = Paths.get("./cache/files/");
-    private static final int    LIMIT              = 1;
-    private static final long   UPDATE_INTERVAL    = 100;
-    private static final int    STARTING_POOL_SIZE = Runtime.getRuntime().availableProcessors();
-    private static final String debugMessageFormat = "Method %-30s\tProcess Load: %f";
-    private static final int    MAX_SIZE           = 50;
+    private static final Logger logger      = LogManager.getLogger(FileService.class);
+    private static final Path   cacheFolder = Paths.get("./cache/files/");
 
-    static void downloadFiles(Path folder, List<HSFile> files, HttpService httpService, final RateLimiter rateLimiter)
-    throws HubSpotException {
+    static void downloadFiles(Path folder,
+                              List<HSFile> files,
+                              HttpService httpService,
+                              final ApiRateGovernor rateGovernor
+    ) throws HubSpotException {
         for (HSFile hsFile : files) {
-            downloadFile(folder, hsFile, httpService, rateLimiter);
+            downloadFile(folder, hsFile, httpService, rateGovernor);
         }
     }
 
-    static void downloadFile(Path folder, HSFile file, HttpService httpService, final RateLimiter rateLimiter)
+    static void downloadFile(Path folder, HSFile file, HttpService httpService, final ApiRateGovernor rateGovernor)
     throws HubSpotException {
         if (file != null) {
             String requestUrl = "/filemanager/api/v3/files/" + file.getId() + "/signed-url";
-            rateLimiter.acquire(1);
+            rateGovernor.acquire();
             JSONObject resp = (JSONObject) httpService.getRequest(requestUrl);
             String downloadUrlString = resp.getString("url");
             FileUtils.downloadFile(downloadUrlString, folder, file);
@@ -62,7 +52,7 @@ public class FileService {
     }
 
     static void getAllNoteAttachments(HttpService httpService,
-                                      final RateLimiter rateLimiter,
+                                      final ApiRateGovernor rateGovernor,
                                       long contactId,
                                       List<Engagement> engagements
     ) {
@@ -74,112 +64,52 @@ public class FileService {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to create cache directory {}", folder, e);
             System.exit(ErrorCodes.IO_CREATE_DIRECTORY.getErrorCode());
         }
-        ArrayList<Note> notes = new ArrayList<>();
-        for (Engagement engagement : engagements) {
-            if (engagement instanceof Note) {
-                Note note = (Note) engagement;
-                notes.add(note);
-            }
-        }
-        int capacity = (int) Math.ceil(Math.ceil((double) notes.size() / (double) LIMIT) * Math.pow(MAX_SIZE, -0.6));
-        Iterable<List<Note>> partitions = Iterables.partition(notes, LIMIT);
-        CacheThreadPoolExecutor threadPoolExecutor = new CacheThreadPoolExecutor(1,
-                                                                                 STARTING_POOL_SIZE,
-                                                                                 0L,
-                                                                                 TimeUnit.MILLISECONDS,
-                                                                                 new LinkedBlockingQueue<>(Math.max(
-                                                                                         capacity,
-                                                                                         Runtime.getRuntime()
-                                                                                                .availableProcessors()
-                                                                                 )),
-                                                                                 new CustomThreadFactory(
-                                                                                         "FileGrabber_Contact_" +
-                                                                                         contactId),
-                                                                                 new StoringRejectedExecutionHandler(),
-                                                                                 folder
-        );
-        Utils.addExecutor(threadPoolExecutor);
-        ScheduledExecutorService scheduledExecutorService
-                = Executors.newSingleThreadScheduledExecutor(new CustomThreadFactory("FileGrabberUpdater_Contact_" +
-                                                                                     contactId));
-        scheduledExecutorService.scheduleAtFixedRate(() -> {
-            double load = CPUMonitor.getProcessLoad();
-            String debugMessage = String.format(debugMessageFormat, "getAllNoteAttachments", load);
-            Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
-        }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
-        for (List<Note> partition : partitions) {
-            threadPoolExecutor.submit(() -> {
-                for (Note note : partition) {
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (Engagement engagement : engagements) {
+                if (engagement instanceof Note) {
+                    Note note = (Note) engagement;
                     Path noteFolder = folder.resolve(note.getId() + "/");
-                    List<HSFile> attachments = getFileMetadatas(httpService, rateLimiter, noteFolder, note);
-                    note.setAttachments(attachments);
+                    futures.add(getFileMetadatas(httpService, rateGovernor, noteFolder, note).thenAccept(
+                            note::setAttachments));
                 }
-                return null;
-            });
+            }
+            HttpService.await(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])));
+        }
+        catch (HubSpotException e) {
+            logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get attachments for contact {}", contactId, e);
+            FileUtils.deleteDirectory(folder);
+            System.exit(e.getCode());
         }
-        Utils.shutdownExecutors(logger, threadPoolExecutor);
-        Utils.shutdownUpdaters(logger, scheduledExecutorService);
     }
 
     static HSFile getFileMetadata(HttpService httpService,
-                                  final RateLimiter rateLimiter,
+                                  final ApiRateGovernor rateGovernor,
                                   long engagementId,
                                   long fileId
     ) throws HubSpotException {
         String url = "/filemanager/api/v2/files/" + fileId;
-        rateLimiter.acquire(1);
+        rateGovernor.acquire();
         JSONObject metadata = (JSONObject) httpService.getRequest(url);
         return process(engagementId, fileId, metadata);
     }
 
-    static List<HSFile> getFileMetadatas(HttpService httpService, final RateLimiter rateLimiter, Note note) {
-        List<Long> attachmentIds = note.getAttachmentIds();
-        int capacity = (int) Math.ceil(Math.ceil((double) attachmentIds.size() / (double) LIMIT) *
-                                       Math.pow(MAX_SIZE, -0.6));
-        Iterable<List<Long>> partitions = Iterables.partition(attachmentIds, LIMIT);
-        CustomThreadPoolExecutor threadPoolExecutor = new CustomThreadPoolExecutor(1,
-                                                                                   STARTING_POOL_SIZE,
-                                                                                   0L,
-                                                                                   TimeUnit.MILLISECONDS,
-                                                                                   new LinkedBlockingQueue<>(Math.max(
-                                                                                           capacity,
-                                                                                           Runtime.getRuntime()
-                                                                                                  .availableProcessors()
-                                                                                   )),
-                                                                                   new CustomThreadFactory(
-                                                                                           "FileMetadataGrabber"),
-                                                                                   new StoringRejectedExecutionHandler()
-        );
-        Utils.addExecutor(threadPoolExecutor);
-        ScheduledExecutorService scheduledExecutorService
-                = Executors.newSingleThreadScheduledExecutor(new CustomThreadFactory("FileMetadataGrabberUpdater"));
-        scheduledExecutorService.scheduleAtFixedRate(() -> {
-            double load = CPUMonitor.getProcessLoad();
-            String debugMessage = String.format(debugMessageFormat, "getFileMetadatas", load);
-            Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
-        }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
-        List<HSFile> attachments = Collections.synchronizedList(new ArrayList<>());
-        for (List<Long> partition : partitions) {
-            threadPoolExecutor.submit(() -> {
-                for (Long fileId : partition) {
-                    String url = "/filemanager/api/v2/files/" + fileId;
-                    rateLimiter.acquire(1);
-                    JSONObject metadata = (JSONObject) httpService.getRequest(url);
-                    HSFile file = process(note.getId(), fileId, metadata);
-                    attachments.add(file);
-                }
-                return null;
-            });
+    static List<HSFile> getFileMetadatas(HttpService httpService, final ApiRateGovernor rateGovernor, Note note)
+    throws HubSpotException {
+        List<CompletableFuture<HSFile>> futures = new ArrayList<>();
+        for (Long fileId : note.getAttachmentIds()) {
+            String url = "/filemanager/api/v2/files/" + fileId;
+            rateGovernor.acquire();
+            futures.add(httpService.getRequestAsync(url)
+                                   .thenApply(metadata -> process(note.getId(), fileId, (JSONObject) metadata)));
         }
-        Utils.shutdownExecutors(logger, threadPoolExecutor);
-        Utils.shutdownUpdaters(logger, scheduledExecutorService);
-        return new ArrayList<>(attachments);
+        return HttpService.await(HttpService.allOf(futures));
     }
 
-    private static List<HSFile> getFileMetadatas(HttpService httpService,
-                                                 final RateLimiter rateLimiter,
-                                                 Path folder,
-                                                 Note note
+    private static CompletableFuture<List<HSFile>> getFileMetadatas(HttpService httpService,
+                                                                    final ApiRateGovernor rateGovernor,
+                                                                    Path folder,
+                                                                    Note note
     ) throws HubSpotException {
         try {
             Files.createDirectories(folder);
@@ -190,50 +120,26 @@ public class FileService {
                                        e
             );
         }
-        List<Long> attachmentIds = note.getAttachmentIds();
-        int capacity = (int) Math.ceil(Math.ceil((double) attachmentIds.size() / (double) LIMIT) *
-                                       Math.pow(MAX_SIZE, -0.6));
-        Iterable<List<Long>> partitions = Iterables.partition(attachmentIds, LIMIT);
-        CacheThreadPoolExecutor threadPoolExecutor = new CacheThreadPoolExecutor(1,
-                                                                                 STARTING_POOL_SIZE,
-                                                                                 0L,
-                                                                                 TimeUnit.MILLISECONDS,
-                                                                                 new LinkedBlockingQueue<>(Math.max(
-                                                                                         capacity,
-                                                                                         Runtime.getRuntime()
-                                                                                                .availableProcessors()
-                                                                                 )),
-                                                                                 new CustomThreadFactory(
-                                                                                         "FileMetadataGrabber"),
-                                                                                 new StoringRejectedExecutionHandler(),
-                                                                                 folder
-        );
-        Utils.addExecutor(threadPoolExecutor);
-        ScheduledExecutorService scheduledExecutorService
-                = Executors.newSingleThreadScheduledExecutor(new CustomThreadFactory("FileMetadataGrabberUpdater"));
-        scheduledExecutorService.scheduleAtFixedRate(() -> {
-            double load = CPUMonitor.getProcessLoad();
-            String debugMessage = String.format(debugMessageFormat, "getFileMetadatas", load);
-            Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
-        }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
-        List<HSFile> attachments = Collections.synchronizedList(new ArrayList<>());
-        for (List<Long> partition : partitions) {
-            threadPoolExecutor.submit(() -> {
-                for (Long fileId : partition) {
-                    Path cacheFile = folder.resolve(fileId + ".json");
-                    String url = "/filemanager/api/v2/files/" + fileId;
-                    rateLimiter.acquire(1);
-                    JSONObject metadata = (JSONObject) httpService.getRequest(url);
+        List<CompletableFuture<HSFile>> futures = new ArrayList<>();
+        for (Long fileId : note.getAttachmentIds()) {
+            Path cacheFile = folder.resolve(fileId + ".json");
+            String url = "/filemanager/api/v2/files/" + fileId;
+            rateGovernor.acquire();
+            futures.add(httpService.getRequestAsync(url).thenApply(response -> {
+                JSONObject metadata = (JSONObject) response;
+                try {
                     FileUtils.writeFile(cacheFile, metadata.toString(4));
-                    HSFile file = process(note.getId(), fileId, metadata);
-                    attachments.add(file);
                 }
-                return null;
-            });
+                catch (IOException e) {
+                    throw new CompletionException(new HubSpotException("Unable to write file metadata " + cacheFile,
+                                                                       ErrorCodes.IO_WRITE.getErrorCode(),
+                                                                       e
+                    ));
+                }
+                return process(note.getId(), fileId, metadata);
+            }));
         }
-        Utils.shutdownExecutors(logger, threadPoolExecutor);
-        Utils.shutdownUpdaters(logger, scheduledExecutorService);
-        return new ArrayList<>(attachments);
+        return HttpService.allOf(futures);
     }
 
     private static HSFile process(long engagementId, long fileId, JSONObject metadata) {
@@ -0,0 +1,205 @@
+package org.hubspot.services.crm;
+
+import com.google.common.collect.Iterables;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.utils.HttpService;
+import org.hubspot.utils.HubSpotUtils;
+import org.hubspot.utils.LogMarkers;
+import org.hubspot.utils.exceptions.HubSpotException;
+import org.hubspot.utils.http.ApiRateGovernor;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resolves the associations of many objects at once with the v4 batch associations endpoint, which takes
+ * {@link HubSpotUtils#BATCH_LIMIT} objects per request instead of one request per object
+ *
+ * @author Nicholas Curl
+ */
+public class AssociationService {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger       logger           = LogManager.getLogger(AssociationService.class);
+    private static final String       url              = "/crm/v4/associations/%s/%s/batch/read";
+    /**
+     * The v4 object types that make up the v1 engagements, which the v4 API has no single type for
+     */
+    static final         List<String> ENGAGEMENT_TYPES = List.of("emails", "notes", "calls", "meetings", "tasks");
+
+    /**
+     * Gets the ids of the objects associated with each of the given objects
+     *
+     * @param httpService  The http service to send the requests with
+     * @param rateGovernor The rate governor to acquire the request permits from
+     * @param fromType     The type of the objects, such as {@code contacts}
+     * @param toType       The type of the associated objects, such as {@code deals}
+     * @param fromIds      The ids of the objects
+     *
+     * @return The ids of the associated objects keyed by the id of each object, objects without associations mapping
+     *         to an empty list
+     *
+     * @throws HubSpotException if a request fails
+     *
+     * @see #getAssociations(HttpService, ApiRateGovernor, String, List, Collection)
+     */
+    static HashMap<Long, List<Long>> getAssociations(HttpService httpService,
+                                                     final ApiRateGovernor rateGovernor,
+                                                     String fromType,
+                                                     String toType,
+                                                     Collection<Long> fromIds
+    ) throws HubSpotException {
+        return getAssociations(httpService, rateGovernor, fromType, List.of(toType), fromIds);
+    }
+
+    /**
+     * Gets the ids of the objects of any of the given types associated with each of the given objects, merged into one
+     * list per object
+     *
+     * @param httpService  The http service to send the requests with
+     * @param rateGovernor The rate governor to acquire the request permits from
+     * @param fromType     The type of the objects, such as {@code contacts}
+     * @param toTypes      The types of the associated objects
+     * @param fromIds      The ids of the objects
+     *
+     * @return The ids of the associated objects keyed by the id of each object, objects without associations mapping
+     *         to an empty list
+     *
+     * @throws HubSpotException if a request fails
+     *
+     * @see #getTypedAssociations(HttpService, ApiRateGovernor, String, List, Collection)
+     */
+    static HashMap<Long, List<Long>> getAssociations(HttpService httpService,
+                                                     final ApiRateGovernor rateGovernor,
+                                                     String fromType,
+                                                     List<String> toTypes,
+                                                     Collection<Long> fromIds
+    ) throws HubSpotException {
+        HashMap<Long, List<Long>> associations = new HashMap<>();
+        getTypedAssociations(httpService, rateGovernor, fromType, toTypes, fromIds).forEach((fromId, typed) -> {
+            List<Long> toIds = new ArrayList<>();
+            typed.values().forEach(toIds::addAll);
+            associations.put(fromId, toIds);
+        });
+        return associations;
+    }
+
+    /**
+     * Gets the ids of the objects of any of the given types associated with each of the given objects, keeping the
+     * type of each associated object. The objects are sent in chunks of {@link HubSpotUtils#BATCH_LIMIT} per type, all
+     * in flight at the same time, and objects with more associations than fit in one page are sent again with their
+     * next page until every association has been read.
+     *
+     * @param httpService  The http service to send the requests with
+     * @param rateGovernor The rate governor to acquire the request permits from
+     * @param fromType     The type of the objects, such as {@code contacts}
+     * @param toTypes      The types of the associated objects
+     * @param fromIds      The ids of the objects
+     *
+     * @return The ids of the associated objects by type keyed by the id of each object, every type mapping to a list
+     *         that is empty if the object has no associations of that type
+     *
+     * @throws HubSpotException if a request fails
+     */
+    static HashMap<Long, Map<String, List<Long>>> getTypedAssociations(HttpService httpService,
+                                                                       final ApiRateGovernor rateGovernor,
+                                                                       String fromType,
+                                                                       List<String> toTypes,
+                                                                       Collection<Long> fromIds
+    ) throws HubSpotException {
+        HashMap<Long, Map<String, List<Long>>> associations = new HashMap<>();
+        Map<String, Map<Long, String>> pending = new LinkedHashMap<>();
+        for (String toType : toTypes) {
+            pending.put(toType, new LinkedHashMap<>());
+        }
+        for (long fromId : fromIds) {
+            Map<String, List<Long>> typed = new LinkedHashMap<>();
+            for (String toType : toTypes) {
+                typed.put(toType, new ArrayList<>());
+            }
+            associations.put(fromId, typed);
+            for (Map<Long, String> pages : pending.values()) {
+                pages.put(fromId, null);
+            }
+        }
+        int requests = 0;
+        while (!pending.isEmpty()) {
+            List<String> sentTypes = new ArrayList<>();
+            List<CompletableFuture<Object>> futures = new ArrayList<>();
+            for (Map.Entry<String, Map<Long, String>> typePages : pending.entrySet()) {
+                String batchUrl = String.format(url, fromType, typePages.getKey());
+                for (List<Map.Entry<Long, String>> chunk : Iterables.partition(typePages.getValue().entrySet(),
+                                                                               HubSpotUtils.BATCH_LIMIT
+                )) {
+                    JSONArray inputs = new JSONArray();
+                    for (Map.Entry<Long, String> entry : chunk) {
+                        JSONObject input = new JSONObject().put("id", String.valueOf(entry.getKey()));
+                        if (entry.getValue() != null) {
+                            input.put("after", entry.getValue());
+                        }
+                        inputs.put(input);
+                    }
+                    rateGovernor.acquire();
+                    futures.add(httpService.postRequestAsync(batchUrl, new JSONObject().put("inputs", inputs)));
+                    sentTypes.add(typePages.getKey());
+                }
+            }
+            requests += futures.size();
+            pending = new LinkedHashMap<>();
+            List<Object> responses = HttpService.await(HttpService.allOf(futures));
+            for (int i = 0; i < responses.size(); i++) {
+                JSONArray results = ((JSONObject) responses.get(i)).optJSONArray("results");
+                if (results == null) {
+                    continue;
+                }
+                String toType = sentTypes.get(i);
+                for (Object o : results) {
+                    JSONObject result = (JSONObject) o;
+                    long fromId = Long.parseLong(result.getJSONObject("from").get("id").toString());
+                    List<Long> toIds = associations.computeIfAbsent(fromId, id -> new LinkedHashMap<>())
+                                                   .computeIfAbsent(toType, type -> new ArrayList<>());
+                    for (Object to : result.getJSONArray("to")) {
+                        toIds.add(((JSONObject) to).getLong("toObjectId"));
+                    }
+                    JSONObject paging = result.optJSONObject("paging");
+                    if (paging != null && paging.has("next")) {
+                        pending.computeIfAbsent(toType, type -> new LinkedHashMap<>())
+                               .put(fromId, paging.getJSONObject("next").get("after").toString());
+                    }
+                }
+            }
+        }
+        logger.debug(LogMarkers.HTTP.getMarker(),
+                     "Resolved {} to {} associations of {} objects in {} requests",
+                     fromType,
+                     toTypes,
+                     associations.size(),
+                     requests
+        );
+        return associations;
+    }
+
+    /**
+     * Gets the ids of the engagements associated with each of the contacts by engagement type, reading the
+     * associations of every engagement type for {@link HubSpotUtils#BATCH_LIMIT} contacts per request
+     *
+     * @param httpService  The http service to send the requests with
+     * @param rateGovernor The rate governor to acquire the request permits from
+     * @param contactIds   The ids of the contacts
+     *
+     * @return The engagement ids by engagement object type, such as {@code emails}, keyed by contact id
+     *
+     * @throws HubSpotException if a request fails
+     */
+    static HashMap<Long, Map<String, List<Long>>> getEngagementAssociations(HttpService httpService,
+                                                                            final ApiRateGovernor rateGovernor,
+                                                                            Collection<Long> contactIds
+    ) throws HubSpotException {
+        return getTypedAssociations(httpService, rateGovernor, "contacts", ENGAGEMENT_TYPES, contactIds);
+    }
+}
@@ -1,6 +1,5 @@
 package org.hubspot.services.crm;
 
-import com.google.common.util.concurrent.RateLimiter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hubspot.objects.PropertyData;
@@ -9,17 +8,21 @@ import org.hubspot.objects.crm.Company;
 import org.hubspot.objects.crm.Contact;
 import org.hubspot.objects.crm.Deal;
 import org.hubspot.services.crm.EngagementsProcessor.EngagementData;
-import org.hubspot.utils.FileUtils;
 import org.hubspot.utils.HttpService;
 import org.hubspot.utils.LogMarkers;
+import org.hubspot.utils.cache.JsonCache;
 import org.hubspot.utils.exceptions.HubSpotException;
+import org.hubspot.utils.http.ApiRateGovernor;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Serializable;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
 
 /**
  * @author Nicholas Curl
@@ -29,17 +32,17 @@ public class CRM implements Serializable {
     /**
      * The instance of the logger
      */
-    private static final Logger      logger           = LogManager.getLogger(CRM.class);
+    private static final Logger          logger           = LogManager.getLogger(CRM.class);
     /**
      * The serial version UID for this class
      */
-    private static final long        serialVersionUID = -548300711320850340L;
-    private final        HttpService httpService;
-    private final        RateLimiter rateLimiter;
+    private static final long            serialVersionUID = -548300711320850340L;
+    private final        HttpService     httpService;
+    private final        ApiRateGovernor rateGovernor;
 
-    public CRM(HttpService httpService, final RateLimiter rateLimiter) {
+    public CRM(HttpService httpService, final ApiRateGovernor rateGovernor) {
         this.httpService = httpService;
-        this.rateLimiter = rateLimiter;
+        this.rateGovernor = rateGovernor;
     }
 
     //region Contacts
@@ -70,10 +73,11 @@ public class CRM implements Serializable {
     public Contact getContactById(long contactId, boolean includeHiddenProperties) {
         PropertyData propertyData = allProperties(CRMObjectType.CONTACTS, includeHiddenProperties);
         try {
-            return ContactService.getByID(httpService, propertyData.getPropertyNamesString(), contactId, rateLimiter);
+            return ContactService.getByID(httpService, propertyData.getPropertyNamesString(), contactId, rateGovernor);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get contact of id {}", contactId, e);
+            CRMProperties.invalidate(CRMObjectType.CONTACTS, e);
             System.exit(e.getCode());
             return null;
         }
@@ -85,15 +89,49 @@ public class CRM implements Serializable {
                                                           includeHiddenProperties
         );
         try {
-            return ContactService.getByID(httpService, propertyData.getPropertyNamesString(), contactId, rateLimiter);
+            return ContactService.getByID(httpService, propertyData.getPropertyNamesString(), contactId, rateGovernor);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get contact of id {}", contactId, e);
+            CRMProperties.invalidate(CRMObjectType.CONTACTS, e);
             System.exit(e.getCode());
             return null;
         }
     }
 
+    /**
+     * Gets the contacts of the ids in batches of {@link org.hubspot.utils.HubSpotUtils#BATCH_LIMIT}
+     *
+     * @param contactIds              The ids of the contacts
+     * @param includeHiddenProperties Whether hidden properties are read
+     *
+     * @return The contacts found, keyed by id
+     */
+    public HashMap<Long, Contact> getContactsById(Collection<Long> contactIds, boolean includeHiddenProperties) {
+        PropertyData propertyData = allProperties(CRMObjectType.CONTACTS, includeHiddenProperties);
+        return getContactsById(propertyData, contactIds);
+    }
+
+    /**
+     * Gets the contacts of the ids in batches of {@link org.hubspot.utils.HubSpotUtils#BATCH_LIMIT}
+     *
+     * @param propertyGroup           The group of the properties to read
+     * @param contactIds              The ids of the contacts
+     * @param includeHiddenProperties Whether hidden properties are read
+     *
+     * @return The contacts found, keyed by id
+     */
+    public HashMap<Long, Contact> getContactsById(String propertyGroup,
+                                                  Collection<Long> contactIds,
+                                                  boolean includeHiddenProperties
+    ) {
+        PropertyData propertyData = propertiesByGroupName(CRMObjectType.CONTACTS,
+                                                          propertyGroup,
+                                                          includeHiddenProperties
+        );
+        return getContactsById(propertyData, contactIds);
+    }
+
     public HashMap<Long, Contact> getUpdatedContacts(String propertyGroup,
                                                      boolean includeHiddenProperties,
                                                      long lastExecuted,
@@ -128,11 +166,12 @@ public class CRM implements Serializable {
     public void writeContactJson(boolean includeHiddenProperties) {
         PropertyData propertyData = allProperties(CRMObjectType.CONTACTS, includeHiddenProperties);
         try {
-            ContactService.writeContactJson(httpService, propertyData, rateLimiter);
+            ContactService.writeContactJson(httpService, propertyData, rateGovernor);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to write contacts");
-            FileUtils.deleteDirectory(ContactService.getCacheFolder());
+            JsonCache.delete(ContactService.getCacheFolder());
+            CRMProperties.invalidate(CRMObjectType.CONTACTS, e);
             System.exit(e.getCode());
         }
     }
@@ -143,11 +182,12 @@ public class CRM implements Serializable {
                                                           includeHiddenProperties
         );
         try {
-            ContactService.writeContactJson(httpService, propertyData, rateLimiter);
+            ContactService.writeContactJson(httpService, propertyData, rateGovernor);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to write contacts");
-            FileUtils.deleteDirectory(ContactService.getCacheFolder());
+            JsonCache.delete(ContactService.getCacheFolder());
+            CRMProperties.invalidate(CRMObjectType.CONTACTS, e);
             System.exit(e.getCode());
         }
     }
@@ -155,11 +195,12 @@ public class CRM implements Serializable {
     @NotNull
     private HashMap<Long, Contact> getContacts(PropertyData propertyData) {
         try {
-            return ContactService.getAllContacts(httpService, propertyData, rateLimiter);
+            return ContactService.getAllContacts(httpService, propertyData, rateGovernor);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get all contacts", e);
-            FileUtils.deleteDirectory(ContactService.getCacheFolder());
+            JsonCache.delete(ContactService.getCacheFolder());
+            CRMProperties.invalidate(CRMObjectType.CONTACTS, e);
             System.exit(e.getCode());
             return new HashMap<>();
         }
@@ -168,18 +209,70 @@ public class CRM implements Serializable {
     @NotNull
     private HashMap<Long, Contact> getContacts(long lastExecuted, PropertyData propertyData, long lastFinished) {
         if (lastFinished == -1) {
-            lastFinished = FileUtils.findMostRecentModification(ContactService.getCacheFolder());
+            lastFinished = JsonCache.findMostRecentModification(ContactService.getCacheFolder());
         }
         try {
-            return ContactService.getUpdatedContacts(httpService, propertyData, lastExecuted, lastFinished);
+            return ContactService.getUpdatedContacts(httpService,
+                                                     propertyData,
+                                                     rateGovernor,
+                                                     lastExecuted,
+                                                     lastFinished
+            );
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get updated contacts", e);
-            FileUtils.deleteRecentlyUpdated(ContactService.getCacheFolder(), lastFinished);
+            JsonCache.deleteRecentlyUpdated(ContactService.getCacheFolder(), lastFinished);
+            CRMProperties.invalidate(CRMObjectType.CONTACTS, e);
+            System.exit(e.getCode());
+            return new HashMap<>();
+        }
+    }
+
+    private HashMap<Long, Contact> getContactsById(PropertyData propertyData, Collection<Long> contactIds) {
+        try {
+            return ContactService.getByIDs(httpService, propertyData, contactIds, rateGovernor);
+        }
+        catch (HubSpotException e) {
+            logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to batch read contacts", e);
+            CRMProperties.invalidate(CRMObjectType.CONTACTS, e);
             System.exit(e.getCode());
             return new HashMap<>();
         }
     }
+
+    /**
+     * Streams all contacts as their pages arrive, caching each one as it is exported
+     *
+     * @param propertyGroup           The property group to read
+     * @param includeHiddenProperties Whether to read hidden properties
+     *
+     * @return A publisher of the contacts, which exports them again for every subscriber
+     */
+    public Flow.Publisher<Contact> streamAllContacts(String propertyGroup, boolean includeHiddenProperties) {
+        PropertyData propertyData = propertiesByGroupName(CRMObjectType.CONTACTS,
+                                                          propertyGroup,
+                                                          includeHiddenProperties
+        );
+        return CRMObjectStream.export(httpService,
+                                      rateGovernor,
+                                      CRMObjectType.CONTACTS,
+                                      propertyData,
+                                      ContactService.getCacheFolder(),
+                                      ContactService::parseContactData
+        );
+    }
+
+    /**
+     * Streams the cached contacts one file at a time
+     *
+     * @return A publisher of the contacts, which reads them again for every subscriber
+     */
+    public Flow.Publisher<Contact> streamContactJsons() {
+        return CRMObjectStream.read(CRMObjectType.CONTACTS,
+                                    ContactService.getCacheFolder(),
+                                    ContactService::parseContactData
+        );
+    }
     //endregion Contacts
 
     //region Companies
@@ -202,10 +295,11 @@ public class CRM implements Serializable {
                                                           includeHiddenProperties
         );
         try {
-            return CompanyService.getByID(httpService, propertyData.getPropertyNamesString(), companyId, rateLimiter);
+            return CompanyService.getByID(httpService, propertyData.getPropertyNamesString(), companyId, rateGovernor);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get company of id {}", companyId, e);
+            CRMProperties.invalidate(CRMObjectType.COMPANIES, e);
             System.exit(e.getCode());
             return null;
         }
@@ -214,15 +308,49 @@ public class CRM implements Serializable {
     public Company getCompanyById(long companyId, boolean includeHiddenProperties) {
         PropertyData propertyData = allProperties(CRMObjectType.COMPANIES, includeHiddenProperties);
         try {
-            return CompanyService.getByID(httpService, propertyData.getPropertyNamesString(), companyId, rateLimiter);
+            return CompanyService.getByID(httpService, propertyData.getPropertyNamesString(), companyId, rateGovernor);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get company of id {}", companyId, e);
+            CRMProperties.invalidate(CRMObjectType.COMPANIES, e);
             System.exit(e.getCode());
             return null;
         }
     }
 
+    /**
+     * Gets the companies of the ids in batches of {@link org.hubspot.utils.HubSpotUtils#BATCH_LIMIT}
+     *
+     * @param companyIds              The ids of the companies
+     * @param includeHiddenProperties Whether hidden properties are read
+     *
+     * @return The companies found, keyed by id
+     */
+    public HashMap<Long, Company> getCompaniesById(Collection<Long> companyIds, boolean includeHiddenProperties) {
+        PropertyData propertyData = allProperties(CRMObjectType.COMPANIES, includeHiddenProperties);
+        return getCompaniesById(propertyData, companyIds);
+    }
+
+    /**
+     * Gets the companies of the ids in batches of {@link org.hubspot.utils.HubSpotUtils#BATCH_LIMIT}
+     *
+     * @param propertyGroup           The group of the properties to read
+     * @param companyIds              The ids of the companies
+     * @param includeHiddenProperties Whether hidden properties are read
+     *
+     * @return The companies found, keyed by id
+     */
+    public HashMap<Long, Company> getCompaniesById(String propertyGroup,
+                                                   Collection<Long> companyIds,
+                                                   boolean includeHiddenProperties
+    ) {
+        PropertyData propertyData = propertiesByGroupName(CRMObjectType.COMPANIES,
+                                                          propertyGroup,
+                                                          includeHiddenProperties
+        );
+        return getCompaniesById(propertyData, companyIds);
+    }
+
     public HashMap<Long, Company> getUpdatedCompanies(String propertyGroup,
                                                       boolean includeHiddenProperties,
                                                       long lastExecuted,
@@ -257,11 +385,12 @@ public class CRM implements Serializable {
     public void writeCompanyJson(boolean includeHiddenProperties) {
         PropertyData propertyData = allProperties(CRMObjectType.COMPANIES, includeHiddenProperties);
         try {
-            CompanyService.writeCompanyJsons(httpService, propertyData, rateLimiter);
+            CompanyService.writeCompanyJsons(httpService, propertyData, rateGovernor);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to write companies");
-            FileUtils.deleteDirectory(CompanyService.getCacheFolder());
+            JsonCache.delete(CompanyService.getCacheFolder());
+            CRMProperties.invalidate(CRMObjectType.COMPANIES, e);
             System.exit(e.getCode());
         }
     }
@@ -272,11 +401,12 @@ public class CRM implements Serializable {
                                                           includeHiddenProperties
         );
         try {
-            CompanyService.writeCompanyJsons(httpService, propertyData, rateLimiter);
+            CompanyService.writeCompanyJsons(httpService, propertyData, rateGovernor);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to write companies");
-            FileUtils.deleteDirectory(CompanyService.getCacheFolder());
+            JsonCache.delete(CompanyService.getCacheFolder());
+            CRMProperties.invalidate(CRMObjectType.COMPANIES, e);
             System.exit(e.getCode());
         }
     }
@@ -284,11 +414,12 @@ public class CRM implements Serializable {
     @NotNull
     private HashMap<Long, Company> getCompanies(PropertyData propertyData) {
         try {
-            return CompanyService.getAllCompanies(httpService, propertyData, rateLimiter);
+            return CompanyService.getAllCompanies(httpService, propertyData, rateGovernor);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get all companies", e);
-            FileUtils.deleteDirectory(CompanyService.getCacheFolder());
+            JsonCache.delete(CompanyService.getCacheFolder());
+            CRMProperties.invalidate(CRMObjectType.COMPANIES, e);
             System.exit(e.getCode());
             return new HashMap<>();
         }
@@ -297,24 +428,76 @@ public class CRM implements Serializable {
     @NotNull
     private HashMap<Long, Company> getCompanies(long lastExecuted, PropertyData propertyData, long lastFinished) {
         if (lastFinished == -1) {
-            lastFinished = FileUtils.findMostRecentModification(CompanyService.getCacheFolder());
+            lastFinished = JsonCache.findMostRecentModification(CompanyService.getCacheFolder());
         }
         try {
-            return CompanyService.getUpdatedCompanies(httpService, propertyData, lastExecuted, lastFinished);
+            return CompanyService.getUpdatedCompanies(httpService,
+                                                      propertyData,
+                                                      rateGovernor,
+                                                      lastExecuted,
+                                                      lastFinished
+            );
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get updated companies", e);
-            FileUtils.deleteRecentlyUpdated(CompanyService.getCacheFolder(), lastFinished);
+            JsonCache.deleteRecentlyUpdated(CompanyService.getCacheFolder(), lastFinished);
+            CRMProperties.invalidate(CRMObjectType.COMPANIES, e);
             System.exit(e.getCode());
             return new HashMap<>();
         }
     }
+
+    private HashMap<Long, Company> getCompaniesById(PropertyData propertyData, Collection<Long> companyIds) {
+        try {
+            return CompanyService.getByIDs(httpService, propertyData, companyIds, rateGovernor);
+        }
+        catch (HubSpotException e) {
+            logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to batch read companies", e);
+            CRMProperties.invalidate(CRMObjectType.COMPANIES, e);
+            System.exit(e.getCode());
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * Streams all companies as their pages arrive, caching each one as it is exported
+     *
+     * @param propertyGroup           The property group to read
+     * @param includeHiddenProperties Whether to read hidden properties
+     *
+     * @return A publisher of the companies, which exports them again for every subscriber
+     */
+    public Flow.Publisher<Company> streamAllCompanies(String propertyGroup, boolean includeHiddenProperties) {
+        PropertyData propertyData = propertiesByGroupName(CRMObjectType.COMPANIES,
+                                                          propertyGroup,
+                                                          includeHiddenProperties
+        );
+        return CRMObjectStream.export(httpService,
+                                      rateGovernor,
+                                      CRMObjectType.COMPANIES,
+                                      propertyData,
+                                      CompanyService.getCacheFolder(),
+                                      CompanyService::parseCompanyData
+        );
+    }
+
+    /**
+     * Streams the cached companies one file at a time
+     *
+     * @return A publisher of the companies, which reads them again for every subscriber
+     */
+    public Flow.Publisher<Company> streamCompanyJsons() {
+        return CRMObjectStream.read(CRMObjectType.COMPANIES,
+                                    CompanyService.getCacheFolder(),
+                                    CompanyService::parseCompanyData
+        );
+    }
     //endregion Companies
 
     //region Deals
     public void associateDeals(Contact contact) throws HubSpotException {
         try {
-            List<Long> dealIDs = DealService.associateDeals(httpService, contact, rateLimiter);
+            List<Long> dealIDs = DealService.associateDeals(httpService, contact, rateGovernor);
             contact.setDealIds(dealIDs);
         }
         catch (HubSpotException e) {
@@ -328,11 +511,73 @@ public class CRM implements Serializable {
         }
     }
 
+    /**
+     * Gets the ids of the deals associated with each of the contacts, reading the associations of
+     * {@link org.hubspot.utils.HubSpotUtils#BATCH_LIMIT} contacts per request
+     *
+     * @param contactIds The ids of the contacts
+     *
+     * @return The deal ids keyed by contact id
+     *
+     * @throws HubSpotException if the associations could not be read
+     */
+    public HashMap<Long, List<Long>> getDealAssociations(Collection<Long> contactIds) throws HubSpotException {
+        try {
+            return AssociationService.getAssociations(httpService,
+                                                      rateGovernor,
+                                                      CRMObjectType.CONTACTS.getValue(),
+                                                      CRMObjectType.DEALS.getValue(),
+                                                      contactIds
+            );
+        }
+        catch (HubSpotException e) {
+            logger.fatal(LogMarkers.ERROR.getMarker(),
+                         "Unable to get the deal associations of {} contacts",
+                         contactIds.size(),
+                         e
+            );
+            throw e;
+        }
+    }
+
     public HashMap<Long, Deal> getAllDeals(String propertyGroup, boolean includeHiddenProperties) {
         PropertyData propertyData = propertiesByGroupName(CRMObjectType.DEALS, propertyGroup, includeHiddenProperties);
         return getDeals(propertyData);
     }
 
+    /**
+     * Gets the deals of the ids in batches of {@link org.hubspot.utils.HubSpotUtils#BATCH_LIMIT}
+     *
+     * @param dealIds                 The ids of the deals
+     * @param includeHiddenProperties Whether hidden properties are read
+     *
+     * @return The deals found, keyed by id
+     */
+    public HashMap<Long, Deal> getDealsById(Collection<Long> dealIds, boolean includeHiddenProperties) {
+        PropertyData propertyData = allProperties(CRMObjectType.DEALS, includeHiddenProperties);
+        return getDealsById(propertyData, dealIds);
+    }
+
+    /**
+     * Gets the deals of the ids in batches of {@link org.hubspot.utils.HubSpotUtils#BATCH_LIMIT}
+     *
+     * @param propertyGroup           The group of the properties to read
+     * @param dealIds                 The ids of the deals
+     * @param includeHiddenProperties Whether hidden properties are read
+     *
+     * @return The deals found, keyed by id
+     */
+    public HashMap<Long, Deal> getDealsById(String propertyGroup,
+                                            Collection<Long> dealIds,
+                                            boolean includeHiddenProperties
+    ) {
+        PropertyData propertyData = propertiesByGroupName(CRMObjectType.DEALS,
+                                                          propertyGroup,
+                                                          includeHiddenProperties
+        );
+        return getDealsById(propertyData, dealIds);
+    }
+
     public HashMap<Long, Deal> getUpdatedDeals(String propertyGroup,
                                                      boolean includeHiddenProperties,
                                                      long lastExecuted,
@@ -359,11 +604,12 @@ public class CRM implements Serializable {
     @NotNull
     private HashMap<Long, Deal> getDeals(PropertyData propertyData) {
         try {
-            return DealService.getAllDeals(httpService, propertyData, rateLimiter);
+            return DealService.getAllDeals(httpService, propertyData, rateGovernor);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get all deals", e);
-            FileUtils.deleteDirectory(DealService.getCacheFolder());
+            JsonCache.delete(DealService.getCacheFolder());
+            CRMProperties.invalidate(CRMObjectType.DEALS, e);
             System.exit(e.getCode());
             return new HashMap<>();
         }
@@ -372,25 +618,77 @@ public class CRM implements Serializable {
     @NotNull
     private HashMap<Long, Deal> getDeals(long lastExecuted, PropertyData propertyData, long lastFinished) {
         if (lastFinished == -1) {
-            lastFinished = FileUtils.findMostRecentModification(DealService.getCacheFolder());
+            lastFinished = JsonCache.findMostRecentModification(DealService.getCacheFolder());
         }
         try {
-            return DealService.getUpdatedDeals(httpService, propertyData, lastExecuted, lastFinished);
+            return DealService.getUpdatedDeals(httpService,
+                                               propertyData,
+                                               rateGovernor,
+                                               lastExecuted,
+                                               lastFinished
+            );
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get updated deals", e);
-            FileUtils.deleteRecentlyUpdated(DealService.getCacheFolder(), lastFinished);
+            JsonCache.deleteRecentlyUpdated(DealService.getCacheFolder(), lastFinished);
+            CRMProperties.invalidate(CRMObjectType.DEALS, e);
             System.exit(e.getCode());
             return new HashMap<>();
         }
     }
+
+    private HashMap<Long, Deal> getDealsById(PropertyData propertyData, Collection<Long> dealIds) {
+        try {
+            return DealService.getByIds(httpService, propertyData, dealIds, rateGovernor);
+        }
+        catch (HubSpotException e) {
+            logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to batch read deals", e);
+            CRMProperties.invalidate(CRMObjectType.DEALS, e);
+            System.exit(e.getCode());
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * Streams all deals as their pages arrive, caching each one as it is exported
+     *
+     * @param propertyGroup           The property group to read
+     * @param includeHiddenProperties Whether to read hidden properties
+     *
+     * @return A publisher of the deals, which exports them again for every subscriber
+     */
+    public Flow.Publisher<Deal> streamAllDeals(String propertyGroup, boolean includeHiddenProperties) {
+        PropertyData propertyData = propertiesByGroupName(CRMObjectType.DEALS,
+                                                          propertyGroup,
+                                                          includeHiddenProperties
+        );
+        return CRMObjectStream.export(httpService,
+                                      rateGovernor,
+                                      CRMObjectType.DEALS,
+                                      propertyData,
+                                      DealService.getCacheFolder(),
+                                      DealService::parseDealData
+        );
+    }
+
+    /**
+     * Streams the cached deals one file at a time
+     *
+     * @return A publisher of the deals, which reads them again for every subscriber
+     */
+    public Flow.Publisher<Deal> streamDealJsons() {
+        return CRMObjectStream.read(CRMObjectType.DEALS,
+                                    DealService.getCacheFolder(),
+                                    DealService::parseDealData
+        );
+    }
     //endregion Deals
 
     //region Engagements
     public ArrayList<Long> getContactEngagementIds(Contact contact) {
         long contactId = contact.getId();
         try {
-            return EngagementsProcessor.getAllEngagementIds(httpService, contactId);
+            return EngagementsProcessor.getAllEngagementIds(httpService, rateGovernor, contactId);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get engagement ids for contact id {}", contactId, e);
@@ -399,10 +697,30 @@ public class CRM implements Serializable {
         }
     }
 
+    /**
+     * Exports every engagement in the portal page by page and routes them to the contacts, instead of requesting the
+     * engagements of each contact one by one
+     *
+     * @param contactIds The ids of the contacts to export the engagements of
+     *
+     * @return The engagements keyed by contact id
+     */
+    public HashMap<Long, EngagementData> getAllEngagements(Collection<Long> contactIds) {
+        try {
+            return EngagementsProcessor.getAllEngagements(httpService, rateGovernor, contactIds);
+        }
+        catch (HubSpotException e) {
+            logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to export engagements", e);
+            JsonCache.delete(EngagementsProcessor.getCacheFolder());
+            System.exit(e.getCode());
+            return new HashMap<>();
+        }
+    }
+
     public EngagementData getContactEngagements(Contact contact) {
         long contactId = contact.getId();
         try {
-            return EngagementsProcessor.getAllEngagements(httpService, contactId);
+            return EngagementsProcessor.getAllEngagements(httpService, rateGovernor, contactId);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get engagements for contact id {}", contactId, e);
@@ -411,13 +729,94 @@ public class CRM implements Serializable {
         }
     }
 
+    /**
+     * Gets and caches the engagements of the contact, whose ids were resolved beforehand with
+     * {@link #getEngagementAssociations(Collection)}
+     *
+     * @param contact       The contact
+     * @param engagementIds The ids of the engagements associated with the contact by engagement object type
+     *
+     * @return The engagements of the contact
+     */
+    public EngagementData getContactEngagements(Contact contact, Map<String, List<Long>> engagementIds) {
+        long contactId = contact.getId();
+        try {
+            return EngagementsProcessor.getAllEngagements(httpService, rateGovernor, contactId, engagementIds);
+        }
+        catch (HubSpotException e) {
+            logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get engagements for contact id {}", contactId, e);
+            System.exit(e.getCode());
+            return null;
+        }
+    }
+
+    /**
+     * Gets the ids of the engagements associated with each of the contacts, reading the associations of
+     * {@link org.hubspot.utils.HubSpotUtils#BATCH_LIMIT} contacts per request
+     *
+     * @param contactIds The ids of the contacts
+     *
+     * @return The engagement ids by engagement object type, such as {@code emails}, keyed by contact id
+     */
+    public HashMap<Long, Map<String, List<Long>>> getEngagementAssociations(Collection<Long> contactIds) {
+        try {
+            return EngagementsProcessor.getAllEngagementIds(httpService, rateGovernor, contactIds);
+        }
+        catch (HubSpotException e) {
+            logger.fatal(LogMarkers.ERROR.getMarker(),
+                         "Unable to get the engagement ids of {} contacts",
+                         contactIds.size(),
+                         e
+            );
+            System.exit(e.getCode());
+            return new HashMap<>();
+        }
+    }
+
     public EngagementData getUpdatedEngagements(Contact contact, long lastFinished) {
         long contactId = contact.getId();
         if (lastFinished == -1) {
-            lastFinished = FileUtils.findMostRecentModification(Paths.get("./cache/engagements/" + contactId));
+            lastFinished = JsonCache.findMostRecentModification(Paths.get("./cache/engagements/" + contactId));
         }
         try {
-            return EngagementsProcessor.getUpdatedEngagements(httpService, contactId, lastFinished);
+            return EngagementsProcessor.getUpdatedEngagements(httpService, rateGovernor, contactId, lastFinished);
+        }
+        catch (HubSpotException e) {
+            logger.fatal(LogMarkers.ERROR.getMarker(),
+                         "Unable to get updated engagements for contact id {}",
+                         contactId,
+                         e
+            );
+            System.exit(e.getCode());
+            return null;
+        }
+    }
+
+    /**
+     * Gets and caches the engagements of the contact that are not cached yet, whose ids were resolved beforehand with
+     * {@link #getEngagementAssociations(Collection)}
+     *
+     * @param contact       The contact
+     * @param engagementIds The ids of the engagements associated with the contact by engagement object type
+     * @param lastFinished  When the last run finished, or -1 to use the most recently cached engagement of the contact
+     *
+     * @return The engagements that were not cached yet
+     */
+    public EngagementData getUpdatedEngagements(Contact contact,
+                                                Map<String, List<Long>> engagementIds,
+                                                long lastFinished
+    ) {
+        long contactId = contact.getId();
+        if (lastFinished == -1) {
+            lastFinished = JsonCache.findMostRecentModification(Paths.get("./cache/engagements/" + contactId));
+        }
+        try {
+            return EngagementsProcessor.getUpdatedEngagements(httpService,
+                                                              rateGovernor,
+                                                              contactId,
+                                                              engagementIds,
+                                                              lastFinished
+            );
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(),
@@ -443,11 +842,11 @@ public class CRM implements Serializable {
 
     public void writeContactEngagementJsons(long contactId) {
         try {
-            EngagementsProcessor.writeContactEngagementJsons(httpService, contactId);
+            EngagementsProcessor.writeContactEngagementJsons(httpService, rateGovernor, contactId);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to write engagement for contact id {}", contactId, e);
-            FileUtils.deleteDirectory(EngagementsProcessor.getCacheFolder());
+            JsonCache.delete(EngagementsProcessor.getCacheFolder());
             System.exit(e.getCode());
         }
     }
@@ -456,7 +855,7 @@ public class CRM implements Serializable {
     //region Properties
     public PropertyData allProperties(CRMObjectType type, boolean includeHidden) {
         try {
-            return CRMProperties.getAllProperties(httpService, type, includeHidden, rateLimiter);
+            return CRMProperties.getAllProperties(httpService, type, includeHidden, rateGovernor);
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get properties", e);
@@ -467,7 +866,12 @@ public class CRM implements Serializable {
 
     public PropertyData propertiesByGroupName(CRMObjectType type, String propertyGroup, boolean includeHidden) {
         try {
-            return CRMProperties.getPropertiesByGroupName(httpService, type, propertyGroup, includeHidden, rateLimiter);
+            return CRMProperties.getPropertiesByGroupName(httpService,
+                                                          type,
+                                                          propertyGroup,
+                                                          includeHidden,
+                                                          rateGovernor
+            );
         }
         catch (HubSpotException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to get properties", e);
@@ -475,5 +879,14 @@ public class CRM implements Serializable {
             return null;
         }
     }
+
+    /**
+     * Drops the cached property schema of the object type, so the next property lookup reads it from HubSpot again
+     *
+     * @param type The object type
+     */
+    public void invalidateProperties(CRMObjectType type) {
+        CRMProperties.invalidate(type);
+    }
     //endregion Properties
 }
@@ -0,0 +1,307 @@
+package org.hubspot.services.crm;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.objects.PropertyData;
+import org.hubspot.objects.crm.CRMObjectType;
+import org.hubspot.utils.*;
+import org.hubspot.utils.cache.JsonCache;
+import org.hubspot.utils.concurrent.CustomThreadFactory;
+import org.hubspot.utils.exceptions.HubSpotException;
+import org.hubspot.utils.http.ApiRateGovernor;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Streams CRM objects to a {@link Flow.Subscriber} as their pages arrive or as they are read from the cache, instead of
+ * collecting them into a map first. Each subscription starts its own export on a producer thread, which blocks once
+ * {@code hubspot.stream.buffer} objects are waiting to be consumed, so memory stays bounded by the buffer and not the
+ * size of the portal. Objects are cached to disk as they are exported, the same as the full exports.
+ *
+ * @author Nicholas Curl
+ */
+public class CRMObjectStream {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger logger = LogManager.getLogger(CRMObjectStream.class);
+    private static final int    BUFFER = Integer.getInteger("hubspot.stream.buffer", Flow.defaultBufferSize());
+
+    /**
+     * Exports all objects of the type, writing each to the cache folder before it is published
+     *
+     * @param httpService  The http service to send the requests with
+     * @param rateGovernor The rate governor to acquire the request permits from
+     * @param type         The type of the objects
+     * @param propertyData The properties to read
+     * @param cacheFolder  The folder the objects are cached in
+     * @param parser       Creates an object from its json
+     * @param <T>          The class of the objects
+     *
+     * @return A publisher of the objects that exports them again for every subscriber
+     */
+    static <T> Flow.Publisher<T> export(HttpService httpService,
+                                        final ApiRateGovernor rateGovernor,
+                                        CRMObjectType type,
+                                        PropertyData propertyData,
+                                        Path cacheFolder,
+                                        Function<JSONObject, T> parser
+    ) {
+        return publish("Stream_" + type.getValue(), emitter -> {
+            try {
+                Files.createDirectories(cacheFolder);
+            }
+            catch (IOException e) {
+                throw new HubSpotException("Unable to create folder " + cacheFolder,
+                                           ErrorCodes.IO_CREATE_DIRECTORY.getErrorCode(),
+                                           e
+                );
+            }
+            Consumer<JSONObject> pageConsumer = page -> {
+                for (Object o : page.getJSONArray("results")) {
+                    JSONObject jsonObject = (JSONObject) o;
+                    try {
+                        JsonCache.write(cacheFolder, jsonObject);
+                    }
+                    catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                    emitter.accept(parser.apply(jsonObject));
+                }
+            };
+            int pageSize = HubSpotUtils.getPageSize(type);
+            long count = HubSpotUtils.getObjectCount(httpService, type, rateGovernor);
+            if (SegmentedExport.isSegmented(count)) {
+                try {
+                    SegmentedExport.export(httpService,
+                                           rateGovernor,
+                                           type,
+                                           propertyData,
+                                           count,
+                                           pageSize,
+                                           pageConsumer,
+                                           emitter::isCancelled
+                    );
+                }
+                catch (CompletionException e) {
+                    throw new HubSpotException("Unable to cache " + type.getValue(),
+                                               ErrorCodes.IO_WRITE.getErrorCode(),
+                                               e.getCause()
+                    );
+                }
+                return;
+            }
+            String url = "/crm/v3/objects/" + type.getValue() + "/";
+            List<String> propertyChunks = HubSpotUtils.chunkProperties(propertyData.getPropertyNames());
+            Map<String, Object> map = new HashMap<>();
+            map.put("limit", pageSize);
+            map.put("archived", false);
+            while (!emitter.isCancelled()) {
+                JSONObject jsonObject = HubSpotUtils.getPage(httpService, rateGovernor, url, map, propertyChunks);
+                try {
+                    pageConsumer.accept(jsonObject);
+                }
+                catch (CompletionException e) {
+                    throw new HubSpotException("Unable to cache " + type.getValue(),
+                                               ErrorCodes.IO_WRITE.getErrorCode(),
+                                               e.getCause()
+                    );
+                }
+                if (!jsonObject.has("paging")) {
+                    break;
+                }
+                map.put("after", jsonObject.getJSONObject("paging").getJSONObject("next").getLong("after"));
+            }
+        });
+    }
+
+    /**
+     * Reads the cached objects one at a time
+     *
+     * @param type        The type of the objects
+     * @param cacheFolder The folder the objects are cached in
+     * @param parser      Creates an object from its json
+     * @param <T>         The class of the objects
+     *
+     * @return A publisher of the objects that reads them again for every subscriber
+     */
+    static <T> Flow.Publisher<T> read(CRMObjectType type, Path cacheFolder, Function<JSONObject, T> parser) {
+        return publish("StreamReader_" + type.getValue(), emitter -> {
+            if (!Files.isDirectory(cacheFolder)) {
+                return;
+            }
+            try {
+                for (long id : JsonCache.list(cacheFolder)) {
+                    if (emitter.isCancelled()) {
+                        break;
+                    }
+                    JSONObject jsonObject = JsonCache.read(cacheFolder, id);
+                    if (jsonObject != null) {
+                        emitter.accept(parser.apply(Utils.formatJson(jsonObject)));
+                    }
+                }
+            }
+            catch (IOException e) {
+                throw new HubSpotException("Unable to read " + cacheFolder, ErrorCodes.IO_READ.getErrorCode(), e);
+            }
+        });
+    }
+
+    /**
+     * Gets an iterator over the objects of the publisher, which requests more objects as they are taken and blocks
+     * while waiting for the next one
+     *
+     * @param publisher The publisher
+     * @param <T>       The class of the objects
+     *
+     * @return The iterator, whose {@code hasNext} and {@code next} throw a {@link CompletionException} with the cause
+     *         of the failure if the publisher fails
+     */
+    public static <T> Iterator<T> iterate(Flow.Publisher<T> publisher) {
+        BlockingIterator<T> iterator = new BlockingIterator<>();
+        publisher.subscribe(iterator);
+        return iterator;
+    }
+
+    /**
+     * Creates a publisher that runs the producer on its own thread for each subscriber, failing the subscription with
+     * the exception the producer throws
+     */
+    private static <T> Flow.Publisher<T> publish(String name, Producer<T> producer) {
+        ThreadFactory threadFactory = new CustomThreadFactory(name, true);
+        return subscriber -> {
+            Executor executor = ForkJoinPool.getCommonPoolParallelism() > 1
+                                ? ForkJoinPool.commonPool()
+                                : runnable -> threadFactory.newThread(runnable).start();
+            SubmissionPublisher<T> publisher = new SubmissionPublisher<>(executor, BUFFER);
+            publisher.subscribe(subscriber);
+            threadFactory.newThread(() -> {
+                try {
+                    producer.produce(new Emitter<>(publisher));
+                    publisher.close();
+                }
+                catch (HubSpotException | RuntimeException e) {
+                    logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to stream {}", name, e);
+                    publisher.closeExceptionally(e);
+                }
+            }).start();
+        };
+    }
+
+    /**
+     * Produces the objects of a subscription
+     *
+     * @param <T> The class of the objects
+     */
+    @FunctionalInterface
+    private interface Producer<T> {
+
+        void produce(Emitter<T> emitter) throws HubSpotException;
+    }
+
+    /**
+     * Publishes objects, blocking while the buffer of the subscriber is full and dropping objects once the subscriber
+     * has cancelled
+     *
+     * @param <T> The class of the objects
+     */
+    private static class Emitter<T> implements Consumer<T> {
+
+        private final SubmissionPublisher<T> publisher;
+
+        private Emitter(SubmissionPublisher<T> publisher) {
+            this.publisher = publisher;
+        }
+
+        @Override
+        public void accept(T item) {
+            if (!isCancelled()) {
+                publisher.submit(item);
+            }
+        }
+
+        boolean isCancelled() {
+            return !publisher.hasSubscribers();
+        }
+    }
+
+    /**
+     * A subscriber that hands its objects to an iterator, requesting one more for each object taken
+     *
+     * @param <T> The class of the objects
+     */
+    private static class BlockingIterator<T> implements Flow.Subscriber<T>, Iterator<T> {
+
+        private static final Object                COMPLETE = new Object();
+        private final        BlockingQueue<Object> queue    = new LinkedBlockingQueue<>();
+        private              Flow.Subscription     subscription;
+        private              Object                next;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(BUFFER);
+        }
+
+        @Override
+        public void onNext(T item) {
+            queue.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            queue.add(new Failure(throwable));
+        }
+
+        @Override
+        public void onComplete() {
+            queue.add(COMPLETE);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = queue.take();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CompletionException(e);
+                }
+            }
+            if (next instanceof Failure) {
+                throw new CompletionException(((Failure) next).cause);
+            }
+            return next != COMPLETE;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T item = (T) next;
+            next = null;
+            subscription.request(1);
+            return item;
+        }
+
+        private static class Failure {
+
+            private final Throwable cause;
+
+            private Failure(Throwable cause) {
+                this.cause = cause;
+            }
+        }
+    }
+}
@@ -1,21 +1,33 @@
 package org.hubspot.services.crm;
 
-import com.google.common.util.concurrent.RateLimiter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hubspot.objects.PropertyData;
 import org.hubspot.objects.crm.CRMObjectType;
+import org.hubspot.utils.ErrorCodes;
+import org.hubspot.utils.FileUtils;
 import org.hubspot.utils.HttpService;
+import org.hubspot.utils.LogMarkers;
 import org.hubspot.utils.exceptions.HubSpotException;
+import org.hubspot.utils.http.ApiRateGovernor;
+import org.hubspot.utils.http.JsonDecoder;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Reads the property schema of each object type from {@code /crm/v3/properties/{type}} once per run and keeps it on
+ * disk for {@code hubspot.properties.ttl} milliseconds, a day by default, so property lookups after the first are
+ * filtered from the cached schema instead of downloading it again. A schema is dropped when a request built from it
+ * is rejected, which is how HubSpot reports that a property was deleted or changed.
+ *
  * @author Nicholas Curl
  */
 public class CRMProperties {
@@ -23,65 +35,143 @@ public class CRMProperties {
     /**
      * The instance of the logger
      */
-    private static final Logger logger  = LogManager.getLogger(CRMProperties.class);
-    private static final String urlBase = "/crm/v3/properties/";
+    private static final Logger                        logger      = LogManager.getLogger(CRMProperties.class);
+    private static final String                        urlBase     = "/crm/v3/properties/";
+    private static final Path                          cacheFolder = Paths.get("./cache/properties/");
+    private static final long                          TTL         = Long.getLong("hubspot.properties.ttl",
+                                                                                  TimeUnit.DAYS.toMillis(1)
+    );
+    /**
+     * The schema of each object type read this run
+     */
+    private static final Map<CRMObjectType, JSONArray> schemas     = new ConcurrentHashMap<>();
 
     static PropertyData getAllProperties(HttpService service,
                                          CRMObjectType type,
                                          boolean includeHidden,
-                                         final RateLimiter rateLimiter
+                                         final ApiRateGovernor rateGovernor
     ) throws HubSpotException {
-        Map<String, Object> properties = new HashMap<>();
-        ArrayList<String> propertyNames = new ArrayList<>();
-        rateLimiter.acquire();
-        JSONObject jsonObject = (JSONObject) service.getRequest(urlBase + type.getValue());
-        JSONArray results = jsonObject.getJSONArray("results");
-        for (Object o : results) {
-            if (o instanceof JSONObject) {
-                JSONObject o1 = (JSONObject) o;
-                String name = o1.getString("name");
-                boolean hidden = o1.getBoolean("hidden");
-                if (!includeHidden && hidden) {
-                    continue;
-                }
-                propertyNames.add(name);
-                properties.put(name, o1);
-            }
-        }
-        Collections.sort(propertyNames);
-        return new PropertyData(propertyNames, properties);
+        return filter(getSchema(service, type, rateGovernor), null, includeHidden);
     }
 
     static PropertyData getPropertiesByGroupName(HttpService service,
                                                  CRMObjectType type,
                                                  String groupName,
                                                  boolean includeHidden,
-                                                 final RateLimiter rateLimiter
+                                                 final ApiRateGovernor rateGovernor
     ) throws HubSpotException {
+        return filter(getSchema(service, type, rateGovernor), groupName, includeHidden);
+    }
+
+    /**
+     * Drops the cached schema of the object type, in memory and on disk, so the next lookup reads it again
+     *
+     * @param type The object type
+     */
+    static void invalidate(CRMObjectType type) {
+        schemas.remove(type);
+        try {
+            Files.deleteIfExists(getCacheFile(type));
+        }
+        catch (IOException e) {
+            logger.warn(LogMarkers.ERROR.getMarker(), "Unable to delete the property schema {}", getCacheFile(type), e);
+        }
+    }
+
+    /**
+     * Drops the cached schema of the object type if the exception is HubSpot rejecting a request, which happens when
+     * the request names properties that no longer exist
+     *
+     * @param type The object type the request was built for
+     * @param e    The exception the request failed with
+     */
+    static void invalidate(CRMObjectType type, HubSpotException e) {
+        if (e.getCode() == ErrorCodes.HTTP_400.getErrorCode()) {
+            logger.warn(LogMarkers.HTTP.getMarker(), "Dropping the cached {} property schema", type.getValue());
+            invalidate(type);
+        }
+    }
+
+    /**
+     * Gets the schema of the object type, reading it from the cache folder if it was written within the TTL and from
+     * HubSpot otherwise
+     */
+    private static JSONArray getSchema(HttpService service, CRMObjectType type, final ApiRateGovernor rateGovernor)
+    throws HubSpotException {
+        JSONArray schema = schemas.get(type);
+        if (schema != null) {
+            return schema;
+        }
+        synchronized (schemas) {
+            schema = schemas.get(type);
+            if (schema == null) {
+                schema = readSchema(type);
+            }
+            if (schema == null) {
+                rateGovernor.acquire();
+                JSONObject jsonObject = (JSONObject) service.getRequest(urlBase + type.getValue());
+                schema = jsonObject.getJSONArray("results");
+                writeSchema(type, schema);
+            }
+            schemas.put(type, schema);
+            return schema;
+        }
+    }
+
+    private static JSONArray readSchema(CRMObjectType type) {
+        Path file = getCacheFile(type);
+        try {
+            if (!Files.exists(file) || System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() > TTL) {
+                return null;
+            }
+            Object schema = JsonDecoder.decode(Files.readAllBytes(file));
+            return schema instanceof JSONArray ? (JSONArray) schema : null;
+        }
+        catch (IOException | RuntimeException e) {
+            logger.warn(LogMarkers.ERROR.getMarker(), "Unable to read the property schema {}", file, e);
+            return null;
+        }
+    }
+
+    private static void writeSchema(CRMObjectType type, JSONArray schema) {
+        try {
+            Files.createDirectories(cacheFolder);
+            FileUtils.writeFile(getCacheFile(type), schema);
+        }
+        catch (IOException e) {
+            logger.warn(LogMarkers.ERROR.getMarker(), "Unable to write the property schema {}", getCacheFile(type), e);
+        }
+    }
+
+    private static Path getCacheFile(CRMObjectType type) {
+        return cacheFolder.resolve(type.getValue() + ".json");
+    }
+
+    /**
+     * Creates the property data of the properties in the schema
+     *
+     * @param schema        The property definitions
+     * @param groupName     The group the properties must be in, or null for every group
+     * @param includeHidden Whether to include hidden properties
+     *
+     * @return The property data
+     */
+    private static PropertyData filter(JSONArray schema, String groupName, boolean includeHidden) {
         Map<String, Object> properties = new HashMap<>();
         ArrayList<String> propertyNames = new ArrayList<>();
-        rateLimiter.acquire();
-        JSONObject jsonObject = (JSONObject) service.getRequest(urlBase + type.getValue());
-        JSONArray results = jsonObject.getJSONArray("results");
-        for (Object o : results) {
+        for (Object o : schema) {
             if (o instanceof JSONObject) {
                 JSONObject o1 = (JSONObject) o;
-                String name = "";
-                String jsonGroupName = "";
-                if (o1.has("groupName")) {
-                    jsonGroupName = o1.getString("groupName");
+                if (groupName != null && !o1.optString("groupName", "").equalsIgnoreCase(groupName)) {
+                    continue;
                 }
-                if (jsonGroupName.equalsIgnoreCase(groupName)) {
-                    if (o1.has("name")) {
-                        name = o1.getString("name");
-                    }
-                    boolean hidden = o1.getBoolean("hidden");
-                    if (!includeHidden && hidden) {
-                        continue;
-                    }
-                    propertyNames.add(name);
-                    properties.put(name, o1);
+                String name = o1.optString("name", "");
+                boolean hidden = o1.getBoolean("hidden");
+                if (!includeHidden && hidden) {
+                    continue;
                 }
+                propertyNames.add(name);
+                properties.put(name, o1);
             }
         }
         Collections.sort(propertyNames);
@@ -0,0 +1,656 @@
+package org.hubspot.services.crm;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.objects.crm.CRMObject;
+import org.hubspot.objects.crm.Company;
+import org.hubspot.objects.crm.Contact;
+import org.hubspot.objects.crm.Deal;
+import org.hubspot.objects.crm.engagements.*;
+import org.hubspot.objects.crm.engagements.Email.Details;
+import org.hubspot.services.crm.EngagementsProcessor.EngagementData;
+import org.hubspot.utils.LogMarkers;
+import org.hubspot.utils.cache.JsonCache;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A snapshot of the contacts, companies, deals and engagements read from the cache, so that the next run can load them
+ * from one file instead of reading and parsing every cached object. The snapshot is captured at the end of a run, once
+ * the objects are processed and everything the run fetched has been written to the cache, and is committed right after
+ * it. The file is a header followed by one section per cache folder:
+ * <pre>
+ * header:  int magic, byte version
+ * section: byte section, string stamp of the cache folder, long body length, body
+ * body:    int count, then the objects
+ * </pre>
+ * A section is only loaded while the stamp of its cache folder is unchanged, so a folder written to after the snapshot
+ * was captured, by this run or any other, is read from the cache as before. Objects are stored as the state the parsers
+ * built, the properties of contacts, companies and deals and the fields of engagements, and are rebuilt without any
+ * json parsing. The objects of a section that was not loaded are {@code null}.
+ *
+ * @author Nicholas Curl
+ */
+public class CacheSnapshot {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger logger        = LogManager.getLogger(CacheSnapshot.class);
+    private static final Path   snapshotFile  = Paths.get("./cache/snapshot.bin");
+    private static final Path   captureFile   = Paths.get("./cache/snapshot.bin.tmp");
+    private static final int    MAGIC         = 0x48535350;
+    private static final byte   VERSION       = 1;
+    private static final int    BUFFER_SIZE   = 1 << 20;
+    private static final byte   NULL          = 0;
+    private static final byte   JSON_NULL     = 1;
+    private static final byte   STRING        = 2;
+    private static final byte   LONG          = 3;
+    private static final byte   INTEGER       = 4;
+    private static final byte   BOOLEAN       = 5;
+    private static final byte   DOUBLE        = 6;
+    private static final byte   DATE          = 7;
+    private static final byte   JSON          = 8;
+    private static final byte   ENGAGEMENT    = 1;
+    private static final byte   CALL          = 2;
+    private static final byte   EMAIL         = 3;
+    private static final byte   MEETING       = 4;
+    private static final byte   NOTE          = 5;
+    private static final byte   TASK          = 6;
+
+    private final HashMap<Long, Contact>        contacts;
+    private final HashMap<Long, Company>        companies;
+    private final HashMap<Long, Deal>           deals;
+    private final HashMap<Long, EngagementData> engagements;
+
+    private CacheSnapshot(HashMap<Long, Contact> contacts,
+                          HashMap<Long, Company> companies,
+                          HashMap<Long, Deal> deals,
+                          HashMap<Long, EngagementData> engagements
+    ) {
+        this.contacts = contacts;
+        this.companies = companies;
+        this.deals = deals;
+        this.engagements = engagements;
+    }
+
+    /**
+     * Loads the sections of the snapshot whose cache folders are unchanged since it was captured
+     *
+     * @return The snapshot, holding no objects if there is no usable snapshot
+     */
+    public static CacheSnapshot load() {
+        Map<Section, Object> loaded = new EnumMap<>(Section.class);
+        if (Files.exists(snapshotFile)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile),
+                                                                                  BUFFER_SIZE
+            ))) {
+                if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                    logger.warn(LogMarkers.ERROR.getMarker(), "Ignoring unsupported snapshot {}", snapshotFile);
+                }
+                else {
+                    int id;
+                    while ((id = in.read()) != -1) {
+                        Section section = Section.get(id);
+                        String stamp = readString(in);
+                        long length = in.readLong();
+                        if (section != null && !stamp.isEmpty() && stamp.equals(JsonCache.getStamp(section.folder))) {
+                            long start = System.nanoTime();
+                            Object objects = section.read(in);
+                            loaded.put(section, objects);
+                            logger.info("Loaded {} {} from the snapshot in {} ms",
+                                        ((Map<?, ?>) objects).size(),
+                                        section.name().toLowerCase(),
+                                        (System.nanoTime() - start) / 1000000
+                            );
+                        }
+                        else {
+                            skip(in, length);
+                        }
+                    }
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                logger.warn(LogMarkers.ERROR.getMarker(), "Unable to load snapshot {}", snapshotFile, e);
+                loaded.clear();
+            }
+        }
+        return new CacheSnapshot(cast(loaded.get(Section.CONTACTS)),
+                                 cast(loaded.get(Section.COMPANIES)),
+                                 cast(loaded.get(Section.DEALS)),
+                                 cast(loaded.get(Section.ENGAGEMENTS))
+        );
+    }
+
+    /**
+     * Captures the objects as they are now cached, keeping the sections of the current snapshot for the objects that
+     * are not given as long as their cache folders are unchanged. The captured snapshot replaces the current one when
+     * it is committed.
+     *
+     * @param contacts    The contacts, or {@code null} to keep those of the current snapshot
+     * @param companies   The companies, or {@code null} to keep those of the current snapshot
+     * @param deals       The deals, or {@code null} to keep those of the current snapshot
+     * @param engagements The engagements of each contact, or {@code null} to keep those of the current snapshot
+     */
+    public static void capture(HashMap<Long, Contact> contacts,
+                               HashMap<Long, Company> companies,
+                               HashMap<Long, Deal> deals,
+                               HashMap<Long, EngagementData> engagements
+    ) {
+        Map<Section, Map<Long, ?>> captured = new EnumMap<>(Section.class);
+        captured.put(Section.CONTACTS, contacts);
+        captured.put(Section.COMPANIES, companies);
+        captured.put(Section.DEALS, deals);
+        captured.put(Section.ENGAGEMENTS, engagements);
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(captureFile,
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel),
+                                                                                 BUFFER_SIZE
+            ));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            for (Map.Entry<Section, Map<Long, ?>> entry : captured.entrySet()) {
+                Section section = entry.getKey();
+                String stamp = JsonCache.getStamp(section.folder);
+                if (entry.getValue() == null || stamp.isEmpty()) {
+                    continue;
+                }
+                out.writeByte(section.id);
+                writeString(out, stamp);
+                out.flush();
+                long lengthPosition = channel.position();
+                out.writeLong(0);
+                section.write(out, entry.getValue());
+                out.flush();
+                long end = channel.position();
+                channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, end - lengthPosition - Long.BYTES),
+                              lengthPosition
+                );
+            }
+            carryOver(out, captured);
+            out.flush();
+            channel.force(true);
+        }
+        catch (IOException | RuntimeException e) {
+            logger.warn(LogMarkers.ERROR.getMarker(), "Unable to capture snapshot {}", captureFile, e);
+            try {
+                Files.deleteIfExists(captureFile);
+            }
+            catch (IOException ex) {
+                logger.warn(LogMarkers.ERROR.getMarker(), "Unable to delete {}", captureFile, ex);
+            }
+            return;
+        }
+        logger.info("Captured snapshot in {} ms", (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Replaces the current snapshot with the captured one, to be called once the run has finished
+     */
+    public static void commit() {
+        if (!Files.exists(captureFile)) {
+            return;
+        }
+        try {
+            try {
+                Files.move(captureFile,
+                           snapshotFile,
+                           StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE
+                );
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(captureFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e) {
+            logger.warn(LogMarkers.ERROR.getMarker(), "Unable to commit snapshot {}", snapshotFile, e);
+        }
+    }
+
+    /**
+     * Copies the sections of the current snapshot that were not captured and whose cache folders are unchanged
+     */
+    private static void carryOver(DataOutputStream out, Map<Section, Map<Long, ?>> captured) throws IOException {
+        if (!captured.containsValue(null) || !Files.exists(snapshotFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile),
+                                                                              BUFFER_SIZE
+        ))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                return;
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int id;
+            while ((id = in.read()) != -1) {
+                Section section = Section.get(id);
+                String stamp = readString(in);
+                long length = in.readLong();
+                if (section != null &&
+                    captured.get(section) == null &&
+                    !stamp.isEmpty() &&
+                    stamp.equals(JsonCache.getStamp(section.folder))) {
+                    out.writeByte(id);
+                    writeString(out, stamp);
+                    out.writeLong(length);
+                    for (long copied = 0; copied < length; ) {
+                        int read = (int) Math.min(buffer.length, length - copied);
+                        in.readFully(buffer, 0, read);
+                        out.write(buffer, 0, read);
+                        copied += read;
+                    }
+                }
+                else {
+                    skip(in, length);
+                }
+            }
+        }
+    }
+
+    private static void skip(DataInputStream in, long length) throws IOException {
+        while (length > 0) {
+            long skipped = in.skip(length);
+            if (skipped <= 0) {
+                throw new EOFException("Snapshot section cut short");
+            }
+            length -= skipped;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> HashMap<Long, T> cast(Object objects) {
+        return (HashMap<Long, T>) objects;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        }
+        else if (JSONObject.NULL.equals(value)) {
+            out.writeByte(JSON_NULL);
+        }
+        else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        }
+        else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        }
+        else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        }
+        else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        }
+        else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        }
+        else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        }
+        else if (value instanceof JSONObject ||
+                 value instanceof JSONArray ||
+                 value instanceof BigDecimal ||
+                 value instanceof BigInteger) {
+            out.writeByte(JSON);
+            writeString(out, JSONObject.valueToString(value));
+        }
+        else {
+            throw new IOException("Unable to snapshot a property value of " + value.getClass());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case JSON_NULL:
+                return JSONObject.NULL;
+            case STRING:
+                return readString(in);
+            case LONG:
+                return in.readLong();
+            case INTEGER:
+                return in.readInt();
+            case BOOLEAN:
+                return in.readBoolean();
+            case DOUBLE:
+                return in.readDouble();
+            case DATE:
+                return new Date(in.readLong());
+            case JSON:
+                return new JSONTokener(readString(in)).nextValue();
+            default:
+                throw new IOException("Unknown property value tag " + tag);
+        }
+    }
+
+    private static void writeObject(DataOutputStream out, CRMObject object) throws IOException {
+        out.writeLong(object.getId());
+        out.writeInt(object.getProperties().size());
+        for (Map.Entry<String, Object> property : object.getProperties().entrySet()) {
+            writeString(out, property.getKey());
+            writeValue(out, property.getValue());
+        }
+    }
+
+    /**
+     * Reads the properties of an object back through its setter, as its parser set them
+     */
+    private static <T extends CRMObject> T readObject(DataInputStream in, Function<Long, T> constructor)
+    throws IOException {
+        T object = constructor.apply(in.readLong());
+        int properties = in.readInt();
+        for (int i = 0; i < properties; i++) {
+            object.setProperty(readString(in), readValue(in));
+        }
+        return object;
+    }
+
+    private static void writeIds(DataOutputStream out, List<Long> ids) throws IOException {
+        out.writeInt(ids.size());
+        for (long id : ids) {
+            out.writeLong(id);
+        }
+    }
+
+    private static ArrayList<Long> readIds(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        ArrayList<Long> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(in.readLong());
+        }
+        return ids;
+    }
+
+    private static void writeDetails(DataOutputStream out, Details details) throws IOException {
+        out.writeBoolean(details != null);
+        if (details != null) {
+            writeString(out, details.getFirstName());
+            writeString(out, details.getLastName());
+            writeString(out, details.getEmailAddress());
+        }
+    }
+
+    private static Details readDetails(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new Details(readString(in), readString(in), readString(in)) : null;
+    }
+
+    private static void writeDetailsList(DataOutputStream out, List<Details> detailsList) throws IOException {
+        out.writeInt(detailsList.size());
+        for (Details details : detailsList) {
+            writeDetails(out, details);
+        }
+    }
+
+    private static ArrayList<Details> readDetailsList(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        ArrayList<Details> detailsList = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            detailsList.add(readDetails(in));
+        }
+        return detailsList;
+    }
+
+    private static long getTime(Date date) {
+        return date == null ? -1 : date.getTime();
+    }
+
+    /**
+     * Writes the fields of the engagement that its constructor takes
+     */
+    private static void writeEngagement(DataOutputStream out, Engagement engagement) throws IOException {
+        if (engagement == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        if (engagement instanceof Call) {
+            Call call = (Call) engagement;
+            out.writeByte(CALL);
+            out.writeLong(call.getId());
+            writeString(out, call.getTitle());
+            writeString(out, call.getBody());
+            writeString(out, call.getToNumber());
+            writeString(out, call.getFromNumber());
+            out.writeLong(call.getDurationMillis());
+            writeString(out, call.getRecordingURL());
+        }
+        else if (engagement instanceof Email) {
+            Email email = (Email) engagement;
+            out.writeByte(EMAIL);
+            out.writeLong(email.getId());
+            writeDetailsList(out, email.getTo());
+            writeDetailsList(out, email.getCc());
+            writeDetailsList(out, email.getBcc());
+            writeDetails(out, email.getFrom());
+            writeString(out, email.getSubject());
+            writeString(out, email.getBody());
+        }
+        else if (engagement instanceof Meeting) {
+            Meeting meeting = (Meeting) engagement;
+            out.writeByte(MEETING);
+            out.writeLong(meeting.getId());
+            out.writeLong(getTime(meeting.getStartTime()));
+            out.writeLong(getTime(meeting.getEndTime()));
+            writeString(out, meeting.getBody());
+            writeString(out, meeting.getTitle());
+        }
+        else if (engagement instanceof Note) {
+            Note note = (Note) engagement;
+            out.writeByte(NOTE);
+            out.writeLong(note.getId());
+            writeString(out, note.getNote());
+            writeIds(out, note.getAttachmentIds());
+        }
+        else if (engagement instanceof Task) {
+            Task task = (Task) engagement;
+            out.writeByte(TASK);
+            out.writeLong(task.getId());
+            writeString(out, task.getTaskType());
+            writeString(out, task.getSubject());
+            writeString(out, task.getBody());
+            writeString(out, task.getForObjectType());
+            writeString(out, task.getStatus());
+            out.writeLong(getTime(task.getCompletionDate()));
+            out.writeInt(task.getReminders().size());
+            for (Date reminder : task.getReminders()) {
+                out.writeLong(reminder.getTime());
+            }
+        }
+        else {
+            out.writeByte(ENGAGEMENT);
+            out.writeLong(engagement.getId());
+            writeString(out, engagement.getEngagementType().name());
+        }
+    }
+
+    private static Engagement readEngagement(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        switch (kind) {
+            case NULL:
+                return null;
+            case CALL:
+                return new Call(in.readLong(),
+                                readString(in),
+                                readString(in),
+                                readString(in),
+                                readString(in),
+                                in.readLong(),
+                                readString(in)
+                );
+            case EMAIL:
+                return new Email(in.readLong(),
+                                 readDetailsList(in),
+                                 readDetailsList(in),
+                                 readDetailsList(in),
+                                 readDetails(in),
+                                 readString(in),
+                                 readString(in)
+                );
+            case MEETING:
+                return new Meeting(in.readLong(), in.readLong(), in.readLong(), readString(in), readString(in));
+            case NOTE:
+                return new Note(in.readLong(), readString(in), readIds(in));
+            case TASK:
+                long id = in.readLong();
+                String taskType = readString(in);
+                String subject = readString(in);
+                String body = readString(in);
+                String forObjectType = readString(in);
+                String status = readString(in);
+                long completionDate = in.readLong();
+                return new Task(id, taskType, subject, body, forObjectType, status, completionDate, readIds(in));
+            case ENGAGEMENT:
+                return new Engagement(in.readLong(), EngagementType.valueOf(readString(in)));
+            default:
+                throw new IOException("Unknown engagement kind " + kind);
+        }
+    }
+
+    public HashMap<Long, Company> getCompanies() {
+        return companies;
+    }
+
+    public HashMap<Long, Contact> getContacts() {
+        return contacts;
+    }
+
+    public HashMap<Long, Deal> getDeals() {
+        return deals;
+    }
+
+    public HashMap<Long, EngagementData> getEngagements() {
+        return engagements;
+    }
+
+    /**
+     * The sections of the snapshot and the cache folder each is checked against
+     */
+    private enum Section {
+        CONTACTS(1, Paths.get("./cache/contacts/")),
+        COMPANIES(2, Paths.get("./cache/companies/")),
+        DEALS(3, Paths.get("./cache/deals/")),
+        ENGAGEMENTS(4, Paths.get("./cache/engagements"));
+
+        private final int  id;
+        private final Path folder;
+
+        Section(int id, Path folder) {
+            this.id = id;
+            this.folder = folder;
+        }
+
+        private static Section get(int id) {
+            for (Section section : values()) {
+                if (section.id == id) {
+                    return section;
+                }
+            }
+            return null;
+        }
+
+        private void write(DataOutputStream out, Map<Long, ?> objects) throws IOException {
+            out.writeInt(objects.size());
+            for (Map.Entry<Long, ?> entry : objects.entrySet()) {
+                if (this == ENGAGEMENTS) {
+                    EngagementData engagementData = (EngagementData) entry.getValue();
+                    out.writeLong(entry.getKey());
+                    writeIds(out, engagementData.getEngagementIds());
+                    out.writeInt(engagementData.getEngagements().size());
+                    for (Engagement engagement : engagementData.getEngagements()) {
+                        writeEngagement(out, engagement);
+                    }
+                }
+                else {
+                    writeObject(out, (CRMObject) entry.getValue());
+                }
+            }
+        }
+
+        private HashMap<Long, ?> read(DataInputStream in) throws IOException {
+            int count = in.readInt();
+            switch (this) {
+                case CONTACTS:
+                    HashMap<Long, Contact> contacts = new HashMap<>(count * 2);
+                    for (int i = 0; i < count; i++) {
+                        Contact contact = readObject(in, Contact::new);
+                        contact.setData(contact.toJson());
+                        contacts.put(contact.getId(), contact);
+                    }
+                    return contacts;
+                case COMPANIES:
+                    HashMap<Long, Company> companies = new HashMap<>(count * 2);
+                    for (int i = 0; i < count; i++) {
+                        Company company = readObject(in, Company::new);
+                        company.setData();
+                        companies.put(company.getId(), company);
+                    }
+                    return companies;
+                case DEALS:
+                    HashMap<Long, Deal> deals = new HashMap<>(count * 2);
+                    for (int i = 0; i < count; i++) {
+                        Deal deal = readObject(in, Deal::new);
+                        deal.setData(deal.toJson());
+                        deals.put(deal.getId(), deal);
+                    }
+                    return deals;
+                default:
+                    HashMap<Long, EngagementData> engagements = new HashMap<>(count * 2);
+                    for (int i = 0; i < count; i++) {
+                        long contactId = in.readLong();
+                        ArrayList<Long> engagementIds = readIds(in);
+                        int size = in.readInt();
+                        ArrayList<Engagement> engagementList = new ArrayList<>(size);
+                        for (int j = 0; j < size; j++) {
+                            engagementList.add(readEngagement(in));
+                        }
+                        engagements.put(contactId, new EngagementData(engagementIds, engagementList));
+                    }
+                    return engagements;
+            }
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package org.hubspot.services.crm;
 
 import com.google.common.collect.Iterables;
-import com.google.common.util.concurrent.RateLimiter;
 import me.tongfei.progressbar.ProgressBar;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -9,12 +8,13 @@ import org.hubspot.objects.PropertyData;
 import org.hubspot.objects.crm.CRMObjectType;
 import org.hubspot.objects.crm.Company;
 import org.hubspot.utils.*;
+import org.hubspot.utils.cache.JsonCache;
 import org.hubspot.utils.concurrent.*;
 import org.hubspot.utils.exceptions.HubSpotException;
+import org.hubspot.utils.http.ApiRateGovernor;
 import org.jetbrains.annotations.NotNull;
 import org.json.JSONObject;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -31,6 +31,10 @@ public class CompanyService {
      * The instance of the logger
      */
     private static final Logger logger             = LogManager.getLogger(CompanyService.class);
+    /**
+     * The number of objects or cache files each task processes, the page size of requests being
+     * {@link HubSpotUtils#getPageSize(CRMObjectType)}
+     */
     private static final int    LIMIT              = 10;
     private static final String url                = "/crm/v3/objects/companies/";
     private static final Path   cacheFolder        = Paths.get("./cache/companies/");
@@ -48,13 +52,45 @@ public class CompanyService {
         return cacheFolder;
     }
 
-    static Company getByID(HttpService service, String propertyString, long id, final RateLimiter rateLimiter)
+    static Company getByID(HttpService service, String propertyString, long id, final ApiRateGovernor rateGovernor)
     throws HubSpotException {
         String urlString = url + id;
-        rateLimiter.acquire(1);
+        rateGovernor.acquire();
         return getCompany(service, propertyString, urlString);
     }
 
+    /**
+     * Gets the companies of the ids with the batch read endpoint, in concurrent chunks of
+     * {@link HubSpotUtils#BATCH_LIMIT} ids
+     *
+     * @param service      The http service to send the requests with
+     * @param propertyData The properties to read
+     * @param ids          The ids of the companies
+     * @param rateGovernor The rate governor to acquire the request permits from
+     *
+     * @return The companies found, keyed by id, ids that do not exist being left out
+     *
+     * @throws HubSpotException if a request fails
+     */
+    static HashMap<Long, Company> getByIDs(HttpService service,
+                                           PropertyData propertyData,
+                                           Collection<Long> ids,
+                                           final ApiRateGovernor rateGovernor
+    ) throws HubSpotException {
+        HashMap<Long, Company> companies = new HashMap<>();
+        List<JSONObject> results = HttpService.await(HubSpotUtils.batchRead(service,
+                                                                             rateGovernor,
+                                                                             CRMObjectType.COMPANIES,
+                                                                             propertyData,
+                                                                             ids
+        ));
+        for (JSONObject result : results) {
+            Company company = parseCompanyData(result);
+            companies.put(company.getId(), company);
+        }
+        return companies;
+    }
+
     @NotNull
     private static Callable<Void> process(ConcurrentHashMap<Long, Company> companies,
                                           ProgressBar pb,
@@ -63,9 +99,8 @@ public class CompanyService {
         return () -> {
             for (Object o : jsonObject.getJSONArray("results")) {
                 JSONObject companyJson = (JSONObject) o;
-                companyJson = Utils.formatJson(companyJson);
                 Company company = parseCompanyData(companyJson);
-                FileUtils.writeJsonCache(cacheFolder, companyJson);
+                JsonCache.write(cacheFolder, companyJson);
                 companies.put(company.getId(), company);
                 pb.step();
                 Utils.sleep(1);
@@ -76,16 +111,17 @@ public class CompanyService {
 
     static HashMap<Long, Company> getAllCompanies(HttpService httpService,
                                                   PropertyData propertyData,
-                                                  final RateLimiter rateLimiter
+                                                  final ApiRateGovernor rateGovernor
     ) throws HubSpotException {
         Map<String, Object> map = new HashMap<>();
         ConcurrentHashMap<Long, Company> companies = new ConcurrentHashMap<>();
-        map.put("limit", LIMIT);
-        map.put("properties", propertyData.getPropertyNamesString());
+        int pageSize = HubSpotUtils.getPageSize(CRMObjectType.COMPANIES);
+        List<String> propertyChunks = HubSpotUtils.chunkProperties(propertyData.getPropertyNames());
+        map.put("limit", pageSize);
         map.put("archived", false);
         long after;
-        long count = HubSpotUtils.getObjectCount(httpService, CRMObjectType.COMPANIES, rateLimiter);
-        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) LIMIT) * Math.pow(MAX_SIZE, -0.6));
+        long count = HubSpotUtils.getObjectCount(httpService, CRMObjectType.COMPANIES, rateGovernor);
+        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) pageSize) * Math.pow(MAX_SIZE, -0.6));
         CacheThreadPoolExecutor threadPoolExecutor = new CacheThreadPoolExecutor(1,
                                                                                  STARTING_POOL_SIZE,
                                                                                  0L,
@@ -117,15 +153,26 @@ public class CompanyService {
         }
         ProgressBar pb = Utils.createProgressBar("Grabbing and Writing Companies", count);
         Utils.sleep(WARMUP);
-        while (true) {
-            rateLimiter.acquire(1);
-            JSONObject jsonObject = (JSONObject) httpService.getRequest(url, map);
-            threadPoolExecutor.submit(process(companies, pb, jsonObject));
-            if (!jsonObject.has("paging")) {
-                break;
+        if (SegmentedExport.isSegmented(count)) {
+            SegmentedExport.export(httpService,
+                                   rateGovernor,
+                                   CRMObjectType.COMPANIES,
+                                   propertyData,
+                                   count,
+                                   pageSize,
+                                   page -> threadPoolExecutor.submit(process(companies, pb, page))
+            );
+        }
+        else {
+            while (true) {
+                JSONObject jsonObject = HubSpotUtils.getPage(httpService, rateGovernor, url, map, propertyChunks);
+                threadPoolExecutor.submit(process(companies, pb, jsonObject));
+                if (!jsonObject.has("paging")) {
+                    break;
+                }
+                after = jsonObject.getJSONObject("paging").getJSONObject("next").getLong("after");
+                map.put("after", after);
             }
-            after = jsonObject.getJSONObject("paging").getJSONObject("next").getLong("after");
-            map.put("after", after);
         }
         Utils.shutdownExecutors(logger, threadPoolExecutor);
         Utils.shutdownUpdaters(logger, scheduledExecutorService);
@@ -189,16 +236,14 @@ public class CompanyService {
 
     static HashMap<Long, Company> getUpdatedCompanies(HttpService httpService,
                                                       PropertyData propertyData,
+                                                      final ApiRateGovernor rateGovernor,
                                                       long lastExecution,
                                                       long lastFinished
     ) throws HubSpotException {
-        String url = "/crm/v3/objects/companies/search";
-        final RateLimiter rateLimiter = RateLimiter.create(3.0);
         ConcurrentHashMap<Long, Company> companies = new ConcurrentHashMap<>();
-        JSONObject body = HubSpotUtils.getUpdateBody(CRMObjectType.COMPANIES, propertyData, lastExecution, LIMIT);
-        long after;
-        long count = HubSpotUtils.getUpdateCount(httpService, rateLimiter, CRMObjectType.COMPANIES, lastExecution);
-        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) LIMIT) * Math.pow(MAX_SIZE, -0.6));
+        int pageSize = HubSpotUtils.getPageSize(CRMObjectType.COMPANIES);
+        long count = HubSpotUtils.getUpdateCount(httpService, rateGovernor, CRMObjectType.COMPANIES, lastExecution);
+        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) pageSize) * Math.pow(MAX_SIZE, -0.6));
         UpdateThreadPoolExecutor threadPoolExecutor = new UpdateThreadPoolExecutor(1,
                                                                                    STARTING_POOL_SIZE,
                                                                                    0L,
@@ -224,16 +269,15 @@ public class CompanyService {
         }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
         ProgressBar pb = Utils.createProgressBar("Grabbing and Writing Updated Companies", count);
         Utils.sleep(WARMUP);
-        while (true) {
-            rateLimiter.acquire(1);
-            JSONObject jsonObject = (JSONObject) httpService.postRequest(url, body);
-            threadPoolExecutor.submit(process(companies, pb, jsonObject));
-            if (!jsonObject.has("paging")) {
-                break;
-            }
-            after = jsonObject.getJSONObject("paging").getJSONObject("next").getLong("after");
-            body.put("after", after);
-        }
+        SegmentedExport.exportUpdates(httpService,
+                                      rateGovernor,
+                                      CRMObjectType.COMPANIES,
+                                      propertyData,
+                                      lastExecution,
+                                      count,
+                                      pageSize,
+                                      page -> threadPoolExecutor.submit(process(companies, pb, page))
+        );
         Utils.shutdownExecutors(logger, threadPoolExecutor);
         Utils.shutdownUpdaters(logger, scheduledExecutorService);
         pb.close();
@@ -242,11 +286,16 @@ public class CompanyService {
 
     static HashMap<Long, Company> readCompanyJsons() throws HubSpotException {
         ConcurrentHashMap<Long, Company> companies = new ConcurrentHashMap<>();
-        File[] files = cacheFolder.toFile().listFiles();
-        if (!Utils.isArrayNullOrEmpty(files)) {
-            List<File> fileList = Arrays.asList(files);
-            Iterable<List<File>> partitions = Iterables.partition(fileList, LIMIT);
-            int capacity = (int) Math.ceil(Math.ceil((double) fileList.size() / (double) LIMIT) *
+        List<Long> ids;
+        try {
+            ids = JsonCache.list(cacheFolder);
+        }
+        catch (IOException e) {
+            throw new HubSpotException("Unable to read cache " + cacheFolder, ErrorCodes.IO_READ.getErrorCode(), e);
+        }
+        if (!ids.isEmpty()) {
+            Iterable<List<Long>> partitions = Iterables.partition(ids, LIMIT);
+            int capacity = (int) Math.ceil(Math.ceil((double) ids.size() / (double) LIMIT) *
                                            Math.pow(MAX_SIZE, -0.6));
             CustomThreadPoolExecutor threadPoolExecutor = new CustomThreadPoolExecutor(1,
                                                                                        STARTING_POOL_SIZE,
@@ -269,13 +318,12 @@ public class CompanyService {
                 String debugMessage = String.format(debugMessageFormat, "readCompanyJsons", load);
                 Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
             }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
-            ProgressBar pb = Utils.createProgressBar("Reading Companies", fileList.size());
+            ProgressBar pb = Utils.createProgressBar("Reading Companies", ids.size());
             Utils.sleep(WARMUP);
-            for (List<File> partition : partitions) {
+            for (List<Long> partition : partitions) {
                 threadPoolExecutor.submit(() -> {
-                    for (File file : partition) {
-                        String jsonString = FileUtils.readJsonString(logger, file);
-                        JSONObject jsonObject = Utils.formatJson(new JSONObject(jsonString));
+                    for (long id : partition) {
+                        JSONObject jsonObject = Utils.formatJson(JsonCache.read(cacheFolder, id));
                         Company company = parseCompanyData(jsonObject);
                         companies.put(company.getId(), company);
                         pb.step();
@@ -291,15 +339,18 @@ public class CompanyService {
         return new HashMap<>(companies);
     }
 
-    static void writeCompanyJsons(HttpService httpService, PropertyData propertyData, final RateLimiter rateLimiter)
-    throws HubSpotException {
+    static void writeCompanyJsons(HttpService httpService,
+                                  PropertyData propertyData,
+                                  final ApiRateGovernor rateGovernor
+    ) throws HubSpotException {
         Map<String, Object> map = new HashMap<>();
-        map.put("limit", LIMIT);
-        map.put("properties", propertyData.getPropertyNamesString());
+        int pageSize = HubSpotUtils.getPageSize(CRMObjectType.COMPANIES);
+        List<String> propertyChunks = HubSpotUtils.chunkProperties(propertyData.getPropertyNames());
+        map.put("limit", pageSize);
         map.put("archived", false);
         long after;
-        long count = HubSpotUtils.getObjectCount(httpService, CRMObjectType.COMPANIES, rateLimiter);
-        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) LIMIT) * Math.pow(MAX_SIZE, -0.6));
+        long count = HubSpotUtils.getObjectCount(httpService, CRMObjectType.COMPANIES, rateGovernor);
+        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) pageSize) * Math.pow(MAX_SIZE, -0.6));
         CacheThreadPoolExecutor threadPoolExecutor = new CacheThreadPoolExecutor(1,
                                                                                  STARTING_POOL_SIZE,
                                                                                  0L,
@@ -331,13 +382,11 @@ public class CompanyService {
         ProgressBar pb = Utils.createProgressBar("Writing Companies", count);
         Utils.sleep(WARMUP);
         while (true) {
-            rateLimiter.acquire(1);
-            JSONObject jsonObject = (JSONObject) httpService.getRequest(url, map);
+            JSONObject jsonObject = HubSpotUtils.getPage(httpService, rateGovernor, url, map, propertyChunks);
             threadPoolExecutor.submit(() -> {
                 for (Object o : jsonObject.getJSONArray("results")) {
                     JSONObject companyJson = (JSONObject) o;
-                    companyJson = Utils.formatJson(companyJson);
-                    FileUtils.writeJsonCache(cacheFolder, companyJson);
+                    JsonCache.write(cacheFolder, companyJson);
                     pb.step();
                     Utils.sleep(1);
                 }
@@ -1,7 +1,6 @@
 package org.hubspot.services.crm;
 
 import com.google.common.collect.Iterables;
-import com.google.common.util.concurrent.RateLimiter;
 import me.tongfei.progressbar.ProgressBar;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -9,12 +8,13 @@ import org.hubspot.objects.PropertyData;
 import org.hubspot.objects.crm.CRMObjectType;
 import org.hubspot.objects.crm.Contact;
 import org.hubspot.utils.*;
+import org.hubspot.utils.cache.JsonCache;
 import org.hubspot.utils.concurrent.*;
 import org.hubspot.utils.exceptions.HubSpotException;
+import org.hubspot.utils.http.ApiRateGovernor;
 import org.jetbrains.annotations.NotNull;
 import org.json.JSONObject;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -31,6 +31,10 @@ public class ContactService {
      * The instance of the logger
      */
     private static final Logger logger             = LogManager.getLogger(ContactService.class);
+    /**
+     * The number of objects or cache files each task processes, the page size of requests being
+     * {@link HubSpotUtils#getPageSize(CRMObjectType)}
+     */
     private static final int    LIMIT              = 10;
     private static final Path   cacheFolder        = Paths.get("./cache/contacts/");
     private static final String url                = "/crm/v3/objects/contacts/";
@@ -48,13 +52,45 @@ public class ContactService {
         return cacheFolder;
     }
 
-    static Contact getByID(HttpService service, String propertyString, long id, final RateLimiter rateLimiter)
+    static Contact getByID(HttpService service, String propertyString, long id, final ApiRateGovernor rateGovernor)
     throws HubSpotException {
         String urlString = url + id;
-        rateLimiter.acquire(1);
+        rateGovernor.acquire();
         return getContact(service, propertyString, urlString);
     }
 
+    /**
+     * Gets the contacts of the ids with the batch read endpoint, in concurrent chunks of
+     * {@link HubSpotUtils#BATCH_LIMIT} ids
+     *
+     * @param service      The http service to send the requests with
+     * @param propertyData The properties to read
+     * @param ids          The ids of the contacts
+     * @param rateGovernor The rate governor to acquire the request permits from
+     *
+     * @return The contacts found, keyed by id, ids that do not exist being left out
+     *
+     * @throws HubSpotException if a request fails
+     */
+    static HashMap<Long, Contact> getByIDs(HttpService service,
+                                           PropertyData propertyData,
+                                           Collection<Long> ids,
+                                           final ApiRateGovernor rateGovernor
+    ) throws HubSpotException {
+        HashMap<Long, Contact> contacts = new HashMap<>();
+        List<JSONObject> results = HttpService.await(HubSpotUtils.batchRead(service,
+                                                                             rateGovernor,
+                                                                             CRMObjectType.CONTACTS,
+                                                                             propertyData,
+                                                                             ids
+        ));
+        for (JSONObject result : results) {
+            Contact contact = parseContactData(result);
+            contacts.put(contact.getId(), contact);
+        }
+        return contacts;
+    }
+
     @NotNull
     private static Callable<Void> process(ConcurrentHashMap<Long, Contact> contacts,
                                           ProgressBar pb,
@@ -63,9 +99,8 @@ public class ContactService {
         return () -> {
             for (Object o : jsonObject.getJSONArray("results")) {
                 JSONObject contactJson = (JSONObject) o;
-                contactJson = Utils.formatJson(contactJson);
                 Contact contact = parseContactData(contactJson);
-                FileUtils.writeJsonCache(cacheFolder, contactJson);
+                JsonCache.write(cacheFolder, contactJson);
                 contacts.put(contact.getId(), contact);
                 pb.step();
                 Utils.sleep(1);
@@ -135,15 +170,16 @@ public class ContactService {
 
     static HashMap<Long, Contact> getAllContacts(HttpService httpService,
                                                  PropertyData propertyData,
-                                                 final RateLimiter rateLimiter
+                                                 final ApiRateGovernor rateGovernor
     ) throws HubSpotException {
         Map<String, Object> map = new HashMap<>();
         ConcurrentHashMap<Long, Contact> contacts = new ConcurrentHashMap<>();
-        map.put("limit", LIMIT);
-        map.put("properties", propertyData.getPropertyNamesString());
+        int pageSize = HubSpotUtils.getPageSize(CRMObjectType.CONTACTS);
+        List<String> propertyChunks = HubSpotUtils.chunkProperties(propertyData.getPropertyNames());
+        map.put("limit", pageSize);
         map.put("archived", false);
         long after;
-        long count = HubSpotUtils.getObjectCount(httpService, CRMObjectType.CONTACTS, rateLimiter);
+        long count = HubSpotUtils.getObjectCount(httpService, CRMObjectType.CONTACTS, rateGovernor);
         try {
             Files.createDirectories(cacheFolder);
         }
@@ -151,7 +187,7 @@ public class ContactService {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to create folder {}", cacheFolder, e);
             System.exit(ErrorCodes.IO_CREATE_DIRECTORY.getErrorCode());
         }
-        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) LIMIT) * Math.pow(MAX_SIZE, -0.6));
+        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) pageSize) * Math.pow(MAX_SIZE, -0.6));
         ThreadPoolExecutor threadPoolExecutor = new CacheThreadPoolExecutor(1,
                                                                             STARTING_POOL_SIZE,
                                                                             0L,
@@ -174,15 +210,26 @@ public class ContactService {
             String debugMessage = String.format(debugMessageFormat, "getAllContacts", load);
             Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
         }, 0, 1, TimeUnit.SECONDS);
-        while (true) {
-            rateLimiter.acquire(1);
-            JSONObject jsonObject = (JSONObject) httpService.getRequest(url, map);
-            threadPoolExecutor.submit(process(contacts, pb, jsonObject));
-            if (!jsonObject.has("paging")) {
-                break;
+        if (SegmentedExport.isSegmented(count)) {
+            SegmentedExport.export(httpService,
+                                   rateGovernor,
+                                   CRMObjectType.CONTACTS,
+                                   propertyData,
+                                   count,
+                                   pageSize,
+                                   page -> threadPoolExecutor.submit(process(contacts, pb, page))
+            );
+        }
+        else {
+            while (true) {
+                JSONObject jsonObject = HubSpotUtils.getPage(httpService, rateGovernor, url, map, propertyChunks);
+                threadPoolExecutor.submit(process(contacts, pb, jsonObject));
+                if (!jsonObject.has("paging")) {
+                    break;
+                }
+                after = jsonObject.getJSONObject("paging").getJSONObject("next").getLong("after");
+                map.put("after", after);
             }
-            after = jsonObject.getJSONObject("paging").getJSONObject("next").getLong("after");
-            map.put("after", after);
         }
         Utils.shutdownExecutors(logger, threadPoolExecutor);
         Utils.shutdownUpdaters(logger, scheduledExecutorService);
@@ -246,16 +293,14 @@ public class ContactService {
 
     static HashMap<Long, Contact> getUpdatedContacts(HttpService httpService,
                                                      PropertyData propertyData,
+                                                     final ApiRateGovernor rateGovernor,
                                                      long lastExecution,
                                                      long lastFinished
     ) throws HubSpotException {
-        String url = "/crm/v3/objects/contacts/search";
-        final RateLimiter rateLimiter = RateLimiter.create(3.0);
         ConcurrentHashMap<Long, Contact> contacts = new ConcurrentHashMap<>();
-        JSONObject body = HubSpotUtils.getUpdateBody(CRMObjectType.CONTACTS, propertyData, lastExecution, LIMIT);
-        long after;
-        long count = HubSpotUtils.getUpdateCount(httpService, rateLimiter, CRMObjectType.CONTACTS, lastExecution);
-        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) LIMIT) * Math.pow(MAX_SIZE, -0.6));
+        int pageSize = HubSpotUtils.getPageSize(CRMObjectType.CONTACTS);
+        long count = HubSpotUtils.getUpdateCount(httpService, rateGovernor, CRMObjectType.CONTACTS, lastExecution);
+        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) pageSize) * Math.pow(MAX_SIZE, -0.6));
         UpdateThreadPoolExecutor threadPoolExecutor = new UpdateThreadPoolExecutor(1,
                                                                                    STARTING_POOL_SIZE,
                                                                                    0L,
@@ -281,16 +326,15 @@ public class ContactService {
         }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
         ProgressBar pb = Utils.createProgressBar("Grabbing and Writing Updated Contacts", count);
         Utils.sleep(WARMUP);
-        while (true) {
-            rateLimiter.acquire(1);
-            JSONObject jsonObject = (JSONObject) httpService.postRequest(url, body);
-            threadPoolExecutor.submit(process(contacts, pb, jsonObject));
-            if (!jsonObject.has("paging")) {
-                break;
-            }
-            after = jsonObject.getJSONObject("paging").getJSONObject("next").getLong("after");
-            body.put("after", after);
-        }
+        SegmentedExport.exportUpdates(httpService,
+                                      rateGovernor,
+                                      CRMObjectType.CONTACTS,
+                                      propertyData,
+                                      lastExecution,
+                                      count,
+                                      pageSize,
+                                      page -> threadPoolExecutor.submit(process(contacts, pb, page))
+        );
         Utils.shutdownExecutors(logger, threadPoolExecutor);
         Utils.shutdownUpdaters(logger, scheduledExecutorService);
         pb.close();
@@ -299,11 +343,16 @@ public class ContactService {
 
     static HashMap<Long, Contact> readContactJsons() throws HubSpotException {
         ConcurrentHashMap<Long, Contact> contacts = new ConcurrentHashMap<>();
-        File[] files = cacheFolder.toFile().listFiles();
-        if (!Utils.isArrayNullOrEmpty(files)) {
-            List<File> fileList = Arrays.asList(files);
-            Iterable<List<File>> partitions = Iterables.partition(fileList, LIMIT);
-            int capacity = (int) Math.ceil(Math.ceil((double) fileList.size() / (double) LIMIT) *
+        List<Long> ids;
+        try {
+            ids = JsonCache.list(cacheFolder);
+        }
+        catch (IOException e) {
+            throw new HubSpotException("Unable to read cache " + cacheFolder, ErrorCodes.IO_READ.getErrorCode(), e);
+        }
+        if (!ids.isEmpty()) {
+            Iterable<List<Long>> partitions = Iterables.partition(ids, LIMIT);
+            int capacity = (int) Math.ceil(Math.ceil((double) ids.size() / (double) LIMIT) *
                                            Math.pow(MAX_SIZE, -0.6));
             CustomThreadPoolExecutor threadPoolExecutor = new CustomThreadPoolExecutor(1,
                                                                                        STARTING_POOL_SIZE,
@@ -326,13 +375,12 @@ public class ContactService {
                 String debugMessage = String.format(debugMessageFormat, "readContactJsons", load);
                 Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
             }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
-            ProgressBar pb = Utils.createProgressBar("Reading Contacts", fileList.size());
+            ProgressBar pb = Utils.createProgressBar("Reading Contacts", ids.size());
             Utils.sleep(WARMUP);
-            for (List<File> partition : partitions) {
+            for (List<Long> partition : partitions) {
                 threadPoolExecutor.submit(() -> {
-                    for (File file : partition) {
-                        String jsonString = FileUtils.readJsonString(logger, file);
-                        JSONObject jsonObject = Utils.formatJson(new JSONObject(jsonString));
+                    for (long id : partition) {
+                        JSONObject jsonObject = Utils.formatJson(JsonCache.read(cacheFolder, id));
                         Contact contact = parseContactData(jsonObject);
                         contacts.put(contact.getId(), contact);
                         pb.step();
@@ -348,15 +396,16 @@ public class ContactService {
         return new HashMap<>(contacts);
     }
 
-    static void writeContactJson(HttpService httpService, PropertyData propertyData, final RateLimiter rateLimiter)
+    static void writeContactJson(HttpService httpService, PropertyData propertyData, final ApiRateGovernor rateGovernor)
     throws HubSpotException {
         Map<String, Object> map = new HashMap<>();
-        map.put("limit", LIMIT);
-        map.put("properties", propertyData.getPropertyNamesString());
+        int pageSize = HubSpotUtils.getPageSize(CRMObjectType.CONTACTS);
+        List<String> propertyChunks = HubSpotUtils.chunkProperties(propertyData.getPropertyNames());
+        map.put("limit", pageSize);
         map.put("archived", false);
         long after;
-        long count = HubSpotUtils.getObjectCount(httpService, CRMObjectType.CONTACTS, rateLimiter);
-        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) LIMIT) * Math.pow(MAX_SIZE, -0.6));
+        long count = HubSpotUtils.getObjectCount(httpService, CRMObjectType.CONTACTS, rateGovernor);
+        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) pageSize) * Math.pow(MAX_SIZE, -0.6));
         CacheThreadPoolExecutor threadPoolExecutor = new CacheThreadPoolExecutor(1,
                                                                                  STARTING_POOL_SIZE,
                                                                                  0L,
@@ -388,13 +437,11 @@ public class ContactService {
         ProgressBar pb = Utils.createProgressBar("Writing Contacts", count);
         Utils.sleep(WARMUP);
         while (true) {
-            rateLimiter.acquire(1);
-            JSONObject jsonObject = (JSONObject) httpService.getRequest(url, map);
+            JSONObject jsonObject = HubSpotUtils.getPage(httpService, rateGovernor, url, map, propertyChunks);
             threadPoolExecutor.submit(() -> {
                 for (Object o : jsonObject.getJSONArray("results")) {
                     JSONObject contactJson = (JSONObject) o;
-                    contactJson = Utils.formatJson(contactJson);
-                    FileUtils.writeJsonCache(cacheFolder, contactJson);
+                    JsonCache.write(cacheFolder, contactJson);
                     pb.step();
                     Utils.sleep(1);
                 }
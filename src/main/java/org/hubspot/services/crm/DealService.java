@@ -1,7 +1,6 @@
 package org.hubspot.services.crm;
 
 import com.google.common.collect.Iterables;
-import com.google.common.util.concurrent.RateLimiter;
 import me.tongfei.progressbar.ProgressBar;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,13 +9,14 @@ import org.hubspot.objects.crm.CRMObjectType;
 import org.hubspot.objects.crm.Contact;
 import org.hubspot.objects.crm.Deal;
 import org.hubspot.utils.*;
+import org.hubspot.utils.cache.JsonCache;
 import org.hubspot.utils.concurrent.*;
 import org.hubspot.utils.exceptions.HubSpotException;
+import org.hubspot.utils.http.ApiRateGovernor;
 import org.jetbrains.annotations.NotNull;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -33,6 +33,10 @@ public class DealService {
      * The instance of the logger
      */
     private static final Logger logger             = LogManager.getLogger(DealService.class);
+    /**
+     * The number of objects or cache files each task processes, the page size of requests being
+     * {@link HubSpotUtils#getPageSize(CRMObjectType)}
+     */
     private static final int    LIMIT              = 10;
     private static final Path   cacheFolder        = Paths.get("./cache/deals/");
     private static final String url                = "/crm/v3/objects/deals/";
@@ -50,13 +54,45 @@ public class DealService {
         return cacheFolder;
     }
 
-    static Deal getById(HttpService service, String propertyString, long id, final RateLimiter rateLimiter)
+    static Deal getById(HttpService service, String propertyString, long id, final ApiRateGovernor rateGovernor)
     throws HubSpotException {
         String urlString = url + id;
-        rateLimiter.acquire(1);
+        rateGovernor.acquire();
         return getDeal(service, propertyString, urlString);
     }
 
+    /**
+     * Gets the deals of the ids with the batch read endpoint, in concurrent chunks of
+     * {@link HubSpotUtils#BATCH_LIMIT} ids
+     *
+     * @param service      The http service to send the requests with
+     * @param propertyData The properties to read
+     * @param ids          The ids of the deals
+     * @param rateGovernor The rate governor to acquire the request permits from
+     *
+     * @return The deals found, keyed by id, ids that do not exist being left out
+     *
+     * @throws HubSpotException if a request fails
+     */
+    static HashMap<Long, Deal> getByIds(HttpService service,
+                                        PropertyData propertyData,
+                                        Collection<Long> ids,
+                                        final ApiRateGovernor rateGovernor
+    ) throws HubSpotException {
+        HashMap<Long, Deal> deals = new HashMap<>();
+        List<JSONObject> results = HttpService.await(HubSpotUtils.batchRead(service,
+                                                                             rateGovernor,
+                                                                             CRMObjectType.DEALS,
+                                                                             propertyData,
+                                                                             ids
+        ));
+        for (JSONObject result : results) {
+            Deal deal = parseDealData(result);
+            deals.put(deal.getId(), deal);
+        }
+        return deals;
+    }
+
     @NotNull
     private static Callable<Void> process(ConcurrentHashMap<Long, Deal> deals,
                                           ProgressBar pb,
@@ -65,9 +101,8 @@ public class DealService {
         return () -> {
             for (Object o : jsonObject.getJSONArray("results")) {
                 JSONObject dealData = (JSONObject) o;
-                dealData = Utils.formatJson(dealData);
                 Deal deal = parseDealData(dealData);
-                FileUtils.writeJsonCache(cacheFolder, dealData);
+                JsonCache.write(cacheFolder, dealData);
                 deals.put(deal.getId(), deal);
                 pb.step();
                 Utils.sleep(1);
@@ -76,11 +111,11 @@ public class DealService {
         };
     }
 
-    static ArrayList<Long> associateDeals(HttpService httpService, Contact contact, final RateLimiter rateLimiter)
+    static ArrayList<Long> associateDeals(HttpService httpService, Contact contact, final ApiRateGovernor rateGovernor)
     throws HubSpotException {
         String url = "/crm-associations/v1/associations/" + contact.getId() + "/HUBSPOT_DEFINED/4";
         Map<String, Object> queryParam = new HashMap<>();
-        queryParam.put("limit", LIMIT);
+        queryParam.put("limit", HubSpotUtils.getPageSize(CRMObjectType.DEALS));
         List<Long> dealIds = Collections.synchronizedList(new ArrayList<>());
         long offset;
         CustomThreadPoolExecutor threadPoolExecutor = new CustomThreadPoolExecutor(1,
@@ -103,7 +138,7 @@ public class DealService {
             Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
         }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
         while (true) {
-            rateLimiter.acquire(1);
+            rateGovernor.acquire();
             JSONObject jsonObject = (JSONObject) httpService.getRequest(url, queryParam);
             JSONArray jsonDealIds = jsonObject.getJSONArray("results");
             threadPoolExecutor.submit(() -> {
@@ -126,15 +161,16 @@ public class DealService {
 
     static HashMap<Long, Deal> getAllDeals(HttpService httpService,
                                            PropertyData propertyData,
-                                           final RateLimiter rateLimiter
+                                           final ApiRateGovernor rateGovernor
     ) throws HubSpotException {
         Map<String, Object> map = new HashMap<>();
         ConcurrentHashMap<Long, Deal> deals = new ConcurrentHashMap<>();
-        map.put("limit", LIMIT);
-        map.put("properties", propertyData.getPropertyNamesString());
+        int pageSize = HubSpotUtils.getPageSize(CRMObjectType.DEALS);
+        List<String> propertyChunks = HubSpotUtils.chunkProperties(propertyData.getPropertyNames());
+        map.put("limit", pageSize);
         map.put("archived", false);
         long after;
-        long count = HubSpotUtils.getObjectCount(httpService, CRMObjectType.DEALS, rateLimiter);
+        long count = HubSpotUtils.getObjectCount(httpService, CRMObjectType.DEALS, rateGovernor);
         try {
             Files.createDirectories(cacheFolder);
         }
@@ -142,7 +178,7 @@ public class DealService {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to create folder {}", cacheFolder, e);
             System.exit(ErrorCodes.IO_CREATE_DIRECTORY.getErrorCode());
         }
-        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) LIMIT) * Math.pow(MAX_SIZE, -0.6));
+        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) pageSize) * Math.pow(MAX_SIZE, -0.6));
         ThreadPoolExecutor threadPoolExecutor = new CacheThreadPoolExecutor(1,
                                                                             STARTING_POOL_SIZE,
                                                                             0L,
@@ -165,15 +201,26 @@ public class DealService {
             String debugMessage = String.format(debugMessageFormat, "getAllDeals", load);
             Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
         }, 0, 1, TimeUnit.SECONDS);
-        while (true) {
-            rateLimiter.acquire(1);
-            JSONObject jsonObject = (JSONObject) httpService.getRequest(url, map);
-            threadPoolExecutor.submit(process(deals, pb, jsonObject));
-            if (!jsonObject.has("paging")) {
-                break;
+        if (SegmentedExport.isSegmented(count)) {
+            SegmentedExport.export(httpService,
+                                   rateGovernor,
+                                   CRMObjectType.DEALS,
+                                   propertyData,
+                                   count,
+                                   pageSize,
+                                   page -> threadPoolExecutor.submit(process(deals, pb, page))
+            );
+        }
+        else {
+            while (true) {
+                JSONObject jsonObject = HubSpotUtils.getPage(httpService, rateGovernor, url, map, propertyChunks);
+                threadPoolExecutor.submit(process(deals, pb, jsonObject));
+                if (!jsonObject.has("paging")) {
+                    break;
+                }
+                after = jsonObject.getJSONObject("paging").getJSONObject("next").getLong("after");
+                map.put("after", after);
             }
-            after = jsonObject.getJSONObject("paging").getJSONObject("next").getLong("after");
-            map.put("after", after);
         }
         Utils.shutdownExecutors(logger, threadPoolExecutor);
         Utils.shutdownUpdaters(logger, scheduledExecutorService);
@@ -237,16 +284,14 @@ public class DealService {
 
     static HashMap<Long, Deal> getUpdatedDeals(HttpService httpService,
                                                PropertyData propertyData,
+                                               final ApiRateGovernor rateGovernor,
                                                long lastExecution,
                                                long lastFinished
     ) throws HubSpotException {
-        String url = "/crm/v3/objects/deals/search";
-        final RateLimiter rateLimiter = RateLimiter.create(3.0);
         ConcurrentHashMap<Long, Deal> deals = new ConcurrentHashMap<>();
-        JSONObject body = HubSpotUtils.getUpdateBody(CRMObjectType.DEALS, propertyData, lastExecution, LIMIT);
-        long after;
-        long count = HubSpotUtils.getUpdateCount(httpService, rateLimiter, CRMObjectType.DEALS, lastExecution);
-        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) LIMIT) * Math.pow(MAX_SIZE, -0.6));
+        int pageSize = HubSpotUtils.getPageSize(CRMObjectType.DEALS);
+        long count = HubSpotUtils.getUpdateCount(httpService, rateGovernor, CRMObjectType.DEALS, lastExecution);
+        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) pageSize) * Math.pow(MAX_SIZE, -0.6));
         UpdateThreadPoolExecutor threadPoolExecutor = new UpdateThreadPoolExecutor(1,
                                                                                    STARTING_POOL_SIZE,
                                                                                    0L,
@@ -272,16 +317,15 @@ public class DealService {
         }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
         ProgressBar pb = Utils.createProgressBar("Grabbing and Writing Updated Deals", count);
         Utils.sleep(WARMUP);
-        while (true) {
-            rateLimiter.acquire(1);
-            JSONObject jsonObject = (JSONObject) httpService.postRequest(url, body);
-            threadPoolExecutor.submit(process(deals, pb, jsonObject));
-            if (!jsonObject.has("paging")) {
-                break;
-            }
-            after = jsonObject.getJSONObject("paging").getJSONObject("next").getLong("after");
-            body.put("after", after);
-        }
+        SegmentedExport.exportUpdates(httpService,
+                                      rateGovernor,
+                                      CRMObjectType.DEALS,
+                                      propertyData,
+                                      lastExecution,
+                                      count,
+                                      pageSize,
+                                      page -> threadPoolExecutor.submit(process(deals, pb, page))
+        );
         Utils.shutdownExecutors(logger, threadPoolExecutor);
         Utils.shutdownUpdaters(logger, scheduledExecutorService);
         pb.close();
@@ -290,11 +334,16 @@ public class DealService {
 
     static HashMap<Long, Deal> readDealJsons() throws HubSpotException {
         ConcurrentHashMap<Long, Deal> deals = new ConcurrentHashMap<>();
-        File[] files = cacheFolder.toFile().listFiles();
-        if (!Utils.isArrayNullOrEmpty(files)) {
-            List<File> fileList = Arrays.asList(files);
-            Iterable<List<File>> partitions = Iterables.partition(fileList, LIMIT);
-            int capacity = (int) Math.ceil(Math.ceil((double) fileList.size() / (double) LIMIT) *
+        List<Long> ids;
+        try {
+            ids = JsonCache.list(cacheFolder);
+        }
+        catch (IOException e) {
+            throw new HubSpotException("Unable to read cache " + cacheFolder, ErrorCodes.IO_READ.getErrorCode(), e);
+        }
+        if (!ids.isEmpty()) {
+            Iterable<List<Long>> partitions = Iterables.partition(ids, LIMIT);
+            int capacity = (int) Math.ceil(Math.ceil((double) ids.size() / (double) LIMIT) *
                                            Math.pow(MAX_SIZE, -0.6));
             CustomThreadPoolExecutor threadPoolExecutor = new CustomThreadPoolExecutor(1,
                                                                                        STARTING_POOL_SIZE,
@@ -317,13 +366,12 @@ public class DealService {
                 String debugMessage = String.format(debugMessageFormat, "readDealJsons", load);
                 Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
             }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
-            ProgressBar pb = Utils.createProgressBar("Reading Deals", fileList.size());
+            ProgressBar pb = Utils.createProgressBar("Reading Deals", ids.size());
             Utils.sleep(WARMUP);
-            for (List<File> partition : partitions) {
+            for (List<Long> partition : partitions) {
                 threadPoolExecutor.submit(() -> {
-                    for (File file : partition) {
-                        String jsonString = FileUtils.readJsonString(logger, file);
-                        JSONObject jsonObject = Utils.formatJson(new JSONObject(jsonString));
+                    for (long id : partition) {
+                        JSONObject jsonObject = Utils.formatJson(JsonCache.read(cacheFolder, id));
                         Deal deal = parseDealData(jsonObject);
                         deals.put(deal.getId(), deal);
                         pb.step();
@@ -339,15 +387,16 @@ public class DealService {
         return new HashMap<>(deals);
     }
 
-    static void writeDealJson(HttpService httpService, PropertyData propertyData, final RateLimiter rateLimiter)
+    static void writeDealJson(HttpService httpService, PropertyData propertyData, final ApiRateGovernor rateGovernor)
     throws HubSpotException {
         Map<String, Object> map = new HashMap<>();
-        map.put("limit", LIMIT);
-        map.put("properties", propertyData.getPropertyNamesString());
+        int pageSize = HubSpotUtils.getPageSize(CRMObjectType.DEALS);
+        List<String> propertyChunks = HubSpotUtils.chunkProperties(propertyData.getPropertyNames());
+        map.put("limit", pageSize);
         map.put("archived", false);
         long after;
-        long count = HubSpotUtils.getObjectCount(httpService, CRMObjectType.CONTACTS, rateLimiter);
-        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) LIMIT) * Math.pow(MAX_SIZE, -0.6));
+        long count = HubSpotUtils.getObjectCount(httpService, CRMObjectType.CONTACTS, rateGovernor);
+        int capacity = (int) Math.ceil(Math.ceil((double) count / (double) pageSize) * Math.pow(MAX_SIZE, -0.6));
         CacheThreadPoolExecutor threadPoolExecutor = new CacheThreadPoolExecutor(1,
                                                                                  STARTING_POOL_SIZE,
                                                                                  0L,
@@ -379,13 +428,11 @@ public class DealService {
         ProgressBar pb = Utils.createProgressBar("Writing Contacts", count);
         Utils.sleep(WARMUP);
         while (true) {
-            rateLimiter.acquire(1);
-            JSONObject jsonObject = (JSONObject) httpService.getRequest(url, map);
+            JSONObject jsonObject = HubSpotUtils.getPage(httpService, rateGovernor, url, map, propertyChunks);
             threadPoolExecutor.submit(() -> {
                 for (Object o : jsonObject.getJSONArray("results")) {
                     JSONObject contactJson = (JSONObject) o;
-                    contactJson = Utils.formatJson(contactJson);
-                    FileUtils.writeJsonCache(cacheFolder, contactJson);
+                    JsonCache.write(cacheFolder, contactJson);
                     pb.step();
                     Utils.sleep(1);
                 }
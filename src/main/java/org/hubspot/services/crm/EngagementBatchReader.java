@@ -0,0 +1,254 @@
+package org.hubspot.services.crm;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.utils.HttpService;
+import org.hubspot.utils.HubSpotUtils;
+import org.hubspot.utils.http.ApiRateGovernor;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reads engagements by id through the v3 batch read endpoint of each engagement object type, taking
+ * {@link HubSpotUtils#BATCH_LIMIT} engagements per request instead of one request per engagement. The v3 objects are
+ * converted into the shape of {@code /engagements/v1/engagements/{id}}, so they are processed and cached exactly like
+ * engagements read through the v1 API.
+ *
+ * @author Nicholas Curl
+ */
+public class EngagementBatchReader {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger                    logger     = LogManager.getLogger(EngagementBatchReader.class);
+    private static final List<String>              COMMON     = List.of("hs_timestamp",
+                                                                        "hs_createdate",
+                                                                        "hs_lastmodifieddate",
+                                                                        "hubspot_owner_id"
+    );
+    /**
+     * The properties read for each engagement object type, on top of {@link #COMMON}
+     */
+    private static final Map<String, List<String>> PROPERTIES = Map.of(
+            "emails",
+            List.of("hs_email_direction", "hs_email_headers", "hs_email_subject", "hs_email_text"),
+            "notes",
+            List.of("hs_note_body", "hs_attachment_ids"),
+            "calls",
+            List.of("hs_call_title",
+                    "hs_call_body",
+                    "hs_call_to_number",
+                    "hs_call_from_number",
+                    "hs_call_duration",
+                    "hs_call_status",
+                    "hs_call_recording_url"
+            ),
+            "meetings",
+            List.of("hs_meeting_title", "hs_meeting_body", "hs_meeting_start_time", "hs_meeting_end_time"),
+            "tasks",
+            List.of("hs_task_subject",
+                    "hs_task_body",
+                    "hs_task_status",
+                    "hs_task_type",
+                    "hs_task_completion_date",
+                    "hs_task_reminders"
+            )
+    );
+
+    private static void putString(JSONObject metadata, String key, JSONObject properties, String property) {
+        String value = properties.optString(property, null);
+        if (value != null && !value.isEmpty()) {
+            metadata.put(key, value);
+        }
+    }
+
+    private static void putMillis(JSONObject metadata, String key, JSONObject properties, String property) {
+        long value = toMillis(properties.opt(property));
+        if (value != -1) {
+            metadata.put(key, value);
+        }
+    }
+
+    private static List<String> split(String value) {
+        List<String> values = new ArrayList<>();
+        if (value != null) {
+            for (String part : value.split(";")) {
+                if (!part.isBlank()) {
+                    values.add(part.trim());
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Converts a v3 date time to epoch milliseconds. The value is whatever the json decoder made of it, a number of
+     * milliseconds, a {@link Date} for ISO-8601 instants it recognizes, or the string itself for any other instant.
+     *
+     * @param value The date time
+     *
+     * @return The epoch milliseconds, or -1 if the value is empty or not a date time
+     */
+    private static long toMillis(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        else if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        else if (!(value instanceof String) || ((String) value).isBlank()) {
+            return -1;
+        }
+        String text = ((String) value).trim();
+        try {
+            return Long.parseLong(text);
+        }
+        catch (NumberFormatException e) {
+            try {
+                return Instant.parse(text).toEpochMilli();
+            }
+            catch (DateTimeParseException ignored) {
+                return -1;
+            }
+        }
+    }
+
+    private static List<JSONObject> toV1(String objectType, List<JSONObject> objects) {
+        List<JSONObject> engagements = new ArrayList<>(objects.size());
+        for (JSONObject object : objects) {
+            engagements.add(toV1(objectType, object));
+        }
+        return engagements;
+    }
+
+    /**
+     * Converts a v3 engagement object into the shape of {@code /engagements/v1/engagements/{id}}, filling in the
+     * metadata fields that {@link EngagementsProcessor} reads
+     *
+     * @param objectType The engagement object type, such as {@code emails}
+     * @param object     The v3 engagement object
+     *
+     * @return The engagement in the v1 shape
+     */
+    static JSONObject toV1(String objectType, JSONObject object) {
+        JSONObject properties = object.optJSONObject("properties");
+        if (properties == null) {
+            properties = new JSONObject();
+        }
+        long id = Long.parseLong(object.get("id").toString());
+        JSONObject engagement = new JSONObject().put("id", id).put("active", !object.optBoolean("archived"));
+        putMillis(engagement, "createdAt", properties, "hs_createdate");
+        putMillis(engagement, "lastUpdated", properties, "hs_lastmodifieddate");
+        putMillis(engagement, "timestamp", properties, "hs_timestamp");
+        putString(engagement, "ownerId", properties, "hubspot_owner_id");
+        JSONObject metadata = new JSONObject();
+        JSONArray attachments = new JSONArray();
+        switch (objectType) {
+            case "emails":
+                String direction = properties.optString("hs_email_direction", "");
+                engagement.put("type", direction.isEmpty() ? "EMAIL" : direction);
+                JSONObject headers = new JSONObject();
+                String rawHeaders = properties.optString("hs_email_headers", "");
+                if (!rawHeaders.isEmpty()) {
+                    try {
+                        headers = new JSONObject(rawHeaders);
+                    }
+                    catch (JSONException e) {
+                        logger.warn("Unable to parse the headers of email {}", id, e);
+                    }
+                }
+                for (String key : List.of("from", "to", "cc", "bcc")) {
+                    if (headers.has(key)) {
+                        metadata.put(key, headers.get(key));
+                    }
+                }
+                putString(metadata, "subject", properties, "hs_email_subject");
+                putString(metadata, "text", properties, "hs_email_text");
+                break;
+            case "notes":
+                engagement.put("type", "NOTE");
+                putString(metadata, "body", properties, "hs_note_body");
+                for (String attachment : split(properties.optString("hs_attachment_ids", null))) {
+                    attachments.put(new JSONObject().put("id", Long.parseLong(attachment)));
+                }
+                break;
+            case "calls":
+                engagement.put("type", "CALL");
+                putString(metadata, "title", properties, "hs_call_title");
+                putString(metadata, "body", properties, "hs_call_body");
+                putString(metadata, "toNumber", properties, "hs_call_to_number");
+                putString(metadata, "fromNumber", properties, "hs_call_from_number");
+                putMillis(metadata, "durationMilliseconds", properties, "hs_call_duration");
+                putString(metadata, "status", properties, "hs_call_status");
+                putString(metadata, "recordingUrl", properties, "hs_call_recording_url");
+                break;
+            case "meetings":
+                engagement.put("type", "MEETING");
+                putString(metadata, "title", properties, "hs_meeting_title");
+                putString(metadata, "body", properties, "hs_meeting_body");
+                putMillis(metadata, "startTime", properties, "hs_meeting_start_time");
+                putMillis(metadata, "endTime", properties, "hs_meeting_end_time");
+                break;
+            case "tasks":
+                engagement.put("type", "TASK");
+                putString(metadata, "subject", properties, "hs_task_subject");
+                putString(metadata, "body", properties, "hs_task_body");
+                putString(metadata, "status", properties, "hs_task_status");
+                putString(metadata, "taskType", properties, "hs_task_type");
+                putMillis(metadata, "completionDate", properties, "hs_task_completion_date");
+                metadata.put("forObjectType", "CONTACT");
+                JSONArray reminders = new JSONArray();
+                for (Object reminder : split(properties.optString("hs_task_reminders", null))) {
+                    long millis = toMillis(reminder);
+                    if (millis != -1) {
+                        reminders.put(millis);
+                    }
+                }
+                metadata.put("reminders", reminders);
+                break;
+            default:
+                engagement.put("type", objectType.toUpperCase(Locale.ROOT));
+                break;
+        }
+        return new JSONObject().put("engagement", engagement).put("attachments", attachments).put("metadata", metadata);
+    }
+
+    /**
+     * Reads the engagements with the batch read endpoint of each of their types, sending every chunk of every type at
+     * the same time
+     *
+     * @param httpService  The http service to send the requests with
+     * @param rateGovernor The rate governor to acquire the request permits from
+     * @param idsByType    The ids of the engagements keyed by engagement object type, such as {@code emails}
+     *
+     * @return A future of the engagements in the v1 shape, engagements that do not exist being left out
+     */
+    static CompletableFuture<List<JSONObject>> read(HttpService httpService,
+                                                    final ApiRateGovernor rateGovernor,
+                                                    Map<String, ? extends Collection<Long>> idsByType
+    ) {
+        List<CompletableFuture<List<JSONObject>>> futures = new ArrayList<>();
+        for (Map.Entry<String, ? extends Collection<Long>> entry : idsByType.entrySet()) {
+            String objectType = entry.getKey();
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            List<String> propertyNames = new ArrayList<>(COMMON);
+            propertyNames.addAll(PROPERTIES.getOrDefault(objectType, List.of()));
+            futures.add(HubSpotUtils.batchRead(httpService, rateGovernor, objectType, propertyNames, entry.getValue())
+                                    .thenApply(objects -> toV1(objectType, objects)));
+        }
+        return HttpService.allOf(futures).thenApply(results -> {
+            List<JSONObject> engagements = new ArrayList<>();
+            results.forEach(engagements::addAll);
+            return engagements;
+        });
+    }
+}
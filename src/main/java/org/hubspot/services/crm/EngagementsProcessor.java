@@ -1,20 +1,20 @@
 package org.hubspot.services.crm;
 
 import com.google.common.collect.Iterables;
-import com.google.common.util.concurrent.RateLimiter;
 import me.tongfei.progressbar.ProgressBar;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hubspot.objects.crm.engagements.*;
 import org.hubspot.objects.crm.engagements.Email.Details;
 import org.hubspot.utils.*;
+import org.hubspot.utils.cache.JsonCache;
 import org.hubspot.utils.concurrent.*;
 import org.hubspot.utils.exceptions.HubSpotException;
 import org.hubspot.utils.exceptions.NullException;
+import org.hubspot.utils.http.ApiRateGovernor;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -30,15 +30,22 @@ public class EngagementsProcessor {
     /**
      * The instance of the logger
      */
-    private static final Logger      logger             = LogManager.getLogger(EngagementsProcessor.class);
-    private static final int         WORDWRAP           = 80;
-    private static final Path        cacheFolder        = Paths.get("./cache/engagements");
-    private static final RateLimiter rateLimiter        = RateLimiter.create(13.0);
-    private static final int         LIMIT              = 10;
-    private static final long        UPDATE_INTERVAL    = 100;
-    private static final int         STARTING_POOL_SIZE = Runtime.getRuntime().availableProcessors();
-    private static final String      debugMessageFormat = "Method %-30s\tProcess Load: %f";
-    private static final int         MAX_SIZE           = 50;
+    private static final Logger logger             = LogManager.getLogger(EngagementsProcessor.class);
+    private static final int    WORDWRAP           = 80;
+    private static final Path   cacheFolder        = Paths.get("./cache/engagements");
+    private static final int    LIMIT              = 10;
+    /**
+     * The most associations the v1 associations endpoint returns per page
+     */
+    private static final int    ASSOCIATION_LIMIT  = 100;
+    /**
+     * The most engagements the paged engagements endpoint returns per page
+     */
+    private static final int    PAGED_LIMIT        = 250;
+    private static final long   UPDATE_INTERVAL    = 100;
+    private static final int    STARTING_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    private static final String debugMessageFormat = "Method %-30s\tProcess Load: %f";
+    private static final int    MAX_SIZE           = 50;
 
     public static boolean cacheExists() {
         return cacheFolder.toFile().exists();
@@ -243,60 +250,151 @@ public class EngagementsProcessor {
         }
     }
 
-    static ArrayList<Long> getAllEngagementIds(HttpService httpService, long contactId) throws HubSpotException {
+    static ArrayList<Long> getAllEngagementIds(HttpService httpService,
+                                               final ApiRateGovernor rateGovernor,
+                                               long contactId
+    ) throws HubSpotException {
         String url = "/crm-associations/v1/associations/" + contactId + "/HUBSPOT_DEFINED/9";
         Map<String, Object> queryParam = new HashMap<>();
-        queryParam.put("limit", LIMIT);
-        List<Long> engagementIds = Collections.synchronizedList(new ArrayList<>());
-        long offset;
+        queryParam.put("limit", ASSOCIATION_LIMIT);
+        ArrayList<Long> engagementIds = new ArrayList<>();
+        while (true) {
+            rateGovernor.acquire();
+            JSONObject jsonObject = (JSONObject) httpService.getRequest(url, queryParam);
+            JSONArray jsonEngagementIds = jsonObject.getJSONArray("results");
+            for (int i = 0; i < jsonEngagementIds.length(); i++) {
+                engagementIds.add(jsonEngagementIds.getLong(i));
+            }
+            if (!jsonObject.getBoolean("hasMore")) {
+                break;
+            }
+            queryParam.put("offset", jsonObject.getLong("offset"));
+        }
+        return engagementIds;
+    }
+
+    /**
+     * Gets the engagement ids of many contacts at once with the batch associations endpoint, so they can be passed to
+     * {@link #getAllEngagements(HttpService, ApiRateGovernor, long, Map)} without a lookup per contact
+     *
+     * @param httpService  The http service to send the requests with
+     * @param rateGovernor The rate governor to acquire the request permits from
+     * @param contactIds   The ids of the contacts
+     *
+     * @return The engagement ids by engagement object type, such as {@code emails}, keyed by contact id
+     *
+     * @throws HubSpotException if a request fails
+     */
+    static HashMap<Long, Map<String, List<Long>>> getAllEngagementIds(HttpService httpService,
+                                                                      final ApiRateGovernor rateGovernor,
+                                                                      Collection<Long> contactIds
+    ) throws HubSpotException {
+        return AssociationService.getEngagementAssociations(httpService, rateGovernor, contactIds);
+    }
+
+    /**
+     * Exports every engagement in the portal through the paged engagements endpoint, routing each one to the given
+     * contacts it is associated with and caching it in their folders. Engagements of other contacts are skipped, and
+     * every given contact gets a folder so that contacts without engagements are known to be up to date.
+     *
+     * @param httpService  The http service to send the requests with
+     * @param rateGovernor The rate governor to acquire the request permits from
+     * @param contactIds   The ids of the contacts to export the engagements of
+     *
+     * @return The engagements keyed by contact id, with an entry for each of the given contacts
+     *
+     * @throws HubSpotException if a request fails
+     */
+    static HashMap<Long, EngagementData> getAllEngagements(HttpService httpService,
+                                                           final ApiRateGovernor rateGovernor,
+                                                           Collection<Long> contactIds
+    ) throws HubSpotException {
+        String url = "/engagements/v1/engagements/paged";
+        Map<String, Object> queryParam = new HashMap<>();
+        queryParam.put("limit", PAGED_LIMIT);
+        ConcurrentHashMap<Long, EngagementData> contactsEngagementData = new ConcurrentHashMap<>();
+        for (long contactId : contactIds) {
+            Path folder = cacheFolder.resolve(contactId + "/");
+            try {
+                JsonCache.createFolder(folder);
+            }
+            catch (IOException e) {
+                throw new HubSpotException("Unable to create cache directory " + folder,
+                                           ErrorCodes.IO_CREATE_DIRECTORY.getErrorCode(),
+                                           e
+                );
+            }
+            contactsEngagementData.put(contactId, new EngagementData(new ArrayList<>(), new ArrayList<>()));
+        }
         CustomThreadPoolExecutor threadPoolExecutor = new CustomThreadPoolExecutor(1,
                                                                                    STARTING_POOL_SIZE,
                                                                                    0L,
                                                                                    TimeUnit.MILLISECONDS,
                                                                                    new LinkedBlockingQueue<>(200),
                                                                                    new CustomThreadFactory(
-                                                                                           "EngagementIds_Contact_" +
-                                                                                           contactId),
+                                                                                           "EngagementExporter"),
                                                                                    new StoringRejectedExecutionHandler()
         );
         Utils.addExecutor(threadPoolExecutor);
         ScheduledExecutorService scheduledExecutorService
-                = Executors.newSingleThreadScheduledExecutor(new CustomThreadFactory("EngagementIdsUpdater_Contact_" +
-                                                                                     contactId));
+                = Executors.newSingleThreadScheduledExecutor(new CustomThreadFactory("EngagementExporterUpdater"));
         scheduledExecutorService.scheduleAtFixedRate(() -> {
             double load = CPUMonitor.getProcessLoad();
-            String debugMessage = String.format(debugMessageFormat, "getAllEngagementIds", load);
+            String debugMessage = String.format(debugMessageFormat, "getAllEngagements", load);
             Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
         }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
+        ProgressBar pb = Utils.createProgressBar("Exporting Engagements");
         while (true) {
-            rateLimiter.acquire(1);
+            rateGovernor.acquire();
             JSONObject jsonObject = (JSONObject) httpService.getRequest(url, queryParam);
-            JSONArray jsonEngagementIds = jsonObject.getJSONArray("results");
+            JSONArray results = jsonObject.getJSONArray("results");
             threadPoolExecutor.submit(() -> {
-                for (int i = 0; i < jsonEngagementIds.length(); i++) {
-                    engagementIds.add(jsonEngagementIds.getLong(i));
-                    Utils.sleep(1);
+                for (Object o : results) {
+                    route(contactsEngagementData, (JSONObject) o);
+                    pb.step();
                 }
                 return null;
             });
             if (!jsonObject.getBoolean("hasMore")) {
                 break;
             }
-            offset = jsonObject.getLong("offset");
-            queryParam.put("offset", offset);
+            queryParam.put("offset", jsonObject.getLong("offset"));
         }
         Utils.shutdownExecutors(logger, threadPoolExecutor);
         Utils.shutdownUpdaters(logger, scheduledExecutorService);
-        return new ArrayList<>(engagementIds);
+        pb.close();
+        return new HashMap<>(contactsEngagementData);
     }
 
-    static EngagementData getAllEngagements(HttpService httpService, long contactId) throws HubSpotException {
-        ArrayList<Long> engagementIdsToIterate = getAllEngagementIds(httpService, contactId);
-        Iterable<List<Long>> partitions = Iterables.partition(engagementIdsToIterate, LIMIT);
-        int capacity = (int) Math.ceil(Math.ceil((double) engagementIdsToIterate.size() / (double) LIMIT) *
-                                       Math.pow(MAX_SIZE, -0.6));
-        List<Long> engagementIds = Collections.synchronizedList(new ArrayList<>(engagementIdsToIterate));
-        List<Engagement> engagements = Collections.synchronizedList(new ArrayList<>());
+    static EngagementData getAllEngagements(HttpService httpService,
+                                            final ApiRateGovernor rateGovernor,
+                                            long contactId
+    ) throws HubSpotException {
+        return getAllEngagements(httpService,
+                                 rateGovernor,
+                                 contactId,
+                                 getAllEngagementIds(httpService, rateGovernor, List.of(contactId)).get(contactId)
+        );
+    }
+
+    /**
+     * Gets and caches the engagements of the contact whose ids are already known, reading them with the batch read
+     * endpoint of each engagement type
+     *
+     * @param httpService            The http service to send the requests with
+     * @param rateGovernor           The rate governor to acquire the request permits from
+     * @param contactId              The id of the contact
+     * @param engagementIdsToIterate The ids of the engagements associated with the contact by engagement object type
+     *
+     * @return The engagements of the contact
+     *
+     * @throws HubSpotException if a request fails
+     */
+    static EngagementData getAllEngagements(HttpService httpService,
+                                            final ApiRateGovernor rateGovernor,
+                                            long contactId,
+                                            Map<String, List<Long>> engagementIdsToIterate
+    ) throws HubSpotException {
         try {
             Files.createDirectories(cacheFolder);
         }
@@ -306,7 +404,7 @@ public class EngagementsProcessor {
         }
         Path folder = cacheFolder.resolve(contactId + "/");
         try {
-            Files.createDirectories(folder);
+            JsonCache.createFolder(folder);
         }
         catch (IOException e) {
             logger.fatal(LogMarkers.ERROR.getMarker(),
@@ -316,148 +414,119 @@ public class EngagementsProcessor {
             );
             System.exit(ErrorCodes.IO_CREATE_DIRECTORY.getErrorCode());
         }
-        CacheThreadPoolExecutor threadPoolExecutor = new CacheThreadPoolExecutor(1,
-                                                                                 STARTING_POOL_SIZE,
-                                                                                 0L,
-                                                                                 TimeUnit.MILLISECONDS,
-                                                                                 new LinkedBlockingQueue<>(Math.max(
-                                                                                         capacity,
-                                                                                         Runtime.getRuntime()
-                                                                                                .availableProcessors()
-                                                                                 )),
-                                                                                 new CustomThreadFactory(
-                                                                                         "EngagementGrabber_Contact_" +
-                                                                                         contactId),
-                                                                                 new StoringRejectedExecutionHandler(),
-                                                                                 folder
-        );
-        Utils.addExecutor(threadPoolExecutor);
-        ScheduledExecutorService scheduledExecutorService
-                = Executors.newSingleThreadScheduledExecutor(new CustomThreadFactory("EngagementGrabberUpdater_Contact_" +
-                                                                                     contactId));
-        scheduledExecutorService.scheduleAtFixedRate(() -> {
-            double load = CPUMonitor.getProcessLoad();
-            String debugMessage = String.format(debugMessageFormat, "getAllEngagements", load);
-            Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
-        }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
-        for (List<Long> partition : partitions) {
-            threadPoolExecutor.submit(() -> {
-                for (Long engagementId : partition) {
-                    Engagement engagement = getEngagement(httpService, folder, engagementId);
-                    if (engagement == null) {
-                        engagementIds.remove(engagementId);
-                    }
-                    else {
-                        engagements.add(engagement);
-                    }
-                    Utils.sleep(1);
-                }
-                return null;
-            });
+        try {
+            return readEngagements(httpService, rateGovernor, folder, engagementIdsToIterate);
         }
-        Utils.shutdownExecutors(logger, threadPoolExecutor);
-        Utils.shutdownUpdaters(logger, scheduledExecutorService);
-        return new EngagementData(new ArrayList<>(engagementIds), new ArrayList<>(engagements));
+        catch (HubSpotException e) {
+            JsonCache.delete(folder);
+            throw e;
+        }
+    }
+
+    static Engagement getEngagement(HttpService service,
+                                    final ApiRateGovernor rateGovernor,
+                                    Path folder,
+                                    long engagementId
+    ) throws HubSpotException {
+        return HttpService.await(getEngagementAsync(service, rateGovernor, folder, engagementId));
     }
 
-    static Engagement getEngagement(HttpService service, Path folder, long engagementId) throws HubSpotException {
+    /**
+     * Requests the engagement without blocking, processing and caching it once the response arrives
+     *
+     * @param service      The http service to send the request with
+     * @param rateGovernor The rate governor to acquire the request permit from
+     * @param folder       The cache folder to write the engagement json to
+     * @param engagementId The id of the engagement
+     *
+     * @return A future of the engagement, or of {@code null} if it is a conversation
+     */
+    static CompletableFuture<Engagement> getEngagementAsync(HttpService service,
+                                                            final ApiRateGovernor rateGovernor,
+                                                            Path folder,
+                                                            long engagementId
+    ) {
         String engagementUrl = "/engagements/v1/engagements/" + engagementId;
-        rateLimiter.acquire(1);
-        JSONObject engagementJson = (JSONObject) service.getRequest(engagementUrl);
-        if (engagementJson == null) {
-            throw new HubSpotException(new NullException("Unable to grab engagement"),
-                                       ErrorCodes.NULL_EXCEPTION.getErrorCode()
-            );
-        }
-        Engagement engagement = process(engagementJson);
-        if (engagement == null) {
-            JSONObject engagementDataJson = engagementJson.getJSONObject("engagement");
-            String type = engagementDataJson.getString("type");
-            if (!type.toLowerCase().contains("conversation")) {
-                throw new HubSpotException("Invalid engagement type", ErrorCodes.INVALID_ENGAGEMENT.getErrorCode());
-            }
-            else {
-                return null;
-            }
-        }
-        else {
+        rateGovernor.acquire();
+        return service.getRequestAsync(engagementUrl).thenApply(response -> {
             try {
-                FileUtils.writeJsonCache(folder, engagementJson);
+                return processAndCache(folder, (JSONObject) response);
             }
-            catch (IOException e) {
-                throw new HubSpotException("Unable to write json to cache", ErrorCodes.IO_WRITE.getErrorCode(), e);
+            catch (HubSpotException e) {
+                throw new CompletionException(e);
             }
-            return engagement;
-        }
+        });
     }
 
-    static EngagementData getUpdatedEngagements(HttpService httpService, long contactId, long lastFinished)
-    throws HubSpotException {
-        Path folder = cacheFolder.resolve(contactId + "/");
-        ArrayList<Long> engagementIdsToIterate = getAllEngagementIds(httpService, contactId);
-        Iterable<List<Long>> partitions = Iterables.partition(engagementIdsToIterate, LIMIT);
-        int capacity = (int) Math.ceil(Math.ceil((double) engagementIdsToIterate.size() / (double) LIMIT) *
-                                       Math.pow(MAX_SIZE, -0.6));
-        List<Long> engagementIds = Collections.synchronizedList(new ArrayList<>(engagementIdsToIterate));
-        List<Engagement> engagements = Collections.synchronizedList(new ArrayList<>());
-        UpdateThreadPoolExecutor threadPoolExecutor = new UpdateThreadPoolExecutor(1,
-                                                                                   STARTING_POOL_SIZE,
-                                                                                   0L,
-                                                                                   TimeUnit.MILLISECONDS,
-                                                                                   new LinkedBlockingQueue<>(Math.max(
-                                                                                           capacity,
-                                                                                           Runtime.getRuntime()
-                                                                                                  .availableProcessors()
-                                                                                   )),
-                                                                                   new CustomThreadFactory(
-                                                                                           "EngagementUpdateGrabber_Contact_" +
-                                                                                           contactId),
-                                                                                   new StoringRejectedExecutionHandler(),
-                                                                                   folder,
-                                                                                   lastFinished
+    static EngagementData getUpdatedEngagements(HttpService httpService,
+                                                final ApiRateGovernor rateGovernor,
+                                                long contactId,
+                                                long lastFinished
+    ) throws HubSpotException {
+        return getUpdatedEngagements(httpService,
+                                     rateGovernor,
+                                     contactId,
+                                     getAllEngagementIds(httpService, rateGovernor, List.of(contactId)).get(contactId),
+                                     lastFinished
         );
-        Utils.addExecutor(threadPoolExecutor);
-        ScheduledExecutorService scheduledExecutorService
-                = Executors.newSingleThreadScheduledExecutor(new CustomThreadFactory(
-                "EngagementUpdateGrabberUpdater_Contact_" + contactId));
-        scheduledExecutorService.scheduleAtFixedRate(() -> {
-            double load = CPUMonitor.getProcessLoad();
-            String debugMessage = String.format(debugMessageFormat, "getUpdatedEngagements", load);
-            Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
-        }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
-        for (List<Long> partition : partitions) {
-            threadPoolExecutor.submit(() -> {
-                for (Long engagementId : partition) {
-                    Path file = folder.resolve(engagementId + ".json");
-                    if (!file.toFile().exists()) {
-                        Engagement engagement = getEngagement(httpService, folder, engagementId);
-                        if (engagement == null) {
-                            engagementIds.remove(engagementId);
-                        }
-                        else {
-                            engagements.add(engagement);
-                        }
-                    }
-                    else {
-                        engagementIds.remove(engagementId);
+    }
+
+    /**
+     * Gets and caches the engagements of the contact that are not cached yet, whose ids are already known
+     *
+     * @param httpService            The http service to send the requests with
+     * @param rateGovernor           The rate governor to acquire the request permits from
+     * @param contactId              The id of the contact
+     * @param engagementIdsToIterate The ids of the engagements associated with the contact by engagement object type
+     * @param lastFinished           When the last run finished, the engagements cached after which are deleted if a
+     *                               request fails
+     *
+     * @return The engagements that were not cached yet
+     *
+     * @throws HubSpotException if a request fails
+     */
+    static EngagementData getUpdatedEngagements(HttpService httpService,
+                                                final ApiRateGovernor rateGovernor,
+                                                long contactId,
+                                                Map<String, List<Long>> engagementIdsToIterate,
+                                                long lastFinished
+    ) throws HubSpotException {
+        Path folder = cacheFolder.resolve(contactId + "/");
+        Map<String, List<Long>> missingIds = new LinkedHashMap<>();
+        try {
+            JsonCache.createFolder(folder);
+            for (Map.Entry<String, List<Long>> entry : engagementIdsToIterate.entrySet()) {
+                for (Long engagementId : entry.getValue()) {
+                    if (!JsonCache.contains(folder, engagementId)) {
+                        missingIds.computeIfAbsent(entry.getKey(), type -> new ArrayList<>()).add(engagementId);
                     }
-                    Utils.sleep(1);
                 }
-                return null;
-            });
+            }
+        }
+        catch (IOException e) {
+            throw new HubSpotException("Unable to read cache " + folder, ErrorCodes.IO_READ.getErrorCode(), e);
+        }
+        try {
+            return readEngagements(httpService, rateGovernor, folder, missingIds);
+        }
+        catch (HubSpotException e) {
+            JsonCache.deleteRecentlyUpdated(folder, lastFinished);
+            throw e;
         }
-        Utils.shutdownExecutors(logger, threadPoolExecutor);
-        Utils.shutdownUpdaters(logger, scheduledExecutorService);
-        return new EngagementData(new ArrayList<>(engagementIds), new ArrayList<>(engagements));
     }
 
     static HashMap<Long, EngagementData> readEngagementJsons() throws HubSpotException {
         ConcurrentHashMap<Long, EngagementData> contactsEngagementData = new ConcurrentHashMap<>();
-        File[] files = cacheFolder.toFile().listFiles(File::isDirectory);
-        if (files != null) {
-            List<File> fileList = Arrays.asList(files);
-            Iterable<List<File>> partitions = Iterables.partition(fileList, LIMIT);
-            int capacity = (int) Math.ceil(Math.ceil((double) fileList.size() / (double) LIMIT) *
+        List<Long> contactIds;
+        try {
+            contactIds = JsonCache.listFolders(cacheFolder);
+        }
+        catch (IOException e) {
+            throw new HubSpotException("Unable to read cache " + cacheFolder, ErrorCodes.IO_READ.getErrorCode(), e);
+        }
+        if (!contactIds.isEmpty()) {
+            Iterable<List<Long>> partitions = Iterables.partition(contactIds, LIMIT);
+            int capacity = (int) Math.ceil(Math.ceil((double) contactIds.size() / (double) LIMIT) *
                                            Math.pow(MAX_SIZE, -0.6));
             CustomThreadPoolExecutor threadPoolExecutor = new CustomThreadPoolExecutor(1,
                                                                                        STARTING_POOL_SIZE,
@@ -480,12 +549,12 @@ public class EngagementsProcessor {
                 String debugMessage = String.format(debugMessageFormat, "readEngagementJsons", load);
                 Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
             }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
-            ProgressBar pb = Utils.createProgressBar("Reading Engagement Cache", fileList.size());
-            for (List<File> partition : partitions) {
+            ProgressBar pb = Utils.createProgressBar("Reading Engagement Cache", contactIds.size());
+            for (List<Long> partition : partitions) {
                 threadPoolExecutor.submit(() -> {
-                    for (File file : partition) {
-                        long contactId = Long.parseLong(file.getName());
-                        EngagementData engagementData = readContactEngagementJsons(file, contactId);
+                    for (long contactId : partition) {
+                        Path folder = cacheFolder.resolve(contactId + "/");
+                        EngagementData engagementData = readContactEngagementJsons(folder, contactId);
                         contactsEngagementData.put(contactId, engagementData);
                         pb.step();
                         Utils.sleep(1);
@@ -500,7 +569,10 @@ public class EngagementsProcessor {
         return new HashMap<>(contactsEngagementData);
     }
 
-    static void writeContactEngagementJsons(HttpService httpService, long contactId) throws HubSpotException {
+    static void writeContactEngagementJsons(HttpService httpService,
+                                            final ApiRateGovernor rateGovernor,
+                                            long contactId
+    ) throws HubSpotException {
         Path folder = cacheFolder.resolve(contactId + "/");
         try {
             Files.createDirectories(cacheFolder);
@@ -512,7 +584,7 @@ public class EngagementsProcessor {
             );
         }
         try {
-            Files.createDirectories(folder);
+            JsonCache.createFolder(folder);
         }
         catch (IOException e) {
             throw new HubSpotException("Unable to write engagement jsons for contact id" + contactId,
@@ -520,7 +592,7 @@ public class EngagementsProcessor {
                                        e
             );
         }
-        ArrayList<JSONObject> engagementJsons = getEngagementJson(httpService, contactId);
+        ArrayList<JSONObject> engagementJsons = getEngagementJson(httpService, rateGovernor, contactId);
         Iterable<List<JSONObject>> partitions = Iterables.partition(engagementJsons, LIMIT);
         int capacity = (int) Math.ceil(Math.ceil((double) engagementJsons.size() / (double) LIMIT) *
                                        Math.pow(MAX_SIZE, -0.6));
@@ -554,7 +626,7 @@ public class EngagementsProcessor {
         for (List<JSONObject> partition : partitions) {
             threadPoolExecutor.submit(() -> {
                 for (JSONObject jsonObject : partition) {
-                    FileUtils.writeJsonCache(folder, jsonObject);
+                    JsonCache.write(folder, jsonObject);
                     pb.step();
                     Utils.sleep(1);
                 }
@@ -566,62 +638,35 @@ public class EngagementsProcessor {
         pb.close();
     }
 
-    private static ArrayList<JSONObject> getEngagementJson(HttpService httpService, long contactId)
-    throws HubSpotException {
+    private static ArrayList<JSONObject> getEngagementJson(HttpService httpService,
+                                                           final ApiRateGovernor rateGovernor,
+                                                           long contactId
+    ) throws HubSpotException {
         try {
-            ArrayList<Long> engagementIdsToIterate = getAllEngagementIds(httpService, contactId);
-            Iterable<List<Long>> partitions = Iterables.partition(engagementIdsToIterate, LIMIT);
-            int capacity = (int) Math.ceil(Math.ceil((double) engagementIdsToIterate.size() / (double) LIMIT) *
-                                           Math.pow(MAX_SIZE, -0.6));
-            CustomThreadPoolExecutor threadPoolExecutor = new CustomThreadPoolExecutor(1,
-                                                                                       STARTING_POOL_SIZE,
-                                                                                       0L,
-                                                                                       TimeUnit.MILLISECONDS,
-                                                                                       new LinkedBlockingQueue<>(Math.max(
-                                                                                               capacity,
-                                                                                               Runtime.getRuntime()
-                                                                                                      .availableProcessors()
-                                                                                       )),
-                                                                                       new CustomThreadFactory(
-                                                                                               "EngagementJsonGrabber_Contact_" +
-                                                                                               contactId),
-                                                                                       new StoringRejectedExecutionHandler()
-            );
-            Utils.addExecutor(threadPoolExecutor);
-            ScheduledExecutorService scheduledExecutorService
-                    = Executors.newSingleThreadScheduledExecutor(new CustomThreadFactory(
-                    "EngagementJsonGrabberUpdater_Contact_" + contactId));
-            scheduledExecutorService.scheduleAtFixedRate(() -> {
-                double load = CPUMonitor.getProcessLoad();
-                String debugMessage = String.format(debugMessageFormat, "getEngagementJson", load);
-                Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
-            }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
-            List<JSONObject> engagementJsons = Collections.synchronizedList(new ArrayList<>());
+            ArrayList<Long> engagementIdsToIterate = getAllEngagementIds(httpService, rateGovernor, contactId);
             ProgressBar pb = Utils.createProgressBar("Grabbing Engagement Jsons for Contact ID" + contactId,
                                                      engagementIdsToIterate.size()
             );
-            for (List<Long> partition : partitions) {
-                threadPoolExecutor.submit(() -> {
-                    for (long engagementId : partition) {
-                        String engagementUrl = "/engagements/v1/engagements/" + engagementId;
-                        rateLimiter.acquire();
-                        JSONObject jsonEngagement = (JSONObject) httpService.getRequest(engagementUrl);
-                        if (jsonEngagement == null) {
-                            throw new HubSpotException(new NullException("Json Object is null"),
-                                                       ErrorCodes.NULL_EXCEPTION.getErrorCode()
-                            );
-                        }
-                        engagementJsons.add(jsonEngagement);
-                        pb.step();
-                        Utils.sleep(1);
+            List<CompletableFuture<JSONObject>> futures = new ArrayList<>();
+            for (long engagementId : engagementIdsToIterate) {
+                String engagementUrl = "/engagements/v1/engagements/" + engagementId;
+                rateGovernor.acquire();
+                futures.add(httpService.getRequestAsync(engagementUrl).thenApply(response -> {
+                    if (response == null) {
+                        throw new CompletionException(new HubSpotException(new NullException("Json Object is null"),
+                                                                           ErrorCodes.NULL_EXCEPTION.getErrorCode()
+                        ));
                     }
-                    return null;
-                });
+                    pb.step();
+                    return (JSONObject) response;
+                }));
+            }
+            try {
+                return new ArrayList<>(HttpService.await(HttpService.allOf(futures)));
+            }
+            finally {
+                pb.close();
             }
-            Utils.shutdownExecutors(logger, threadPoolExecutor);
-            Utils.shutdownUpdaters(logger, scheduledExecutorService);
-            pb.close();
-            return new ArrayList<>(engagementJsons);
         }
         catch (HubSpotException e) {
             if (e.getMessage().equalsIgnoreCase("Not Found")) {
@@ -633,14 +678,93 @@ public class EngagementsProcessor {
         }
     }
 
-    private static EngagementData readContactEngagementJsons(File contactFolder, long contactId) {
-        File[] files = contactFolder.listFiles();
+    /**
+     * Reads the engagements through {@link EngagementBatchReader}, then processes and caches each of them in the folder
+     */
+    private static EngagementData readEngagements(HttpService httpService,
+                                                  final ApiRateGovernor rateGovernor,
+                                                  Path folder,
+                                                  Map<String, List<Long>> idsByType
+    ) throws HubSpotException {
+        ArrayList<Long> engagementIds = new ArrayList<>();
+        ArrayList<Engagement> engagements = new ArrayList<>();
+        for (JSONObject engagementJson : HttpService.await(EngagementBatchReader.read(httpService,
+                                                                                      rateGovernor,
+                                                                                      idsByType
+        ))) {
+            Engagement engagement = processAndCache(folder, engagementJson);
+            if (engagement != null) {
+                engagementIds.add(engagementJson.getJSONObject("engagement").getLong("id"));
+                engagements.add(engagement);
+            }
+        }
+        return new EngagementData(engagementIds, engagements);
+    }
+
+    private static Engagement processAndCache(Path folder, JSONObject engagementJson) throws HubSpotException {
+        if (engagementJson == null) {
+            throw new HubSpotException(new NullException("Unable to grab engagement"),
+                                       ErrorCodes.NULL_EXCEPTION.getErrorCode()
+            );
+        }
+        Engagement engagement = process(engagementJson);
+        if (engagement == null) {
+            JSONObject engagementDataJson = engagementJson.getJSONObject("engagement");
+            String type = engagementDataJson.getString("type");
+            if (!type.toLowerCase().contains("conversation")) {
+                throw new HubSpotException("Invalid engagement type", ErrorCodes.INVALID_ENGAGEMENT.getErrorCode());
+            }
+            else {
+                return null;
+            }
+        }
+        else {
+            try {
+                JsonCache.write(folder, engagementJson);
+            }
+            catch (IOException e) {
+                throw new HubSpotException("Unable to write json to cache", ErrorCodes.IO_WRITE.getErrorCode(), e);
+            }
+            return engagement;
+        }
+    }
+
+    /**
+     * Caches the engagement in the folder of each of its associated contacts that is being exported, and adds it to
+     * their engagement data
+     */
+    private static void route(Map<Long, EngagementData> contactsEngagementData, JSONObject engagementJson)
+    throws HubSpotException {
+        JSONObject associations = engagementJson.optJSONObject("associations");
+        JSONArray contactIds = associations == null ? null : associations.optJSONArray("contactIds");
+        if (contactIds == null) {
+            return;
+        }
+        long engagementId = engagementJson.getJSONObject("engagement").getLong("id");
+        for (int i = 0; i < contactIds.length(); i++) {
+            long contactId = contactIds.getLong(i);
+            EngagementData engagementData = contactsEngagementData.get(contactId);
+            if (engagementData == null) {
+                continue;
+            }
+            Engagement engagement = processAndCache(cacheFolder.resolve(contactId + "/"), engagementJson);
+            if (engagement == null) {
+                return;
+            }
+            synchronized (engagementData) {
+                engagementData.getEngagementIds().add(engagementId);
+                engagementData.getEngagements().add(engagement);
+            }
+        }
+    }
+
+    private static EngagementData readContactEngagementJsons(Path contactFolder, long contactId) throws IOException {
+        List<Long> ids = JsonCache.list(contactFolder);
         List<Long> engagementIds = Collections.synchronizedList(new ArrayList<>());
         List<Engagement> engagements = Collections.synchronizedList(new ArrayList<>());
-        if (files != null) {
-            List<File> fileList = Arrays.asList(files);
-            Iterable<List<File>> partitions = Iterables.partition(fileList, LIMIT);
-            int capacity = (int) Math.ceil(Math.ceil((double) fileList.size() / (double) LIMIT) *
+        if (!ids.isEmpty()) {
+            Iterable<List<Long>> partitions = Iterables.partition(ids, LIMIT);
+            int capacity = (int) Math.ceil(Math.ceil((double) ids.size() / (double) LIMIT) *
                                            Math.pow(MAX_SIZE, -0.6));
             CustomThreadPoolExecutor threadPoolExecutor = new CustomThreadPoolExecutor(1,
                                                                                        STARTING_POOL_SIZE,
@@ -665,11 +789,10 @@ public class EngagementsProcessor {
                 String debugMessage = String.format(debugMessageFormat, "readContactEngagementJsons", load);
                 Utils.adjustLoad(threadPoolExecutor, load, debugMessage, logger, MAX_SIZE);
             }, 0, UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
-            for (List<File> partition : partitions) {
+            for (List<Long> partition : partitions) {
                 threadPoolExecutor.submit(() -> {
-                    for (File file : partition) {
-                        String jsonString = FileUtils.readJsonString(logger, file);
-                        JSONObject jsonObject = Utils.formatJson(new JSONObject(jsonString));
+                    for (long id : partition) {
+                        JSONObject jsonObject = Utils.formatJson(JsonCache.read(contactFolder, id));
                         long engagementId = jsonObject.getJSONObject("engagement").getLong("id");
                         Engagement engagement = process(jsonObject);
                         engagementIds.add(engagementId);
@@ -0,0 +1,429 @@
+package org.hubspot.services.crm;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.objects.PropertyData;
+import org.hubspot.objects.crm.CRMObjectType;
+import org.hubspot.utils.HttpService;
+import org.hubspot.utils.LogMarkers;
+import org.hubspot.utils.Utils;
+import org.hubspot.utils.concurrent.CustomThreadFactory;
+import org.hubspot.utils.concurrent.CustomThreadPoolExecutor;
+import org.hubspot.utils.exceptions.HubSpotException;
+import org.hubspot.utils.http.ApiRateGovernor;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Exports objects by splitting the values of a numeric property into ranges and paging through each range with the
+ * search endpoint on its own thread, instead of following a single cursor one request at a time. Full exports split the
+ * {@code hs_object_id} space into ranges sized to hold {@code hubspot.export.segmentSize} objects, and incremental
+ * syncs split the window of last modified dates into slices that each fit in the 10,000 results a search can page
+ * through. A range that still holds more than that is split in half until it fits, and the objects sharing a single
+ * value of the property, as when a bulk update modifies them in the same millisecond, are split on their ids.
+ *
+ * @author Nicholas Curl
+ */
+public class SegmentedExport {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger  logger       = LogManager.getLogger(SegmentedExport.class);
+    private static final String  url          = "/crm/v3/objects/%s/search";
+    /**
+     * The most results the search endpoints page through for one query
+     */
+    private static final int     SEARCH_CAP   = 10000;
+    private static final boolean ENABLED      = Boolean.parseBoolean(System.getProperty("hubspot.export.segmented",
+                                                                                        "true"
+    ));
+    private static final int     SEGMENT_SIZE = Integer.getInteger("hubspot.export.segmentSize", 5000);
+    /**
+     * The number of ranges paged at the same time, which defaults to the request rate of the search endpoints since
+     * more would only wait on the rate governor
+     */
+    private static final int     THREADS      = Integer.getInteger("hubspot.export.threads", 4);
+
+    /**
+     * Gets whether a full export of this many objects is done in segments, which it is when segmented exports are not
+     * turned off with the {@code hubspot.export.segmented} system property and there is more than one segment's worth
+     *
+     * @param count The number of objects to export
+     *
+     * @return Whether to use {@link #export(HttpService, ApiRateGovernor, CRMObjectType, PropertyData, long, int,
+     *         Consumer)}
+     */
+    static boolean isSegmented(long count) {
+        return ENABLED && count > SEGMENT_SIZE;
+    }
+
+    /**
+     * Exports all objects of the type, passing each page of search results to the consumer from the thread that read
+     * it. Every range stops paging once one of them fails, and the first failure is thrown from the calling thread so
+     * the caller can clean up the cache it was writing.
+     *
+     * @param httpService  The http service to send the requests with
+     * @param rateGovernor The rate governor to acquire the request permits from
+     * @param type         The type of the objects
+     * @param propertyData The properties to read
+     * @param count        The number of objects, from which the number of segments is chosen
+     * @param pageSize     The number of objects per page
+     * @param pageConsumer Takes each page of search results, which may be called from several threads at once
+     *
+     * @throws HubSpotException if the id range of the objects can not be read or a range fails with one
+     */
+    static void export(HttpService httpService,
+                       final ApiRateGovernor rateGovernor,
+                       CRMObjectType type,
+                       PropertyData propertyData,
+                       long count,
+                       int pageSize,
+                       Consumer<JSONObject> pageConsumer
+    ) throws HubSpotException {
+        export(httpService, rateGovernor, type, propertyData, count, pageSize, pageConsumer, () -> false);
+    }
+
+    /**
+     * Exports all objects of the type for a stream, passing each page of search results to the consumer from the
+     * thread that read it. Every range stops paging once the export is cancelled or one of them fails, and the first
+     * failure is thrown from the calling thread.
+     *
+     * @param httpService  The http service to send the requests with
+     * @param rateGovernor The rate governor to acquire the request permits from
+     * @param type         The type of the objects
+     * @param propertyData The properties to read
+     * @param count        The number of objects, from which the number of segments is chosen
+     * @param pageSize     The number of objects per page
+     * @param pageConsumer Takes each page of search results, which may be called from several threads at once
+     * @param cancelled    Gets whether the export is no longer wanted
+     *
+     * @throws HubSpotException if the id range of the objects can not be read or a range fails with one
+     */
+    static void export(HttpService httpService,
+                       final ApiRateGovernor rateGovernor,
+                       CRMObjectType type,
+                       PropertyData propertyData,
+                       long count,
+                       int pageSize,
+                       Consumer<JSONObject> pageConsumer,
+                       BooleanSupplier cancelled
+    ) throws HubSpotException {
+        long min = getBoundaryId(httpService, rateGovernor, type, null, "ASCENDING");
+        long max = getBoundaryId(httpService, rateGovernor, type, null, "DESCENDING");
+        if (min == -1 || max == -1) {
+            return;
+        }
+        int segments = (int) Math.max(1, Math.ceil((double) count / SEGMENT_SIZE));
+        long width = Math.max(1, (max - min + segments) / segments);
+        logger.debug(LogMarkers.HTTP.getMarker(),
+                     "Exporting {} ids {} to {} in {} segments of {} ids",
+                     type.getValue(),
+                     min,
+                     max,
+                     segments,
+                     width
+        );
+        List<Range> ranges = new ArrayList<>();
+        for (long low = min; low <= max; low += width) {
+            ranges.add(new Range("hs_object_id", low, Math.min(max + 1, low + width), null));
+        }
+        exportRanges(httpService,
+                     rateGovernor,
+                     type,
+                     propertyData,
+                     ranges,
+                     false,
+                     pageSize,
+                     pageConsumer,
+                     cancelled
+        );
+    }
+
+    /**
+     * Exports the objects of the type created or modified since the last execution, bisecting the window of last
+     * modified dates until each slice holds no more results than a search can page through and paging the slices at
+     * the same time. Objects created in the window were last modified in it too, so slicing on the last modified date
+     * alone finds every update and finds each object in one slice.
+     *
+     * @param httpService   The http service to send the requests with
+     * @param rateGovernor  The rate governor to acquire the request permits from
+     * @param type          The type of the objects
+     * @param propertyData  The properties to read
+     * @param lastExecution The start of the window in epoch milliseconds
+     * @param count         The number of updated objects, saving a search when the whole window fits
+     * @param pageSize      The number of objects per page
+     * @param pageConsumer  Takes each page of search results, which may be called from several threads at once
+     *
+     * @throws HubSpotException if the window can not be sliced or a slice fails with one
+     */
+    static void exportUpdates(HttpService httpService,
+                              final ApiRateGovernor rateGovernor,
+                              CRMObjectType type,
+                              PropertyData propertyData,
+                              long lastExecution,
+                              long count,
+                              int pageSize,
+                              Consumer<JSONObject> pageConsumer
+    ) throws HubSpotException {
+        String property = type == CRMObjectType.CONTACTS ? "lastmodifieddate" : "hs_lastmodifieddate";
+        List<Range> slices = new ArrayList<>();
+        Range window = new Range(property, lastExecution, System.currentTimeMillis() + 1, null);
+        if (count <= SEARCH_CAP) {
+            slices.add(window);
+        }
+        else {
+            slice(httpService, rateGovernor, type, window, slices);
+        }
+        logger.debug(LogMarkers.HTTP.getMarker(),
+                     "Syncing {} {} updated since {} in {} slices",
+                     count,
+                     type.getValue(),
+                     lastExecution,
+                     slices.size()
+        );
+        exportRanges(httpService,
+                     rateGovernor,
+                     type,
+                     propertyData,
+                     slices,
+                     true,
+                     pageSize,
+                     pageConsumer,
+                     () -> false
+        );
+    }
+
+    /**
+     * Bisects the range until each part holds no more results than a search can page through
+     *
+     * @param ranges The list the parts are added to, in ascending order
+     */
+    private static void slice(HttpService httpService,
+                              final ApiRateGovernor rateGovernor,
+                              CRMObjectType type,
+                              Range range,
+                              List<Range> ranges
+    ) throws HubSpotException {
+        JSONObject body = range.getBody().put("limit", 1).put("properties", new JSONArray().put("hs_object_id"));
+        rateGovernor.acquire(ApiRateGovernor.Policy.SEARCH);
+        JSONObject response = (JSONObject) httpService.postRequest(String.format(url, type.getValue()), body);
+        if (response.optLong("total") > SEARCH_CAP) {
+            for (Range part : split(httpService, rateGovernor, type, range, response.optLong("total"))) {
+                slice(httpService, rateGovernor, type, part, ranges);
+            }
+        }
+        else {
+            ranges.add(range);
+        }
+    }
+
+    /**
+     * Splits a range that holds more results than a search can page through in half, or if it only covers a single
+     * value of its property, into the range of the ids of the objects with that value
+     *
+     * @param total The number of objects in the range
+     *
+     * @return The parts of the range
+     */
+    private static Range[] split(HttpService httpService,
+                                 final ApiRateGovernor rateGovernor,
+                                 CRMObjectType type,
+                                 Range range,
+                                 long total
+    ) throws HubSpotException {
+        if (range.high - range.low > 1) {
+            long middle = range.low + (range.high - range.low) / 2;
+            return new Range[]{new Range(range.property, range.low, middle, range.within),
+                               new Range(range.property, middle, range.high, range.within)};
+        }
+        long min = getBoundaryId(httpService, rateGovernor, type, range, "ASCENDING");
+        long max = getBoundaryId(httpService, rateGovernor, type, range, "DESCENDING");
+        logger.debug(LogMarkers.HTTP.getMarker(),
+                     "Splitting the {} {} with {} {} on ids {} to {}",
+                     total,
+                     type.getValue(),
+                     range.property,
+                     range.low,
+                     min,
+                     max
+        );
+        return new Range[]{new Range("hs_object_id", min, max + 1, range)};
+    }
+
+    /**
+     * Pages through each of the ranges of the property, up to {@link #THREADS} at the same time. Every range stops
+     * paging once one of them fails, and the first failure is thrown once the others have stopped.
+     *
+     * @param sliced    Whether the ranges are known to fit in the results a search can page through, or else each is
+     *                  probed and split first
+     * @param cancelled Gets whether to stop paging, which is checked before each request
+     *
+     * @throws HubSpotException if a range fails with one
+     */
+    private static void exportRanges(HttpService httpService,
+                                     final ApiRateGovernor rateGovernor,
+                                     CRMObjectType type,
+                                     PropertyData propertyData,
+                                     List<Range> ranges,
+                                     boolean sliced,
+                                     int pageSize,
+                                     Consumer<JSONObject> pageConsumer,
+                                     BooleanSupplier cancelled
+    ) throws HubSpotException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        BooleanSupplier stopped = () -> failure.get() != null || cancelled.getAsBoolean();
+        int threads = Math.max(1, Math.min(THREADS, ranges.size()));
+        CustomThreadPoolExecutor threadPoolExecutor = new CustomThreadPoolExecutor(threads,
+                                                                                   threads,
+                                                                                   0L,
+                                                                                   TimeUnit.MILLISECONDS,
+                                                                                   new LinkedBlockingQueue<>(),
+                                                                                   new CustomThreadFactory(
+                                                                                           "SegmentedExport_" +
+                                                                                           type.getValue())
+        );
+        Utils.addExecutor(threadPoolExecutor);
+        for (Range range : ranges) {
+            threadPoolExecutor.submit(() -> {
+                try {
+                    List<Range> parts = new ArrayList<>();
+                    if (sliced) {
+                        parts.add(range);
+                    }
+                    else if (!stopped.getAsBoolean()) {
+                        slice(httpService, rateGovernor, type, range, parts);
+                    }
+                    for (Range part : parts) {
+                        exportSegment(httpService,
+                                      rateGovernor,
+                                      type,
+                                      propertyData,
+                                      pageSize,
+                                      part,
+                                      pageConsumer,
+                                      stopped
+                        );
+                    }
+                }
+                catch (HubSpotException | RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+                return null;
+            });
+        }
+        Utils.shutdownExecutors(logger, threadPoolExecutor);
+        Throwable throwable = failure.get();
+        if (throwable instanceof HubSpotException) {
+            throw (HubSpotException) throwable;
+        }
+        else if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        }
+    }
+
+    /**
+     * Pages through the objects in a range that holds no more objects than the search endpoints can page through
+     */
+    private static void exportSegment(HttpService httpService,
+                                      final ApiRateGovernor rateGovernor,
+                                      CRMObjectType type,
+                                      PropertyData propertyData,
+                                      int pageSize,
+                                      Range range,
+                                      Consumer<JSONObject> pageConsumer,
+                                      BooleanSupplier cancelled
+    ) throws HubSpotException {
+        if (cancelled.getAsBoolean()) {
+            return;
+        }
+        String searchUrl = String.format(url, type.getValue());
+        JSONObject sort = new JSONObject().put("propertyName", "hs_object_id").put("direction", "ASCENDING");
+        JSONObject body = range.getBody().put("sorts", new JSONArray().put(sort))
+                                         .put("properties", new JSONArray(propertyData.getPropertyNames()))
+                                         .put("limit", pageSize);
+        rateGovernor.acquire(ApiRateGovernor.Policy.SEARCH);
+        JSONObject page = (JSONObject) httpService.postRequest(searchUrl, body);
+        while (true) {
+            pageConsumer.accept(page);
+            if (!page.has("paging") || cancelled.getAsBoolean()) {
+                break;
+            }
+            body.put("after", page.getJSONObject("paging").getJSONObject("next").get("after"));
+            rateGovernor.acquire(ApiRateGovernor.Policy.SEARCH);
+            page = (JSONObject) httpService.postRequest(searchUrl, body);
+        }
+    }
+
+    /**
+     * Gets the lowest or highest id of the objects of the type
+     *
+     * @param range The range to look in, or {@code null} for all objects
+     *
+     * @return The id, or -1 if there are no objects
+     */
+    private static long getBoundaryId(HttpService httpService,
+                                      final ApiRateGovernor rateGovernor,
+                                      CRMObjectType type,
+                                      Range range,
+                                      String direction
+    ) throws HubSpotException {
+        JSONObject sort = new JSONObject().put("propertyName", "hs_object_id").put("direction", direction);
+        JSONObject body = (range == null ? new JSONObject() : range.getBody());
+        body.put("sorts", new JSONArray().put(sort))
+            .put("properties", new JSONArray().put("hs_object_id"))
+            .put("limit", 1);
+        rateGovernor.acquire(ApiRateGovernor.Policy.SEARCH);
+        JSONObject response = (JSONObject) httpService.postRequest(String.format(url, type.getValue()), body);
+        JSONArray results = response.getJSONArray("results");
+        return results.isEmpty() ? -1 : results.getJSONObject(0).getLong("id");
+    }
+
+    /**
+     * The values of a property that are at least {@code low} and less than {@code high}, of the objects in another
+     * range if it is narrowing one
+     */
+    private static class Range {
+
+        private final String property;
+        private final long   low;
+        private final long   high;
+        /**
+         * The range this one narrows, or {@code null}
+         */
+        private final Range  within;
+
+        private Range(String property, long low, long high, Range within) {
+            this.property = property;
+            this.low = low;
+            this.high = high;
+            this.within = within;
+        }
+
+        /**
+         * Creates a search body matching the objects in this range and the ones it narrows
+         */
+        private JSONObject getBody() {
+            JSONArray filters = new JSONArray();
+            for (Range range = this; range != null; range = range.within) {
+                filters.put(new JSONObject().put("propertyName", range.property)
+                                            .put("operator", "GTE")
+                                            .put("value", range.low))
+                       .put(new JSONObject().put("propertyName", range.property)
+                                            .put("operator", "LT")
+                                            .put("value", range.high));
+            }
+            return new JSONObject().put("filterGroups",
+                                        new JSONArray().put(new JSONObject().put("filters", filters))
+            );
+        }
+    }
+}
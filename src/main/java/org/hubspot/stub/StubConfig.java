@@ -0,0 +1,208 @@
+package org.hubspot.stub;
+
+import java.nio.file.Path;
+
+/**
+ * The settings of the {@link StubServer} and the dataset it generates
+ *
+ * @author Nicholas Curl
+ */
+public class StubConfig {
+
+    private int    port;
+    private long   seed;
+    private int    contacts;
+    private int    companies;
+    private int    deals;
+    private int    engagementsPerContact;
+    private long   latency;
+    private long   latencyJitter;
+    private double throttleRate;
+    private double serverErrorRate;
+    private int    tenSecondlyMax;
+    private int    searchSecondlyMax;
+    private long   dailyMax;
+    private Path   fixtures;
+
+    /**
+     * Creates the settings of a small portal served without latency, faults or a fixture folder
+     */
+    public StubConfig() {
+        this.port = 0;
+        this.seed = 42;
+        this.contacts = 1000;
+        this.companies = 100;
+        this.deals = 500;
+        this.engagementsPerContact = 5;
+        this.latency = 0;
+        this.latencyJitter = 0;
+        this.throttleRate = 0;
+        this.serverErrorRate = 0;
+        this.tenSecondlyMax = 150;
+        this.searchSecondlyMax = 4;
+        this.dailyMax = 500000;
+        this.fixtures = null;
+    }
+
+    public int getCompanies() {
+        return companies;
+    }
+
+    public StubConfig setCompanies(int companies) {
+        this.companies = companies;
+        return this;
+    }
+
+    public int getContacts() {
+        return contacts;
+    }
+
+    public StubConfig setContacts(int contacts) {
+        this.contacts = contacts;
+        return this;
+    }
+
+    public long getDailyMax() {
+        return dailyMax;
+    }
+
+    public StubConfig setDailyMax(long dailyMax) {
+        this.dailyMax = dailyMax;
+        return this;
+    }
+
+    public int getDeals() {
+        return deals;
+    }
+
+    public StubConfig setDeals(int deals) {
+        this.deals = deals;
+        return this;
+    }
+
+    /**
+     * Gets the average number of engagements generated per contact
+     *
+     * @return The average number of engagements per contact
+     */
+    public int getEngagementsPerContact() {
+        return engagementsPerContact;
+    }
+
+    public StubConfig setEngagementsPerContact(int engagementsPerContact) {
+        this.engagementsPerContact = engagementsPerContact;
+        return this;
+    }
+
+    /**
+     * Gets the folder of recorded responses served in place of the generated ones. A GET request to
+     * {@code /crm/v3/properties/contacts} is answered with {@code crm/v3/properties/contacts.json} if it exists.
+     *
+     * @return The fixture folder, or {@code null} if only the generated dataset is served
+     */
+    public Path getFixtures() {
+        return fixtures;
+    }
+
+    public StubConfig setFixtures(Path fixtures) {
+        this.fixtures = fixtures;
+        return this;
+    }
+
+    /**
+     * Gets the delay in milliseconds added to every response
+     *
+     * @return The latency
+     */
+    public long getLatency() {
+        return latency;
+    }
+
+    public StubConfig setLatency(long latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Gets the upper bound in milliseconds of the random delay added on top of the latency
+     *
+     * @return The latency jitter
+     */
+    public long getLatencyJitter() {
+        return latencyJitter;
+    }
+
+    public StubConfig setLatencyJitter(long latencyJitter) {
+        this.latencyJitter = latencyJitter;
+        return this;
+    }
+
+    /**
+     * Gets the port to listen on
+     *
+     * @return The port, or 0 to pick a free one
+     */
+    public int getPort() {
+        return port;
+    }
+
+    public StubConfig setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public int getSearchSecondlyMax() {
+        return searchSecondlyMax;
+    }
+
+    public StubConfig setSearchSecondlyMax(int searchSecondlyMax) {
+        this.searchSecondlyMax = searchSecondlyMax;
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public StubConfig setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Gets the fraction of requests answered with a random 502, 503 or 504
+     *
+     * @return The server error rate between 0 and 1
+     */
+    public double getServerErrorRate() {
+        return serverErrorRate;
+    }
+
+    public StubConfig setServerErrorRate(double serverErrorRate) {
+        this.serverErrorRate = serverErrorRate;
+        return this;
+    }
+
+    public int getTenSecondlyMax() {
+        return tenSecondlyMax;
+    }
+
+    public StubConfig setTenSecondlyMax(int tenSecondlyMax) {
+        this.tenSecondlyMax = tenSecondlyMax;
+        return this;
+    }
+
+    /**
+     * Gets the fraction of requests answered with a 429, on top of those over the rate limits
+     *
+     * @return The throttle rate between 0 and 1
+     */
+    public double getThrottleRate() {
+        return throttleRate;
+    }
+
+    public StubConfig setThrottleRate(double throttleRate) {
+        this.throttleRate = throttleRate;
+        return this;
+    }
+}
@@ -0,0 +1,728 @@
+package org.hubspot.stub;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.objects.crm.CRMObjectType;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A portal of contacts, companies, deals, engagements and files generated from a seed, so the same settings always
+ * produce the same data
+ *
+ * @author Nicholas Curl
+ */
+public class StubDataset {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger      logger          = LogManager.getLogger(StubDataset.class);
+    public static final  long        PORTAL_ID       = 1234567;
+    public static final  long        CONTACT_BASE    = 100000;
+    public static final  long        COMPANY_BASE    = 2000000;
+    public static final  long        DEAL_BASE       = 3000000;
+    public static final  long        ENGAGEMENT_BASE = 4000000;
+    public static final  long        FILE_BASE       = 5000000;
+    private static final long        DAY             = TimeUnit.DAYS.toMillis(1);
+    private static final Set<String> DATETIMES       = Set.of("createdate",
+                                                              "lastmodifieddate",
+                                                              "hs_lastmodifieddate",
+                                                              "closedate"
+    );
+    private static final String[]    FIRST_NAMES     = {"James", "Mary", "Robert", "Patricia", "John", "Jennifer",
+                                                        "Michael", "Linda", "William", "Elizabeth", "David",
+                                                        "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas",
+                                                        "Sarah", "Charles", "Karen"};
+    private static final String[]    LAST_NAMES      = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia",
+                                                        "Miller", "Davis", "Rodriguez", "Martinez", "Hernandez",
+                                                        "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas",
+                                                        "Taylor", "Moore", "Jackson", "Martin"};
+    private static final String[]    WORDS           = {"call", "follow", "up", "about", "the", "contract", "review",
+                                                        "schedule", "interview", "position", "resume", "meeting",
+                                                        "client", "update", "offer", "start", "date", "questions",
+                                                        "next", "week", "thanks", "please", "send", "details",
+                                                        "agreement"};
+    private static final String[]    LIFECYCLES      = {"subscriber", "lead", "marketingqualifiedlead",
+                                                        "salesqualifiedlead", "opportunity", "customer"};
+    private static final String[]    LEAD_STATUSES   = {"NEW", "OPEN", "IN_PROGRESS", "Recruit", "Closed - Hired",
+                                                        "Unqualified", "No Contact"};
+    private static final String[]    DEAL_STAGES     = {"appointmentscheduled", "qualifiedtobuy",
+                                                        "presentationscheduled", "contractsent", "closedwon",
+                                                        "closedlost"};
+    private static final String[]    ENGAGEMENTS     = {"EMAIL", "NOTE", "CALL", "MEETING", "TASK"};
+    private static final String[][]  FILE_TYPES      = {{"DOCUMENT", "pdf"}, {"IMG", "png"}, {"TEXT", "txt"},
+                                                        {"OTHER", "zip"}};
+    /**
+     * The contacts, companies and deals keyed by type and id
+     */
+    private final Map<CRMObjectType, ConcurrentSkipListMap<Long, StubObject>> objects;
+    private final Map<Long, List<Long>>                                       contactDeals;
+    private final Map<Long, List<Long>>                                       contactEngagements;
+    private final ConcurrentSkipListMap<Long, StubEngagement>                 engagements;
+    private final Set<Long>                                                   files;
+    private final long                                                        seed;
+    private final long                                                        now;
+
+    /**
+     * Generates the dataset described by the settings
+     *
+     * @param config The settings of the dataset
+     */
+    public StubDataset(StubConfig config) {
+        this.seed = config.getSeed();
+        this.now = System.currentTimeMillis();
+        this.objects = new EnumMap<>(CRMObjectType.class);
+        for (CRMObjectType type : CRMObjectType.values()) {
+            objects.put(type, new ConcurrentSkipListMap<>());
+        }
+        this.contactDeals = new HashMap<>();
+        this.contactEngagements = new HashMap<>();
+        this.engagements = new ConcurrentSkipListMap<>();
+        this.files = new HashSet<>();
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < config.getCompanies(); i++) {
+            StubObject company = newObject(random, CRMObjectType.COMPANIES, COMPANY_BASE + i);
+            String name = pick(random, LAST_NAMES) + " " + pick(random, new String[]{"Group", "Inc", "LLC", "Co"});
+            company.properties.put("name", name);
+            company.properties.put("domain", name.toLowerCase().replaceAll("\\s", "") + ".com");
+        }
+        for (int i = 0; i < config.getContacts(); i++) {
+            StubObject contact = newObject(random, CRMObjectType.CONTACTS, CONTACT_BASE + i);
+            String firstName = pick(random, FIRST_NAMES);
+            String lastName = pick(random, LAST_NAMES);
+            contact.properties.put("firstname", firstName);
+            contact.properties.put("lastname", lastName);
+            contact.properties.put("email", (firstName + "." + lastName + contact.id + "@example.com").toLowerCase());
+            contact.properties.put("lifecyclestage", pick(random, LIFECYCLES));
+            contact.properties.put("hs_lead_status", pick(random, LEAD_STATUSES));
+            contact.properties.put("hr_hiring_applicant", random.nextInt(4) == 0 ? "Closed" : "Open");
+            contact.properties.put("associatedcompanyid",
+                                   config.getCompanies() > 0
+                                   ? COMPANY_BASE + random.nextInt(config.getCompanies())
+                                   : 0L
+            );
+            contactDeals.put(contact.id, new ArrayList<>());
+            contactEngagements.put(contact.id, new ArrayList<>());
+        }
+        for (int i = 0; i < config.getDeals(); i++) {
+            StubObject deal = newObject(random, CRMObjectType.DEALS, DEAL_BASE + i);
+            deal.properties.put("dealname", pick(random, WORDS) + " " + pick(random, WORDS) + " " + deal.id);
+            deal.properties.put("amount", (long) random.nextInt(1000, 100000));
+            deal.properties.put("dealstage", pick(random, DEAL_STAGES));
+            deal.properties.put("pipeline", "default");
+            deal.properties.put("agnes_job__", (long) random.nextInt(10000, 99999));
+            deal.properties.put("closedate", deal.createdAt + random.nextLong(DAY, 90 * DAY));
+            if (config.getContacts() > 0) {
+                contactDeals.get(CONTACT_BASE + random.nextInt(config.getContacts())).add(deal.id);
+            }
+        }
+        long engagementId = ENGAGEMENT_BASE;
+        long fileId = FILE_BASE;
+        for (StubObject contact : objects.get(CRMObjectType.CONTACTS).values()) {
+            int count = random.nextInt(2 * config.getEngagementsPerContact() + 1);
+            for (int i = 0; i < count; i++) {
+                String type = pick(random, ENGAGEMENTS);
+                long createdAt = random.nextLong(contact.createdAt, now);
+                long[] attachments = new long[type.equals("NOTE") ? random.nextInt(3) : 0];
+                for (int j = 0; j < attachments.length; j++) {
+                    attachments[j] = fileId++;
+                    files.add(attachments[j]);
+                }
+                engagements.put(engagementId,
+                                new StubEngagement(engagementId, contact.id, type, createdAt, attachments)
+                );
+                contactEngagements.get(contact.id).add(engagementId);
+                engagementId++;
+            }
+        }
+        logger.debug("Generated {} contacts, {} companies, {} deals, {} engagements and {} files",
+                     config.getContacts(),
+                     config.getCompanies(),
+                     config.getDeals(),
+                     engagements.size(),
+                     files.size()
+        );
+    }
+
+    private static int compare(Object actual, Object expected) {
+        if (actual instanceof Long) {
+            return Long.compare((Long) actual, toMillis(expected));
+        }
+        return String.valueOf(actual).compareToIgnoreCase(String.valueOf(expected));
+    }
+
+    /**
+     * Gets the property definitions of the object type, in the shape of {@code /crm/v3/properties/{type}}
+     *
+     * @param type The object type
+     *
+     * @return The property definitions
+     */
+    public static JSONArray getPropertyDefinitions(CRMObjectType type) {
+        JSONArray results = new JSONArray();
+        String group = type == CRMObjectType.CONTACTS
+                       ? "contactinformation"
+                       : type == CRMObjectType.COMPANIES ? "companyinformation" : "dealinformation";
+        for (String name : getPropertyNames(type)) {
+            results.put(new JSONObject().put("name", name)
+                                        .put("label", name)
+                                        .put("type", DATETIMES.contains(name) ? "datetime" : "string")
+                                        .put("groupName", group)
+                                        .put("hidden", false));
+        }
+        results.put(new JSONObject().put("name", "hs_all_owner_ids")
+                                    .put("label", "All owner ids")
+                                    .put("type", "enumeration")
+                                    .put("groupName", group)
+                                    .put("hidden", true));
+        return results;
+    }
+
+    /**
+     * Gets the names of the properties generated for the object type
+     *
+     * @param type The object type
+     *
+     * @return The property names
+     */
+    public static List<String> getPropertyNames(CRMObjectType type) {
+        switch (type) {
+            case CONTACTS:
+                return List.of("associatedcompanyid",
+                               "createdate",
+                               "email",
+                               "firstname",
+                               "hr_hiring_applicant",
+                               "hs_lead_status",
+                               "hs_object_id",
+                               "lastmodifieddate",
+                               "lastname",
+                               "lifecyclestage"
+                );
+            case COMPANIES:
+                return List.of("createdate", "domain", "hs_lastmodifieddate", "hs_object_id", "name");
+            case DEALS:
+                return List.of("agnes_job__",
+                               "amount",
+                               "closedate",
+                               "createdate",
+                               "dealname",
+                               "dealstage",
+                               "hs_lastmodifieddate",
+                               "hs_object_id",
+                               "pipeline"
+                );
+            default:
+                return List.of("createdate", "hs_lastmodifieddate", "hs_object_id");
+        }
+    }
+
+    private static String lastModifiedProperty(CRMObjectType type) {
+        return type == CRMObjectType.CONTACTS ? "lastmodifieddate" : "hs_lastmodifieddate";
+    }
+
+    private static boolean matches(StubObject object, JSONObject filter) {
+        Object actual = object.getValue(filter.getString("propertyName"));
+        String operator = filter.getString("operator");
+        switch (operator) {
+            case "HAS_PROPERTY":
+                return actual != null;
+            case "NOT_HAS_PROPERTY":
+                return actual == null;
+            case "IN":
+            case "NOT_IN":
+                boolean in = false;
+                if (actual != null) {
+                    for (Object value : filter.getJSONArray("values")) {
+                        in |= compare(actual, value) == 0;
+                    }
+                }
+                return in == operator.equals("IN");
+            default:
+                if (actual == null) {
+                    return operator.equals("NEQ");
+                }
+                int comparison = compare(actual, filter.get("value"));
+                switch (operator) {
+                    case "EQ":
+                        return comparison == 0;
+                    case "NEQ":
+                        return comparison != 0;
+                    case "LT":
+                        return comparison < 0;
+                    case "LTE":
+                        return comparison <= 0;
+                    case "GT":
+                        return comparison > 0;
+                    case "GTE":
+                        return comparison >= 0;
+                    case "BETWEEN":
+                        return comparison >= 0 && compare(actual, filter.get("highValue")) <= 0;
+                    default:
+                        throw new IllegalArgumentException("Unsupported filter operator " + operator);
+                }
+        }
+    }
+
+    private static String pick(SplittableRandom random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String sentence(SplittableRandom random, int words) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            builder.append(i == 0 ? "" : " ").append(pick(random, WORDS));
+        }
+        return builder.append('.').toString();
+    }
+
+    private static long toMillis(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        String string = String.valueOf(value);
+        try {
+            return Long.parseLong(string);
+        }
+        catch (NumberFormatException e) {
+            return Instant.parse(string).toEpochMilli();
+        }
+    }
+
+    /**
+     * Gets the ids of the objects associated with the contact
+     *
+     * @param contactId    The id of the contact
+     * @param definitionId The HubSpot defined association type, 1 for companies, 4 for deals and 9 for engagements
+     *
+     * @return The associated ids, or an empty list if the contact or association type is unknown
+     */
+    public List<Long> getAssociations(long contactId, int definitionId) {
+        switch (definitionId) {
+            case 1:
+                StubObject contact = getObject(CRMObjectType.CONTACTS, contactId);
+                return contact == null
+                       ? List.of()
+                       : List.of((Long) contact.properties.get("associatedcompanyid"));
+            case 4:
+                return contactDeals.getOrDefault(contactId, List.of());
+            case 9:
+                return contactEngagements.getOrDefault(contactId, List.of());
+            default:
+                return List.of();
+        }
+    }
+
+    /**
+     * Gets the ids of the engagements of one type associated with the contact
+     *
+     * @param contactId The id of the contact
+     * @param type      The v1 engagement type, such as {@code EMAIL} or {@code NOTE}
+     *
+     * @return The engagement ids, or an empty list if the contact is unknown
+     */
+    public List<Long> getEngagementAssociations(long contactId, String type) {
+        List<Long> ids = new ArrayList<>();
+        for (long engagementId : contactEngagements.getOrDefault(contactId, List.of())) {
+            if (engagements.get(engagementId).type.equals(type)) {
+                ids.add(engagementId);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Builds the engagement in the shape of a v3 engagement object, such as those of
+     * {@code /crm/v3/objects/emails/batch/read}
+     *
+     * @param type         The v1 engagement type the object must be, such as {@code EMAIL} or {@code NOTE}
+     * @param engagementId The id of the engagement
+     *
+     * @return The engagement, or {@code null} if it does not exist or is of another type
+     */
+    public JSONObject getEngagementObject(String type, long engagementId) {
+        StubEngagement stub = engagements.get(engagementId);
+        if (stub == null || !stub.type.equals(type)) {
+            return null;
+        }
+        JSONObject v1 = getEngagement(engagementId);
+        JSONObject metadata = v1.getJSONObject("metadata");
+        String created = Instant.ofEpochMilli(stub.createdAt).toString();
+        JSONObject properties = new JSONObject().put("hs_object_id", String.valueOf(stub.id))
+                                                .put("hs_createdate", created)
+                                                .put("hs_lastmodifieddate", created)
+                                                .put("hs_timestamp", created);
+        switch (stub.type) {
+            case "EMAIL":
+                JSONObject headers = new JSONObject().put("from", metadata.getJSONObject("from"))
+                                                     .put("to", metadata.getJSONArray("to"))
+                                                     .put("cc", metadata.getJSONArray("cc"))
+                                                     .put("bcc", metadata.getJSONArray("bcc"));
+                properties.put("hs_email_direction", "EMAIL")
+                          .put("hs_email_headers", headers.toString())
+                          .put("hs_email_subject", metadata.getString("subject"))
+                          .put("hs_email_text", metadata.getString("text"));
+                break;
+            case "NOTE":
+                StringJoiner attachments = new StringJoiner(";");
+                for (long attachment : stub.attachments) {
+                    attachments.add(String.valueOf(attachment));
+                }
+                properties.put("hs_note_body", metadata.getString("body"))
+                          .put("hs_attachment_ids", attachments.toString());
+                break;
+            case "CALL":
+                properties.put("hs_call_title", metadata.getString("title"))
+                          .put("hs_call_body", metadata.getString("body"))
+                          .put("hs_call_to_number", metadata.getString("toNumber"))
+                          .put("hs_call_from_number", metadata.getString("fromNumber"))
+                          .put("hs_call_duration", String.valueOf(metadata.getLong("durationMilliseconds")))
+                          .put("hs_call_status", metadata.getString("status"))
+                          .put("hs_call_recording_url", metadata.getString("recordingUrl"));
+                break;
+            case "MEETING":
+                properties.put("hs_meeting_title", metadata.getString("title"))
+                          .put("hs_meeting_body", metadata.getString("body"))
+                          .put("hs_meeting_start_time", Instant.ofEpochMilli(metadata.getLong("startTime")).toString())
+                          .put("hs_meeting_end_time", Instant.ofEpochMilli(metadata.getLong("endTime")).toString());
+                break;
+            case "TASK":
+                StringJoiner reminders = new StringJoiner(";");
+                for (Object reminder : metadata.getJSONArray("reminders")) {
+                    reminders.add(reminder.toString());
+                }
+                properties.put("hs_task_subject", metadata.getString("subject"))
+                          .put("hs_task_body", metadata.getString("body"))
+                          .put("hs_task_status", metadata.getString("status"))
+                          .put("hs_task_type", metadata.getString("taskType"))
+                          .put("hs_task_completion_date",
+                               Instant.ofEpochMilli(metadata.getLong("completionDate")).toString()
+                          )
+                          .put("hs_task_reminders", reminders.toString());
+                break;
+        }
+        return new JSONObject().put("id", String.valueOf(stub.id))
+                               .put("properties", properties)
+                               .put("createdAt", created)
+                               .put("updatedAt", created)
+                               .put("archived", false);
+    }
+
+    /**
+     * Builds the engagement in the shape of {@code /engagements/v1/engagements/{id}}
+     *
+     * @param engagementId The id of the engagement
+     *
+     * @return The engagement, or {@code null} if it does not exist
+     */
+    public JSONObject getEngagement(long engagementId) {
+        StubEngagement stub = engagements.get(engagementId);
+        if (stub == null) {
+            return null;
+        }
+        SplittableRandom random = new SplittableRandom(seed ^ (engagementId * 0x9E3779B97F4A7C15L));
+        StubObject contact = getObject(CRMObjectType.CONTACTS, stub.contactId);
+        JSONObject engagement = new JSONObject().put("id", stub.id)
+                                                .put("portalId", PORTAL_ID)
+                                                .put("active", true)
+                                                .put("createdAt", stub.createdAt)
+                                                .put("lastUpdated", stub.createdAt)
+                                                .put("type", stub.type);
+        JSONObject associations = new JSONObject().put("contactIds", new JSONArray().put(stub.contactId))
+                                                  .put("companyIds", new JSONArray())
+                                                  .put("dealIds", new JSONArray())
+                                                  .put("ownerIds", new JSONArray())
+                                                  .put("ticketIds", new JSONArray());
+        JSONArray attachments = new JSONArray();
+        for (long attachment : stub.attachments) {
+            attachments.put(new JSONObject().put("id", attachment));
+        }
+        JSONObject metadata = new JSONObject();
+        switch (stub.type) {
+            case "EMAIL":
+                JSONObject to = new JSONObject().put("email", contact.properties.get("email"))
+                                                .put("firstName", contact.properties.get("firstname"))
+                                                .put("lastName", contact.properties.get("lastname"));
+                metadata.put("from", new JSONObject().put("email", "recruiter@example.com")
+                                                     .put("firstName", "Stub")
+                                                     .put("lastName", "Recruiter"))
+                        .put("to", new JSONArray().put(to))
+                        .put("cc", new JSONArray())
+                        .put("bcc", new JSONArray())
+                        .put("subject", sentence(random, 4))
+                        .put("text", sentence(random, 40));
+                break;
+            case "NOTE":
+                metadata.put("body", sentence(random, 30));
+                break;
+            case "CALL":
+                metadata.put("title", sentence(random, 3))
+                        .put("body", sentence(random, 20))
+                        .put("toNumber", "+1555" + (1000000 + random.nextInt(9000000)))
+                        .put("fromNumber", "+15550100000")
+                        .put("durationMilliseconds", random.nextLong(10000, 3600000))
+                        .put("status", "COMPLETED")
+                        .put("recordingUrl", "");
+                break;
+            case "MEETING":
+                long start = stub.createdAt + random.nextLong(DAY, 14 * DAY);
+                metadata.put("title", sentence(random, 3))
+                        .put("body", sentence(random, 20))
+                        .put("startTime", start)
+                        .put("endTime", start + TimeUnit.MINUTES.toMillis(30));
+                break;
+            case "TASK":
+                metadata.put("subject", sentence(random, 4))
+                        .put("body", sentence(random, 15))
+                        .put("status", random.nextBoolean() ? "COMPLETED" : "NOT_STARTED")
+                        .put("forObjectType", "CONTACT")
+                        .put("taskType", "TODO")
+                        .put("completionDate", stub.createdAt + random.nextLong(DAY, 7 * DAY))
+                        .put("reminders", new JSONArray().put(stub.createdAt + DAY));
+                break;
+        }
+        return new JSONObject().put("engagement", engagement)
+                               .put("associations", associations)
+                               .put("attachments", attachments)
+                               .put("metadata", metadata);
+    }
+
+    /**
+     * Gets the ids of all engagements in ascending order
+     *
+     * @return The engagement ids
+     */
+    public NavigableSet<Long> getEngagementIds() {
+        return engagements.keySet();
+    }
+
+    /**
+     * Generates the content of the file
+     *
+     * @param fileId The id of the file
+     *
+     * @return The content, or {@code null} if the file does not exist
+     */
+    public byte[] getFileContent(long fileId) {
+        if (!files.contains(fileId)) {
+            return null;
+        }
+        SplittableRandom random = new SplittableRandom(seed ^ fileId);
+        byte[] content = new byte[random.nextInt(1024, 65536)];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) random.nextInt(256);
+        }
+        return content;
+    }
+
+    /**
+     * Builds the file metadata in the shape of {@code /filemanager/api/v2/files/{id}}
+     *
+     * @param fileId  The id of the file
+     * @param baseUrl The url the file content is served from
+     *
+     * @return The metadata, or {@code null} if the file does not exist
+     */
+    public JSONObject getFileMetadata(long fileId, String baseUrl) {
+        if (!files.contains(fileId)) {
+            return null;
+        }
+        SplittableRandom random = new SplittableRandom(seed ^ fileId);
+        int size = random.nextInt(1024, 65536);
+        String[] type = FILE_TYPES[(int) (fileId % FILE_TYPES.length)];
+        JSONObject metadata = new JSONObject().put("id", fileId)
+                                              .put("portal_id", PORTAL_ID)
+                                              .put("name", "attachment_" + fileId)
+                                              .put("extension", type[1])
+                                              .put("type", type[0])
+                                              .put("size", size)
+                                              .put("hidden", false)
+                                              .put("url", baseUrl + "/stub-files/" + fileId + "." + type[1]);
+        if (type[0].equals("IMG")) {
+            metadata.put("height", 480).put("width", 640);
+        }
+        return metadata;
+    }
+
+    /**
+     * Gets the object
+     *
+     * @param type The type of the object
+     * @param id   The id of the object
+     *
+     * @return The object, or {@code null} if it does not exist
+     */
+    public StubObject getObject(CRMObjectType type, long id) {
+        return objects.get(type).get(id);
+    }
+
+    /**
+     * Gets the objects of the type in ascending id order
+     *
+     * @param type The object type
+     *
+     * @return The objects keyed by id
+     */
+    public NavigableMap<Long, StubObject> getObjects(CRMObjectType type) {
+        return objects.get(type);
+    }
+
+    private StubObject newObject(SplittableRandom random, CRMObjectType type, long id) {
+        long createdAt = now - random.nextLong(30 * DAY, 730 * DAY);
+        StubObject object = new StubObject(id, type, createdAt);
+        object.setUpdatedAt(random.nextLong(createdAt, now));
+        objects.get(type).put(id, object);
+        return object;
+    }
+
+    /**
+     * Finds the objects matching the body of a {@code /crm/v3/objects/{type}/search} request. Filters within a group
+     * must all match and any group may match. The objects are sorted by the first sort, or by id.
+     *
+     * @param type The object type
+     * @param body The search request
+     *
+     * @return The matching objects in order
+     */
+    public List<StubObject> search(CRMObjectType type, JSONObject body) {
+        JSONArray filterGroups = body.optJSONArray("filterGroups");
+        List<StubObject> results = new ArrayList<>();
+        for (StubObject object : objects.get(type).values()) {
+            boolean matches = filterGroups == null || filterGroups.isEmpty();
+            for (int i = 0; !matches && i < filterGroups.length(); i++) {
+                JSONArray filters = filterGroups.getJSONObject(i).optJSONArray("filters");
+                boolean all = true;
+                for (int j = 0; all && filters != null && j < filters.length(); j++) {
+                    all = matches(object, filters.getJSONObject(j));
+                }
+                matches = all;
+            }
+            if (matches) {
+                results.add(object);
+            }
+        }
+        JSONArray sorts = body.optJSONArray("sorts");
+        if (sorts != null && !sorts.isEmpty()) {
+            Object sort = sorts.get(0);
+            String property = sort instanceof JSONObject
+                              ? ((JSONObject) sort).getString("propertyName")
+                              : sort.toString();
+            boolean descending = sort instanceof JSONObject
+                                 ? "DESCENDING".equalsIgnoreCase(((JSONObject) sort).optString("direction"))
+                                 : property.startsWith("-");
+            String name = property.startsWith("-") ? property.substring(1) : property;
+            Comparator<StubObject> comparator = Comparator.comparing(object -> object.getValue(name),
+                                                                     Comparator.nullsLast((a, b) -> compare(a, b))
+            );
+            results.sort(descending ? comparator.reversed() : comparator);
+        }
+        return results;
+    }
+
+    /**
+     * Marks the object as modified now, so incremental syncs pick it up
+     *
+     * @param type The type of the object
+     * @param id   The id of the object
+     */
+    public void touch(CRMObjectType type, long id) {
+        StubObject object = getObject(type, id);
+        if (object != null) {
+            object.setUpdatedAt(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * An engagement of a contact, whose content is generated when it is requested
+     */
+    private static class StubEngagement {
+
+        private final long   id;
+        private final long   contactId;
+        private final String type;
+        private final long   createdAt;
+        private final long[] attachments;
+
+        private StubEngagement(long id, long contactId, String type, long createdAt, long[] attachments) {
+            this.id = id;
+            this.contactId = contactId;
+            this.type = type;
+            this.createdAt = createdAt;
+            this.attachments = attachments;
+        }
+    }
+
+    /**
+     * A contact, company or deal with its property values
+     */
+    public static class StubObject {
+
+        private final long                id;
+        private final CRMObjectType       type;
+        private final long                createdAt;
+        private final Map<String, Object> properties;
+
+        private StubObject(long id, CRMObjectType type, long createdAt) {
+            this.id = id;
+            this.type = type;
+            this.createdAt = createdAt;
+            this.properties = new ConcurrentHashMap<>();
+            properties.put("createdate", createdAt);
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Gets the value of the property, with dates as epoch milliseconds
+         *
+         * @param property The name of the property
+         *
+         * @return The value, or {@code null} if the object does not have the property
+         */
+        public Object getValue(String property) {
+            return property.equals("hs_object_id") ? (Object) id : properties.get(property);
+        }
+
+        private void setUpdatedAt(long updatedAt) {
+            properties.put(lastModifiedProperty(type), updatedAt);
+        }
+
+        /**
+         * Renders the object in the shape of the v3 object endpoints, with every value as a string
+         *
+         * @param propertyNames The properties to include, those the object does not have being {@code null}
+         *
+         * @return The object
+         */
+        public JSONObject toJson(Collection<String> propertyNames) {
+            JSONObject jsonProperties = new JSONObject();
+            for (String name : propertyNames) {
+                Object value = getValue(name);
+                if (value == null) {
+                    jsonProperties.put(name, JSONObject.NULL);
+                }
+                else if (DATETIMES.contains(name)) {
+                    jsonProperties.put(name, Instant.ofEpochMilli((Long) value).toString());
+                }
+                else {
+                    jsonProperties.put(name, value.toString());
+                }
+            }
+            String updatedAt = Instant.ofEpochMilli((Long) properties.get(lastModifiedProperty(type))).toString();
+            return new JSONObject().put("id", String.valueOf(id))
+                                   .put("properties", jsonProperties)
+                                   .put("createdAt", Instant.ofEpochMilli(createdAt).toString())
+                                   .put("updatedAt", updatedAt)
+                                   .put("archived", false);
+        }
+    }
+}
@@ -0,0 +1,706 @@
+package org.hubspot.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.objects.crm.CRMObjectType;
+import org.hubspot.stub.StubDataset.StubObject;
+import org.hubspot.utils.concurrent.CustomThreadFactory;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An embeddable stub of the HubSpot API endpoints the processing calls, serving a {@link StubDataset} with the
+ * latency, faults and rate limit headers of the settings. Point {@link org.hubspot.services.HubSpot} at
+ * {@link #getBaseUrl()} to run without the live API.
+ *
+ * @author Nicholas Curl
+ */
+public class StubServer {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger          logger       = LogManager.getLogger(StubServer.class);
+    private static final long            INTERVAL     = 10000;
+    /**
+     * The largest offset the search endpoints page to, as with the live API
+     */
+    private static final int             SEARCH_CAP   = 10000;
+    private static final int             MAX_LIMIT    = 100;
+    /**
+     * The most associations of one object the v4 batch associations endpoint returns per page
+     */
+    private static final int             ASSOC_PAGE   = 500;
+    /**
+     * The most engagements the paged engagements endpoint returns per page
+     */
+    private static final int             PAGED_LIMIT  = 250;
+    private static final Pattern         OBJECTS      = Pattern.compile("/crm/v3/objects/(\\w+)/?");
+    private static final Pattern         OBJECT       = Pattern.compile("/crm/v3/objects/(\\w+)/(\\d+)");
+    private static final Pattern         SEARCH       = Pattern.compile("/crm/v3/objects/(\\w+)/search");
+    private static final Pattern         BATCH_READ   = Pattern.compile("/crm/v3/objects/(\\w+)/batch/read");
+    private static final Pattern         BATCH_ASSOC  = Pattern.compile(
+            "/crm/v4/associations/(\\w+)/(\\w+)/batch/read");
+    private static final Pattern         PROPERTIES   = Pattern.compile("/crm/v3/properties/(\\w+)/?");
+    private static final Pattern         ASSOCIATIONS = Pattern.compile(
+            "/crm-associations/v1/associations/(\\d+)/HUBSPOT_DEFINED/(\\d+)");
+    private static final Pattern         ENGAGEMENT   = Pattern.compile("/engagements/v1/engagements/(\\d+)");
+    private static final Pattern         PAGED        = Pattern.compile("/engagements/v1/engagements/paged");
+    private static final Pattern         FILE         = Pattern.compile("/filemanager/api/v2/files/(\\d+)");
+    private static final Pattern         SIGNED_URL   = Pattern.compile("/filemanager/api/v3/files/(\\d+)/signed-url");
+    private static final Pattern         FILE_CONTENT = Pattern.compile("/stub-files/(\\d+)\\.\\w+");
+    private final        StubConfig      config;
+    private final        StubDataset     dataset;
+    private final        HttpServer      server;
+    private final        ExecutorService executor;
+    private final        AtomicLong      windowStart;
+    private final        AtomicLong      windowCount;
+    private final        AtomicLong      searchSecond;
+    private final        AtomicLong      searchCount;
+    private final        AtomicLong      dailyRemaining;
+    private final        LongAdder       requests;
+    private final        LongAdder       throttled;
+    private final        LongAdder       failed;
+
+    /**
+     * Generates the dataset and binds the server to the port of the settings, without starting it
+     *
+     * @param config The settings of the server and dataset
+     *
+     * @throws IOException If the port can not be bound
+     */
+    public StubServer(StubConfig config) throws IOException {
+        this.config = config;
+        this.dataset = new StubDataset(config);
+        this.server = HttpServer.create(new InetSocketAddress("localhost", config.getPort()), 0);
+        this.executor = Executors.newCachedThreadPool(new CustomThreadFactory("StubServer", true));
+        this.windowStart = new AtomicLong(System.currentTimeMillis());
+        this.windowCount = new AtomicLong();
+        this.searchSecond = new AtomicLong();
+        this.searchCount = new AtomicLong();
+        this.dailyRemaining = new AtomicLong(config.getDailyMax());
+        this.requests = new LongAdder();
+        this.throttled = new LongAdder();
+        this.failed = new LongAdder();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Runs the stub until the process is killed
+     *
+     * @param args The port to listen on, defaulting to 8089, and the number of contacts to generate
+     *
+     * @throws IOException If the port can not be bound
+     */
+    public static void main(String[] args) throws IOException {
+        StubConfig config = new StubConfig().setPort(args.length > 0 ? Integer.parseInt(args[0]) : 8089);
+        if (args.length > 1) {
+            config.setContacts(Integer.parseInt(args[1]));
+        }
+        StubServer server = new StubServer(config);
+        server.start();
+        logger.info("Stub HubSpot API listening on {}", server.getBaseUrl());
+    }
+
+    private static JSONObject error(String message, String category) {
+        return new JSONObject().put("status", "error")
+                               .put("message", message)
+                               .put("correlationId", UUID.randomUUID().toString())
+                               .put("category", category);
+    }
+
+    private static int limit(Map<String, String> query, int defaultLimit) {
+        String limit = query.get("limit");
+        return Math.min(MAX_LIMIT, Math.max(1, limit == null ? defaultLimit : Integer.parseInt(limit)));
+    }
+
+    /**
+     * Gets the HubSpot defined association type id of contacts to the type
+     *
+     * @return The type id, or 0 if the stub does not associate contacts with the type
+     */
+    private static int associationTypeId(String toType) {
+        switch (toType) {
+            case "companies":
+                return 1;
+            case "deals":
+                return 4;
+            case "calls":
+                return 194;
+            case "emails":
+                return 197;
+            case "meetings":
+                return 200;
+            case "notes":
+                return 202;
+            case "tasks":
+                return 204;
+            default:
+                return 0;
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                int index = pair.indexOf('=');
+                if (index > 0) {
+                    query.put(URLDecoder.decode(pair.substring(0, index), StandardCharsets.UTF_8),
+                              URLDecoder.decode(pair.substring(index + 1), StandardCharsets.UTF_8)
+                    );
+                }
+            }
+        }
+        return query;
+    }
+
+    private static CRMObjectType parseType(String value) {
+        for (CRMObjectType type : CRMObjectType.values()) {
+            if (type.getValue().equalsIgnoreCase(value)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the v1 engagement type of a v3 engagement object type
+     *
+     * @return The engagement type, such as {@code EMAIL} for {@code emails}, or {@code null} if the object type is not
+     *         one of an engagement
+     */
+    private static String engagementType(String objectType) {
+        switch (objectType) {
+            case "emails":
+            case "notes":
+            case "calls":
+            case "meetings":
+            case "tasks":
+                return objectType.substring(0, objectType.length() - 1).toUpperCase(Locale.ROOT);
+            default:
+                return null;
+        }
+    }
+
+    private static List<String> propertyNames(CRMObjectType type, Object requested) {
+        List<String> names = new ArrayList<>();
+        if (requested instanceof JSONArray) {
+            for (Object name : (JSONArray) requested) {
+                names.add(name.toString());
+            }
+        }
+        else if (requested != null && !requested.toString().isBlank()) {
+            names.addAll(Arrays.asList(requested.toString().split(",")));
+        }
+        return names.isEmpty() ? StubDataset.getPropertyNames(type) : names;
+    }
+
+    private static JSONObject readBody(HttpExchange exchange) throws IOException {
+        return new JSONObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    public StubDataset getDataset() {
+        return dataset;
+    }
+
+    /**
+     * Gets the url the stub is reachable at
+     *
+     * @return The base url, for example {@code http://localhost:8089}
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Gets the number of requests answered with an injected 502, 503 or 504
+     *
+     * @return The number of failed requests
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Gets the number of requests received, including the throttled and failed ones
+     *
+     * @return The number of requests
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Gets the number of requests answered with a 429, whether injected or over a rate limit
+     *
+     * @return The number of throttled requests
+     */
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try {
+            long delay = config.getLatency() + (config.getLatencyJitter() > 0
+                                                ? ThreadLocalRandom.current().nextLong(config.getLatencyJitter())
+                                                : 0);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            String path = exchange.getRequestURI().getPath();
+            boolean search = path.endsWith("/search");
+            Map<String, String> headers = new LinkedHashMap<>();
+            String policyName = search ? acquireSearch() : acquire(headers);
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (policyName == null && roll < config.getThrottleRate()) {
+                policyName = "TEN_SECONDLY_ROLLING";
+            }
+            if (policyName != null) {
+                throttled.increment();
+                JSONObject body = error("You have reached your " + policyName.toLowerCase() + " limit.",
+                                        "RATE_LIMITS"
+                ).put("policyName", policyName);
+                send(exchange, 429, headers, body.toString());
+            }
+            else if (roll < config.getThrottleRate() + config.getServerErrorRate()) {
+                failed.increment();
+                int[] statuses = {502, 503, 504};
+                send(exchange, statuses[ThreadLocalRandom.current().nextInt(statuses.length)], headers, (String) null);
+            }
+            else {
+                route(exchange, path, headers);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, Map.of(), (String) null);
+        }
+        catch (JSONException | IllegalArgumentException e) {
+            send(exchange, 400, Map.of(), error(e.getMessage(), "VALIDATION_ERROR").toString());
+        }
+        catch (RuntimeException e) {
+            logger.error("Stub failed to answer {}", exchange.getRequestURI(), e);
+            send(exchange, 500, Map.of(), error("Internal error", "INTERNAL_ERROR").toString());
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Counts the request against the ten secondly and daily limits, filling in the rate limit headers
+     *
+     * @return The name of the exceeded policy, or {@code null} if the request is allowed
+     */
+    private String acquire(Map<String, String> headers) {
+        long now = System.currentTimeMillis();
+        long start = windowStart.get();
+        if (now - start >= INTERVAL && windowStart.compareAndSet(start, now)) {
+            windowCount.set(0);
+        }
+        long count = windowCount.incrementAndGet();
+        long daily = dailyRemaining.get() > 0 ? dailyRemaining.decrementAndGet() : 0;
+        headers.put("X-HubSpot-RateLimit-Daily", String.valueOf(config.getDailyMax()));
+        headers.put("X-HubSpot-RateLimit-Daily-Remaining", String.valueOf(Math.max(0, daily)));
+        headers.put("X-HubSpot-RateLimit-Interval-Milliseconds", String.valueOf(INTERVAL));
+        headers.put("X-HubSpot-RateLimit-Max", String.valueOf(config.getTenSecondlyMax()));
+        headers.put("X-HubSpot-RateLimit-Remaining", String.valueOf(Math.max(0, config.getTenSecondlyMax() - count)));
+        if (daily <= 0) {
+            return "DAILY";
+        }
+        return count > config.getTenSecondlyMax() ? "TEN_SECONDLY_ROLLING" : null;
+    }
+
+    /**
+     * Counts the request against the per second limit of the search endpoints, which send no rate limit headers
+     *
+     * @return The name of the exceeded policy, or {@code null} if the request is allowed
+     */
+    private String acquireSearch() {
+        long second = System.currentTimeMillis() / 1000;
+        long current = searchSecond.get();
+        if (second != current && searchSecond.compareAndSet(current, second)) {
+            searchCount.set(0);
+        }
+        return searchCount.incrementAndGet() > config.getSearchSecondlyMax() ? "SECONDLY" : null;
+    }
+
+    private void route(HttpExchange exchange, String path, Map<String, String> headers) throws IOException {
+        String method = exchange.getRequestMethod();
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        Matcher matcher;
+        if (method.equals("GET") && serveFixture(exchange, path, headers)) {
+            return;
+        }
+        if (method.equals("POST") && (matcher = SEARCH.matcher(path)).matches()) {
+            search(exchange, parseType(matcher.group(1)), readBody(exchange), headers);
+        }
+        else if (method.equals("POST") && (matcher = BATCH_READ.matcher(path)).matches()) {
+            String engagementType = engagementType(matcher.group(1));
+            if (engagementType != null) {
+                batchRead(exchange,
+                          matcher.group(1),
+                          id -> dataset.getEngagementObject(engagementType, id),
+                          readBody(exchange),
+                          headers
+                );
+            }
+            else {
+                batchRead(exchange, parseType(matcher.group(1)), readBody(exchange), headers);
+            }
+        }
+        else if (method.equals("POST") && (matcher = BATCH_ASSOC.matcher(path)).matches()) {
+            batchAssociations(exchange, matcher.group(1), matcher.group(2), readBody(exchange), headers);
+        }
+        else if (!method.equals("GET")) {
+            send(exchange, 405, headers, error("Method not allowed", "VALIDATION_ERROR").toString());
+        }
+        else if (path.equals("/")) {
+            send(exchange, 200, headers, new JSONObject().put("status", "ok").toString());
+        }
+        else if ((matcher = PROPERTIES.matcher(path)).matches()) {
+            CRMObjectType type = parseType(matcher.group(1));
+            sendJson(exchange, headers, type == null
+                                        ? null
+                                        : new JSONObject().put("results", StubDataset.getPropertyDefinitions(type)));
+        }
+        else if ((matcher = OBJECT.matcher(path)).matches()) {
+            CRMObjectType type = parseType(matcher.group(1));
+            StubObject object = type == null ? null : dataset.getObject(type, Long.parseLong(matcher.group(2)));
+            sendJson(exchange, headers, object == null ? null : object.toJson(propertyNames(type, query.get(
+                    "properties"))));
+        }
+        else if ((matcher = OBJECTS.matcher(path)).matches()) {
+            list(exchange, parseType(matcher.group(1)), query, headers);
+        }
+        else if ((matcher = ASSOCIATIONS.matcher(path)).matches()) {
+            List<Long> ids = dataset.getAssociations(Long.parseLong(matcher.group(1)),
+                                                     Integer.parseInt(matcher.group(2))
+            );
+            int offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+            int end = Math.min(ids.size(), offset + limit(query, 10));
+            sendJson(exchange, headers, new JSONObject().put("results", ids.subList(Math.min(offset, end), end))
+                                                        .put("hasMore", end < ids.size())
+                                                        .put("offset", end));
+        }
+        else if (PAGED.matcher(path).matches()) {
+            pagedEngagements(exchange, query, headers);
+        }
+        else if ((matcher = ENGAGEMENT.matcher(path)).matches()) {
+            sendJson(exchange, headers, dataset.getEngagement(Long.parseLong(matcher.group(1))));
+        }
+        else if ((matcher = FILE.matcher(path)).matches()) {
+            sendJson(exchange, headers, dataset.getFileMetadata(Long.parseLong(matcher.group(1)), getBaseUrl()));
+        }
+        else if ((matcher = SIGNED_URL.matcher(path)).matches()) {
+            JSONObject metadata = dataset.getFileMetadata(Long.parseLong(matcher.group(1)), getBaseUrl());
+            sendJson(exchange, headers, metadata == null
+                                        ? null
+                                        : new JSONObject().put("url", metadata.getString("url"))
+                                                          .put("expiresAt", System.currentTimeMillis() + 3600000));
+        }
+        else if ((matcher = FILE_CONTENT.matcher(path)).matches()) {
+            byte[] content = dataset.getFileContent(Long.parseLong(matcher.group(1)));
+            if (content == null) {
+                sendJson(exchange, headers, null);
+            }
+            else {
+                headers.put("Content-Type", "application/octet-stream");
+                send(exchange, 200, headers, content);
+            }
+        }
+        else {
+            sendJson(exchange, headers, null);
+        }
+    }
+
+    private List<Long> associations(String toType, long contactId) {
+        switch (toType) {
+            case "companies":
+                return dataset.getAssociations(contactId, 1);
+            case "deals":
+                return dataset.getAssociations(contactId, 4);
+            default:
+                return dataset.getEngagementAssociations(contactId, engagementType(toType));
+        }
+    }
+
+    /**
+     * Answers a v4 batch associations read of contacts, paging each contact's associations by
+     * {@link #ASSOC_PAGE}, with a 207 listing the contacts without associations if there are any
+     */
+    private void batchAssociations(HttpExchange exchange,
+                                   String fromType,
+                                   String toType,
+                                   JSONObject body,
+                                   Map<String, String> headers
+    ) throws IOException {
+        JSONArray inputs = body.optJSONArray("inputs");
+        if (inputs == null || inputs.length() > MAX_LIMIT) {
+            send(exchange, 400, headers, error("A batch must have between 0 and " + MAX_LIMIT + " inputs",
+                                               "VALIDATION_ERROR"
+            ).toString());
+            return;
+        }
+        int typeId = fromType.equals("contacts") ? associationTypeId(toType) : 0;
+        JSONArray associationTypes = new JSONArray().put(new JSONObject().put("category", "HUBSPOT_DEFINED")
+                                                                         .put("typeId", typeId));
+        JSONArray results = new JSONArray();
+        JSONArray missing = new JSONArray();
+        for (Object o : inputs) {
+            JSONObject input = (JSONObject) o;
+            String id = input.get("id").toString();
+            List<Long> ids = typeId == 0 || !id.matches("\\d+") ? List.of() : associations(toType, Long.parseLong(id));
+            if (ids.isEmpty()) {
+                missing.put(id);
+                continue;
+            }
+            int offset = Integer.parseInt(input.optString("after", "0"));
+            int end = Math.min(ids.size(), offset + ASSOC_PAGE);
+            JSONArray to = new JSONArray();
+            for (long toId : ids.subList(Math.min(offset, end), end)) {
+                to.put(new JSONObject().put("toObjectId", toId).put("associationTypes", associationTypes));
+            }
+            JSONObject result = new JSONObject().put("from", new JSONObject().put("id", id)).put("to", to);
+            if (end < ids.size()) {
+                result.put("paging", new JSONObject().put("next", new JSONObject().put("after", String.valueOf(end))));
+            }
+            results.put(result);
+        }
+        JSONObject response = new JSONObject().put("status", "COMPLETE").put("results", results);
+        if (missing.isEmpty()) {
+            send(exchange, 200, headers, response.toString());
+        }
+        else {
+            JSONObject error = error("No " + toType + " are associated with some " + fromType, "OBJECT_NOT_FOUND");
+            error.put("subCategory", "crm.associations.NO_ASSOCIATIONS_FOUND");
+            error.put("context", new JSONObject().put("fromObjectId", missing));
+            send(exchange, 207, headers, response.put("errors", new JSONArray().put(error)).toString());
+        }
+    }
+
+    /**
+     * Answers a batch read with the objects found, and with a 207 listing the ids not found if there are any
+     */
+    private void batchRead(HttpExchange exchange, CRMObjectType type, JSONObject body, Map<String, String> headers)
+    throws IOException {
+        if (type == null) {
+            sendJson(exchange, headers, null);
+            return;
+        }
+        List<String> names = propertyNames(type, body.opt("properties"));
+        batchRead(exchange, type.getValue(), id -> {
+            StubObject object = dataset.getObject(type, id);
+            return object == null ? null : object.toJson(names);
+        }, body, headers);
+    }
+
+    /**
+     * Serves a batch read, answering with a 207 listing the ids that the lookup does not find
+     *
+     * @param objectType The object type named in the path
+     * @param lookup     Gets the object with the id, or {@code null} if it does not exist
+     */
+    private void batchRead(HttpExchange exchange,
+                           String objectType,
+                           LongFunction<JSONObject> lookup,
+                           JSONObject body,
+                           Map<String, String> headers
+    ) throws IOException {
+        JSONArray inputs = body.optJSONArray("inputs");
+        if (inputs == null || inputs.length() > MAX_LIMIT) {
+            send(exchange, 400, headers, error("A batch must have between 0 and " + MAX_LIMIT + " inputs",
+                                               "VALIDATION_ERROR"
+            ).toString());
+            return;
+        }
+        JSONArray results = new JSONArray();
+        JSONArray missing = new JSONArray();
+        for (Object input : inputs) {
+            String id = ((JSONObject) input).get("id").toString();
+            JSONObject object = id.matches("\\d+") ? lookup.apply(Long.parseLong(id)) : null;
+            if (object == null) {
+                missing.put(id);
+            }
+            else {
+                results.put(object);
+            }
+        }
+        JSONObject response = new JSONObject().put("status", "COMPLETE").put("results", results);
+        if (missing.isEmpty()) {
+            send(exchange, 200, headers, response.toString());
+        }
+        else {
+            JSONObject error = error("Could not get some " + objectType + " objects", "OBJECT_NOT_FOUND");
+            error.put("context", new JSONObject().put("ids", missing));
+            send(exchange, 207, headers, response.put("errors", new JSONArray().put(error)).toString());
+        }
+    }
+
+    /**
+     * Serves a page of all engagements in ascending id order, the offset being the id of the last engagement of the
+     * previous page
+     */
+    private void pagedEngagements(HttpExchange exchange, Map<String, String> query, Map<String, String> headers)
+    throws IOException {
+        String rawLimit = query.get("limit");
+        int limit = Math.min(PAGED_LIMIT, Math.max(1, rawLimit == null ? 20 : Integer.parseInt(rawLimit)));
+        long offset = Long.parseLong(query.getOrDefault("offset", "0"));
+        JSONArray results = new JSONArray();
+        long last = offset;
+        for (long engagementId : dataset.getEngagementIds().tailSet(offset, false)) {
+            if (results.length() == limit) {
+                break;
+            }
+            results.put(dataset.getEngagement(engagementId));
+            last = engagementId;
+        }
+        boolean hasMore = !dataset.getEngagementIds().tailSet(last, false).isEmpty();
+        sendJson(exchange, headers, new JSONObject().put("results", results)
+                                                    .put("hasMore", hasMore)
+                                                    .put("offset", last));
+    }
+
+    private void list(HttpExchange exchange, CRMObjectType type, Map<String, String> query, Map<String, String> headers)
+    throws IOException {
+        if (type == null) {
+            sendJson(exchange, headers, null);
+            return;
+        }
+        int limit = limit(query, 10);
+        long after = Long.parseLong(query.getOrDefault("after", "0"));
+        List<String> names = propertyNames(type, query.get("properties"));
+        JSONArray results = new JSONArray();
+        Iterator<StubObject> iterator = dataset.getObjects(type).tailMap(after, true).values().iterator();
+        while (iterator.hasNext() && results.length() < limit) {
+            results.put(iterator.next().toJson(names));
+        }
+        JSONObject body = new JSONObject().put("results", results);
+        if (iterator.hasNext()) {
+            String next = String.valueOf(iterator.next().getId());
+            body.put("paging", new JSONObject().put("next", new JSONObject().put("after", next)));
+        }
+        sendJson(exchange, headers, body);
+    }
+
+    private void search(HttpExchange exchange, CRMObjectType type, JSONObject body, Map<String, String> headers)
+    throws IOException {
+        if (type == null) {
+            sendJson(exchange, headers, null);
+            return;
+        }
+        int limit = Math.min(MAX_LIMIT, Math.max(1, body.optInt("limit", 10)));
+        int after = body.has("after") ? Integer.parseInt(body.get("after").toString()) : 0;
+        if (after + limit > SEARCH_CAP) {
+            send(exchange, 400, headers, error("The search endpoints can not page past " + SEARCH_CAP + " results",
+                                               "VALIDATION_ERROR"
+            ).toString());
+            return;
+        }
+        List<StubObject> matches = dataset.search(type, body);
+        List<String> names = propertyNames(type, body.opt("properties"));
+        JSONArray results = new JSONArray();
+        int end = Math.min(matches.size(), after + limit);
+        for (int i = after; i < end; i++) {
+            results.put(matches.get(i).toJson(names));
+        }
+        JSONObject response = new JSONObject().put("total", matches.size()).put("results", results);
+        if (end < matches.size()) {
+            response.put("paging", new JSONObject().put("next", new JSONObject().put("after", String.valueOf(end))));
+        }
+        sendJson(exchange, headers, response);
+    }
+
+    private void send(HttpExchange exchange, int status, Map<String, String> headers, String body) throws IOException {
+        Map<String, String> allHeaders = new LinkedHashMap<>(headers);
+        allHeaders.put("Content-Type", "application/json;charset=utf-8");
+        send(exchange, status, allHeaders, body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void send(HttpExchange exchange, int status, Map<String, String> headers, byte[] body) throws IOException {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+        }
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (body.length > 0 && acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private void sendJson(HttpExchange exchange, Map<String, String> headers, JSONObject body) throws IOException {
+        if (body == null) {
+            send(exchange, 404, headers, error("resource not found", "OBJECT_NOT_FOUND").toString());
+        }
+        else {
+            send(exchange, 200, headers, body.toString());
+        }
+    }
+
+    /**
+     * Answers the request with the recorded response in the fixture folder, if there is one for its path
+     *
+     * @return Whether a fixture was served
+     */
+    private boolean serveFixture(HttpExchange exchange, String path, Map<String, String> headers) throws IOException {
+        if (config.getFixtures() == null || path.contains("..")) {
+            return false;
+        }
+        Path fixture = config.getFixtures().resolve(path.replaceAll("^/+|/+$", "") + ".json");
+        if (!Files.isRegularFile(fixture)) {
+            return false;
+        }
+        send(exchange, 200, headers, Files.readString(fixture));
+        return true;
+    }
+
+    /**
+     * Starts answering requests
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server and its threads
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
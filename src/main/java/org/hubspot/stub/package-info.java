@@ -0,0 +1,6 @@
+/**
+ * Package containing a local stub of the HubSpot API used to run the processing offline
+ *
+ * @author Nicholas Curl
+ */
+package org.hubspot.stub;
@@ -5,7 +5,6 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hubspot.objects.files.HSFile;
 import org.hubspot.utils.exceptions.HubSpotException;
-import org.json.JSONObject;
 
 import java.io.*;
 import java.net.MalformedURLException;
@@ -217,13 +216,6 @@ public class FileUtils {
         writer.close();
     }
 
-    public static void writeJsonCache(Path folder, JSONObject jsonObject) throws IOException {
-        Path filePath = getFilePath(folder, jsonObject);
-        FileWriter fileWriter = new FileWriter(filePath.toFile());
-        fileWriter.write(jsonObject.toString(4));
-        fileWriter.close();
-    }
-
     public static long writeLastExecution() {
         long lastExecuted = Instant.now().toEpochMilli();
         Path lastExecutedFile = Paths.get("./cache/last_executed.txt");
@@ -252,18 +244,4 @@ public class FileUtils {
             System.exit(ErrorCodes.IO_WRITE.getErrorCode());
         }
     }
-
-    private static Path getFilePath(Path folder, JSONObject jsonObject) {
-        long id;
-        if (jsonObject.has("id")) {
-            id = jsonObject.getLong("id");
-        }
-        else if (jsonObject.has("engagement")) {
-            id = jsonObject.getJSONObject("engagement").getLong("id");
-        }
-        else {
-            id = 0;
-        }
-        return folder.resolve(id + ".json");
-    }
 }
@@ -1,17 +1,19 @@
 package org.hubspot.utils;
 
 import com.google.common.base.Strings;
-import kong.unirest.HttpResponse;
-import kong.unirest.JsonNode;
-import kong.unirest.Unirest;
-import kong.unirest.UnirestException;
-import kong.unirest.json.JSONObject;
-import org.apache.http.impl.execchain.RequestAbortedException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.hubspot.utils.concurrent.CustomThreadFactory;
 import org.hubspot.utils.exceptions.HubSpotException;
+import org.hubspot.utils.http.*;
+import org.json.JSONException;
+import org.json.JSONObject;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.*;
 
 /**
  * @author Nicholas Curl
@@ -21,79 +23,123 @@ public class HttpService {
     /**
      * The instance of the logger
      */
-    private static final Logger logger = LogManager.getLogger(HttpService.class);
-    private final        String apiKey;
+    private static final Logger               logger = LogManager.getLogger(HttpService.class);
+    private final        String               apiKey;
+    private final        HttpTransport        transport;
+    private final        ApiRateGovernor      rateGovernor;
+    private final        RetryPolicy          retryPolicy;
+    /**
+     * Shares the result of a GET request between identical requests made while it is in flight
+     */
+    private final        SingleFlight<Object> singleFlight;
+    /**
+     * The per endpoint latencies, status codes, retries and bytes of every request sent
+     */
+    private final        HttpMetrics          metrics;
+    /**
+     * Traces the responses chosen by the {@code hubspot.trace} properties to their own asynchronous log
+     */
+    private final        HttpTracer           tracer;
+    /**
+     * The small pool that converts responses, so the client's I/O threads are never blocked
+     */
+    private final        ExecutorService      decoder;
+    /**
+     * Waits out the retry delays and the rate limit permits of the retried requests, off the decoder
+     */
+    private final        ExecutorService      retrier;
 
-    public HttpService(String apiKey, String apiBase) {
+    public HttpService(String apiKey, HttpTransport transport, ApiRateGovernor rateGovernor) {
         this.apiKey = apiKey;
-        Unirest.config().automaticRetries(true).socketTimeout(0).defaultBaseUrl(apiBase).connectTimeout(0);
+        this.transport = transport;
+        this.rateGovernor = rateGovernor;
+        this.retryPolicy = new RetryPolicy();
+        this.singleFlight = new SingleFlight<>();
+        this.metrics = new HttpMetrics();
+        this.tracer = new HttpTracer();
+        this.decoder = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                                                    new CustomThreadFactory("HttpDecoder", true)
+        );
+        this.retrier = Executors.newCachedThreadPool(new CustomThreadFactory("HttpRetrier", true));
     }
 
-    public Object getRequest(String url, Map<String, Object> queryParams) throws HubSpotException {
-        while (true) {
-            try {
-                HttpResponse<JsonNode> resp = Unirest.get(url)
-                                                     .queryString(queryParams)
-                                                     .queryString("hapikey", apiKey)
-                                                     .asJson();
-
-                Object response = getObject(resp);
-                if (response != null) {
-                    return response;
-                }
+    /**
+     * Combines a list of futures into one future that completes with their results in the same order
+     *
+     * @param futures The futures to combine
+     * @param <T>     The result type of the futures
+     *
+     * @return A future of the list of results
+     */
+    public static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<T> results = new ArrayList<>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
             }
-            catch (UnirestException e) {
-                if (!(e.getCause() instanceof RequestAbortedException)) {
-                    throw new HubSpotException("Can not get data\n URL:" + url,
-                                               ErrorCodes.UNIREST_EXCEPTION.getErrorCode(),
-                                               e
-                    );
-                }
+            return results;
+        });
+    }
+
+    /**
+     * Waits for the future to complete and unwraps any failure into a {@link HubSpotException}
+     *
+     * @param future The future to wait on
+     * @param <T>    The result type of the future
+     *
+     * @return The result of the future
+     *
+     * @throws HubSpotException if the future completed exceptionally
+     */
+    public static <T> T await(CompletableFuture<T> future) throws HubSpotException {
+        try {
+            return future.join();
+        }
+        catch (CancellationException e) {
+            throw new HubSpotException("Request was cancelled", ErrorCodes.CANCELLATION_EXCEPTION.getErrorCode(), e);
+        }
+        catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof HubSpotException) {
+                throw (HubSpotException) cause;
             }
+            throw new HubSpotException(cause, ErrorCodes.HUBSPOT_EXCEPTION.getErrorCode());
         }
     }
 
-    public Object getRequest(String url, String properties) throws HubSpotException {
-        while (true) {
-            try {
-                HttpResponse<JsonNode> resp = Unirest.get(url)
-                                                     .queryString("properties", properties)
-                                                     .queryString("hapikey", apiKey)
-                                                     .asJson();
-                Object response = getObject(resp);
-                if (response != null) {
-                    return response;
-                }
-            }
-            catch (UnirestException e) {
-                if (!(e.getCause() instanceof RequestAbortedException)) {
-                    throw new HubSpotException("Can not get data\n URL:" + url,
-                                               ErrorCodes.UNIREST_EXCEPTION.getErrorCode(),
-                                               e
-                    );
-                }
+    /**
+     * Checks if the request failed before a response arrived, such as when it was aborted or the connection reset
+     */
+    private static boolean isNetworkFailure(Throwable throwable) {
+        while (throwable != null) {
+            if (throwable instanceof IOException) {
+                return true;
             }
+            throwable = throwable.getCause();
         }
+        return false;
+    }
+
+    public Object getRequest(String url, Map<String, Object> queryParams) throws HubSpotException {
+        return await(getRequestAsync(url, queryParams));
+    }
+
+    public Object getRequest(String url, String properties) throws HubSpotException {
+        return await(getRequestAsync(url, Map.of("properties", properties)));
     }
 
     public Object getRequest(String url) throws HubSpotException {
-        while (true) {
-            try {
-                HttpResponse<JsonNode> resp = Unirest.get(url).queryString("hapikey", apiKey).asJson();
-                Object response = getObject(resp);
-                if (response != null) {
-                    return response;
-                }
-            }
-            catch (UnirestException e) {
-                if (!(e.getCause() instanceof RequestAbortedException)) {
-                    throw new HubSpotException("Can not get data\n URL:" + url,
-                                               ErrorCodes.UNIREST_EXCEPTION.getErrorCode(),
-                                               e
-                    );
-                }
-            }
-        }
+        return await(getRequestAsync(url));
+    }
+
+    public CompletableFuture<Object> getRequestAsync(String url, Map<String, Object> queryParams) {
+        return getAsync(TransportRequest.get(url).queryString(queryParams).queryString("hapikey", apiKey),
+                        "Can not get data\n URL:" + url
+        );
+    }
+
+    public CompletableFuture<Object> getRequestAsync(String url) {
+        return getAsync(TransportRequest.get(url).queryString("hapikey", apiKey), "Can not get data\n URL:" + url);
     }
 
     public Object postRequest(String url, String properties) throws HubSpotException {
@@ -101,31 +147,7 @@ public class HttpService {
     }
 
     public Object postRequest(String url, String properties, String contentType) throws HubSpotException {
-        if (Strings.isNullOrEmpty(contentType)) {
-            contentType = "application/json";
-        }
-        while (true) {
-            try {
-                HttpResponse<JsonNode> resp = Unirest.post(url)
-                                                     .queryString("hapikey", apiKey)
-                                                     .header("accept", "application/json")
-                                                     .header("Content-Type", contentType)
-                                                     .body(properties)
-                                                     .asJson();
-                Object response = getObject(resp);
-                if (response != null) {
-                    return response;
-                }
-            }
-            catch (UnirestException e) {
-                if (!(e.getCause() instanceof RequestAbortedException)) {
-                    throw new HubSpotException("Cannot make a request: \n" + properties,
-                                               ErrorCodes.UNIREST_EXCEPTION.getErrorCode(),
-                                               e
-                    );
-                }
-            }
-        }
+        return await(postRequestAsync(url, properties, contentType));
     }
 
     public Object postRequest(String url, org.json.JSONObject properties) throws HubSpotException {
@@ -136,24 +158,178 @@ public class HttpService {
         return postRequest(url, properties.toString(), contentType);
     }
 
-    private Object checkResponse(HttpResponse<JsonNode> resp) throws HubSpotException {
-        logger.debug(LogMarkers.HTTP.getMarker(), new Response(resp));
-        if (204 != resp.getStatus() && 200 != resp.getStatus() && 202 != resp.getStatus()) {
-            String message = null;
+    public CompletableFuture<Object> postRequestAsync(String url, String properties) {
+        return postRequestAsync(url, properties, "application/json");
+    }
+
+    public CompletableFuture<Object> postRequestAsync(String url, String properties, String contentType) {
+        String type = Strings.isNullOrEmpty(contentType) ? "application/json" : contentType;
+        return sendAsync(TransportRequest.post(url, properties, type).queryString("hapikey", apiKey),
+                         "Cannot make a request: \n" + properties
+        );
+    }
+
+    public CompletableFuture<Object> postRequestAsync(String url, org.json.JSONObject properties) {
+        return postRequestAsync(url, properties.toString(), "application/json");
+    }
+
+    /**
+     * Gets the number of GET requests that were answered by an identical request already in flight
+     *
+     * @return The number of coalesced requests
+     */
+    public long getCoalescedCount() {
+        return singleFlight.getCoalescedCount();
+    }
+
+    /**
+     * Takes a snapshot of the per endpoint latencies, status codes, retries and bytes of the requests sent so far
+     *
+     * @return The metrics snapshot
+     */
+    public HttpMetrics.Snapshot getMetrics() {
+        return metrics.snapshot(rateGovernor.getWaitNanos());
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Shuts down the response decoder and the transport, logging the metrics of the run
+     */
+    public void shutdown() {
+        logger.info(LogMarkers.HTTP.getMarker(), getMetrics());
+        logger.debug(LogMarkers.HTTP.getMarker(), retryPolicy);
+        logger.debug(LogMarkers.HTTP.getMarker(), "Coalesced GET requests: {}", singleFlight.getCoalescedCount());
+        decoder.shutdown();
+        retrier.shutdown();
+        transport.shutdown();
+    }
+
+    /**
+     * Sends the GET request, or joins an identical one already in flight. Joined requests share the decoded result,
+     * so callers must treat it as read only.
+     *
+     * @param request      The request to send
+     * @param errorMessage The message of the exception thrown if the request fails
+     *
+     * @return A future of the decoded response body
+     */
+    private CompletableFuture<Object> getAsync(TransportRequest request, String errorMessage) {
+        return singleFlight.execute(request.getKey(), () -> sendAsync(request, errorMessage));
+    }
+
+    private CompletableFuture<Object> sendAsync(TransportRequest request, String errorMessage) {
+        return sendAsync(request, errorMessage, retryPolicy.newAttempt());
+    }
+
+    private CompletableFuture<Object> sendAsync(TransportRequest request,
+                                                String errorMessage,
+                                                RetryPolicy.Attempt attempt
+    ) {
+        if (rateGovernor.isDailyExhausted()) {
+            return CompletableFuture.failedFuture(new HubSpotException("Daily limit reached",
+                                                                       ErrorCodes.DAILY_LIMIT_REACHED.getErrorCode()
+            ));
+        }
+        ApiRateGovernor.Policy policy = ApiRateGovernor.Policy.of(request.getPath());
+        CompletableFuture<TransportResponse> sent;
+        long started = System.nanoTime();
+        try {
+            sent = transport.send(request).whenComplete((resp, throwable) -> {
+                long latency = System.nanoTime() - started;
+                if (resp != null) {
+                    metrics.recordResponse(request, resp, latency);
+                    tracer.traceResponse(request, resp, latency);
+                }
+                else {
+                    metrics.recordFailure(request, latency);
+                    tracer.traceFailure(request, latency, throwable);
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        return sent.handleAsync((resp, throwable) -> {
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                                  ? throwable.getCause()
+                                  : throwable;
+                HubSpotException exception = new HubSpotException(errorMessage,
+                                                                  ErrorCodes.UNIREST_EXCEPTION.getErrorCode(),
+                                                                  cause
+                );
+                if (isNetworkFailure(throwable)) {
+                    return retry(attempt, RetryPolicy.ErrorClass.NETWORK, -1, exception);
+                }
+                throw new CompletionException(exception);
+            }
+            rateGovernor.update(policy, resp::getFirstHeader);
+            long decodeStarted = System.nanoTime();
             try {
-                message = resp.getStatus() == 429
-                          ? resp.getBody().getObject().getString("message")
-                          : resp.getStatusText();
+                return checkResponse(resp);
             }
-            catch (Exception ignored) {
+            catch (HubSpotException e) {
+                RetryPolicy.ErrorClass errorClass = RetryPolicy.ErrorClass.of(e.getCode());
+                if (errorClass == RetryPolicy.ErrorClass.RATE_LIMITED) {
+                    rateGovernor.onThrottled(policy, e.getPolicyName());
+                    if ("DAILY".equalsIgnoreCase(e.getPolicyName())) {
+                        throw new CompletionException(new HubSpotException("Daily limit reached",
+                                                                           ErrorCodes.DAILY_LIMIT_REACHED.getErrorCode()
+                        ));
+                    }
+                }
+                if (errorClass == null) {
+                    throw new CompletionException(e);
+                }
+                long retryAfter = RetryPolicy.parseRetryAfter(resp.getFirstHeader("Retry-After"));
+                return retry(attempt, errorClass, retryAfter, e);
+            }
+            finally {
+                metrics.recordDecode(request, System.nanoTime() - decodeStarted);
             }
+        }, decoder).thenCompose(response -> {
+            if (response instanceof Retry) {
+                metrics.recordRetry(request);
+                Executor delayed = CompletableFuture.delayedExecutor(((Retry) response).delay,
+                                                                     TimeUnit.MILLISECONDS,
+                                                                     retrier
+                );
+                return CompletableFuture.runAsync(() -> rateGovernor.acquire(policy), delayed)
+                                        .thenCompose(ignored -> sendAsync(request, errorMessage, attempt));
+            }
+            return CompletableFuture.completedFuture(response);
+        });
+    }
+
+    private Retry retry(RetryPolicy.Attempt attempt,
+                        RetryPolicy.ErrorClass errorClass,
+                        long retryAfter,
+                        HubSpotException cause
+    ) {
+        long delay = retryPolicy.nextDelay(attempt, errorClass, retryAfter);
+        if (delay < 0) {
+            throw new CompletionException(cause);
+        }
+        return new Retry(delay);
+    }
+
+    private Object checkResponse(TransportResponse resp) throws HubSpotException {
+        boolean success = 204 == resp.getStatus() ||
+                          200 == resp.getStatus() ||
+                          202 == resp.getStatus() ||
+                          207 == resp.getStatus();
+        Object body = decodeBody(resp, success);
+        if (!success) {
+            JSONObject error = body instanceof JSONObject ? (JSONObject) body : null;
+            String message = resp.getStatus() == 429
+                             ? error != null ? error.optString("message", null) : null
+                             : resp.getStatusText();
             if (!Strings.isNullOrEmpty(message)) {
                 if (resp.getStatus() == 429) {
-                    String policyName = resp.getBody().getObject().has("policyName")
-                                        ? resp.getBody()
-                                              .getObject()
-                                              .getString("policyName")
-                                        : "";
+                    String policyName = error.has("policyName") ? error.getString("policyName") : "";
                     throw new HubSpotException(resp.getStatus() + " " + message,
                                                policyName,
                                                ErrorCodes.HTTP_429.getErrorCode()
@@ -167,42 +343,37 @@ public class HttpService {
                 throw new HubSpotException(resp.getStatus() + " " + resp.getStatusText(), resp.getStatus() % 256);
             }
         }
-        else if (resp.getBody() != null) {
-            return resp.getBody().isArray() ? resp.getBody().getArray() : resp.getBody().getObject();
-        }
-        else {
-            return null;
-        }
+        return body;
     }
 
-    private Object getObject(HttpResponse<JsonNode> resp) throws HubSpotException {
+    /**
+     * Decodes the response body, tolerating bodies that are not JSON on error responses
+     */
+    private Object decodeBody(TransportResponse resp, boolean success) throws HubSpotException {
+        byte[] bytes = resp.getBody();
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
         try {
-            JSONObject response = (JSONObject) checkResponse(resp);
-            if (response != null) {
-                return Utils.convertType(response);
-            }
+            return JsonDecoder.decode(bytes);
         }
-        catch (HubSpotException e) {
-            if (e.getCode() == ErrorCodes.HTTP_502.getErrorCode() ||
-                e.getCode() == ErrorCodes.HTTP_503.getErrorCode() ||
-                e.getCode() == ErrorCodes.HTTP_504.getErrorCode() ||
-                e.getCode() == ErrorCodes.HTTP_500.getErrorCode() ||
-                e.getCode() == ErrorCodes.HTTP_524.getErrorCode() ||
-                e.getCode() == ErrorCodes.HTTP_409.getErrorCode()) {
-                Utils.sleep(50L);
-            }
-            else if (e.getCode() == ErrorCodes.HTTP_429.getErrorCode()) {
-                if (e.getPolicyName().equalsIgnoreCase("DAILY")) {
-                    throw new HubSpotException("Daily limit reached", ErrorCodes.DAILY_LIMIT_REACHED.getErrorCode());
-                }
-                else {
-                    Utils.sleep(50L);
-                }
-            }
-            else {
-                throw e;
+        catch (JSONException e) {
+            if (success) {
+                throw new HubSpotException("Unable to decode response", ErrorCodes.HUBSPOT_EXCEPTION.getErrorCode(), e);
             }
+            return null;
+        }
+    }
+
+    /**
+     * The result of a response that should be sent again after the delay
+     */
+    private static class Retry {
+
+        private final long delay;
+
+        private Retry(long delay) {
+            this.delay = delay;
         }
-        return null;
     }
 }
@@ -0,0 +1,113 @@
+package org.hubspot.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.utils.http.TransportRequest;
+import org.hubspot.utils.http.TransportResponse;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traces requests and their responses to their own log, which the log4j configuration sends to an asynchronous
+ * appender. What is traced is chosen by the {@code hubspot.trace} system property, {@code off}, {@code errors} or
+ * {@code all}, and {@code hubspot.trace.sample}, which traces 1 in every N successful responses when tracing all.
+ * Responses that are not traced cost a counter increment at most, and traced ones are only rendered on the appender's
+ * thread.
+ *
+ * @author Nicholas Curl
+ */
+public class HttpTracer {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger     logger = LogManager.getLogger(HttpTracer.class);
+    private final        Mode       mode;
+    private final        long       sample;
+    private final        AtomicLong successes;
+
+    /**
+     * Creates a tracer configured by the {@code hubspot.trace} and {@code hubspot.trace.sample} system properties,
+     * tracing only errors by default
+     */
+    public HttpTracer() {
+        this(Mode.of(System.getProperty("hubspot.trace", "errors")), Long.getLong("hubspot.trace.sample", 1));
+    }
+
+    /**
+     * Creates a tracer
+     *
+     * @param mode   Which responses are traced
+     * @param sample The N of tracing 1 in every N successful responses, used when tracing all
+     */
+    public HttpTracer(Mode mode, long sample) {
+        this.mode = logger.isTraceEnabled(LogMarkers.TRACE.getMarker()) ? mode : Mode.OFF;
+        this.sample = Math.max(1, sample);
+        this.successes = new AtomicLong();
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getSample() {
+        return sample;
+    }
+
+    /**
+     * Traces a request that failed without a response, unless tracing is off
+     *
+     * @param request   The request
+     * @param latency   The nanoseconds until the request failed
+     * @param throwable The cause of the failure
+     */
+    public void traceFailure(TransportRequest request, long latency, Throwable throwable) {
+        if (mode != Mode.OFF) {
+            logger.trace(LogMarkers.TRACE.getMarker(), new Response(request, latency, throwable));
+        }
+    }
+
+    /**
+     * Traces a response if it is an error and tracing is not off, or if it is a success chosen by the sampling when
+     * tracing all
+     *
+     * @param request  The request the response answered
+     * @param response The response
+     * @param latency  The nanoseconds the response took to arrive
+     */
+    public void traceResponse(TransportRequest request, TransportResponse response, long latency) {
+        if (mode == Mode.OFF) {
+            return;
+        }
+        boolean error = response.getStatus() >= 300;
+        if (error || (mode == Mode.ALL && successes.getAndIncrement() % sample == 0)) {
+            logger.trace(LogMarkers.TRACE.getMarker(), new Response(request, response, latency));
+        }
+    }
+
+    /**
+     * Which responses are traced
+     */
+    public enum Mode {
+        OFF,
+        ERRORS,
+        ALL;
+
+        /**
+         * Gets the mode with the given name, ignoring case
+         *
+         * @param name The name of the mode
+         *
+         * @return The mode, or {@link #ERRORS} if the name is not one of a mode
+         */
+        public static Mode of(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            }
+            catch (IllegalArgumentException e) {
+                return ERRORS;
+            }
+        }
+    }
+}
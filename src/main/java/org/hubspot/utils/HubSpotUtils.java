@@ -1,15 +1,17 @@
 package org.hubspot.utils;
 
-import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.collect.Iterables;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hubspot.objects.PropertyData;
 import org.hubspot.objects.crm.CRMObjectType;
 import org.hubspot.utils.exceptions.HubSpotException;
+import org.hubspot.utils.http.ApiRateGovernor;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Nicholas Curl
@@ -19,9 +21,120 @@ public class HubSpotUtils {
     /**
      * The instance of the logger
      */
-    private static final Logger logger = LogManager.getLogger(HubSpotUtils.class);
+    private static final Logger logger            = LogManager.getLogger(HubSpotUtils.class);
+    /**
+     * The most ids HubSpot accepts in one batch request
+     */
+    public static final  int    BATCH_LIMIT       = 100;
+    /**
+     * The most objects HubSpot returns in one page of the list and search endpoints
+     */
+    public static final  int    PAGE_LIMIT        = 100;
+    /**
+     * The most characters of property names sent in the query string of one list request, set by the
+     * {@code hubspot.properties.length} system property. Longer property lists are split across requests for the same
+     * page.
+     */
+    public static final  int    PROPERTIES_LENGTH = Integer.getInteger("hubspot.properties.length", 2000);
+    /**
+     * The most times the chunks of a page are requested when they do not return the same objects
+     */
+    private static final int    PAGE_ATTEMPTS     = 3;
 
-    public static long getObjectCount(HttpService service, CRMObjectType type, final RateLimiter rateLimiter) {
+    /**
+     * Reads objects by id with the batch read endpoint, sending the ids in chunks of {@link #BATCH_LIMIT} that are in
+     * flight at the same time, each after acquiring its permit from the rate governor
+     *
+     * @param service      The http service to send the requests with
+     * @param rateGovernor The rate governor to acquire the request permits from
+     * @param type         The type of the objects
+     * @param propertyData The properties to read
+     * @param ids          The ids of the objects
+     *
+     * @return A future of the json of each object found, objects that do not exist being left out
+     */
+    public static CompletableFuture<List<JSONObject>> batchRead(HttpService service,
+                                                                final ApiRateGovernor rateGovernor,
+                                                                CRMObjectType type,
+                                                                PropertyData propertyData,
+                                                                Collection<Long> ids
+    ) {
+        return batchRead(service, rateGovernor, type.getValue(), propertyData.getPropertyNames(), ids);
+    }
+
+    /**
+     * Reads objects of any type by id with the batch read endpoint, such as engagement types that have no
+     * {@link CRMObjectType}
+     *
+     * @param service       The http service to send the requests with
+     * @param rateGovernor  The rate governor to acquire the request permits from
+     * @param objectType    The object type as named in the path, such as {@code emails}
+     * @param propertyNames The names of the properties to read
+     * @param ids           The ids of the objects
+     *
+     * @return A future of the json of each object found, objects that do not exist being left out
+     *
+     * @see #batchRead(HttpService, ApiRateGovernor, CRMObjectType, PropertyData, Collection)
+     */
+    public static CompletableFuture<List<JSONObject>> batchRead(HttpService service,
+                                                                final ApiRateGovernor rateGovernor,
+                                                                String objectType,
+                                                                Collection<String> propertyNames,
+                                                                Collection<Long> ids
+    ) {
+        String url = "/crm/v3/objects/" + objectType + "/batch/read";
+        JSONArray propertyArray = new JSONArray(propertyNames);
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (List<Long> chunk : Iterables.partition(ids, BATCH_LIMIT)) {
+            JSONArray inputs = new JSONArray();
+            for (long id : chunk) {
+                inputs.put(new JSONObject().put("id", String.valueOf(id)));
+            }
+            JSONObject body = new JSONObject().put("properties", propertyArray).put("inputs", inputs);
+            rateGovernor.acquire();
+            futures.add(service.postRequestAsync(url, body));
+        }
+        return HttpService.allOf(futures).thenApply(responses -> {
+            List<JSONObject> results = new ArrayList<>(ids.size());
+            for (Object response : responses) {
+                JSONArray resultsArray = ((JSONObject) response).optJSONArray("results");
+                if (resultsArray != null) {
+                    for (Object result : resultsArray) {
+                        results.add((JSONObject) result);
+                    }
+                }
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Splits the property names into lists whose comma separated names fit in {@link #PROPERTIES_LENGTH} characters
+     *
+     * @param propertyNames The property names
+     *
+     * @return The chunks of property names, a single chunk if they all fit in one request
+     */
+    public static List<String> chunkProperties(List<String> propertyNames) {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder chunk = new StringBuilder();
+        for (String propertyName : propertyNames) {
+            if (chunk.length() > 0 && chunk.length() + 1 + propertyName.length() > PROPERTIES_LENGTH) {
+                chunks.add(chunk.toString());
+                chunk.setLength(0);
+            }
+            if (chunk.length() > 0) {
+                chunk.append(',');
+            }
+            chunk.append(propertyName);
+        }
+        if (chunk.length() > 0 || chunks.isEmpty()) {
+            chunks.add(chunk.toString());
+        }
+        return chunks;
+    }
+
+    public static long getObjectCount(HttpService service, CRMObjectType type, final ApiRateGovernor rateGovernor) {
         JSONObject body = new JSONObject();
         JSONArray filterGroupsArray = new JSONArray();
         JSONObject filters = new JSONObject();
@@ -33,16 +146,134 @@ public class HubSpotUtils {
         filters.put("filters", filtersArray);
         filterGroupsArray.put(filters);
         body.put("filterGroups", filterGroupsArray).put("properties", propertyArray).put("limit", 1);
-        return getCount(service, type, rateLimiter, body);
+        return getCount(service, type, rateGovernor, body);
+    }
+
+    /**
+     * Gets one page of a list endpoint, requesting each chunk of properties for the same page at the same time and
+     * merging the properties of each object by id into a copy of the first response, whose paging is kept. The
+     * responses may be shared with identical requests, so they are never changed. If the objects were created or
+     * archived between the requests, so that the chunks do not return the same objects, the page is requested again.
+     *
+     * @param service        The http service to send the requests with
+     * @param rateGovernor   The rate governor to acquire the request permits from
+     * @param url            The url of the list endpoint
+     * @param queryParam     The query parameters of the page, other than the properties
+     * @param propertyChunks The chunks of properties from {@link #chunkProperties(List)}
+     *
+     * @return The page with all the properties of its objects
+     *
+     * @throws HubSpotException if a request fails or the chunks keep returning different objects
+     */
+    public static JSONObject getPage(HttpService service,
+                                     final ApiRateGovernor rateGovernor,
+                                     String url,
+                                     Map<String, Object> queryParam,
+                                     List<String> propertyChunks
+    ) throws HubSpotException {
+        for (int attempt = 1; ; attempt++) {
+            List<CompletableFuture<Object>> futures = new ArrayList<>();
+            for (String propertyChunk : propertyChunks) {
+                Map<String, Object> chunkParam = new HashMap<>(queryParam);
+                chunkParam.put("properties", propertyChunk);
+                rateGovernor.acquire();
+                futures.add(service.getRequestAsync(url, chunkParam));
+            }
+            List<Object> responses = HttpService.await(HttpService.allOf(futures));
+            if (responses.size() == 1) {
+                return (JSONObject) responses.get(0);
+            }
+            JSONObject page = mergeChunks(responses);
+            if (page != null) {
+                return page;
+            }
+            if (attempt == PAGE_ATTEMPTS) {
+                throw new HubSpotException("The property chunks of the page of " + url + " with " + queryParam +
+                                           " returned different objects " + PAGE_ATTEMPTS + " times",
+                                           ErrorCodes.HUBSPOT_EXCEPTION.getErrorCode()
+                );
+            }
+            logger.warn(LogMarkers.HTTP.getMarker(),
+                        "The property chunks of the page of {} with {} returned different objects, requesting it again",
+                        url,
+                        queryParam
+            );
+        }
+    }
+
+    /**
+     * Merges the properties of the objects of each chunk's response into new objects, leaving the responses as they
+     * are
+     *
+     * @param responses The responses of the chunks of the same page
+     *
+     * @return The merged page, or {@code null} if the responses do not hold the same objects
+     */
+    private static JSONObject mergeChunks(List<Object> responses) {
+        JSONObject first = (JSONObject) responses.get(0);
+        Map<Long, JSONObject> properties = new LinkedHashMap<>();
+        JSONArray results = new JSONArray();
+        for (Object result : first.getJSONArray("results")) {
+            JSONObject object = copy((JSONObject) result);
+            JSONObject objectProperties = copy(object.getJSONObject("properties"));
+            object.put("properties", objectProperties);
+            properties.put(object.getLong("id"), objectProperties);
+            results.put(object);
+        }
+        for (Object response : responses.subList(1, responses.size())) {
+            JSONArray chunkResults = ((JSONObject) response).getJSONArray("results");
+            if (chunkResults.length() != properties.size()) {
+                return null;
+            }
+            for (Object result : chunkResults) {
+                JSONObject object = (JSONObject) result;
+                JSONObject merged = properties.get(object.getLong("id"));
+                if (merged == null) {
+                    return null;
+                }
+                JSONObject chunkProperties = object.getJSONObject("properties");
+                for (String key : chunkProperties.keySet()) {
+                    merged.put(key, chunkProperties.get(key));
+                }
+            }
+        }
+        return copy(first).put("results", results);
+    }
+
+    /**
+     * Copies the values of the object into a new one, without copying the values themselves
+     */
+    private static JSONObject copy(JSONObject object) {
+        JSONObject copy = new JSONObject();
+        for (String key : object.keySet()) {
+            copy.put(key, object.get(key));
+        }
+        return copy;
+    }
+
+    /**
+     * Gets the page size of the list and search requests of the object type, set by the
+     * {@code hubspot.pageSize.<type>} system property, such as {@code hubspot.pageSize.contacts}, or else by
+     * {@code hubspot.pageSize}
+     *
+     * @param type The object type
+     *
+     * @return The page size, {@link #PAGE_LIMIT} by default and at most
+     */
+    public static int getPageSize(CRMObjectType type) {
+        int pageSize = Integer.getInteger("hubspot.pageSize." + type.getValue(),
+                                          Integer.getInteger("hubspot.pageSize", PAGE_LIMIT)
+        );
+        return Math.max(1, Math.min(PAGE_LIMIT, pageSize));
     }
 
     public static long getUpdateCount(HttpService service,
-                                      final RateLimiter rateLimiter,
+                                      final ApiRateGovernor rateGovernor,
                                       CRMObjectType type,
                                       long lastExecution
     ) {
         JSONObject body = getUpdateBody(type, PropertyData.EMPTY, lastExecution, 1);
-        return getCount(service, type, rateLimiter, body);
+        return getCount(service, type, rateGovernor, body);
     }
 
     public static JSONObject getUpdateBody(CRMObjectType type,
@@ -81,11 +312,11 @@ public class HubSpotUtils {
 
     private static long getCount(HttpService service,
                                  CRMObjectType type,
-                                 final RateLimiter rateLimiter,
+                                 final ApiRateGovernor rateGovernor,
                                  JSONObject body
     ) {
         try {
-            rateLimiter.acquire(1);
+            rateGovernor.acquire(ApiRateGovernor.Policy.SEARCH);
             JSONObject resp = (JSONObject) service.postRequest("/crm/v3/objects/" + type.getValue() + "/search", body);
             return resp.getLong("total");
         }
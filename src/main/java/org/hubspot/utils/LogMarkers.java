@@ -13,7 +13,8 @@ public enum LogMarkers {
     CPU_LOAD("CPU_LOAD"),
     DEBUG("DEBUG"),
     DELETION("DELETION"),
-    HTTP("HTTP");
+    HTTP("HTTP"),
+    TRACE("TRACE");
 
     private final Marker marker;
 
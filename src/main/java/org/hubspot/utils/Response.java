@@ -1,57 +1,142 @@
 package org.hubspot.utils;
 
-import kong.unirest.HttpResponse;
-import kong.unirest.JsonNode;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.AsynchronouslyFormattable;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.hubspot.utils.http.TransportRequest;
+import org.hubspot.utils.http.TransportResponse;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 
 /**
+ * A log message describing a response. Only references to the request and the immutable response are kept, and the
+ * headers and body are rendered the first time the message is formatted, which happens on the appender's thread rather
+ * than on the thread that logged it.
+ *
  * @author Nicholas Curl
  */
-public class Response {
+@AsynchronouslyFormattable
+public class Response implements Message {
 
     /**
      * The instance of the logger
      */
-    private static final Logger logger = LogManager.getLogger(Response.class);
-    private final        String statusText;
-    private final        int    statusCode;
-    private final        String headers;
-    private final        String cookies;
-    private final        String body;
-
-    public Response(HttpResponse<JsonNode> response) {
-        if (response.getBody() != null) {
-            this.body = response.getBody().toPrettyString();
-        }
-        else {
-            this.body = "";
-        }
-        this.statusCode = response.getStatus();
-        if (response.getCookies() != null) {
-            this.cookies = response.getCookies().toString();
+    private static final    Logger            logger           = LogManager.getLogger(Response.class);
+    /**
+     * The serial version UID for this class
+     */
+    private static final    long              serialVersionUID = 7492570640640169626L;
+    private final           String            request;
+    private final transient TransportResponse response;
+    private final           long              latency;
+    private final transient Throwable         throwable;
+    private                 String            formatted;
+
+    /**
+     * Creates the message
+     *
+     * @param request  The request the response answered
+     * @param response The response
+     * @param latency  The nanoseconds the response took to arrive
+     */
+    public Response(TransportRequest request, TransportResponse response, long latency) {
+        this(request, response, latency, null);
+    }
+
+    /**
+     * Creates the message of a request that failed without a response
+     *
+     * @param request   The request
+     * @param latency   The nanoseconds until the request failed
+     * @param throwable The cause of the failure
+     */
+    public Response(TransportRequest request, long latency, Throwable throwable) {
+        this(request, null, latency, throwable);
+    }
+
+    private Response(TransportRequest request, TransportResponse response, long latency, Throwable throwable) {
+        this.request = request.getKey();
+        this.response = response;
+        this.latency = latency;
+        this.throwable = throwable;
+    }
+
+    private static String renderBody(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return "";
         }
-        else {
-            this.cookies = "";
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        try {
+            Object value = new JSONTokener(text).nextValue();
+            if (value instanceof JSONObject) {
+                return ((JSONObject) value).toString(4);
+            }
+            else if (value instanceof JSONArray) {
+                return ((JSONArray) value).toString(4);
+            }
         }
-        if (response.getHeaders() != null) {
-            this.headers = response.getHeaders().toString();
+        catch (JSONException ignored) {
         }
-        else {
-            this.headers = "";
+        return text;
+    }
+
+    /**
+     * Serializes the rendered message in place of the response, which is not serializable
+     *
+     * @return A simple message of the formatted text
+     */
+    private Object writeReplace() {
+        return new SimpleMessage(getFormattedMessage());
+    }
+
+    @Override
+    public String getFormat() {
+        return "";
+    }
+
+    @Override
+    public synchronized String getFormattedMessage() {
+        if (formatted == null) {
+            formatted = toString();
         }
-        this.statusText = response.getStatusText();
+        return formatted;
+    }
+
+    @Override
+    public Object[] getParameters() {
+        return null;
+    }
+
+    @Override
+    public Throwable getThrowable() {
+        return throwable;
     }
 
     @Override
     public String toString() {
+        if (response == null) {
+            return "Response{" +
+                   "request='" + request + '\'' +
+                   ", latencyMs=" + latency / 1_000_000 +
+                   ", failed=true" +
+                   '}';
+        }
         return "Response{" +
-               "statusText='" + statusText + '\'' +
-               ", statusCode=" + statusCode +
-               ", headers='" + headers + '\'' +
-               ", cookies='" + cookies + '\'' +
-               ", body='" + body + '\'' +
+               "request='" + request + '\'' +
+               ", latencyMs=" + latency / 1_000_000 +
+               ", statusText='" + response.getStatusText() + '\'' +
+               ", statusCode=" + response.getStatus() +
+               ", headers='" + response.getHeaders() + '\'' +
+               ", cookies='" + response.getHeaders().getOrDefault("Set-Cookie", List.of()) + '\'' +
+               ", body='" + renderBody(response.getBody()) + '\'' +
                '}';
     }
 }
@@ -11,8 +11,6 @@ import org.json.JSONObject;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -32,11 +30,8 @@ public class Utils {
     /**
      * The instance of the logger
      */
-    private static final Logger                logger             = LogManager.getLogger(Utils.class);
-    private static final List<ExecutorService> executors          = new ArrayList<>();
-    private static final SimpleDateFormat      hubspotDateFormat  = new SimpleDateFormat(
-            "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-    private static final SimpleDateFormat      hubspotDateFormat1 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    private static final Logger                logger    = LogManager.getLogger(Utils.class);
+    private static final List<ExecutorService> executors = new ArrayList<>();
 
     public static void addExecutor(ThreadPoolExecutor executor) {
         executors.add(executor);
@@ -69,16 +64,6 @@ public class Utils {
         }
     }
 
-    public static Object convertType(kong.unirest.json.JSONObject jsonToConvert) {
-        Set<String> keys = jsonToConvert.keySet();
-        JSONObject jsonObject = new JSONObject();
-        for (String key : keys) {
-            Object o = jsonToConvert.get(key);
-            jsonObject.put(key, recurseCheckingConversion(o));
-        }
-        return jsonObject;
-    }
-
     public static String createLineDivider(int length) {
         return "\n" + "-".repeat(Math.max(0, length)) + "\n";
     }
@@ -192,75 +177,6 @@ public class Utils {
         }
     }
 
-    private static Object recurseCheckingConversion(Object object) {
-        if (object instanceof kong.unirest.json.JSONObject) {
-            kong.unirest.json.JSONObject o = (kong.unirest.json.JSONObject) object;
-            JSONObject jsonObject = new JSONObject();
-            Set<String> keys = o.keySet();
-            for (String key : keys) {
-                Object o1 = o.get(key);
-                jsonObject.put(key, recurseCheckingConversion(o1));
-            }
-            return jsonObject;
-        }
-        else if (object instanceof kong.unirest.json.JSONArray) {
-            kong.unirest.json.JSONArray o = (kong.unirest.json.JSONArray) object;
-            JSONArray jsonArray = new JSONArray();
-            for (Object o1 : o) {
-                jsonArray.put(recurseCheckingConversion(o1));
-            }
-            return jsonArray;
-        }
-        else if (object instanceof String) {
-            String o = (String) object;
-            try {
-                return Long.parseLong(o);
-            }
-            catch (NumberFormatException e) {
-                try {
-                    return Double.parseDouble(o);
-                }
-                catch (NumberFormatException numberFormatException) {
-                    if (o.equalsIgnoreCase("true") || o.equalsIgnoreCase("false")) {
-                        return Boolean.parseBoolean(o);
-                    }
-                    else {
-                        Pattern p = Pattern.compile("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}\\.\\d{3}Z");
-                        Matcher m = p.matcher(o);
-                        if (m.matches()) {
-                            try {
-                                return hubspotDateFormat.parse(o);
-                            }
-                            catch (ParseException parseException) {
-                                logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to parse date", parseException);
-                                return JSONObject.NULL;
-                            }
-                        }
-                        else {
-                            p = Pattern.compile("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}Z");
-                            m = p.matcher(o);
-                            if (m.matches()) {
-                                try {
-                                    return hubspotDateFormat1.parse(o);
-                                }
-                                catch (ParseException parseException) {
-                                    logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to parse date", parseException);
-                                    return JSONObject.NULL;
-                                }
-                            }
-                            else {
-                                return o;
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        else {
-            return Objects.requireNonNullElse(object, JSONObject.NULL);
-        }
-    }
-
     private static Object recurseCheckingFormat(Object object) {
         if (object instanceof JSONObject) {
             JSONObject o = (JSONObject) object;
@@ -0,0 +1,232 @@
+package org.hubspot.utils.cache;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes objects as tagged binary values, writing property names as their numbers in the {@link NameDictionary} of
+ * the store and integers as variable length numbers:
+ * <pre>
+ * value:   byte tag, then by tag
+ *          null, false, true: nothing
+ *          integer:           zigzag varint
+ *          string, literal:   varint length, utf-8 bytes
+ *          object:            varint count, (varint name number, value) per property
+ *          array:             varint count, value per element
+ * </pre>
+ * Values other than these, such as decimals, are written as the json literal the text format would hold and parsed
+ * back the same way, so an object decodes to exactly what reading its json text would give.
+ *
+ * @author Nicholas Curl
+ */
+public class BinaryRecordCodec implements RecordCodec {
+
+    static final         byte ID      = 1;
+    private static final int  NULL    = 0;
+    private static final int  FALSE   = 1;
+    private static final int  TRUE    = 2;
+    private static final int  INTEGER = 3;
+    private static final int  STRING  = 4;
+    private static final int  OBJECT  = 5;
+    private static final int  ARRAY   = 6;
+    private static final int  LITERAL = 7;
+
+    private static void writeValue(Output out, Object value, NameDictionary names) {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            out.write(NULL);
+        }
+        else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        }
+        else if (value instanceof Integer || value instanceof Long || value instanceof Short ||
+                 value instanceof Byte) {
+            long number = ((Number) value).longValue();
+            out.write(INTEGER);
+            out.writeVarLong((number << 1) ^ (number >> 63));
+        }
+        else if (value instanceof String) {
+            out.write(STRING);
+            out.writeString((String) value);
+        }
+        else if (value instanceof JSONObject) {
+            JSONObject jsonObject = (JSONObject) value;
+            out.write(OBJECT);
+            out.writeVarLong(jsonObject.length());
+            for (String key : jsonObject.keySet()) {
+                out.writeVarLong(names.getId(key));
+                writeValue(out, jsonObject.opt(key), names);
+            }
+        }
+        else if (value instanceof JSONArray) {
+            JSONArray jsonArray = (JSONArray) value;
+            out.write(ARRAY);
+            out.writeVarLong(jsonArray.length());
+            for (int i = 0; i < jsonArray.length(); i++) {
+                writeValue(out, jsonArray.opt(i), names);
+            }
+        }
+        else {
+            out.write(LITERAL);
+            out.writeString(JSONObject.valueToString(value));
+        }
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public byte[] encode(JSONObject jsonObject, NameDictionary names) {
+        Output out = new Output();
+        writeValue(out, jsonObject, names);
+        return out.toByteArray();
+    }
+
+    @Override
+    public JSONObject decode(ByteBuffer data, NameDictionary names) throws JSONException {
+        Input in = new Input(data.duplicate());
+        Object value = in.readValue(names);
+        if (!(value instanceof JSONObject)) {
+            throw new JSONException("Record does not hold an object");
+        }
+        return (JSONObject) value;
+    }
+
+    /**
+     * A byte array output stream with the variable length numbers and strings of the format
+     */
+    private static class Output extends ByteArrayOutputStream {
+
+        private Output() {
+            super(512);
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Reads the values of the format from a buffer, copying the bytes of strings out of buffers without an array
+     * through one scratch array
+     */
+    private static class Input {
+
+        private final ByteBuffer data;
+        private       byte[]     scratch;
+
+        private Input(ByteBuffer data) {
+            this.data = data;
+        }
+
+        private int read() {
+            if (!data.hasRemaining()) {
+                throw new JSONException("Record cut short");
+            }
+            return data.get() & 0xFF;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new JSONException("Malformed number in record");
+        }
+
+        private int readLength() {
+            long length = readVarLong();
+            if (length < 0 || length > data.remaining()) {
+                throw new JSONException("Length " + length + " runs past the end of the record");
+            }
+            return (int) length;
+        }
+
+        private String readString() {
+            int length = readLength();
+            String value;
+            if (data.hasArray()) {
+                value = new String(data.array(), data.arrayOffset() + data.position(), length, StandardCharsets.UTF_8);
+                data.position(data.position() + length);
+            }
+            else {
+                if (scratch == null || scratch.length < length) {
+                    scratch = new byte[Math.max(length, 256)];
+                }
+                data.get(scratch, 0, length);
+                value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+            return value;
+        }
+
+        private Object readValue(NameDictionary names) {
+            int tag = read();
+            switch (tag) {
+                case NULL:
+                    return JSONObject.NULL;
+                case FALSE:
+                    return Boolean.FALSE;
+                case TRUE:
+                    return Boolean.TRUE;
+                case INTEGER:
+                    long encoded = readVarLong();
+                    long number = (encoded >>> 1) ^ -(encoded & 1);
+                    if (number == (int) number) {
+                        return (int) number;
+                    }
+                    return number;
+                case STRING:
+                    return readString();
+                case OBJECT:
+                    long properties = readVarLong();
+                    JSONObject jsonObject = new JSONObject();
+                    for (long i = 0; i < properties; i++) {
+                        int id = (int) readVarLong();
+                        String name = names.getName(id);
+                        if (name == null) {
+                            throw new JSONException("Unknown property name " + id);
+                        }
+                        jsonObject.put(name, readValue(names));
+                    }
+                    return jsonObject;
+                case ARRAY:
+                    long elements = readVarLong();
+                    JSONArray jsonArray = new JSONArray();
+                    for (long i = 0; i < elements; i++) {
+                        jsonArray.put(readValue(names));
+                    }
+                    return jsonArray;
+                case LITERAL:
+                    return new JSONTokener(readString()).nextValue();
+                default:
+                    throw new JSONException("Unknown value tag " + tag);
+            }
+        }
+    }
+}
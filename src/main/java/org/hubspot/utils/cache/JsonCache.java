@@ -0,0 +1,213 @@
+package org.hubspot.utils.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.utils.FileUtils;
+import org.hubspot.utils.LogMarkers;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The cache of json objects, addressed by the same folders as when each object was its own {@code {id}.json} file. A
+ * cache folder such as {@code ./cache/contacts} is a {@link SegmentStore}, and a numbered folder inside it such as
+ * {@code ./cache/engagements/{contactId}} is a group of that store. Folders that are not stores, such as the output
+ * folders, are deleted through {@link FileUtils} as before.
+ *
+ * @author Nicholas Curl
+ */
+public class JsonCache {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger                  logger = LogManager.getLogger(JsonCache.class);
+    /**
+     * The store of each cache folder, keyed by its absolute path
+     */
+    private static final Map<Path, SegmentStore> stores = new ConcurrentHashMap<>();
+
+    /**
+     * Caches the object in the folder under its id
+     *
+     * @param folder     The cache folder
+     * @param jsonObject The object
+     *
+     * @throws IOException If the object can not be written
+     */
+    public static void write(Path folder, JSONObject jsonObject) throws IOException {
+        getStore(folder).put(getGroup(folder), jsonObject);
+    }
+
+    /**
+     * Reads the object cached in the folder
+     *
+     * @param folder The cache folder
+     * @param id     The id of the object
+     *
+     * @return The object, or {@code null} if it is not cached
+     *
+     * @throws IOException If the object can not be read
+     */
+    public static JSONObject read(Path folder, long id) throws IOException {
+        return getStore(folder).get(getGroup(folder), id);
+    }
+
+    public static boolean contains(Path folder, long id) throws IOException {
+        return getStore(folder).contains(getGroup(folder), id);
+    }
+
+    /**
+     * Gets the ids of the objects cached in the folder
+     *
+     * @param folder The cache folder
+     *
+     * @return The ids, in the order the objects are laid out in the cache so they are read fastest in turn
+     *
+     * @throws IOException If the cache can not be opened
+     */
+    public static List<Long> list(Path folder) throws IOException {
+        return getStore(folder).ids(getGroup(folder));
+    }
+
+    /**
+     * Gets the numbered folders in the cache folder
+     *
+     * @param folder The cache folder
+     *
+     * @return The numbers of the folders, in no particular order
+     *
+     * @throws IOException If the cache can not be opened
+     */
+    public static List<Long> listFolders(Path folder) throws IOException {
+        return getStore(folder).groups();
+    }
+
+    /**
+     * Creates the folder, which for a numbered folder is recorded in the store of its parent
+     *
+     * @param folder The folder
+     *
+     * @throws IOException If the folder can not be created
+     */
+    public static void createFolder(Path folder) throws IOException {
+        if (isGroup(folder)) {
+            getStore(folder).createGroup(getGroup(folder));
+        }
+        else {
+            Files.createDirectories(folder);
+        }
+    }
+
+    /**
+     * Deletes the folder and the objects cached in it
+     *
+     * @param folder The folder
+     */
+    public static void delete(Path folder) {
+        if (!isStore(folder)) {
+            FileUtils.deleteDirectory(folder);
+        }
+        else if (isGroup(folder)) {
+            try {
+                getStore(folder).deleteGroup(getGroup(folder));
+            }
+            catch (IOException e) {
+                logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to delete directory {}", folder, e);
+            }
+        }
+        else {
+            getStore(folder).clear();
+        }
+    }
+
+    /**
+     * Deletes the objects cached in the folder, and in the numbered folders inside it, that were written after the
+     * time
+     *
+     * @param folder       The folder
+     * @param lastFinished The time in epoch milliseconds
+     */
+    public static void deleteRecentlyUpdated(Path folder, long lastFinished) {
+        if (!isStore(folder)) {
+            FileUtils.deleteRecentlyUpdated(folder, lastFinished);
+            return;
+        }
+        try {
+            getStore(folder).deleteModifiedAfter(isGroup(folder) ? getGroup(folder) : null, lastFinished);
+        }
+        catch (IOException e) {
+            logger.fatal(LogMarkers.ERROR.getMarker(),
+                         "Unable to delete the objects in {} written after {}. Please delete {} manually.",
+                         folder,
+                         lastFinished,
+                         folder,
+                         e
+            );
+        }
+    }
+
+    /**
+     * Gets when the most recently written object in the folder was written
+     *
+     * @param folder The folder
+     *
+     * @return The time in epoch milliseconds, or -1 if the folder holds no objects
+     */
+    public static long findMostRecentModification(Path folder) {
+        if (!isStore(folder)) {
+            return FileUtils.findMostRecentModification(folder);
+        }
+        try {
+            return getStore(folder).lastModified(getGroup(folder));
+        }
+        catch (IOException e) {
+            logger.fatal(LogMarkers.ERROR.getMarker(), "Unable to read {}", folder, e);
+            return -1;
+        }
+    }
+
+    /**
+     * Gets a stamp of the objects cached in the folder, which changes whenever an object in it is written or deleted
+     *
+     * @param folder The cache folder
+     *
+     * @return The stamp, or an empty string if the folder holds no cached objects
+     *
+     * @throws IOException If the folder can not be listed
+     */
+    public static String getStamp(Path folder) throws IOException {
+        return SegmentStore.getStamp(getRoot(folder));
+    }
+
+    /**
+     * Gets whether the folder is, or is a numbered folder of, a cache folder that is open or holds segment files
+     */
+    private static boolean isStore(Path folder) {
+        Path root = getRoot(folder);
+        return stores.containsKey(root) || SegmentStore.isStore(root);
+    }
+
+    private static boolean isGroup(Path folder) {
+        Path name = folder.getFileName();
+        return name != null && folder.getParent() != null && SegmentStore.isGroupName(name.toString());
+    }
+
+    private static long getGroup(Path folder) {
+        return isGroup(folder) ? Long.parseLong(folder.getFileName().toString()) : 0;
+    }
+
+    private static Path getRoot(Path folder) {
+        Path root = isGroup(folder) ? folder.getParent() : folder;
+        return root.toAbsolutePath().normalize();
+    }
+
+    private static SegmentStore getStore(Path folder) {
+        return stores.computeIfAbsent(getRoot(folder), SegmentStore::new);
+    }
+}
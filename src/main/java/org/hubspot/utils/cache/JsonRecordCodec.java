@@ -0,0 +1,71 @@
+package org.hubspot.utils.cache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes objects as compact json text. This is the format of the records of version 1 segments and of the json files
+ * the cache was kept in before, so it is what reads those.
+ *
+ * @author Nicholas Curl
+ */
+public class JsonRecordCodec implements RecordCodec {
+
+    static final byte ID = 0;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "json";
+    }
+
+    @Override
+    public byte[] encode(JSONObject jsonObject, NameDictionary names) {
+        return jsonObject.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public JSONObject decode(ByteBuffer data, NameDictionary names) throws JSONException {
+        return new JSONObject(new JSONTokener(new InputStreamReader(new BufferInputStream(data.duplicate()),
+                                                                    StandardCharsets.UTF_8
+        )));
+    }
+
+    /**
+     * Streams the bytes of a buffer, so the json text is parsed from the buffer without first being copied into a
+     * string
+     */
+    private static class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.hubspot.utils.cache;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Numbers the property names of the objects in a store, so each name is written once per store instead of once per
+ * object. Numbers are handed out in order and never reused, and the store writes each new name to its segments before
+ * any record that uses it.
+ *
+ * @author Nicholas Curl
+ */
+public class NameDictionary {
+
+    private final    Map<String, Integer> ids   = new ConcurrentHashMap<>();
+    /**
+     * The names by number, republished after every change so readers see the names written before it
+     */
+    private volatile String[]             names = new String[64];
+    private          int                  size;
+
+    /**
+     * Gets the number of the name, numbering it if it is new
+     *
+     * @param name The name
+     *
+     * @return The number
+     */
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id == null) {
+                id = size;
+                put(id, name);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Gets the name with the number
+     *
+     * @param id The number
+     *
+     * @return The name, or {@code null} if no name has the number
+     */
+    public String getName(int id) {
+        String[] names = this.names;
+        return id >= 0 && id < names.length ? names[id] : null;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Sets the name with the number, as read back from a segment
+     *
+     * @param id   The number
+     * @param name The name
+     */
+    synchronized void put(int id, String name) {
+        String[] names = this.names;
+        if (id >= names.length) {
+            names = Arrays.copyOf(names, Math.max(id + 1, names.length * 2));
+        }
+        names[id] = name;
+        size = Math.max(size, id + 1);
+        this.names = names;
+        ids.put(name, id);
+    }
+
+    synchronized void clear() {
+        ids.clear();
+        names = new String[64];
+        size = 0;
+    }
+}
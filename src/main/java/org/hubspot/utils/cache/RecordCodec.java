@@ -0,0 +1,52 @@
+package org.hubspot.utils.cache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts cached objects to and from the bytes of a record. Each codec has its own id, which is written in front of
+ * every record it encodes so a store can hold records of several codecs and read each with the codec that wrote it.
+ * Codecs are added with {@link RecordFormat#register(RecordCodec)}.
+ *
+ * @author Nicholas Curl
+ */
+public interface RecordCodec {
+
+    /**
+     * Gets the id written in front of the records of the codec
+     *
+     * @return The id, from 0 to 127
+     */
+    byte getId();
+
+    /**
+     * Gets the name that selects the codec for writing with {@code -Dhubspot.cache.codec}
+     *
+     * @return The name
+     */
+    String getName();
+
+    /**
+     * Encodes the object
+     *
+     * @param jsonObject The object
+     * @param names      The property names of the store, numbering any new names
+     *
+     * @return The bytes of the object
+     */
+    byte[] encode(JSONObject jsonObject, NameDictionary names);
+
+    /**
+     * Decodes an object. The buffer may be a view of a memory mapped segment, so it is read in place and not kept.
+     *
+     * @param data  The bytes of the object, from the position to the limit of the buffer
+     * @param names The property names of the store
+     *
+     * @return The object
+     *
+     * @throws JSONException If the bytes are not an object of the codec
+     */
+    JSONObject decode(ByteBuffer data, NameDictionary names) throws JSONException;
+}
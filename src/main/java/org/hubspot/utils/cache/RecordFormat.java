@@ -0,0 +1,182 @@
+package org.hubspot.utils.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.utils.LogMarkers;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The payload of the records that put objects. From version 2 of the segments a payload starts with a byte holding the
+ * id of the {@link RecordCodec} that encoded the object, with the high bit set when the encoded bytes are deflated:
+ * <pre>
+ * payload:    byte encoding, then the encoded bytes or, if deflated, int encoded length, deflate stream
+ * </pre>
+ * Version 1 payloads are plain json text. Objects are written with the codec named by {@code hubspot.cache.codec},
+ * {@code binary} by default, and deflated when {@code hubspot.cache.compression} is on, as it is by default, and the
+ * encoded bytes are at least {@code hubspot.cache.compressThreshold} long, 256 by default, and only kept deflated if
+ * that makes them smaller. Each payload is deflated on its own so an object can still be read by its offset alone.
+ *
+ * @author Nicholas Curl
+ */
+public class RecordFormat {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger                logger    = LogManager.getLogger(RecordFormat.class);
+    private static final int                   DEFLATED  = 0x80;
+    private static final boolean               COMPRESS  = Boolean.parseBoolean(System.getProperty(
+            "hubspot.cache.compression",
+            "true"
+    ));
+    private static final int                   THRESHOLD = Integer.getInteger("hubspot.cache.compressThreshold", 256);
+    private static final RecordCodec[]         codecs    = new RecordCodec[128];
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(
+            Deflater.BEST_SPEED,
+            true
+    ));
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static       RecordCodec           writer;
+
+    static {
+        register(new JsonRecordCodec());
+        register(new BinaryRecordCodec());
+        String name = System.getProperty("hubspot.cache.codec", "binary");
+        writer = getCodec(name);
+        if (writer == null) {
+            logger.warn(LogMarkers.ERROR.getMarker(), "Unknown cache codec {}, using binary", name);
+            writer = codecs[BinaryRecordCodec.ID];
+        }
+    }
+
+    /**
+     * Registers a codec so the records it wrote can be read, and so it can be selected for writing
+     *
+     * @param codec The codec
+     */
+    public static synchronized void register(RecordCodec codec) {
+        int id = codec.getId();
+        if (id < 0 || id >= codecs.length) {
+            throw new IllegalArgumentException("Codec id " + id + " is not between 0 and 127");
+        }
+        if (codecs[id] != null && codecs[id].getClass() != codec.getClass()) {
+            throw new IllegalArgumentException("Codec id " + id + " is already used by " + codecs[id].getName());
+        }
+        codecs[id] = codec;
+    }
+
+    /**
+     * Gets the codec with the name
+     *
+     * @param name The name of the codec
+     *
+     * @return The codec, or {@code null} if none is registered under the name
+     */
+    public static synchronized RecordCodec getCodec(String name) {
+        for (RecordCodec codec : codecs) {
+            if (codec != null && codec.getName().equals(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Encodes the object as the payload of a record of the current segment version
+     *
+     * @param jsonObject The object
+     * @param names      The property names of the store
+     *
+     * @return The payload
+     */
+    static byte[] encode(JSONObject jsonObject, NameDictionary names) {
+        RecordCodec codec = writer;
+        byte[] data = codec.encode(jsonObject, names);
+        if (COMPRESS && data.length >= THRESHOLD && data.length > 5) {
+            Deflater deflater = deflaters.get();
+            deflater.reset();
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] payload = new byte[data.length];
+            payload[0] = (byte) (codec.getId() | DEFLATED);
+            ByteBuffer.wrap(payload).putInt(1, data.length);
+            int length = 5;
+            while (!deflater.finished() && length < payload.length) {
+                length += deflater.deflate(payload, length, payload.length - length);
+            }
+            if (deflater.finished()) {
+                return Arrays.copyOf(payload, length);
+            }
+        }
+        byte[] payload = new byte[data.length + 1];
+        payload[0] = codec.getId();
+        System.arraycopy(data, 0, payload, 1, data.length);
+        return payload;
+    }
+
+    /**
+     * Decodes the payload of a record in place, inflating it first if it is deflated
+     *
+     * @param version The version of the segment holding the record
+     * @param payload The payload, from the position to the limit of the buffer
+     * @param names   The property names of the store
+     *
+     * @return The object
+     *
+     * @throws IOException   If the payload names an unknown codec or its deflate stream is corrupt
+     * @throws JSONException If the payload is not an object of its codec
+     */
+    static JSONObject decode(int version, ByteBuffer payload, NameDictionary names) throws IOException {
+        if (version == 1) {
+            return codecs[JsonRecordCodec.ID].decode(payload, names);
+        }
+        if (!payload.hasRemaining()) {
+            throw new IOException("Empty record payload");
+        }
+        int encoding = payload.get(payload.position()) & 0xFF;
+        RecordCodec codec = codecs[encoding & ~DEFLATED];
+        if (codec == null) {
+            throw new IOException("Unknown cache codec " + (encoding & ~DEFLATED));
+        }
+        ByteBuffer data = payload.duplicate();
+        data.position(data.position() + 1);
+        if ((encoding & DEFLATED) == 0) {
+            return codec.decode(data, names);
+        }
+        if (data.remaining() < 4) {
+            throw new IOException("Deflated record payload cut short");
+        }
+        int rawLength = data.getInt();
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = inflaters.get();
+        inflater.setInput(data);
+        int read = 0;
+        try {
+            while (read < rawLength) {
+                int inflated = inflater.inflate(raw, read, rawLength - read);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += inflated;
+            }
+        }
+        catch (DataFormatException e) {
+            throw new IOException("Corrupt deflated record payload", e);
+        }
+        finally {
+            inflater.reset();
+        }
+        if (read != rawLength) {
+            throw new IOException("Deflated record payload holds " + read + " of " + rawLength + " bytes");
+        }
+        return codec.decode(ByteBuffer.wrap(raw), names);
+    }
+}
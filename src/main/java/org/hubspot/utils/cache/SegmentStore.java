@@ -0,0 +1,1400 @@
+package org.hubspot.utils.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.utils.FileUtils;
+import org.hubspot.utils.LogMarkers;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * A store of json objects kept in append-only segment files instead of one file per object. Objects are keyed by id
+ * within a group, group 0 holding the objects of a flat cache folder and the other groups standing in for the numbered
+ * sub folders of the engagement cache. Each segment is a header followed by records:
+ * <pre>
+ * header: int magic, byte version
+ * record: int body length, int crc32 of the body,
+ *         body: byte kind, long group, long id, long modified millis, payload
+ * </pre>
+ * A record puts an object, deletes an object, creates a group, drops a group or names a property, and the latest record
+ * of an object wins. The payload of a put is laid out by {@link RecordFormat}, and a name record holds a property name
+ * of the store's {@link NameDictionary} under its number, written before the first object using it. Segments of version
+ * 1 hold objects as json text and are still read, and are rewritten in the current version when they are compacted.
+ * <p>
+ * The index of where the latest record of each object is and when it was written is held in memory, and written to a
+ * manifest in the folder whenever {@code hubspot.cache.manifestInterval} bytes of records, 4 MiB by default, have been
+ * appended since it was last written, when a segment is sealed or compacted and when the store is closed:
+ * <pre>
+ * manifest: int magic, byte version, int name count, (int length, utf-8 bytes) per name,
+ *           int segment count, (int id, byte version, long bytes covered) per segment,
+ *           int group count, (long group, location) per created group,
+ *           int group count, (long group, int count, (long id, location) per object) per group,
+ *           int crc32 of the manifest up to here
+ * location: int segment, long offset, int length, long modified millis
+ * </pre>
+ * The manifest replaces the previous one only once the records it covers are forced to disk. The first time the store
+ * is used the index is loaded from the manifest and only the records appended after it are scanned, or if there is no
+ * manifest matching the segments they are scanned in full, in both cases cutting off a record left half written by a
+ * crash. Once a segment reaches {@code hubspot.cache.segmentSize} bytes, 64 MiB by default, a new one is started, and
+ * when at least {@code hubspot.cache.compactRatio} of the sealed segments, half by default, is taken up by replaced or
+ * deleted objects, their live records are copied forward and the sealed segments are deleted. A folder of json files
+ * written by earlier versions is imported into the store the first time it is opened. Unless {@code hubspot.cache.mmap}
+ * is false, each segment is memory mapped the first time it is read and objects are decoded from the mapping in place,
+ * records appended after that being read from the file.
+ *
+ * @author Nicholas Curl
+ */
+public class SegmentStore {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger       logger            = LogManager.getLogger(SegmentStore.class);
+    static final         int          MAGIC             = 0x48534353;
+    static final         byte         VERSION           = 2;
+    static final         int          FILE_HEADER       = 5;
+    /**
+     * The length of the record up to the payload
+     */
+    static final         int          RECORD_HEADER     = 33;
+    static final         String       EXTENSION         = ".seg";
+    private static final String       MANIFEST          = "manifest.idx";
+    private static final int          MANIFEST_MAGIC    = 0x4853434D;
+    private static final byte         MANIFEST_VERSION  = 1;
+    private static final byte         PUT               = 1;
+    private static final byte         DELETE            = 2;
+    private static final byte         GROUP             = 3;
+    private static final byte         DROP              = 4;
+    private static final byte         NAME              = 5;
+    private static final byte[]       EMPTY             = new byte[0];
+    private static final long         SEGMENT_SIZE      = Long.getLong("hubspot.cache.segmentSize", 64L * 1024 * 1024);
+    private static final double       COMPACT_RATIO     = Double.parseDouble(System.getProperty(
+            "hubspot.cache.compactRatio",
+            "0.5"
+    ));
+    private static final boolean      MAP               = Boolean.parseBoolean(System.getProperty(
+            "hubspot.cache.mmap",
+            "true"
+    ));
+    private static final long         MANIFEST_INTERVAL = Long.getLong("hubspot.cache.manifestInterval",
+                                                                       4L * 1024 * 1024
+    );
+    /**
+     * Releases a mapping, or {@code null} if mappings can only be released by the garbage collector
+     */
+    private static final MethodHandle UNMAPPER          = findUnmapper();
+
+    private final    Path                           folder;
+    /**
+     * The location of the latest record of each object, keyed by group and then id
+     */
+    private final    Map<Long, Map<Long, Location>> index    = new ConcurrentHashMap<>();
+    /**
+     * The location of the record creating each group other than group 0
+     */
+    private final    Map<Long, Location>            markers  = new ConcurrentHashMap<>();
+    /**
+     * When the most recently written object of each group was written, for the groups it has been worked out for
+     */
+    private final    Map<Long, Long>                latest   = new ConcurrentHashMap<>();
+    private final    NavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    /**
+     * Held shared to read or append and exclusively to open, compact or clear the store
+     */
+    private final    ReentrantReadWriteLock         lock     = new ReentrantReadWriteLock();
+    private final    Object                         appends  = new Object();
+    private final    Object                         manifest = new Object();
+    private final    NameDictionary                 names    = new NameDictionary();
+    private volatile boolean                        open;
+    private          Segment                        active;
+    /**
+     * The number of names of the dictionary written to the segments
+     */
+    private          int                            persistedNames;
+    /**
+     * The number of bytes of records applied to the index since the manifest was written
+     */
+    private          long                           pending;
+
+    public SegmentStore(Path folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Gets whether the folder holds segment files
+     *
+     * @param folder The folder
+     *
+     * @return Whether the folder is a segment store
+     */
+    public static boolean isStore(Path folder) {
+        if (!Files.isDirectory(folder)) {
+            return false;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*" + EXTENSION)) {
+            return files.iterator().hasNext();
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets a stamp of the segment files in the folder, made of the name, size and modification time of each, which
+     * changes whenever a record is appended or the segments are compacted
+     *
+     * @param folder The folder
+     *
+     * @return The stamp, or an empty string if the folder holds no segments
+     *
+     * @throws IOException If the folder can not be listed
+     */
+    static String getStamp(Path folder) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return "";
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*" + EXTENSION)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        StringBuilder stamp = new StringBuilder();
+        for (Path file : files) {
+            stamp.append(file.getFileName())
+                 .append(':')
+                 .append(Files.size(file))
+                 .append(':')
+                 .append(Files.getLastModifiedTime(file).toMillis())
+                 .append(';');
+        }
+        return stamp.toString();
+    }
+
+    /**
+     * Gets whether the name is that of a group folder, which is a number
+     *
+     * @param name The name of the folder
+     *
+     * @return Whether the name is a number
+     */
+    static boolean isGroupName(String name) {
+        return !name.isEmpty() && name.length() < 19 && name.chars().allMatch(Character::isDigit);
+    }
+
+    /**
+     * Gets the id the object is cached under, which is its {@code id} or for engagements the id of its
+     * {@code engagement}
+     *
+     * @param jsonObject The object
+     *
+     * @return The id, or 0 if the object has none
+     */
+    static long getId(JSONObject jsonObject) {
+        if (jsonObject.has("id")) {
+            return jsonObject.getLong("id");
+        }
+        else if (jsonObject.has("engagement")) {
+            return jsonObject.getJSONObject("engagement").getLong("id");
+        }
+        else {
+            return 0;
+        }
+    }
+
+    private static MethodHandle findUnmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                                .findVirtual(unsafeClass,
+                                             "invokeCleaner",
+                                             MethodType.methodType(void.class, ByteBuffer.class)
+                                )
+                                .bindTo(field.get(null));
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer encode(byte kind, long group, long id, long modified, byte[] payload) {
+        int length = RECORD_HEADER + payload.length;
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(length - 8).putInt(0).put(kind).putLong(group).putLong(id).putLong(modified).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, length - 8);
+        record.putInt(4, (int) crc.getValue());
+        return record.flip();
+    }
+
+    private static Location readLocation(ByteBuffer data) {
+        return new Location(data.getInt(), data.getLong(), data.getInt(), data.getLong());
+    }
+
+    private static byte readVersion(Path segment) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(segment))) {
+            return in.readInt() == MAGIC ? in.readByte() : -1;
+        }
+    }
+
+    private static void writeLocation(DataOutputStream out, Location location) throws IOException {
+        out.writeInt(location.segment);
+        out.writeLong(location.offset);
+        out.writeInt(location.length);
+        out.writeLong(location.modified);
+    }
+
+    public Path getFolder() {
+        return folder;
+    }
+
+    /**
+     * Caches the object under its own id
+     *
+     * @param group      The group of the object
+     * @param jsonObject The object
+     *
+     * @throws IOException If the object can not be written
+     */
+    public void put(long group, JSONObject jsonObject) throws IOException {
+        put(group, getId(jsonObject), jsonObject);
+    }
+
+    /**
+     * Caches the object, replacing any object cached under the id
+     *
+     * @param group      The group of the object
+     * @param id         The id of the object
+     * @param jsonObject The object
+     *
+     * @throws IOException If the object can not be written
+     */
+    public void put(long group, long id, JSONObject jsonObject) throws IOException {
+        append(PUT, group, id, jsonObject);
+    }
+
+    /**
+     * Reads the cached object
+     *
+     * @param group The group of the object
+     * @param id    The id of the object
+     *
+     * @return The object, or {@code null} if it is not cached
+     *
+     * @throws IOException If the object can not be read or its record is corrupt
+     */
+    public JSONObject get(long group, long id) throws IOException {
+        acquire();
+        try {
+            Map<Long, Location> records = index.get(group);
+            Location location = records == null ? null : records.get(id);
+            if (location == null) {
+                return null;
+            }
+            ByteBuffer record = viewRecord(location);
+            CRC32 crc = new CRC32();
+            crc.update(record.duplicate().position(8));
+            if (record.getInt(4) != (int) crc.getValue()) {
+                throw new IOException("Corrupt record of " + id + " in " + getSegmentFile(location.segment));
+            }
+            return RecordFormat.decode(segments.get(location.segment).version,
+                                       record.duplicate().position(RECORD_HEADER),
+                                       names
+            );
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(long group, long id) throws IOException {
+        acquire();
+        try {
+            Map<Long, Location> records = index.get(group);
+            return records != null && records.containsKey(id);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the ids of the objects cached in the group
+     *
+     * @param group The group
+     *
+     * @return The ids, in the order of their records in the segments so that reading the objects in turn reads the
+     *         segments front to back
+     *
+     * @throws IOException If the store can not be opened
+     */
+    public List<Long> ids(long group) throws IOException {
+        acquire();
+        try {
+            Map<Long, Location> records = index.get(group);
+            if (records == null) {
+                return new ArrayList<>();
+            }
+            List<Map.Entry<Long, Location>> entries = new ArrayList<>(records.entrySet());
+            entries.sort(Comparator.comparing(Map.Entry::getValue));
+            List<Long> ids = new ArrayList<>(entries.size());
+            for (Map.Entry<Long, Location> entry : entries) {
+                ids.add(entry.getKey());
+            }
+            return ids;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the groups of the store other than group 0
+     *
+     * @return The groups, in no particular order
+     *
+     * @throws IOException If the store can not be opened
+     */
+    public List<Long> groups() throws IOException {
+        acquire();
+        try {
+            List<Long> groups = new ArrayList<>(index.keySet());
+            groups.remove(Long.valueOf(0));
+            return groups;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean hasGroup(long group) throws IOException {
+        acquire();
+        try {
+            return index.containsKey(group);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Creates the group if it does not exist, so that it is listed even while it holds no objects
+     *
+     * @param group The group
+     *
+     * @throws IOException If the group can not be written
+     */
+    public void createGroup(long group) throws IOException {
+        if (!hasGroup(group)) {
+            append(GROUP, group, 0, null);
+        }
+    }
+
+    public void delete(long group, long id) throws IOException {
+        if (contains(group, id)) {
+            append(DELETE, group, id, null);
+        }
+    }
+
+    public void deleteGroup(long group) throws IOException {
+        if (hasGroup(group)) {
+            append(DROP, group, 0, null);
+        }
+    }
+
+    /**
+     * Deletes the objects written after the time, which undoes an update that did not finish
+     *
+     * @param group The group to delete the objects of, or {@code null} for every group
+     * @param time  The time in epoch milliseconds
+     *
+     * @throws IOException If the deletions can not be written
+     */
+    public void deleteModifiedAfter(Long group, long time) throws IOException {
+        Map<Long, List<Long>> modified = new HashMap<>();
+        acquire();
+        try {
+            for (long key : group == null ? new ArrayList<>(index.keySet()) : List.of(group)) {
+                Map<Long, Location> records = index.get(key);
+                if (records == null || getLatest(key) <= time) {
+                    continue;
+                }
+                for (Map.Entry<Long, Location> record : records.entrySet()) {
+                    if (record.getValue().modified > time) {
+                        modified.computeIfAbsent(key, id -> new ArrayList<>()).add(record.getKey());
+                    }
+                }
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        for (Map.Entry<Long, List<Long>> entry : modified.entrySet()) {
+            for (long id : entry.getValue()) {
+                append(DELETE, entry.getKey(), id, null);
+            }
+        }
+    }
+
+    /**
+     * Gets when the most recently written object was written
+     *
+     * @param group The group to look in, or {@code null} for every group
+     *
+     * @return The time in epoch milliseconds, or -1 if there are no objects
+     *
+     * @throws IOException If the store can not be opened
+     */
+    public long lastModified(Long group) throws IOException {
+        long lastModified = -1;
+        acquire();
+        try {
+            if (group != null) {
+                return getLatest(group);
+            }
+            for (long key : index.keySet()) {
+                lastModified = Math.max(lastModified, getLatest(key));
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        return lastModified;
+    }
+
+    /**
+     * Gets when the most recently written object of the group was written, working it out from the index the first
+     * time and keeping it up to date as records are applied from then on
+     *
+     * @return The time in epoch milliseconds, or -1 if the group holds no objects
+     */
+    private long getLatest(long group) {
+        Long lastModified = latest.computeIfAbsent(group, key -> {
+            Map<Long, Location> records = index.get(key);
+            if (records == null) {
+                return null;
+            }
+            long modified = -1;
+            for (Location location : records.values()) {
+                modified = Math.max(modified, location.modified);
+            }
+            return modified;
+        });
+        return lastModified == null ? -1 : lastModified;
+    }
+
+    /**
+     * Copies the live records of the sealed segments forward and deletes the sealed segments
+     *
+     * @throws IOException If the segments can not be compacted
+     */
+    public void compact() throws IOException {
+        acquire();
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            if (open) {
+                compactLocked();
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the segments, which are opened again the next time the store is used
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (open && pending > 0) {
+                checkpoint();
+            }
+            closeLocked();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the store and deletes its folder
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            closeLocked();
+            if (Files.exists(folder)) {
+                FileUtils.deleteDirectory(folder);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes the shared lock, opening the store first if it is not open
+     */
+    private void acquire() throws IOException {
+        while (true) {
+            if (!open) {
+                lock.writeLock().lock();
+                try {
+                    if (!open) {
+                        load();
+                    }
+                }
+                finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            lock.readLock().lock();
+            if (open) {
+                return;
+            }
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a record, encoding the object, if any, under the shared lock so that its names are numbered in the
+     * dictionary the record is written with
+     */
+    private void append(byte kind, long group, long id, JSONObject jsonObject) throws IOException {
+        boolean rolled;
+        boolean due;
+        acquire();
+        try {
+            byte[] payload = jsonObject == null ? EMPTY : RecordFormat.encode(jsonObject, names);
+            ByteBuffer record = encode(kind, group, id, System.currentTimeMillis(), payload);
+            synchronized (appends) {
+                rolled = write(record);
+                due = pending >= MANIFEST_INTERVAL;
+            }
+            if (due && !rolled) {
+                checkpoint();
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        if (rolled) {
+            lock.writeLock().lock();
+            try {
+                if (open && isWasteful()) {
+                    compactLocked();
+                }
+                else if (open) {
+                    checkpoint();
+                }
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Appends the encoded record to the active segment, after the names of the dictionary that are not written yet
+     *
+     * @return Whether a new segment was started
+     */
+    private boolean write(ByteBuffer record) throws IOException {
+        boolean rolled = writeNames();
+        return writeRecord(record) || rolled;
+    }
+
+    /**
+     * Appends the names of the dictionary that are not written yet
+     *
+     * @return Whether a new segment was started
+     */
+    private boolean writeNames() throws IOException {
+        boolean rolled = false;
+        int size = names.size();
+        while (persistedNames < size) {
+            rolled |= writeRecord(encode(NAME,
+                                         0,
+                                         persistedNames,
+                                         System.currentTimeMillis(),
+                                         names.getName(persistedNames).getBytes(StandardCharsets.UTF_8)
+            ));
+            persistedNames++;
+        }
+        return rolled;
+    }
+
+    /**
+     * Appends the encoded record to the active segment and applies it to the index, starting a new segment first if
+     * the record does not fit
+     *
+     * @return Whether a new segment was started
+     */
+    private boolean writeRecord(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        boolean rolled = false;
+        if (active == null) {
+            startSegment();
+        }
+        else if (active.size > FILE_HEADER && active.size + length > SEGMENT_SIZE) {
+            active.channel().force(false);
+            startSegment();
+            rolled = true;
+        }
+        Segment segment = active;
+        long offset = segment.size;
+        while (true) {
+            FileChannel channel = segment.channel();
+            try {
+                long position = offset;
+                while (record.hasRemaining()) {
+                    position += channel.write(record, position);
+                }
+                break;
+            }
+            catch (ClosedByInterruptException e) {
+                throw e;
+            }
+            catch (ClosedChannelException e) {
+                segment.reopen(channel);
+                record.rewind();
+            }
+        }
+        segment.size = offset + length;
+        pending += length;
+        apply(record.get(8),
+              record.getLong(9),
+              record.getLong(17),
+              new Location(segment.id, offset, length, record.getLong(25))
+        );
+        return rolled;
+    }
+
+    private void startSegment() throws IOException {
+        Files.createDirectories(folder);
+        int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Path file = getSegmentFile(id);
+        FileChannel channel = FileChannel.open(file,
+                                               StandardOpenOption.CREATE_NEW,
+                                               StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE
+        );
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).putInt(MAGIC).put(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        Segment segment = new Segment(id, file, channel, VERSION);
+        segment.size = FILE_HEADER;
+        segments.put(id, segment);
+        active = segment;
+    }
+
+    /**
+     * Gets the record from the mapping of its segment, or reads it from the file if it is not mapped
+     */
+    private ByteBuffer viewRecord(Location location) throws IOException {
+        if (MAP) {
+            ByteBuffer mapped = segments.get(location.segment).map();
+            if (mapped != null && location.offset + location.length <= mapped.capacity()) {
+                return mapped.duplicate()
+                             .position((int) location.offset)
+                             .limit((int) location.offset + location.length)
+                             .slice();
+            }
+        }
+        return readRecord(location);
+    }
+
+    private ByteBuffer readRecord(Location location) throws IOException {
+        Segment segment = segments.get(location.segment);
+        ByteBuffer record = ByteBuffer.allocate(location.length);
+        while (true) {
+            FileChannel channel = segment.channel();
+            try {
+                long position = location.offset;
+                while (record.hasRemaining()) {
+                    int read = channel.read(record, position);
+                    if (read < 0) {
+                        throw new EOFException("Record cut short in " + segment.file);
+                    }
+                    position += read;
+                }
+                return record.flip();
+            }
+            catch (ClosedByInterruptException e) {
+                throw e;
+            }
+            catch (ClosedChannelException e) {
+                segment.reopen(channel);
+                record.clear();
+            }
+        }
+    }
+
+    /**
+     * Applies a record to the index and to the number of live bytes of the segments
+     */
+    private void apply(byte kind, long group, long id, Location location) {
+        Segment segment = segments.get(location.segment);
+        switch (kind) {
+            case PUT:
+                segment.live.addAndGet(location.length);
+                Location replaced = index.computeIfAbsent(group, key -> new ConcurrentHashMap<>()).put(id, location);
+                release(replaced);
+                if (replaced != null && replaced.modified > location.modified) {
+                    latest.remove(group);
+                }
+                else {
+                    latest.computeIfPresent(group, (key, modified) -> Math.max(modified, location.modified));
+                }
+                break;
+            case DELETE:
+                Map<Long, Location> records = index.get(group);
+                Location removed = records == null ? null : records.remove(id);
+                if (removed != null) {
+                    release(removed);
+                    latest.computeIfPresent(group, (key, modified) -> removed.modified < modified ? modified : null);
+                }
+                break;
+            case GROUP:
+                index.computeIfAbsent(group, key -> new ConcurrentHashMap<>());
+                segment.live.addAndGet(location.length);
+                release(markers.put(group, location));
+                break;
+            case DROP:
+                Map<Long, Location> dropped = index.remove(group);
+                if (dropped != null) {
+                    dropped.values().forEach(this::release);
+                }
+                latest.remove(group);
+                release(markers.remove(group));
+                break;
+            case NAME:
+                break;
+            default:
+                logger.warn(LogMarkers.ERROR.getMarker(), "Skipping record of unknown kind {} in {}", kind, folder);
+                break;
+        }
+    }
+
+    private void release(Location location) {
+        if (location != null) {
+            Segment segment = segments.get(location.segment);
+            if (segment != null) {
+                segment.live.addAndGet(-location.length);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the index from the segments in the folder, or imports the json files in the folder if it has no
+     * segments yet
+     */
+    private void load() throws IOException {
+        closeLocked();
+        if (Files.isDirectory(folder)) {
+            List<Integer> ids = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*" + EXTENSION)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    ids.add(Integer.parseInt(name.substring(0, name.length() - EXTENSION.length())));
+                }
+            }
+            Collections.sort(ids);
+            Map<Integer, Long> covered = readManifest(ids);
+            for (int id : ids) {
+                pending += scan(id, covered.getOrDefault(id, (long) FILE_HEADER));
+            }
+            if (!covered.isEmpty()) {
+                countLive();
+            }
+            if (segments.isEmpty()) {
+                migrate();
+            }
+            else if (segments.lastEntry().getValue().version == VERSION) {
+                active = segments.lastEntry().getValue();
+            }
+        }
+        persistedNames = names.size();
+        open = true;
+        if (isWasteful()) {
+            compactLocked();
+        }
+        else if (pending > 0) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Applies the records of the segment from the offset on, truncating it at the first record that is cut short or
+     * does not match its checksum
+     *
+     * @return The number of bytes of records applied
+     */
+    private long scan(int id, long from) throws IOException {
+        Path file = getSegmentFile(id);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        long position = FILE_HEADER;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            byte version = VERSION;
+            if (size < FILE_HEADER) {
+                ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).putInt(MAGIC).put(VERSION).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                size = FILE_HEADER;
+            }
+            else if (in.readInt() != MAGIC) {
+                channel.close();
+                throw new IOException("Not a cache segment " + file);
+            }
+            else {
+                version = in.readByte();
+                if (version < 1 || version > VERSION) {
+                    channel.close();
+                    throw new IOException("Unsupported version " + version + " of cache segment " + file);
+                }
+            }
+            segments.put(id, new Segment(id, file, channel, version));
+            while (position < from) {
+                int skipped = in.skipBytes((int) Math.min(from - position, Integer.MAX_VALUE));
+                if (skipped <= 0) {
+                    throw new EOFException("Segment " + file + " is shorter than its manifest");
+                }
+                position += skipped;
+            }
+            CRC32 crc = new CRC32();
+            while (position + 8 <= size) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < RECORD_HEADER - 8 || position + 8 + length > size) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(body);
+                byte kind = buffer.get();
+                long group = buffer.getLong();
+                long objectId = buffer.getLong();
+                long modified = buffer.getLong();
+                if (kind == NAME) {
+                    names.put((int) objectId,
+                              new String(body, RECORD_HEADER - 8, length - RECORD_HEADER + 8, StandardCharsets.UTF_8)
+                    );
+                }
+                apply(kind, group, objectId, new Location(id, position, length + 8, modified));
+                position += length + 8;
+            }
+        }
+        if (position < size) {
+            logger.warn(LogMarkers.ERROR.getMarker(),
+                        "Truncating {} at {} of {} bytes, which were not completely written",
+                        file,
+                        position,
+                        size
+            );
+            channel.truncate(position);
+        }
+        segments.get(id).size = Math.max(position, FILE_HEADER);
+        return Math.max(position - Math.max(from, FILE_HEADER), 0);
+    }
+
+    /**
+     * Loads the names, groups and index from the manifest if it matches the segments, which it does if it covers each
+     * of them up to no more than its size and every segment it does not cover is newer than those it does
+     *
+     * @param ids The ids of the segments in the folder, in order
+     *
+     * @return How many bytes of each segment the manifest covers, empty if there is no manifest that matches
+     */
+    private Map<Integer, Long> readManifest(List<Integer> ids) {
+        Path file = folder.resolve(MANIFEST);
+        Map<Integer, Long> covered = new HashMap<>();
+        if (ids.isEmpty() || !Files.isRegularFile(file)) {
+            return covered;
+        }
+        try {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+            CRC32 crc = new CRC32();
+            crc.update(data.array(), 0, Math.max(data.capacity() - 4, 0));
+            if (data.capacity() < 9 || data.getInt(data.capacity() - 4) != (int) crc.getValue()) {
+                throw new IOException("Corrupt manifest");
+            }
+            if (data.getInt() != MANIFEST_MAGIC || data.get() != MANIFEST_VERSION) {
+                throw new IOException("Unsupported manifest");
+            }
+            int nameCount = data.getInt();
+            for (int i = 0; i < nameCount; i++) {
+                byte[] name = new byte[data.getInt()];
+                data.get(name);
+                names.put(i, new String(name, StandardCharsets.UTF_8));
+            }
+            int segmentCount = data.getInt();
+            for (int i = 0; i < segmentCount; i++) {
+                int id = data.getInt();
+                byte version = data.get();
+                long size = data.getLong();
+                Path segment = getSegmentFile(id);
+                if (!ids.contains(id) || Files.size(segment) < size || readVersion(segment) != version) {
+                    throw new IOException("Manifest does not match segment " + segment);
+                }
+                covered.put(id, size);
+            }
+            int last = covered.isEmpty() ? 0 : Collections.max(covered.keySet());
+            for (int id : ids) {
+                if (!covered.containsKey(id) && id < last) {
+                    throw new IOException("Manifest does not cover segment " + getSegmentFile(id));
+                }
+            }
+            int markerCount = data.getInt();
+            for (int i = 0; i < markerCount; i++) {
+                markers.put(data.getLong(), readLocation(data));
+            }
+            int groupCount = data.getInt();
+            for (int i = 0; i < groupCount; i++) {
+                long group = data.getLong();
+                int count = data.getInt();
+                Map<Long, Location> records = new ConcurrentHashMap<>(Math.max(16, count * 4 / 3 + 1));
+                for (int j = 0; j < count; j++) {
+                    records.put(data.getLong(), readLocation(data));
+                }
+                index.put(group, records);
+            }
+            return covered;
+        }
+        catch (IOException | RuntimeException e) {
+            logger.warn(LogMarkers.ERROR.getMarker(), "Ignoring the manifest of {}, scanning its segments", folder, e);
+            covered.clear();
+            index.clear();
+            markers.clear();
+            names.clear();
+            return covered;
+        }
+    }
+
+    /**
+     * Works out the number of live bytes of each segment from the index
+     */
+    private void countLive() {
+        for (Segment segment : segments.values()) {
+            segment.live.set(0);
+        }
+        for (Location location : markers.values()) {
+            segments.get(location.segment).live.addAndGet(location.length);
+        }
+        for (Map<Long, Location> records : index.values()) {
+            for (Location location : records.values()) {
+                segments.get(location.segment).live.addAndGet(location.length);
+            }
+        }
+    }
+
+    /**
+     * Writes the index to the manifest, taking it while no record can be applied and replacing the previous manifest
+     * only once the records it covers are forced to disk. A manifest that can not be written is left to the next one,
+     * as the previous manifest still matches the segments or is found not to.
+     */
+    private void checkpoint() {
+        synchronized (manifest) {
+            byte[] data;
+            long covered;
+            Segment segment;
+            synchronized (appends) {
+                if (segments.isEmpty()) {
+                    return;
+                }
+                segment = active;
+                covered = pending;
+                try {
+                    data = encodeManifest();
+                }
+                catch (IOException e) {
+                    logger.warn(LogMarkers.ERROR.getMarker(), "Unable to write the manifest of {}", folder, e);
+                    return;
+                }
+                pending = 0;
+            }
+            Path file = folder.resolve(MANIFEST);
+            Path temporary = folder.resolve(MANIFEST + ".tmp");
+            try {
+                if (segment != null) {
+                    segment.channel().force(false);
+                }
+                try (FileChannel channel = FileChannel.open(temporary,
+                                                            StandardOpenOption.CREATE,
+                                                            StandardOpenOption.TRUNCATE_EXISTING,
+                                                            StandardOpenOption.WRITE
+                )) {
+                    ByteBuffer buffer = ByteBuffer.wrap(data);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(true);
+                }
+                try {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            catch (IOException e) {
+                synchronized (appends) {
+                    pending += covered;
+                }
+                logger.warn(LogMarkers.ERROR.getMarker(), "Unable to write the manifest of {}", folder, e);
+            }
+        }
+    }
+
+    /**
+     * Encodes the names written to the segments, the segments as far as they are written, the groups and the index
+     */
+    private byte[] encodeManifest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MANIFEST_MAGIC);
+        out.writeByte(MANIFEST_VERSION);
+        out.writeInt(persistedNames);
+        for (int i = 0; i < persistedNames; i++) {
+            byte[] name = names.getName(i).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+        }
+        out.writeInt(segments.size());
+        for (Segment segment : segments.values()) {
+            out.writeInt(segment.id);
+            out.writeByte(segment.version);
+            out.writeLong(segment.size);
+        }
+        out.writeInt(markers.size());
+        for (Map.Entry<Long, Location> marker : markers.entrySet()) {
+            out.writeLong(marker.getKey());
+            writeLocation(out, marker.getValue());
+        }
+        out.writeInt(index.size());
+        for (Map.Entry<Long, Map<Long, Location>> group : index.entrySet()) {
+            out.writeLong(group.getKey());
+            out.writeInt(group.getValue().size());
+            for (Map.Entry<Long, Location> record : group.getValue().entrySet()) {
+                out.writeLong(record.getKey());
+                writeLocation(out, record.getValue());
+            }
+        }
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Imports the json files of the folder and of its group folders, then deletes them
+     */
+    private void migrate() throws IOException {
+        List<Path> imported = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (Files.isDirectory(entry) && isGroupName(name)) {
+                    long group = Long.parseLong(name);
+                    write(encode(GROUP, group, 0, Files.getLastModifiedTime(entry).toMillis(), EMPTY));
+                    try (DirectoryStream<Path> files = Files.newDirectoryStream(entry, "*.json")) {
+                        for (Path file : files) {
+                            importFile(group, file);
+                        }
+                    }
+                    imported.add(entry);
+                }
+                else if (name.endsWith(".json") && Files.isRegularFile(entry)) {
+                    importFile(0, entry);
+                    imported.add(entry);
+                }
+            }
+        }
+        if (!imported.isEmpty()) {
+            active.channel().force(true);
+            for (Path path : imported) {
+                if (Files.isDirectory(path)) {
+                    FileUtils.deleteDirectory(path);
+                }
+                else {
+                    Files.delete(path);
+                }
+            }
+            logger.info("Imported {} cached files and folders into {}", imported.size(), folder);
+        }
+    }
+
+    private void importFile(long group, Path file) throws IOException {
+        JSONObject jsonObject;
+        try {
+            byte[] data = Files.readAllBytes(file);
+            jsonObject = RecordFormat.decode(1, ByteBuffer.wrap(data), names);
+        }
+        catch (JSONException e) {
+            logger.warn(LogMarkers.ERROR.getMarker(), "Skipping unreadable cache file {}", file, e);
+            return;
+        }
+        write(encode(PUT,
+                     group,
+                     getId(jsonObject),
+                     Files.getLastModifiedTime(file).toMillis(),
+                     RecordFormat.encode(jsonObject, names)
+        ));
+    }
+
+    /**
+     * Gets whether enough of the sealed segments is taken up by dead records to compact them
+     */
+    private boolean isWasteful() {
+        long total = 0;
+        long live = 0;
+        for (Segment segment : segments.values()) {
+            if (segment != active) {
+                total += segment.size - FILE_HEADER;
+                live += segment.live.get();
+            }
+        }
+        return total > 0 && (double) (total - live) / total >= COMPACT_RATIO;
+    }
+
+    /**
+     * Copies the live records of the sealed segments into the active segment and deletes the sealed segments, oldest
+     * first so that a crash part way through never brings back a deleted object. The names are written again first, as
+     * the segments holding them may be among those deleted.
+     */
+    private void compactLocked() throws IOException {
+        if (active == null) {
+            return;
+        }
+        List<Segment> sealed = new ArrayList<>(segments.headMap(active.id).values());
+        if (sealed.isEmpty()) {
+            return;
+        }
+        Set<Integer> ids = new HashSet<>(segments.headMap(active.id).keySet());
+        long before = 0;
+        for (Segment segment : sealed) {
+            before += segment.size;
+        }
+        persistedNames = 0;
+        writeNames();
+        for (Location location : new ArrayList<>(markers.values())) {
+            if (ids.contains(location.segment)) {
+                write(viewRecord(location));
+            }
+        }
+        for (Map<Long, Location> records : index.values()) {
+            for (Location location : new ArrayList<>(records.values())) {
+                if (ids.contains(location.segment)) {
+                    write(upgrade(viewRecord(location), segments.get(location.segment).version));
+                }
+            }
+        }
+        active.channel().force(true);
+        for (Segment segment : sealed) {
+            segment.unmap();
+            segment.channel().close();
+            Files.delete(segment.file);
+            segments.remove(segment.id);
+        }
+        checkpoint();
+        logger.debug(LogMarkers.DEBUG.getMarker(),
+                     "Compacted {} segments of {} bytes in {}",
+                     sealed.size(),
+                     before,
+                     folder
+        );
+    }
+
+    /**
+     * Re-encodes a put record of an older segment version in the current one
+     */
+    private ByteBuffer upgrade(ByteBuffer record, byte version) throws IOException {
+        if (version == VERSION || record.get(8) != PUT) {
+            return record;
+        }
+        JSONObject jsonObject = RecordFormat.decode(version, record.duplicate().position(RECORD_HEADER), names);
+        return encode(PUT,
+                      record.getLong(9),
+                      record.getLong(17),
+                      record.getLong(25),
+                      RecordFormat.encode(jsonObject, names)
+        );
+    }
+
+    private void closeLocked() {
+        for (Segment segment : segments.values()) {
+            segment.unmap();
+            try {
+                FileChannel channel = segment.channel();
+                if (segment == active) {
+                    channel.force(true);
+                }
+                channel.close();
+            }
+            catch (IOException e) {
+                logger.warn(LogMarkers.ERROR.getMarker(), "Unable to close {}", segment.file, e);
+            }
+        }
+        segments.clear();
+        index.clear();
+        markers.clear();
+        latest.clear();
+        names.clear();
+        persistedNames = 0;
+        pending = 0;
+        active = null;
+        open = false;
+    }
+
+    private Path getSegmentFile(int id) {
+        return folder.resolve(String.format("%06d%s", id, EXTENSION));
+    }
+
+    /**
+     * Where the latest record of an object is and when it was written, ordered by where it is
+     */
+    private static class Location implements Comparable<Location> {
+
+        private final int  segment;
+        private final long offset;
+        private final int  length;
+        private final long modified;
+
+        private Location(int segment, long offset, int length, long modified) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.modified = modified;
+        }
+
+        @Override
+        public int compareTo(Location location) {
+            int compare = Integer.compare(segment, location.segment);
+            return compare != 0 ? compare : Long.compare(offset, location.offset);
+        }
+    }
+
+    /**
+     * A segment file, the version of its format and the number of bytes of its records that are still live
+     */
+    private static class Segment {
+
+        private final    int         id;
+        private final    Path        file;
+        private final    byte        version;
+        private final    AtomicLong  live = new AtomicLong();
+        private volatile FileChannel channel;
+        private volatile long        size;
+        private volatile ByteBuffer  mapped;
+        /**
+         * Whether mapping the file failed, in which case it is read from the file from then on
+         */
+        private          boolean     unmappable;
+
+        private Segment(int id, Path file, FileChannel channel, byte version) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.version = version;
+        }
+
+        private FileChannel channel() {
+            return channel;
+        }
+
+        /**
+         * Opens the file again after its channel was closed by a thread being interrupted while reading or writing it
+         *
+         * @param closed The channel that was found closed
+         */
+        private synchronized void reopen(FileChannel closed) throws IOException {
+            if (channel == closed) {
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        }
+
+        /**
+         * Maps the file as far as it is written, the first time it is called
+         *
+         * @return The mapping, or {@code null} if the file can not be mapped
+         */
+        private ByteBuffer map() {
+            ByteBuffer mapped = this.mapped;
+            if (mapped != null) {
+                return mapped;
+            }
+            synchronized (this) {
+                if (this.mapped == null && !unmappable) {
+                    try {
+                        this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+                    }
+                    catch (ClosedChannelException e) {
+                        return null;
+                    }
+                    catch (IOException e) {
+                        unmappable = true;
+                        logger.debug(LogMarkers.DEBUG.getMarker(), "Unable to map {}, reading it instead", file, e);
+                    }
+                }
+                return this.mapped;
+            }
+        }
+
+        /**
+         * Releases the mapping of the file, which must only be done while no reader can be using it
+         */
+        private synchronized void unmap() {
+            ByteBuffer mapped = this.mapped;
+            this.mapped = null;
+            if (mapped != null && UNMAPPER != null) {
+                try {
+                    UNMAPPER.invokeExact(mapped);
+                }
+                catch (Throwable e) {
+                    logger.debug(LogMarkers.DEBUG.getMarker(), "Unable to unmap {}", file, e);
+                }
+            }
+        }
+    }
+}
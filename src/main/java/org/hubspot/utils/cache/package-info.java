@@ -0,0 +1,6 @@
+/**
+ * Package containing the storage engine of the json cache
+ *
+ * @author Nicholas Curl
+ */
+package org.hubspot.utils.cache;
@@ -14,18 +14,25 @@ public class CustomThreadFactory implements ThreadFactory {
     /**
      * The instance of the logger
      */
-    private static final Logger logger = LogManager.getLogger(CustomThreadFactory.class);
-    private final        String name;
-    private              int    counter;
+    private static final Logger  logger = LogManager.getLogger(CustomThreadFactory.class);
+    private final        String  name;
+    private final        boolean daemon;
+    private              int     counter;
 
     public CustomThreadFactory(String name) {
+        this(name, false);
+    }
+
+    public CustomThreadFactory(String name, boolean daemon) {
         counter = 1;
         this.name = name;
+        this.daemon = daemon;
     }
 
     @Override
     public Thread newThread(@NotNull Runnable r) {
         Thread t = new Thread(r, name + "-thread_" + counter);
+        t.setDaemon(daemon);
         counter++;
         return t;
     }
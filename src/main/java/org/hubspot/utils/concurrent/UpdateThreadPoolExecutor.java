@@ -3,8 +3,8 @@ package org.hubspot.utils.concurrent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hubspot.utils.ErrorCodes;
-import org.hubspot.utils.FileUtils;
 import org.hubspot.utils.LogMarkers;
+import org.hubspot.utils.cache.JsonCache;
 import org.hubspot.utils.exceptions.HubSpotException;
 
 import java.nio.file.Path;
@@ -163,7 +163,7 @@ public class UpdateThreadPoolExecutor extends CacheThreadPoolExecutor {
         Exception exception = super.getExecutionException();
         if (exception != null) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Error occurred during execution", exception);
-            FileUtils.deleteRecentlyUpdated(folder, lastFinished);
+            JsonCache.deleteRecentlyUpdated(folder, lastFinished);
             if (exception instanceof HubSpotException) {
                 HubSpotException hubSpotException = (HubSpotException) exception;
                 System.exit(hubSpotException.getCode());
@@ -174,7 +174,7 @@ public class UpdateThreadPoolExecutor extends CacheThreadPoolExecutor {
         }
         else if (super.isInterrupted()) {
             logger.fatal(LogMarkers.ERROR.getMarker(), "Threads have been interrupted");
-            FileUtils.deleteRecentlyUpdated(folder, lastFinished);
+            JsonCache.deleteRecentlyUpdated(folder, lastFinished);
             System.exit(ErrorCodes.THREAD_INTERRUPT_EXCEPTION.getErrorCode());
         }
         super.terminated();
@@ -0,0 +1,256 @@
+package org.hubspot.utils.http;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.RateLimiter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.utils.LogMarkers;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Hands out request permits for every service, adjusting the rates from the {@code X-HubSpot-RateLimit-*} response
+ * headers
+ *
+ * @author Nicholas Curl
+ */
+public class ApiRateGovernor {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger              logger                 = LogManager.getLogger(ApiRateGovernor.class);
+    private static final String              DAILY_HEADER           = "X-HubSpot-RateLimit-Daily";
+    private static final String              DAILY_REMAINING_HEADER = "X-HubSpot-RateLimit-Daily-Remaining";
+    private static final String              INTERVAL_HEADER        = "X-HubSpot-RateLimit-Interval-Milliseconds";
+    private static final String              MAX_HEADER             = "X-HubSpot-RateLimit-Max";
+    private static final String              REMAINING_HEADER       = "X-HubSpot-RateLimit-Remaining";
+    /**
+     * The fraction of the window's budget below which the rate starts being scaled down
+     */
+    private static final double              LOW_WATER              = 0.2;
+    /**
+     * The smallest fraction of the ceiling the rate is ever scaled down to
+     */
+    private static final double              MIN_FRACTION           = 0.1;
+    /**
+     * The rate added back to a bucket after each successful response that carried no rate limit headers
+     */
+    private static final double              RECOVERY_STEP          = 0.1;
+    private final        Map<Policy, Bucket> buckets;
+    private final        AtomicLong          dailyLimit;
+    /**
+     * The remaining daily requests, or -1 until HubSpot has reported it
+     */
+    private final        AtomicLong          dailyRemaining;
+    /**
+     * The nanoseconds callers have spent blocked waiting for permits, summed over all threads
+     */
+    private final        LongAdder           waitNanos;
+
+    public ApiRateGovernor() {
+        this(true);
+    }
+
+    private ApiRateGovernor(boolean limited) {
+        this.buckets = new EnumMap<>(Policy.class);
+        for (Policy policy : Policy.values()) {
+            if (limited && policy.getDefaultRate() > 0) {
+                buckets.put(policy, new Bucket(policy.getDefaultRate()));
+            }
+        }
+        this.dailyLimit = new AtomicLong(-1);
+        this.dailyRemaining = new AtomicLong(-1);
+        this.waitNanos = new LongAdder();
+    }
+
+    /**
+     * Creates a governor that hands out permits without waiting, for responses that do not come from HubSpot such as
+     * a replayed cassette
+     *
+     * @return The unlimited governor
+     */
+    public static ApiRateGovernor unlimited() {
+        return new ApiRateGovernor(false);
+    }
+
+    private static double parse(Function<String, String> headers, String name) {
+        String value = headers.apply(name);
+        if (Strings.isNullOrEmpty(value)) {
+            return -1;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Acquires a permit from the ten secondly bucket
+     */
+    public void acquire() {
+        acquire(Policy.TEN_SECONDLY);
+    }
+
+    /**
+     * Acquires a permit from the given policy's bucket, blocking until one is available
+     *
+     * @param policy The policy to acquire the permit from
+     */
+    public void acquire(Policy policy) {
+        Bucket bucket = buckets.get(policy);
+        if (bucket != null) {
+            waitNanos.add((long) (bucket.limiter.acquire() * 1e9));
+        }
+        dailyRemaining.getAndUpdate(remaining -> remaining > 0 ? remaining - 1 : remaining);
+    }
+
+    public long getDailyLimit() {
+        return dailyLimit.get();
+    }
+
+    public long getDailyRemaining() {
+        return dailyRemaining.get();
+    }
+
+    /**
+     * Gets the time callers have spent blocked waiting for permits, summed over all threads
+     *
+     * @return The total wait in nanoseconds
+     */
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    public double getRate(Policy policy) {
+        Bucket bucket = buckets.get(policy);
+        return bucket == null ? 0 : bucket.limiter.getRate();
+    }
+
+    /**
+     * Checks if HubSpot has reported the daily quota as used up
+     *
+     * @return True if no requests are left for the day
+     */
+    public boolean isDailyExhausted() {
+        return dailyRemaining.get() == 0;
+    }
+
+    /**
+     * Slows down the bucket that HubSpot reported as exceeded
+     *
+     * @param policy     The policy of the request that was throttled
+     * @param policyName The policy name from the body of the 429 response
+     */
+    public void onThrottled(Policy policy, String policyName) {
+        if ("DAILY".equalsIgnoreCase(policyName)) {
+            dailyRemaining.set(0);
+            return;
+        }
+        Bucket bucket = buckets.get(policy);
+        if (bucket != null) {
+            synchronized (bucket) {
+                double rate = Math.max(bucket.ceiling * MIN_FRACTION, bucket.limiter.getRate() / 2);
+                bucket.limiter.setRate(rate);
+                logger.debug(LogMarkers.HTTP.getMarker(), "{} throttled, rate lowered to {}/s", policy, rate);
+            }
+        }
+    }
+
+    /**
+     * Updates the buckets from the rate limit headers of a response
+     *
+     * @param policy  The policy of the request the response belongs to
+     * @param headers Looks up the first value of a response header, returning null or empty if it is missing
+     */
+    public void update(Policy policy, Function<String, String> headers) {
+        double daily = parse(headers, DAILY_HEADER);
+        double dailyLeft = parse(headers, DAILY_REMAINING_HEADER);
+        if (daily >= 0) {
+            dailyLimit.set((long) daily);
+        }
+        if (dailyLeft >= 0) {
+            dailyRemaining.set((long) dailyLeft);
+        }
+        Bucket bucket = buckets.get(policy);
+        if (bucket == null) {
+            return;
+        }
+        double max = parse(headers, MAX_HEADER);
+        double remaining = parse(headers, REMAINING_HEADER);
+        double interval = parse(headers, INTERVAL_HEADER);
+        synchronized (bucket) {
+            double current = bucket.limiter.getRate();
+            double target;
+            if (max > 0 && interval > 0 && remaining >= 0) {
+                bucket.ceiling = max * 1000.0 / interval;
+                double fraction = remaining / max;
+                target = fraction >= LOW_WATER
+                         ? bucket.ceiling
+                         : bucket.ceiling * Math.max(MIN_FRACTION, fraction / LOW_WATER);
+            }
+            else {
+                target = Math.min(bucket.ceiling, current + RECOVERY_STEP);
+            }
+            if (Math.abs(target - current) / current > 0.05) {
+                bucket.limiter.setRate(target);
+            }
+        }
+    }
+
+    /**
+     * The rate limit policies HubSpot enforces
+     */
+    public enum Policy {
+        /**
+         * The rolling ten second window shared by most endpoints
+         */
+        TEN_SECONDLY(15.0),
+        /**
+         * The search endpoints, which are limited separately and send no rate limit headers
+         */
+        SEARCH(4.0),
+        /**
+         * The daily quota, which is counted rather than rate limited
+         */
+        DAILY(0);
+
+        private final double defaultRate;
+
+        Policy(double defaultRate) {
+            this.defaultRate = defaultRate;
+        }
+
+        /**
+         * Gets the policy whose bucket the request to the url draws from
+         *
+         * @param url The request url
+         *
+         * @return The policy for the url
+         */
+        public static Policy of(String url) {
+            return url.endsWith("/search") ? SEARCH : TEN_SECONDLY;
+        }
+
+        public double getDefaultRate() {
+            return defaultRate;
+        }
+    }
+
+    private static class Bucket {
+
+        private final RateLimiter limiter;
+        private       double      ceiling;
+
+        private Bucket(double rate) {
+            this.limiter = RateLimiter.create(rate);
+            this.ceiling = rate;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.hubspot.utils.http;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The on-disk format shared by {@link RecordingTransport} and {@link ReplayTransport}. A cassette is a gzipped stream
+ * of a header followed by one record per response:
+ * <pre>
+ * header: int magic, int version
+ * record: int key length, utf-8 key, long offset nanos, long latency nanos, int status, utf status text,
+ *         int header count, (utf name, utf value) per header, int body length, body bytes
+ * </pre>
+ * Only the headers the client reads are kept, so cookies and other session details are never written. Requests are
+ * matched by their {@link #normalize(String) normalized} key, so the keys of older cassettes still match.
+ *
+ * @author Nicholas Curl
+ */
+class Cassette {
+
+    static final         int         MAGIC   = 0x48534341;
+    static final         int         VERSION = 1;
+    private static final Set<String> KEPT    = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        KEPT.addAll(List.of("Content-Type", "Retry-After"));
+    }
+
+    private static boolean isKept(String header) {
+        return KEPT.contains(header) || header.toLowerCase().startsWith("x-hubspot-");
+    }
+
+    /**
+     * Normalizes the key of a request by masking the values of the search filters on dates, which are bounded by the
+     * time of the run and the time of the last one, so the searches of an incremental sync match the recorded ones on
+     * any later day
+     *
+     * @param key The {@link TransportRequest#getKey()} of the request
+     *
+     * @return The key to match the request by
+     */
+    static String normalize(String key) {
+        int newline = key.indexOf('\n');
+        if (newline < 0 || !key.startsWith("{", newline + 1)) {
+            return key;
+        }
+        JSONObject body;
+        try {
+            body = new JSONObject(key.substring(newline + 1));
+        }
+        catch (JSONException e) {
+            return key;
+        }
+        JSONArray filterGroups = body.optJSONArray("filterGroups");
+        if (filterGroups == null) {
+            return key;
+        }
+        for (int i = 0; i < filterGroups.length(); i++) {
+            JSONArray filters = filterGroups.getJSONObject(i).optJSONArray("filters");
+            for (int j = 0; filters != null && j < filters.length(); j++) {
+                JSONObject filter = filters.getJSONObject(j);
+                if (filter.optString("propertyName").endsWith("date")) {
+                    for (String value : new String[]{"value", "highValue"}) {
+                        if (filter.has(value)) {
+                            filter.put(value, "*");
+                        }
+                    }
+                }
+            }
+        }
+        return key.substring(0, newline + 1) + body;
+    }
+
+    /**
+     * Reads the next record
+     *
+     * @param in The cassette stream, positioned after the header
+     *
+     * @return The record, or {@code null} at the end of the cassette or of a cassette cut short
+     *
+     * @throws IOException If the cassette can not be read
+     */
+    static Entry read(DataInputStream in) throws IOException {
+        try {
+            byte[] key = new byte[in.readInt()];
+            in.readFully(key);
+            long offset = in.readLong();
+            long latency = in.readLong();
+            int status = in.readInt();
+            String statusText = in.readUTF();
+            int headerCount = in.readInt();
+            Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (int i = 0; i < headerCount; i++) {
+                headers.computeIfAbsent(in.readUTF(), name -> new ArrayList<>()).add(in.readUTF());
+            }
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Entry(new String(key, StandardCharsets.UTF_8),
+                             offset,
+                             latency,
+                             new TransportResponse(status, statusText, headers, body)
+            );
+        }
+        catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads and checks the header of the cassette
+     *
+     * @param in The cassette stream
+     *
+     * @throws IOException If the stream is not a cassette of a supported version
+     */
+    static void readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a cassette");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported cassette version " + version);
+        }
+    }
+
+    static void write(DataOutputStream out, Entry entry) throws IOException {
+        TransportResponse response = entry.response;
+        byte[] key = entry.key.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(key.length);
+        out.write(key);
+        out.writeLong(entry.offset);
+        out.writeLong(entry.latency);
+        out.writeInt(response.getStatus());
+        out.writeUTF(response.getStatusText());
+        List<Map.Entry<String, String>> headers = new ArrayList<>();
+        for (Map.Entry<String, List<String>> header : response.getHeaders().entrySet()) {
+            if (isKept(header.getKey())) {
+                for (String value : header.getValue()) {
+                    headers.add(Map.entry(header.getKey(), value));
+                }
+            }
+        }
+        out.writeInt(headers.size());
+        for (Map.Entry<String, String> header : headers) {
+            out.writeUTF(header.getKey());
+            out.writeUTF(header.getValue());
+        }
+        byte[] body = response.getBody() == null ? new byte[0] : response.getBody();
+        out.writeInt(body.length);
+        out.write(body);
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * A recorded response with the request it answered
+     */
+    static class Entry {
+
+        /**
+         * The {@link TransportRequest#getKey()} of the request
+         */
+        final String            key;
+        /**
+         * The nanoseconds between the start of the recording and the request being sent
+         */
+        final long              offset;
+        /**
+         * The nanoseconds the response took to arrive
+         */
+        final long              latency;
+        final TransportResponse response;
+
+        Entry(String key, long offset, long latency, TransportResponse response) {
+            this.key = key;
+            this.offset = offset;
+            this.latency = latency;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.hubspot.utils.http;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.utils.LogMarkers;
+import org.hubspot.utils.concurrent.CustomThreadFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Sends requests with the JDK client, multiplexing them over HTTP/2 and falling back to HTTP/1.1 if the server
+ * requires it
+ *
+ * @author Nicholas Curl
+ */
+public class Http2Transport implements HttpTransport {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger          logger = LogManager.getLogger(Http2Transport.class);
+    private final        TransportConfig config;
+    private final        ExecutorService executor;
+    private final        HttpClient      client;
+    /**
+     * Bounds the requests in flight, since the JDK client does not limit its streams or connections
+     */
+    private final        Semaphore       inFlight;
+    /**
+     * The sends waiting for a permit, started as the requests in flight complete
+     */
+    private final        Queue<Runnable> pending;
+
+    public Http2Transport(TransportConfig config) {
+        this.config = config;
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout",
+                               String.valueOf(TimeUnit.MILLISECONDS.toSeconds(config.getKeepAlive()))
+            );
+        }
+        this.executor = Executors.newCachedThreadPool(new CustomThreadFactory("Http2Transport", true));
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                                               .version(HttpClient.Version.HTTP_2)
+                                               .followRedirects(HttpClient.Redirect.NORMAL)
+                                               .executor(executor);
+        if (config.getConnectTimeout() > 0) {
+            builder.connectTimeout(Duration.ofMillis(config.getConnectTimeout()));
+        }
+        this.client = builder.build();
+        this.inFlight = new Semaphore(config.getMaxPerRoute());
+        this.pending = new ConcurrentLinkedQueue<>();
+    }
+
+    private static boolean isGzipped(HttpResponse<?> response) {
+        return response.headers()
+                       .firstValue("Content-Encoding")
+                       .map(encoding -> encoding.toLowerCase().contains("gzip"))
+                       .orElse(false);
+    }
+
+    private static TransportResponse readResponse(HttpResponse<InputStream> response) {
+        try (InputStream body = isGzipped(response)
+                                ? new GZIPInputStream(response.body())
+                                : response.body()) {
+            return new TransportResponse(response.statusCode(),
+                                         null,
+                                         response.headers().map(),
+                                         body.readAllBytes()
+            );
+        }
+        catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> send(TransportRequest request) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(request.getUrl(config.getBaseUrl())));
+        builder.method(request.getMethod(),
+                       request.getBody() == null
+                       ? HttpRequest.BodyPublishers.noBody()
+                       : HttpRequest.BodyPublishers.ofString(request.getBody())
+        );
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        if (config.isGzip()) {
+            builder.header("Accept-Encoding", "gzip");
+        }
+        if (config.getSocketTimeout() > 0) {
+            builder.timeout(Duration.ofMillis(config.getSocketTimeout()));
+        }
+        HttpRequest httpRequest = builder.build();
+        CompletableFuture<TransportResponse> future = new CompletableFuture<>();
+        pending.add(() -> dispatch(httpRequest, future));
+        startPending();
+        return future;
+    }
+
+    /**
+     * Starts the pending sends while there are permits left, without blocking the calling thread
+     */
+    private void startPending() {
+        while (!pending.isEmpty() && inFlight.tryAcquire()) {
+            Runnable next = pending.poll();
+            if (next == null) {
+                inFlight.release();
+            }
+            else {
+                next.run();
+            }
+        }
+    }
+
+    /**
+     * Sends the request holding a permit, releasing it and starting the next pending send once it completes
+     *
+     * @param request The request to send
+     * @param future  The future to complete with the response
+     */
+    private void dispatch(HttpRequest request, CompletableFuture<TransportResponse> future) {
+        try {
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                  .thenApplyAsync(Http2Transport::readResponse, executor)
+                  .whenComplete((response, throwable) -> {
+                      inFlight.release();
+                      startPending();
+                      if (throwable == null) {
+                          future.complete(response);
+                      }
+                      else {
+                          future.completeExceptionally(throwable);
+                      }
+                  });
+        }
+        catch (RuntimeException e) {
+            inFlight.release();
+            future.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Opens the multiplexed connection by sending a request to the base url
+     */
+    @Override
+    public void warmUp() {
+        try {
+            send(TransportRequest.get("/")).get(30, TimeUnit.SECONDS);
+        }
+        catch (Exception e) {
+            logger.debug(LogMarkers.HTTP.getMarker(), "Connection warm up failed", e);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package org.hubspot.utils.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Records the latency, status codes, retries and bytes of every request, grouped by endpoint. Endpoints are the
+ * method and path with numeric segments replaced by {@code {id}}, so requests for different objects are counted
+ * together.
+ *
+ * @author Nicholas Curl
+ */
+public class HttpMetrics {
+
+    private static final Pattern                       ID = Pattern.compile("/\\d+(?=/|$)");
+    private final        Map<String, EndpointRecorder> endpoints;
+    private final        long                          started;
+
+    public HttpMetrics() {
+        this.endpoints = new ConcurrentHashMap<>();
+        this.started = System.nanoTime();
+    }
+
+    /**
+     * Gets the endpoint a request is counted under
+     *
+     * @param request The request
+     *
+     * @return The method and path template of the request, such as {@code GET /crm/v3/objects/contacts/{id}}
+     */
+    public static String endpointOf(TransportRequest request) {
+        return request.getMethod() + " " + ID.matcher(request.getPath()).replaceAll("/{id}");
+    }
+
+    private EndpointRecorder recorder(TransportRequest request) {
+        return endpoints.computeIfAbsent(endpointOf(request), endpoint -> new EndpointRecorder());
+    }
+
+    /**
+     * Records the time spent decoding and checking a response
+     *
+     * @param request The request the response answered
+     * @param nanos   The decode time in nanoseconds
+     */
+    public void recordDecode(TransportRequest request, long nanos) {
+        recorder(request).decode.recordNanos(nanos);
+    }
+
+    /**
+     * Records a request that failed without a response
+     *
+     * @param request The request
+     * @param nanos   The time until the failure in nanoseconds
+     */
+    public void recordFailure(TransportRequest request, long nanos) {
+        EndpointRecorder recorder = recorder(request);
+        recorder.latency.recordNanos(nanos);
+        recorder.networkFailures.increment();
+        recorder.addSent(request);
+    }
+
+    /**
+     * Records a response
+     *
+     * @param request  The request the response answered
+     * @param response The response
+     * @param nanos    The time from sending the request to receiving the response in nanoseconds
+     */
+    public void recordResponse(TransportRequest request, TransportResponse response, long nanos) {
+        EndpointRecorder recorder = recorder(request);
+        recorder.latency.recordNanos(nanos);
+        recorder.statuses.computeIfAbsent(response.getStatus(), status -> new LongAdder()).increment();
+        recorder.addSent(request);
+        if (response.getBody() != null) {
+            recorder.bytesReceived.add(response.getBody().length);
+        }
+    }
+
+    /**
+     * Records that a request is being retried
+     *
+     * @param request The request
+     */
+    public void recordRetry(TransportRequest request) {
+        recorder(request).retries.increment();
+    }
+
+    /**
+     * Takes a consistent enough view of the metrics for reporting
+     *
+     * @param throttleWaitNanos The total time callers spent waiting for rate limit permits, in nanoseconds
+     *
+     * @return The snapshot
+     */
+    public Snapshot snapshot(long throttleWaitNanos) {
+        double elapsed = (System.nanoTime() - started) / 1e9;
+        List<EndpointSnapshot> snapshots = new ArrayList<>();
+        for (Map.Entry<String, EndpointRecorder> entry : endpoints.entrySet()) {
+            snapshots.add(new EndpointSnapshot(entry.getKey(), entry.getValue(), elapsed));
+        }
+        snapshots.sort(Comparator.comparingLong(EndpointSnapshot::getRequests).reversed());
+        return new Snapshot(elapsed, throttleWaitNanos / 1e9, snapshots);
+    }
+
+    private static class EndpointRecorder {
+
+        private final LatencyHistogram        latency;
+        private final LatencyHistogram        decode;
+        private final Map<Integer, LongAdder> statuses;
+        private final LongAdder               networkFailures;
+        private final LongAdder               retries;
+        private final LongAdder               bytesSent;
+        private final LongAdder               bytesReceived;
+
+        private EndpointRecorder() {
+            this.latency = new LatencyHistogram();
+            this.decode = new LatencyHistogram();
+            this.statuses = new ConcurrentHashMap<>();
+            this.networkFailures = new LongAdder();
+            this.retries = new LongAdder();
+            this.bytesSent = new LongAdder();
+            this.bytesReceived = new LongAdder();
+        }
+
+        private void addSent(TransportRequest request) {
+            if (request.getBody() != null) {
+                bytesSent.add(request.getBody().getBytes(StandardCharsets.UTF_8).length);
+            }
+        }
+    }
+
+    /**
+     * The metrics of one endpoint, with durations in milliseconds
+     */
+    public static class EndpointSnapshot {
+
+        private final String             endpoint;
+        private final long               requests;
+        private final double             rate;
+        private final double             p50;
+        private final double             p99;
+        private final double             p999;
+        private final double             max;
+        private final double             mean;
+        private final double             decodeP99;
+        private final Map<Integer, Long> statuses;
+        private final long               networkFailures;
+        private final long               retries;
+        private final long               bytesSent;
+        private final long               bytesReceived;
+
+        private EndpointSnapshot(String endpoint, EndpointRecorder recorder, double elapsed) {
+            this.endpoint = endpoint;
+            this.requests = recorder.latency.getCount();
+            this.rate = elapsed > 0 ? requests / elapsed : 0;
+            this.p50 = recorder.latency.getValueAtPercentile(50) / 1000.0;
+            this.p99 = recorder.latency.getValueAtPercentile(99) / 1000.0;
+            this.p999 = recorder.latency.getValueAtPercentile(99.9) / 1000.0;
+            this.max = recorder.latency.getMax() / 1000.0;
+            this.mean = recorder.latency.getMean() / 1000.0;
+            this.decodeP99 = recorder.decode.getValueAtPercentile(99) / 1000.0;
+            Map<Integer, Long> statusCounts = new TreeMap<>();
+            recorder.statuses.forEach((status, counter) -> statusCounts.put(status, counter.sum()));
+            this.statuses = Collections.unmodifiableMap(statusCounts);
+            this.networkFailures = recorder.networkFailures.sum();
+            this.retries = recorder.retries.sum();
+            this.bytesSent = recorder.bytesSent.sum();
+            this.bytesReceived = recorder.bytesReceived.sum();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public double getDecodeP99() {
+            return decodeP99;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getNetworkFailures() {
+            return networkFailures;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getP999() {
+            return p999;
+        }
+
+        /**
+         * Gets the average number of requests per second since the metrics were created
+         *
+         * @return The request rate
+         */
+        public double getRate() {
+            return rate;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        public Map<Integer, Long> getStatuses() {
+            return statuses;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-60s %8d %8.1f %8.1f %8.1f %8.1f %8.1f %10.2f %7d %s",
+                                 endpoint,
+                                 requests,
+                                 rate,
+                                 p50,
+                                 p99,
+                                 p999,
+                                 max,
+                                 decodeP99,
+                                 retries,
+                                 networkFailures > 0 ? statuses + " network=" + networkFailures : statuses
+            );
+        }
+    }
+
+    /**
+     * The metrics of every endpoint at a point in time, busiest first
+     */
+    public static class Snapshot {
+
+        private final double                 elapsed;
+        private final double                 throttleWait;
+        private final List<EndpointSnapshot> endpoints;
+
+        private Snapshot(double elapsed, double throttleWait, List<EndpointSnapshot> endpoints) {
+            this.elapsed = elapsed;
+            this.throttleWait = throttleWait;
+            this.endpoints = Collections.unmodifiableList(endpoints);
+        }
+
+        /**
+         * Gets the seconds since the metrics were created
+         *
+         * @return The elapsed seconds
+         */
+        public double getElapsed() {
+            return elapsed;
+        }
+
+        public List<EndpointSnapshot> getEndpoints() {
+            return endpoints;
+        }
+
+        /**
+         * Gets the seconds callers spent blocked on rate limit permits, summed over all threads
+         *
+         * @return The throttle wait in seconds
+         */
+        public double getThrottleWait() {
+            return throttleWait;
+        }
+
+        public long getTotalBytesReceived() {
+            return endpoints.stream().mapToLong(EndpointSnapshot::getBytesReceived).sum();
+        }
+
+        public long getTotalRequests() {
+            return endpoints.stream().mapToLong(EndpointSnapshot::getRequests).sum();
+        }
+
+        @Override
+        public String toString() {
+            long requests = getTotalRequests();
+            StringBuilder builder = new StringBuilder(String.format(
+                    "HTTP metrics over %.1fs: %d requests (%.1f/s), %.2f MB received, %.1fs waiting on rate limits%n",
+                    elapsed,
+                    requests,
+                    elapsed > 0 ? requests / elapsed : 0,
+                    getTotalBytesReceived() / 1048576.0,
+                    throttleWait
+            ));
+            builder.append(String.format("%-60s %8s %8s %8s %8s %8s %8s %10s %7s %s%n",
+                                         "endpoint",
+                                         "requests",
+                                         "rate/s",
+                                         "p50 ms",
+                                         "p99 ms",
+                                         "p999 ms",
+                                         "max ms",
+                                         "decode p99",
+                                         "retries",
+                                         "statuses"
+            ));
+            for (EndpointSnapshot endpoint : endpoints) {
+                builder.append(endpoint).append(System.lineSeparator());
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.hubspot.utils.http;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends requests to the HubSpot API over a particular HTTP client
+ *
+ * @author Nicholas Curl
+ */
+public interface HttpTransport {
+
+    /**
+     * Sends the request without blocking
+     *
+     * @param request The request to send
+     *
+     * @return A future of the response, completing exceptionally with an {@link java.io.IOException} if no response
+     *         arrived
+     */
+    CompletableFuture<TransportResponse> send(TransportRequest request);
+
+    /**
+     * Closes the connections and threads of the transport
+     */
+    void shutdown();
+
+    /**
+     * Opens connections ahead of the first real requests so they do not pay for the handshakes
+     */
+    void warmUp();
+}
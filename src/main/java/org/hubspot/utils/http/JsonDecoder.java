@@ -0,0 +1,499 @@
+package org.hubspot.utils.http;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+/**
+ * Parses JSON bytes in a single pass straight into {@link JSONObject}s and {@link JSONArray}s, coercing string values
+ * that hold numbers, booleans or HubSpot timestamps into their typed values as they are read
+ *
+ * @author Nicholas Curl
+ */
+public class JsonDecoder {
+
+    private final byte[]        data;
+    private final int           end;
+    private final StringBuilder builder;
+    private       int           pos;
+
+    private JsonDecoder(byte[] data, int offset, int length) {
+        this.data = data;
+        this.pos = offset;
+        this.end = offset + length;
+        this.builder = new StringBuilder();
+    }
+
+    /**
+     * Decodes the UTF-8 encoded JSON document
+     *
+     * @param data The bytes of the document
+     *
+     * @return The decoded {@link JSONObject}, {@link JSONArray} or value, or null if the document is empty
+     *
+     * @throws JSONException if the document is malformed
+     */
+    public static Object decode(byte[] data) {
+        return decode(data, 0, data.length);
+    }
+
+    /**
+     * Decodes the UTF-8 encoded JSON document held in part of the array
+     *
+     * @param data   The bytes holding the document
+     * @param offset The index of the first byte of the document
+     * @param length The number of bytes in the document
+     *
+     * @return The decoded {@link JSONObject}, {@link JSONArray} or value, or null if the document is empty
+     *
+     * @throws JSONException if the document is malformed
+     */
+    public static Object decode(byte[] data, int offset, int length) {
+        JsonDecoder decoder = new JsonDecoder(data, offset, length);
+        decoder.skipWhitespace();
+        if (decoder.pos >= decoder.end) {
+            return null;
+        }
+        Object value = decoder.readValue();
+        decoder.skipWhitespace();
+        if (decoder.pos < decoder.end) {
+            throw decoder.error("Unexpected trailing content");
+        }
+        return value;
+    }
+
+    /**
+     * Converts a string value into the type it holds, trying a long, a double, a boolean and then a HubSpot timestamp,
+     * in the same order the values have always been converted in
+     *
+     * @param value The string value
+     *
+     * @return The typed value, or the string itself if it holds none of them
+     */
+    public static Object coerce(String value) {
+        int length = value.length();
+        if (length == 0) {
+            return value;
+        }
+        Object number = parseLong(value);
+        if (number == null) {
+            number = parseDouble(value);
+        }
+        if (number != null) {
+            return number;
+        }
+        if (value.equalsIgnoreCase("true")) {
+            return Boolean.TRUE;
+        }
+        if (value.equalsIgnoreCase("false")) {
+            return Boolean.FALSE;
+        }
+        if (length == 24 && isTimestamp(value) && value.charAt(19) == '.' && isDigits(value, 20, 23) &&
+            value.charAt(23) == 'Z') {
+            return toDate(value, digits(value, 20, 23));
+        }
+        if (length == 20 && isTimestamp(value) && value.charAt(19) == 'Z') {
+            return toDate(value, 0);
+        }
+        return value;
+    }
+
+    private static int digits(String value, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            result = result * 10 + (value.charAt(i) - '0');
+        }
+        return result;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isDigits(String value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks for the {@code yyyy-MM-ddTHH:mm:ss} prefix of a HubSpot timestamp
+     */
+    private static boolean isTimestamp(String value) {
+        return isDigits(value, 0, 4) && value.charAt(4) == '-' && isDigits(value, 5, 7) && value.charAt(7) == '-' &&
+               isDigits(value, 8, 10) && value.charAt(10) == 'T' && isDigits(value, 11, 13) &&
+               value.charAt(13) == ':' && isDigits(value, 14, 16) && value.charAt(16) == ':' &&
+               isDigits(value, 17, 19);
+    }
+
+    /**
+     * Parses the string the way {@link Double#parseDouble(String)} would for decimal values, without throwing
+     *
+     * @return The double, or null if the string is not a decimal number
+     */
+    private static Double parseDouble(String value) {
+        int start = 0;
+        int stop = value.length();
+        while (start < stop && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (stop > start && value.charAt(stop - 1) <= ' ') {
+            stop--;
+        }
+        if (start == stop) {
+            return null;
+        }
+        int i = start;
+        char c = value.charAt(i);
+        if (c == '+' || c == '-') {
+            i++;
+        }
+        int mantissaDigits = 0;
+        while (i < stop && isDigit(value.charAt(i))) {
+            i++;
+            mantissaDigits++;
+        }
+        if (i < stop && value.charAt(i) == '.') {
+            i++;
+            while (i < stop && isDigit(value.charAt(i))) {
+                i++;
+                mantissaDigits++;
+            }
+        }
+        if (mantissaDigits == 0) {
+            return null;
+        }
+        if (i < stop && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            i++;
+            if (i < stop && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+                i++;
+            }
+            int exponentDigits = 0;
+            while (i < stop && isDigit(value.charAt(i))) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return null;
+            }
+        }
+        if (i < stop && "fFdD".indexOf(value.charAt(i)) >= 0) {
+            i++;
+        }
+        if (i != stop) {
+            return null;
+        }
+        return Double.parseDouble(value.substring(start, stop));
+    }
+
+    /**
+     * Parses the string the way {@link Long#parseLong(String)} would, without throwing
+     *
+     * @return The long, or null if the string is not an integer that fits in a long
+     */
+    private static Long parseLong(String value) {
+        int length = value.length();
+        int i = 0;
+        boolean negative = false;
+        char first = value.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (length == 1) {
+                return null;
+            }
+        }
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyMin = limit / 10;
+        long result = 0;
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (!isDigit(c) || result < multiplyMin) {
+                return null;
+            }
+            int digit = c - '0';
+            result *= 10;
+            if (result < limit + digit) {
+                return null;
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static Object toDate(String value, int millis) {
+        Calendar calendar = new GregorianCalendar(digits(value, 0, 4),
+                                                  digits(value, 5, 7) - 1,
+                                                  digits(value, 8, 10),
+                                                  digits(value, 11, 13),
+                                                  digits(value, 14, 16),
+                                                  digits(value, 17, 19)
+        );
+        calendar.set(Calendar.MILLISECOND, millis);
+        return calendar.getTime();
+    }
+
+    private JSONException error(String message) {
+        return new JSONException(message + " at byte " + pos);
+    }
+
+    private void expect(char c) {
+        if (pos >= end || data[pos] != c) {
+            throw error("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private void expectLiteral(String literal) {
+        if (end - pos < literal.length()) {
+            throw error("Expected " + literal);
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (data[pos + i] != literal.charAt(i)) {
+                throw error("Expected " + literal);
+            }
+        }
+        pos += literal.length();
+    }
+
+    private int hex(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        else if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        else if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        throw error("Invalid unicode escape");
+    }
+
+    private JSONArray readArray() {
+        pos++;
+        JSONArray array = new JSONArray();
+        skipWhitespace();
+        if (pos < end && data[pos] == ']') {
+            pos++;
+            return array;
+        }
+        while (true) {
+            skipWhitespace();
+            array.put(readValue());
+            skipWhitespace();
+            if (pos < end && data[pos] == ',') {
+                pos++;
+            }
+            else {
+                expect(']');
+                return array;
+            }
+        }
+    }
+
+    private Number readNumber() {
+        int start = pos;
+        boolean decimal = false;
+        boolean exponent = false;
+        if (data[pos] == '-') {
+            pos++;
+        }
+        while (pos < end) {
+            byte b = data[pos];
+            if (b >= '0' && b <= '9' || b == '+' || b == '-') {
+                pos++;
+            }
+            else if (b == '.') {
+                decimal = true;
+                pos++;
+            }
+            else if (b == 'e' || b == 'E') {
+                exponent = true;
+                pos++;
+            }
+            else {
+                break;
+            }
+        }
+        String text = new String(data, start, pos - start, StandardCharsets.ISO_8859_1);
+        if (!decimal && !exponent) {
+            Long value = parseLong(text);
+            if (value != null) {
+                return value == value.intValue() ? (Number) value.intValue() : value;
+            }
+        }
+        Double value = parseDouble(text);
+        if (value == null) {
+            throw error("Invalid number " + text);
+        }
+        if (!decimal && value == Math.rint(value) && !Double.isInfinite(value)) {
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return value.intValue();
+            }
+            else if (value >= Long.MIN_VALUE && value <= Long.MAX_VALUE) {
+                return value.longValue();
+            }
+        }
+        return value;
+    }
+
+    private JSONObject readObject() {
+        pos++;
+        JSONObject object = new JSONObject();
+        skipWhitespace();
+        if (pos < end && data[pos] == '}') {
+            pos++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (pos >= end || data[pos] != '"') {
+                throw error("Expected a key");
+            }
+            String key = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            object.put(key, readValue());
+            skipWhitespace();
+            if (pos < end && data[pos] == ',') {
+                pos++;
+            }
+            else {
+                expect('}');
+                return object;
+            }
+        }
+    }
+
+    private String readString() {
+        pos++;
+        int start = pos;
+        boolean ascii = true;
+        while (pos < end) {
+            byte b = data[pos];
+            if (b == '"') {
+                String value = new String(data,
+                                          start,
+                                          pos - start,
+                                          ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8
+                );
+                pos++;
+                return value;
+            }
+            else if (b == '\\') {
+                return readEscapedString(start);
+            }
+            else if (b < 0) {
+                ascii = false;
+            }
+            pos++;
+        }
+        throw error("Unterminated string");
+    }
+
+    private String readEscapedString(int start) {
+        builder.setLength(0);
+        int run = start;
+        while (pos < end) {
+            byte b = data[pos];
+            if (b == '"') {
+                builder.append(new String(data, run, pos - run, StandardCharsets.UTF_8));
+                pos++;
+                return builder.toString();
+            }
+            else if (b == '\\') {
+                builder.append(new String(data, run, pos - run, StandardCharsets.UTF_8));
+                pos++;
+                if (pos >= end) {
+                    break;
+                }
+                byte escaped = data[pos++];
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        builder.append((char) escaped);
+                        break;
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'u':
+                        if (end - pos < 4) {
+                            throw error("Invalid unicode escape");
+                        }
+                        builder.append((char) (hex(data[pos]) << 12 | hex(data[pos + 1]) << 8 |
+                                               hex(data[pos + 2]) << 4 | hex(data[pos + 3])));
+                        pos += 4;
+                        break;
+                    default:
+                        throw error("Invalid escape");
+                }
+                run = pos;
+            }
+            else {
+                pos++;
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private Object readValue() {
+        if (pos >= end) {
+            throw error("Unexpected end of input");
+        }
+        switch (data[pos]) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return coerce(readString());
+            case 't':
+                expectLiteral("true");
+                return Boolean.TRUE;
+            case 'f':
+                expectLiteral("false");
+                return Boolean.FALSE;
+            case 'n':
+                expectLiteral("null");
+                return JSONObject.NULL;
+            default:
+                if (data[pos] == '-' || data[pos] >= '0' && data[pos] <= '9') {
+                    return readNumber();
+                }
+                throw error("Unexpected character '" + (char) data[pos] + "'");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte b = data[pos];
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                pos++;
+            }
+            else {
+                break;
+            }
+        }
+    }
+}
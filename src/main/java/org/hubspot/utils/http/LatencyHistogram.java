@@ -0,0 +1,112 @@
+package org.hubspot.utils.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of durations in microseconds. Buckets are log-linear in the manner of HdrHistogram: values
+ * below 128 get a bucket each, and every power of two above that is split into 64 buckets, so each value is recorded
+ * to within 1.6% of its true value at a fixed memory cost.
+ *
+ * @author Nicholas Curl
+ */
+public class LatencyHistogram {
+
+    private static final int             SUB_BUCKET_BITS = 7;
+    private static final int             SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+    private static final int             HALF            = SUB_BUCKETS / 2;
+    /**
+     * The largest value tracked, about 12.7 days, above which values are recorded as this
+     */
+    private static final long            MAX_VALUE       = (1L << 40) - 1;
+    private final        AtomicLongArray counts;
+    private final        LongAdder       count;
+    private final        LongAdder       sum;
+    private final        AtomicLong      max;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(index(MAX_VALUE) + 1);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    private static long highestEquivalentValue(int index) {
+        return index + 1 < SUB_BUCKETS ? index : lowestEquivalentValue(index + 1) - 1;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) ((value >> shift) - HALF);
+    }
+
+    private static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF + HALF;
+        return subBucket << shift;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the mean of the recorded values
+     *
+     * @return The mean, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long total = count.sum();
+        return total == 0 ? 0 : (double) sum.sum() / total;
+    }
+
+    /**
+     * Gets the value at or below which the given fraction of the recorded values fall
+     *
+     * @param percentile The percentile between 0 and 100, such as 99.9
+     *
+     * @return The value at the percentile, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Records a duration
+     *
+     * @param nanos The duration in nanoseconds
+     */
+    public void recordNanos(long nanos) {
+        long value = Math.min(MAX_VALUE, Math.max(0, nanos / 1000));
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+}
@@ -0,0 +1,112 @@
+package org.hubspot.utils.http;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.utils.LogMarkers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sends requests through another transport while writing every response and its timing to a cassette, which a
+ * {@link ReplayTransport} can serve back offline
+ *
+ * @author Nicholas Curl
+ */
+public class RecordingTransport implements HttpTransport {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger           logger = LogManager.getLogger(RecordingTransport.class);
+    private final        HttpTransport    delegate;
+    private final        Path             cassette;
+    private final        DataOutputStream out;
+    private final        long             start;
+    private              boolean          recording;
+    private              long             recorded;
+
+    /**
+     * Creates the recorder, replacing any existing cassette at the path
+     *
+     * @param delegate The transport that sends the requests
+     * @param cassette The path of the cassette to write
+     *
+     * @throws IOException If the cassette can not be created
+     */
+    public RecordingTransport(HttpTransport delegate, Path cassette) throws IOException {
+        this.delegate = delegate;
+        this.cassette = cassette;
+        Path parent = cassette.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(cassette)),
+                                                             65536
+        ));
+        Cassette.writeHeader(out);
+        this.start = System.nanoTime();
+        this.recording = true;
+        this.recorded = 0;
+    }
+
+    private synchronized void record(Cassette.Entry entry) {
+        if (!recording) {
+            return;
+        }
+        try {
+            Cassette.write(out, entry);
+            recorded++;
+        }
+        catch (IOException e) {
+            recording = false;
+            logger.error(LogMarkers.ERROR.getMarker(),
+                         "Unable to write to cassette {}, recording stopped",
+                         cassette,
+                         e
+            );
+        }
+    }
+
+    /**
+     * Sends the request through the delegate, recording the response once it arrives. Requests that fail without a
+     * response are not recorded.
+     */
+    @Override
+    public CompletableFuture<TransportResponse> send(TransportRequest request) {
+        long sent = System.nanoTime();
+        return delegate.send(request).whenComplete((response, throwable) -> {
+            if (response != null) {
+                record(new Cassette.Entry(request.getKey(), sent - start, System.nanoTime() - sent, response));
+            }
+        });
+    }
+
+    /**
+     * Shuts down the delegate and finishes the cassette
+     */
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+        synchronized (this) {
+            recording = false;
+            try {
+                out.close();
+                logger.debug(LogMarkers.HTTP.getMarker(), "Recorded {} responses to {}", recorded, cassette);
+            }
+            catch (IOException e) {
+                logger.error(LogMarkers.ERROR.getMarker(), "Unable to finish cassette {}", cassette, e);
+            }
+        }
+    }
+
+    @Override
+    public void warmUp() {
+        delegate.warmUp();
+    }
+}
@@ -0,0 +1,104 @@
+package org.hubspot.utils.http;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.utils.LogMarkers;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Answers requests from a cassette written by a {@link RecordingTransport}, without touching the network. Responses
+ * to the same request are served in the order they were recorded, the last one being repeated once the others are
+ * used up, so retried and repeated requests replay as they happened. Searches that differ only in the dates they filter
+ * on count as the same request, since those dates move with the time of the run.
+ *
+ * @author Nicholas Curl
+ */
+public class ReplayTransport implements HttpTransport {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger                             logger = LogManager.getLogger(ReplayTransport.class);
+    private final        Map<String, Deque<Cassette.Entry>> entries;
+    private final        boolean                            originalTiming;
+    /**
+     * When the replay started, which the recorded offsets are relative to
+     */
+    private final        long                               start;
+
+    /**
+     * Loads the cassette
+     *
+     * @param cassette       The path of the cassette
+     * @param originalTiming Whether each response is served no sooner than it arrived in the recording, relative to
+     *                       the start of the replay, and no sooner than its recorded latency, rather than at once
+     *
+     * @throws IOException If the cassette can not be read
+     */
+    public ReplayTransport(Path cassette, boolean originalTiming) throws IOException {
+        this.entries = new HashMap<>();
+        this.originalTiming = originalTiming;
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(
+                cassette)), 65536))) {
+            Cassette.readHeader(in);
+            Cassette.Entry entry;
+            while ((entry = Cassette.read(in)) != null) {
+                entries.computeIfAbsent(Cassette.normalize(entry.key), key -> new ArrayDeque<>()).add(entry);
+                count++;
+            }
+        }
+        logger.debug(LogMarkers.HTTP.getMarker(),
+                     "Loaded {} responses for {} requests from {}",
+                     count,
+                     entries.size(),
+                     cassette
+        );
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Serves the next recorded response of the request
+     *
+     * @return A future of the response, failing with an {@link IllegalStateException} if the request was never
+     *         recorded
+     */
+    @Override
+    public CompletableFuture<TransportResponse> send(TransportRequest request) {
+        Deque<Cassette.Entry> recorded = entries.get(Cassette.normalize(request.getKey()));
+        if (recorded == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("No recorded response for " + request));
+        }
+        Cassette.Entry entry;
+        synchronized (recorded) {
+            entry = recorded.size() > 1 ? recorded.poll() : recorded.peek();
+        }
+        if (!originalTiming) {
+            return CompletableFuture.completedFuture(entry.response);
+        }
+        long delay = Math.max(entry.latency, start + entry.offset + entry.latency - System.nanoTime());
+        return CompletableFuture.supplyAsync(() -> entry.response,
+                                             CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS)
+        );
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public void warmUp() {
+    }
+}
@@ -0,0 +1,253 @@
+package org.hubspot.utils.http;
+
+import com.google.common.base.Strings;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.utils.ErrorCodes;
+import org.hubspot.utils.LogMarkers;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides if and when a failed request is sent again, using exponential backoff with decorrelated jitter, the
+ * {@code Retry-After} header and per error class retry budgets
+ *
+ * @author Nicholas Curl
+ */
+public class RetryPolicy {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger                     logger = LogManager.getLogger(RetryPolicy.class);
+    private final        long                       baseDelay;
+    private final        long                       maxDelay;
+    private final        int                        maxRetries;
+    private final        Map<ErrorClass, Integer>   budgets;
+    private final        Map<ErrorClass, LongAdder> retries;
+    private final        Map<ErrorClass, LongAdder> exhausted;
+
+    /**
+     * Creates a retry policy with a 100ms base delay, a 10s cap and the default budget of each error class
+     */
+    public RetryPolicy() {
+        this(100, 10000, 12);
+    }
+
+    /**
+     * Creates a retry policy using the default budget of each error class
+     *
+     * @param baseDelay  The smallest delay in milliseconds between two attempts
+     * @param maxDelay   The largest delay in milliseconds between two attempts
+     * @param maxRetries The most retries a single request may use across all error classes
+     */
+    public RetryPolicy(long baseDelay, long maxDelay, int maxRetries) {
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.maxRetries = maxRetries;
+        this.budgets = new EnumMap<>(ErrorClass.class);
+        this.retries = new EnumMap<>(ErrorClass.class);
+        this.exhausted = new EnumMap<>(ErrorClass.class);
+        for (ErrorClass errorClass : ErrorClass.values()) {
+            budgets.put(errorClass, errorClass.getDefaultBudget());
+            retries.put(errorClass, new LongAdder());
+            exhausted.put(errorClass, new LongAdder());
+        }
+    }
+
+    /**
+     * Parses a {@code Retry-After} header given either in seconds or as an HTTP date
+     *
+     * @param value The value of the header
+     *
+     * @return The delay in milliseconds, or -1 if the header is missing or malformed
+     */
+    public static long parseRetryAfter(String value) {
+        if (Strings.isNullOrEmpty(value)) {
+            return -1;
+        }
+        String trimmed = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(trimmed) * 1000);
+        }
+        catch (NumberFormatException ignored) {
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+        }
+        catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    public long getExhausted(ErrorClass errorClass) {
+        return exhausted.get(errorClass).sum();
+    }
+
+    public long getRetries(ErrorClass errorClass) {
+        return retries.get(errorClass).sum();
+    }
+
+    public long getTotalRetries() {
+        long total = 0;
+        for (LongAdder adder : retries.values()) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Starts tracking the retries of a new request
+     *
+     * @return The retry state of the request
+     */
+    public Attempt newAttempt() {
+        return new Attempt(baseDelay);
+    }
+
+    /**
+     * Computes the delay before the request is retried, consuming one retry from its budgets
+     *
+     * @param attempt    The retry state of the request
+     * @param errorClass The class of the error the request failed with
+     * @param retryAfter The delay in milliseconds HubSpot asked for, or -1 if it did not ask for one
+     *
+     * @return The delay in milliseconds, or -1 if the request should not be retried
+     */
+    public long nextDelay(Attempt attempt, ErrorClass errorClass, long retryAfter) {
+        int used = attempt.counts.getOrDefault(errorClass, 0);
+        if (used >= budgets.get(errorClass) || attempt.total >= maxRetries) {
+            exhausted.get(errorClass).increment();
+            return -1;
+        }
+        attempt.counts.put(errorClass, used + 1);
+        attempt.total++;
+        retries.get(errorClass).increment();
+        long upper = Math.max(baseDelay + 1, attempt.previousDelay * 3);
+        long delay = Math.min(maxDelay, ThreadLocalRandom.current().nextLong(baseDelay, upper));
+        attempt.previousDelay = delay;
+        if (retryAfter > delay) {
+            delay = retryAfter;
+        }
+        logger.debug(LogMarkers.HTTP.getMarker(),
+                     "Retrying {} error in {}ms (attempt {})",
+                     errorClass,
+                     delay,
+                     attempt.total
+        );
+        return delay;
+    }
+
+    /**
+     * Sets how many times a single request may be retried for an error class
+     *
+     * @param errorClass The error class
+     * @param budget     The number of retries
+     *
+     * @return This policy
+     */
+    public RetryPolicy setBudget(ErrorClass errorClass, int budget) {
+        budgets.put(errorClass, budget);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("RetryPolicy{");
+        for (ErrorClass errorClass : ErrorClass.values()) {
+            builder.append(errorClass)
+                   .append("=")
+                   .append(getRetries(errorClass))
+                   .append("/")
+                   .append(getExhausted(errorClass))
+                   .append(", ");
+        }
+        return builder.append("total=").append(getTotalRetries()).append("}").toString();
+    }
+
+    /**
+     * The classes of errors that are worth retrying
+     */
+    public enum ErrorClass {
+        /**
+         * 500, 502, 503, 504 and 524 responses
+         */
+        SERVER_ERROR(5),
+        /**
+         * 409 responses
+         */
+        CONFLICT(3),
+        /**
+         * 429 responses for anything but the daily limit
+         */
+        RATE_LIMITED(8),
+        /**
+         * Requests aborted before a response arrived
+         */
+        NETWORK(5);
+
+        private final int defaultBudget;
+
+        ErrorClass(int defaultBudget) {
+            this.defaultBudget = defaultBudget;
+        }
+
+        /**
+         * Gets the error class of a {@link org.hubspot.utils.exceptions.HubSpotException} code
+         *
+         * @param code The error code
+         *
+         * @return The error class, or null if the error should not be retried
+         */
+        public static ErrorClass of(int code) {
+            if (code == ErrorCodes.HTTP_500.getErrorCode() ||
+                code == ErrorCodes.HTTP_502.getErrorCode() ||
+                code == ErrorCodes.HTTP_503.getErrorCode() ||
+                code == ErrorCodes.HTTP_504.getErrorCode() ||
+                code == ErrorCodes.HTTP_524.getErrorCode()) {
+                return SERVER_ERROR;
+            }
+            else if (code == ErrorCodes.HTTP_409.getErrorCode()) {
+                return CONFLICT;
+            }
+            else if (code == ErrorCodes.HTTP_429.getErrorCode()) {
+                return RATE_LIMITED;
+            }
+            else {
+                return null;
+            }
+        }
+
+        public int getDefaultBudget() {
+            return defaultBudget;
+        }
+    }
+
+    /**
+     * The retry state of a single request
+     */
+    public static class Attempt {
+
+        private final Map<ErrorClass, Integer> counts;
+        private       long                     previousDelay;
+        private       int                      total;
+
+        private Attempt(long baseDelay) {
+            this.counts = new EnumMap<>(ErrorClass.class);
+            this.previousDelay = baseDelay;
+            this.total = 0;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+    }
+}
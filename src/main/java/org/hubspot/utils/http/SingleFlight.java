@@ -0,0 +1,82 @@
+package org.hubspot.utils.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical calls made while one is already in flight, so they share a single call and its result
+ *
+ * @param <T> The type of the result
+ *
+ * @author Nicholas Curl
+ */
+public class SingleFlight<T> {
+
+    private final ConcurrentHashMap<String, CompletableFuture<T>> inFlight;
+    private final LongAdder                                       coalesced;
+
+    public SingleFlight() {
+        this.inFlight = new ConcurrentHashMap<>();
+        this.coalesced = new LongAdder();
+    }
+
+    /**
+     * Starts the call, or joins the identical one already in flight. The entry is removed once the call completes, so
+     * nothing is cached past its completion.
+     *
+     * @param key  The key identifying the call
+     * @param call Starts the call
+     *
+     * @return A future of the result, independent of the futures handed to the other callers so cancelling it does
+     *         not affect them
+     */
+    public CompletableFuture<T> execute(String key, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> created = new CompletableFuture<>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.copy();
+        }
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        }
+        catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((result, throwable) -> {
+            inFlight.remove(key, created);
+            if (throwable == null) {
+                created.complete(result);
+            }
+            else if (throwable instanceof CompletionException && throwable.getCause() != null) {
+                created.completeExceptionally(throwable.getCause());
+            }
+            else {
+                created.completeExceptionally(throwable);
+            }
+        });
+        return created.copy();
+    }
+
+    /**
+     * Gets the number of calls that joined one already in flight
+     *
+     * @return The number of coalesced calls
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Gets the number of calls currently in flight
+     *
+     * @return The number of calls in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,107 @@
+package org.hubspot.utils.http;
+
+/**
+ * The settings shared by the {@link HttpTransport} implementations
+ *
+ * @author Nicholas Curl
+ */
+public class TransportConfig {
+
+    private final String  baseUrl;
+    private       int     maxConnections;
+    private       int     maxPerRoute;
+    private       long    connectTimeout;
+    private       long    socketTimeout;
+    private       long    keepAlive;
+    private       boolean gzip;
+    private       int     warmUpConnections;
+
+    /**
+     * Creates the settings with pools sized to four requests in flight per processor
+     *
+     * @param baseUrl The base url requests are relative to
+     */
+    public TransportConfig(String baseUrl) {
+        int concurrency = Math.max(20, Runtime.getRuntime().availableProcessors() * 4);
+        this.baseUrl = baseUrl;
+        this.maxConnections = concurrency;
+        this.maxPerRoute = concurrency;
+        this.connectTimeout = 10000;
+        this.socketTimeout = 0;
+        this.keepAlive = 300000;
+        this.gzip = true;
+        this.warmUpConnections = 4;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public TransportConfig setConnectTimeout(long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    /**
+     * Gets how long in milliseconds an idle connection is kept open for reuse
+     *
+     * @return The keep alive time
+     */
+    public long getKeepAlive() {
+        return keepAlive;
+    }
+
+    public TransportConfig setKeepAlive(long keepAlive) {
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public TransportConfig setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public TransportConfig setMaxPerRoute(int maxPerRoute) {
+        this.maxPerRoute = maxPerRoute;
+        return this;
+    }
+
+    public long getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public TransportConfig setSocketTimeout(long socketTimeout) {
+        this.socketTimeout = socketTimeout;
+        return this;
+    }
+
+    public int getWarmUpConnections() {
+        return warmUpConnections;
+    }
+
+    public TransportConfig setWarmUpConnections(int warmUpConnections) {
+        this.warmUpConnections = warmUpConnections;
+        return this;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public TransportConfig setGzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+}
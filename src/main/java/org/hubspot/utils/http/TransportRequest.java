@@ -0,0 +1,122 @@
+package org.hubspot.utils.http;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A request to the HubSpot API, independent of the client that sends it
+ *
+ * @author Nicholas Curl
+ */
+public class TransportRequest {
+
+    private final String              method;
+    private final String              path;
+    private final Map<String, Object> queryParams;
+    private final Map<String, String> headers;
+    private final String              body;
+
+    private TransportRequest(String method, String path, String body) {
+        this.method = method;
+        this.path = path;
+        this.body = body;
+        this.queryParams = new LinkedHashMap<>();
+        this.headers = new LinkedHashMap<>();
+    }
+
+    public static TransportRequest get(String path) {
+        return new TransportRequest("GET", path, null);
+    }
+
+    public static TransportRequest post(String path, String body, String contentType) {
+        return new TransportRequest("POST", path, body).header("accept", "application/json")
+                                                       .header("Content-Type", contentType);
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Builds a key identifying the request, with the query parameters sorted so that their order does not matter and
+     * without the api key so that it is never persisted
+     *
+     * @return The key of the request
+     */
+    public String getKey() {
+        StringBuilder builder = new StringBuilder(method).append(' ').append(path);
+        for (Map.Entry<String, Object> entry : new TreeMap<>(queryParams).entrySet()) {
+            if (!entry.getKey().equals("hapikey")) {
+                builder.append('&').append(entry.getKey()).append('=').append(entry.getValue());
+            }
+        }
+        if (body != null) {
+            builder.append('\n').append(body);
+        }
+        return builder.toString();
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Map<String, Object> getQueryParams() {
+        return Collections.unmodifiableMap(queryParams);
+    }
+
+    /**
+     * Builds the url of the request with its query string
+     *
+     * @param baseUrl The base url the path is relative to
+     *
+     * @return The full url
+     */
+    public String getUrl(String baseUrl) {
+        StringBuilder builder = new StringBuilder();
+        if (!path.startsWith("http://") && !path.startsWith("https://")) {
+            builder.append(baseUrl);
+        }
+        builder.append(path);
+        char separator = path.indexOf('?') >= 0 ? '&' : '?';
+        for (Map.Entry<String, Object> entry : queryParams.entrySet()) {
+            builder.append(separator)
+                   .append(URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8))
+                   .append('=')
+                   .append(URLEncoder.encode(String.valueOf(entry.getValue()), StandardCharsets.UTF_8));
+            separator = '&';
+        }
+        return builder.toString();
+    }
+
+    public TransportRequest header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    public TransportRequest queryString(String name, Object value) {
+        queryParams.put(name, value);
+        return this;
+    }
+
+    public TransportRequest queryString(Map<String, Object> params) {
+        queryParams.putAll(params);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + path;
+    }
+}
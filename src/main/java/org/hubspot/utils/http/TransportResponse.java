@@ -0,0 +1,103 @@
+package org.hubspot.utils.http;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A response from the HubSpot API with its body already decompressed
+ *
+ * @author Nicholas Curl
+ */
+public class TransportResponse {
+
+    private final int                       status;
+    private final String                    statusText;
+    private final Map<String, List<String>> headers;
+    private final byte[]                    body;
+
+    public TransportResponse(int status, String statusText, Map<String, List<String>> headers, byte[] body) {
+        this.status = status;
+        this.statusText = statusText == null || statusText.isEmpty() ? reasonPhrase(status) : statusText;
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        this.headers.putAll(headers);
+        this.body = body;
+    }
+
+    /**
+     * Gets the standard reason phrase of a status code, for clients such as HTTP/2 ones that do not receive one
+     *
+     * @param status The status code
+     *
+     * @return The reason phrase, or an empty string if the code is not one HubSpot is known to send
+     */
+    public static String reasonPhrase(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 202:
+                return "Accepted";
+            case 204:
+                return "No Content";
+            case 207:
+                return "Multi-Status";
+            case 400:
+                return "Bad Request";
+            case 401:
+                return "Unauthorized";
+            case 403:
+                return "Forbidden";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 409:
+                return "Conflict";
+            case 414:
+                return "URI Too Long";
+            case 415:
+                return "Unsupported Media Type";
+            case 429:
+                return "Too Many Requests";
+            case 500:
+                return "Internal Server Error";
+            case 502:
+                return "Bad Gateway";
+            case 503:
+                return "Service Unavailable";
+            case 504:
+                return "Gateway Timeout";
+            default:
+                return "";
+        }
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Gets the first value of the header
+     *
+     * @param name The case insensitive name of the header
+     *
+     * @return The value, or an empty string if the header is missing
+     */
+    public String getFirstHeader(String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? "" : values.get(0);
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getStatusText() {
+        return statusText;
+    }
+}
@@ -0,0 +1,82 @@
+package org.hubspot.utils.http;
+
+import kong.unirest.*;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hubspot.utils.LogMarkers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends requests over HTTP/1.1 with Unirest's pooled Apache async client
+ *
+ * @author Nicholas Curl
+ */
+public class UnirestTransport implements HttpTransport {
+
+    /**
+     * The instance of the logger
+     */
+    private static final Logger          logger = LogManager.getLogger(UnirestTransport.class);
+    private final        TransportConfig config;
+    private final        UnirestInstance unirest;
+
+    public UnirestTransport(TransportConfig config) {
+        this.config = config;
+        this.unirest = Unirest.spawnInstance();
+        unirest.config()
+               .automaticRetries(true)
+               .socketTimeout((int) config.getSocketTimeout())
+               .connectTimeout((int) config.getConnectTimeout())
+               .concurrency(config.getMaxConnections(), config.getMaxPerRoute())
+               .connectionTTL(config.getKeepAlive(), TimeUnit.MILLISECONDS)
+               .defaultBaseUrl(config.getBaseUrl());
+        if (config.isGzip()) {
+            unirest.config().setDefaultHeader("Accept-Encoding", "gzip");
+        }
+    }
+
+    private static TransportResponse toResponse(HttpResponse<byte[]> response) {
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Header header : response.getHeaders().all()) {
+            headers.computeIfAbsent(header.getName(), name -> new ArrayList<>()).add(header.getValue());
+        }
+        return new TransportResponse(response.getStatus(), response.getStatusText(), headers, response.getBody());
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> send(TransportRequest request) {
+        HttpRequestWithBody httpRequest = unirest.request(request.getMethod(), request.getPath())
+                                                 .queryString(request.getQueryParams())
+                                                 .headers(request.getHeaders());
+        HttpRequest<?> toSend = request.getBody() == null ? httpRequest : httpRequest.body(request.getBody());
+        return toSend.asBytesAsync().thenApply(UnirestTransport::toResponse);
+    }
+
+    @Override
+    public void shutdown() {
+        unirest.shutDown();
+    }
+
+    /**
+     * Fills the connection pool by sending a few concurrent requests to the base url
+     */
+    @Override
+    public void warmUp() {
+        List<CompletableFuture<HttpResponse<byte[]>>> futures = new ArrayList<>();
+        for (int i = 0; i < config.getWarmUpConnections(); i++) {
+            futures.add(unirest.get("/").asBytesAsync());
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+        }
+        catch (Exception e) {
+            logger.debug(LogMarkers.HTTP.getMarker(), "Connection warm up failed", e);
+        }
+    }
+}
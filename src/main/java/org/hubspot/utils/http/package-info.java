@@ -0,0 +1,6 @@
+/**
+ * Package containing classes to help with sending requests to the HubSpot API
+ *
+ * @author Nicholas Curl
+ */
+package org.hubspot.utils.http;